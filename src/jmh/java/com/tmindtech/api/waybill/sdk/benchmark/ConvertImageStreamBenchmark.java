@@ -0,0 +1,50 @@
+package com.tmindtech.api.waybill.sdk.benchmark;
+
+import com.tmindtech.api.waybill.sdk.fixture.LabelImages;
+import com.tmindtech.api.waybill.sdk.model.PrintStreamInfo;
+import com.tmindtech.api.waybill.sdk.print.transport.NetworkPrintService;
+import com.tmindtech.api.waybill.sdk.util.ImageStreamUtil;
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * convertImageStream2MatchPrinter 在常见面单尺寸与 dpi 组合下的开销
+ * 图片 dpi 与打印机相同时直接返回原图, 不同时重新采样并编码
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ConvertImageStreamBenchmark {
+
+    @Param({"203", "300"})
+    public int sourceDpi;
+
+    @Param({"203", "300"})
+    public int printerDpi;
+
+    @Param({"76x130", "100x150"})
+    public String labelSize;
+
+    private byte[] source;
+    private NetworkPrintService printService;
+
+    @Setup
+    public void setUp() {
+        String[] size = labelSize.split("x");
+        source = LabelImages.createPng(Integer.parseInt(size[0]), Integer.parseInt(size[1]), sourceDpi);
+        printService = new NetworkPrintService("benchmark", null, printerDpi);
+    }
+
+    @Benchmark
+    public PrintStreamInfo convert() {
+        return ImageStreamUtil.convertImageStream2MatchPrinter(new ByteArrayInputStream(source), printService, 1);
+    }
+}
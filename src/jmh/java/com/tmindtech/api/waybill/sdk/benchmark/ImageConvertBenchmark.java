@@ -0,0 +1,97 @@
+package com.tmindtech.api.waybill.sdk.benchmark;
+
+import com.tmindtech.api.waybill.sdk.fixture.LabelImages;
+import com.tmindtech.api.waybill.sdk.model.PrintImageInfo;
+import com.tmindtech.api.waybill.sdk.model.PrintStreamInfo;
+import com.tmindtech.api.waybill.sdk.print.PageSlicer;
+import com.tmindtech.api.waybill.sdk.util.ImageStreamUtil;
+import com.tmindtech.api.waybill.sdk.util.InputStreamCacher;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import javax.print.attribute.standard.PrinterResolution;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * 单次解码的图片转换与旧版多次解码流程的对比
+ * convert: 转换为匹配打印机的png(convertImageStream2MatchPrinter 的输出)
+ * printReady: 从原图到每一页可提交打印的png, 包含旧版 printWaybill 中的重复解码
+ * parallelSlice: 解码一次后各页并行编码
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ImageConvertBenchmark {
+
+    @Param({"300"})
+    public int sourceDpi;
+
+    @Param({"203"})
+    public int printerDpi;
+
+    @Param({"1", "2"})
+    public int pageCount;
+
+    private byte[] source;
+    private PrinterResolution resolution;
+
+    @Setup
+    public void setUp() {
+        source = LabelImages.createPng(100, 150 * pageCount, sourceDpi);
+        resolution = new PrinterResolution(printerDpi, printerDpi, PrinterResolution.DPI);
+    }
+
+    @Benchmark
+    public PrintStreamInfo legacyConvert() {
+        return LegacyImageConvert.convertImageStream2MatchPrinter(new ByteArrayInputStream(source), resolution, pageCount);
+    }
+
+    @Benchmark
+    public PrintStreamInfo singleDecodeConvert() {
+        return ImageStreamUtil.convertImage2MatchPrinter(source, resolution, pageCount);
+    }
+
+    @Benchmark
+    public void legacyPrintReady(Blackhole blackhole) throws IOException {
+        PrintStreamInfo streamInfo = LegacyImageConvert.convertImageStream2MatchPrinter(
+                new ByteArrayInputStream(source), resolution, pageCount);
+        InputStreamCacher cacher = new InputStreamCacher(streamInfo.inputStream);
+        for (int i = 0; i < pageCount; i++) {
+            blackhole.consume(LegacyImageConvert.slicePage(cacher.getInputStream(), i, pageCount));
+        }
+    }
+
+    @Benchmark
+    public void singleDecodePrintReady(Blackhole blackhole) throws IOException {
+        PrintImageInfo imageInfo = ImageStreamUtil.decodeImage2MatchPrinter(source, resolution, pageCount);
+        BufferedImage image = imageInfo.image;
+        for (int i = 0; i < pageCount; i++) {
+            BufferedImage page = image.getSubimage(0, (int) (i * 1.0 / pageCount * image.getHeight()),
+                    image.getWidth(), image.getHeight() / pageCount);
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            ImageIO.write(page, "png", output);
+            blackhole.consume(output.toByteArray());
+        }
+    }
+
+    @Benchmark
+    public void parallelSlicePrintReady(Blackhole blackhole) {
+        PrintImageInfo imageInfo = ImageStreamUtil.decodeImage2MatchPrinter(source, resolution, pageCount);
+        for (CompletableFuture<byte[]> page : PageSlicer.encodeAsync(imageInfo.image, pageCount, ForkJoinPool.commonPool())) {
+            blackhole.consume(page.join());
+        }
+    }
+}
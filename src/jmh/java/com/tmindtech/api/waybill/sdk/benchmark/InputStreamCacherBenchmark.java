@@ -0,0 +1,59 @@
+package com.tmindtech.api.waybill.sdk.benchmark;
+
+import com.tmindtech.api.waybill.sdk.util.InputStreamCacher;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * InputStreamCacher 缓存并重复读取图片流的开销, 每次 getInputStream 都会复制一份字节
+ * 与直接读成字节数组后按需包装的对比
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class InputStreamCacherBenchmark {
+
+    @Param({"64", "1024"})
+    public int sizeKb;
+
+    @Param({"1", "3"})
+    public int reads;
+
+    private byte[] source;
+
+    @Setup
+    public void setUp() {
+        source = new byte[sizeKb * 1024];
+        new Random(42).nextBytes(source);
+    }
+
+    @Benchmark
+    public void cacher(Blackhole blackhole) {
+        InputStreamCacher cacher = new InputStreamCacher(new ByteArrayInputStream(source));
+        for (int i = 0; i < reads; i++) {
+            blackhole.consume(cacher.getInputStream());
+        }
+    }
+
+    @Benchmark
+    public void byteArray(Blackhole blackhole) throws IOException {
+        byte[] bytes = IOUtils.toByteArray(new ByteArrayInputStream(source));
+        for (int i = 0; i < reads; i++) {
+            InputStream inputStream = new ByteArrayInputStream(bytes);
+            blackhole.consume(inputStream);
+        }
+    }
+}
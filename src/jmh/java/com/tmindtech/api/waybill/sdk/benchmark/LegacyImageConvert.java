@@ -0,0 +1,186 @@
+package com.tmindtech.api.waybill.sdk.benchmark;
+
+import com.tmindtech.api.waybill.sdk.model.PrintStreamInfo;
+import com.tmindtech.api.waybill.sdk.util.InputStreamCacher;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.AffineTransformOp;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOInvalidTreeException;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.print.attribute.standard.PrinterResolution;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * 多次解码的旧版图片转换流程, 仅作为基准测试的对照组保留
+ * 与旧版 ImageStreamUtil.convertImageStream2MatchPrinter 及 WaybillSDK.printWaybill 中的图片处理一致,
+ * 唯一的区别是直接传入打印机分辨率而不是 PrintService
+ */
+public class LegacyImageConvert {
+    private static final float INCH_2_MM = 25.4f;
+
+    public static PrintStreamInfo convertImageStream2MatchPrinter(InputStream inputStream, PrinterResolution resolution, int pageCount) {
+        PrintStreamInfo streamInfo = new PrintStreamInfo();
+        InputStreamCacher cacher = new InputStreamCacher(inputStream);
+        try {
+            BufferedImage image = ImageIO.read(cacher.getInputStream());
+            int width = image.getWidth();
+            int height = image.getHeight();
+            int crossResolution = 0;
+            int feedResolution = 0;
+
+            ImageInputStream iis = ImageIO.createImageInputStream(cacher.getInputStream());
+            Iterator it = ImageIO.getImageReaders(iis);
+            if (!it.hasNext()) {
+                return null;
+            }
+            ImageReader reader = (ImageReader) it.next();
+            reader.setInput(iis);
+
+            IIOMetadata meta = reader.getImageMetadata(0);
+            IIOMetadataNode root = (IIOMetadataNode) meta.getAsTree("javax_imageio_1.0");
+            NodeList nodes = root.getElementsByTagName("HorizontalPixelSize");
+            if (nodes.getLength() > 0) {
+                IIOMetadataNode dpcWidth = (IIOMetadataNode) nodes.item(0);
+                NamedNodeMap nnm = dpcWidth.getAttributes();
+                Node item = nnm.item(0);
+                crossResolution = Math.round(INCH_2_MM / Float.parseFloat(item.getNodeValue()));
+            }
+            if (nodes.getLength() > 0) {
+                nodes = root.getElementsByTagName("VerticalPixelSize");
+                IIOMetadataNode dpcHeight = (IIOMetadataNode) nodes.item(0);
+                NamedNodeMap nnm = dpcHeight.getAttributes();
+                Node item = nnm.item(0);
+                feedResolution = Math.round(INCH_2_MM / Float.parseFloat(item.getNodeValue()));
+            }
+
+            streamInfo.width = (float) (width * 1.0 / crossResolution * 25.4);
+            streamInfo.height = (float) (height * 1.0 / feedResolution / pageCount * 25.4);
+
+            if (crossResolution == resolution.getCrossFeedResolution(PrinterResolution.DPI)) {
+                streamInfo.inputStream = cacher.getInputStream();
+                return streamInfo;
+            }
+
+            int xdpi = resolution.getCrossFeedResolution(PrinterResolution.DPI);
+            int ydpi = resolution.getFeedResolution(PrinterResolution.DPI);
+            int convertWidth = Math.round((float) width * xdpi / crossResolution);
+            int convertHeight = Math.round((float) height * ydpi / feedResolution);
+
+            BufferedImage bufferedImage = fastResample(ImageIO.read(cacher.getInputStream()), null, convertWidth, convertHeight, 1);
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            BufferedOutputStream bufferStream = new BufferedOutputStream(bos);
+            ImageIO.write(bufferedImage, "png", bufferStream);
+            bufferStream.close();
+            streamInfo.inputStream = resetImageDpi(new ByteArrayInputStream(bos.toByteArray()), convertWidth, convertHeight, xdpi, ydpi);
+            return streamInfo;
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * 旧版 printWaybill 中每一页的处理: 解码整张图片, 截取一页并重新编码
+     */
+    public static byte[] slicePage(InputStream inputStream, int index, int size) throws IOException {
+        BufferedImage image = ImageIO.read(inputStream);
+        BufferedImage subImage = image.getSubimage(0, (int) (index * 1.0 / size * image.getHeight()),
+                image.getWidth(), image.getHeight() / size);
+        ByteArrayOutputStream bs = new ByteArrayOutputStream();
+        ImageOutputStream ios = ImageIO.createImageOutputStream(bs);
+        ImageIO.write(subImage, "png", ios);
+        return bs.toByteArray();
+    }
+
+    private static InputStream resetImageDpi(InputStream inputStream, int width, int height, int crossDpi, int feedDpi) {
+        BufferedImage image = scaleImage(width, height, inputStream);
+        for (Iterator<ImageWriter> iw = ImageIO.getImageWritersByFormatName("png"); iw.hasNext(); ) {
+            ImageWriter writer = iw.next();
+            ImageWriteParam writeParam = writer.getDefaultWriteParam();
+            ImageTypeSpecifier typeSpecifier = ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_INT_RGB);
+            IIOMetadata metadata = writer.getDefaultImageMetadata(typeSpecifier, writeParam);
+            if (metadata.isReadOnly() || !metadata.isStandardMetadataFormatSupported()) {
+                continue;
+            }
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            ImageOutputStream stream = null;
+            try {
+                setDPI(metadata, crossDpi, feedDpi);
+                stream = ImageIO.createImageOutputStream(output);
+                writer.setOutput(stream);
+                writer.write(metadata, new IIOImage(image, null, metadata), writeParam);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            } finally {
+                try {
+                    if (stream != null) {
+                        stream.close();
+                    }
+                } catch (IOException ignore) {
+                }
+            }
+            return new ByteArrayInputStream(output.toByteArray());
+        }
+        return null;
+    }
+
+    private static BufferedImage scaleImage(int width, int height, InputStream inputStream) {
+        BufferedImage bi = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = bi.createGraphics();
+        g2d.addRenderingHints(new RenderingHints(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY));
+        try {
+            g2d.drawImage(ImageIO.read(inputStream), 0, 0, width, height, null);
+        } catch (IOException ignore) {
+        }
+        return bi;
+    }
+
+    private static void setDPI(IIOMetadata metadata, int crossDpi, int feedDpi) {
+        double crossDotsPerMilli = 1.0 * crossDpi / INCH_2_MM;
+        double feedDotsPerMilli = 1.0 * feedDpi / INCH_2_MM;
+        IIOMetadataNode horiz = new IIOMetadataNode("HorizontalPixelSize");
+        horiz.setAttribute("value", Double.toString(crossDotsPerMilli));
+
+        IIOMetadataNode vert = new IIOMetadataNode("VerticalPixelSize");
+        vert.setAttribute("value", Double.toString(feedDotsPerMilli));
+
+        IIOMetadataNode dim = new IIOMetadataNode("Dimension");
+        dim.appendChild(horiz);
+        dim.appendChild(vert);
+
+        IIOMetadataNode root = new IIOMetadataNode("javax_imageio_1.0");
+        root.appendChild(dim);
+
+        try {
+            metadata.mergeTree("javax_imageio_1.0", root);
+        } catch (IIOInvalidTreeException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    private static BufferedImage fastResample(final BufferedImage input, final BufferedImage output, final int width, final int height, final int type) {
+        AffineTransform transform = AffineTransform.getScaleInstance(width / (double) input.getWidth(),
+                height / (double) input.getHeight());
+        AffineTransformOp scale = new AffineTransformOp(transform, type);
+        return scale.filter(input, output);
+    }
+}
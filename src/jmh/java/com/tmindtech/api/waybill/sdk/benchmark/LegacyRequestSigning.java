@@ -0,0 +1,105 @@
+package com.tmindtech.api.waybill.sdk.benchmark;
+
+import com.alibaba.fastjson.JSONObject;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+import java.util.UUID;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+
+/**
+ * 旧版的请求编码与签名, 仅作为基准测试的对照组保留
+ * 与旧版 WaybillSDK.createRequestBody、YXMessage 及 SignatureInterceptor 一致
+ */
+public class LegacyRequestSigning {
+
+    public static RequestBody createRequestBody(String topic, Object data) {
+        Message message = new Message(UUID.randomUUID().toString(), 0, topic, "label_print", "api", "", data);
+        return RequestBody.create(MediaType.parse("application/json; charset=utf-8"), JSONObject.toJSONString(message));
+    }
+
+    public static class Message {
+        public String id;
+        public Integer async;
+        public String topic;
+        public String source;
+        public String target;
+        public String timestamp;
+        public String sign;
+        public Object payload;
+
+        public Message(String id, Integer async, String topic, String source, String target, String sign, Object payload) {
+            this.id = id;
+            this.async = async;
+            this.topic = topic;
+            this.source = source;
+            this.target = target;
+            this.sign = sign;
+            this.payload = payload;
+            this.timestamp = ZonedDateTime.now(ZoneOffset.UTC).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+        }
+    }
+
+    public static class Interceptor implements okhttp3.Interceptor {
+        private static char[] DIGITS_LOWER = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
+        private final String accessKey;
+        private final String accessSecret;
+
+        public Interceptor(String accessKey, String accessSecret) {
+            this.accessKey = accessKey;
+            this.accessSecret = accessSecret;
+        }
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Request request = chain.request();
+            StringBuffer sb = new StringBuffer();
+            if (request.method().equals("POST")) {
+                Buffer buffer = new Buffer();
+                request.body().writeTo(buffer);
+                sb.append(buffer.readString(StandardCharsets.UTF_8));
+            }
+            String body = sb.toString();
+            int random = Math.abs(new Random().nextInt());
+            long timestamp = Timestamp.from(Instant.now()).getTime();
+            String sign = sha1(sha1(accessKey + accessSecret) + body + random + timestamp);
+            return chain.proceed(chain.request().newBuilder()
+                    .header("appCode", accessKey)
+                    .header("random", String.valueOf(random))
+                    .header("timestamp", String.valueOf(timestamp))
+                    .header("signature", sign)
+                    .put(RequestBody.create(MediaType.parse("application/json; charset=utf-8"), body))
+                    .build()
+            );
+        }
+
+        private String sha1(String origin) {
+            try {
+                MessageDigest md = MessageDigest.getInstance("SHA-1");
+                md.update(origin.getBytes(StandardCharsets.UTF_8));
+                byte[] bytes = md.digest();
+                StringBuilder sb = new StringBuilder(bytes.length * 2);
+                for (byte aByte : bytes) {
+                    sb.append(DIGITS_LOWER[(aByte >> 4) & 0x0f]);
+                    sb.append(DIGITS_LOWER[aByte & 0x0f]);
+                }
+                return sb.toString();
+            } catch (NoSuchAlgorithmException ex) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.tmindtech.api.waybill.sdk.benchmark;
+
+import com.tmindtech.api.waybill.sdk.WaybillSDK;
+import com.tmindtech.api.waybill.sdk.fixture.LabelImages;
+import com.tmindtech.api.waybill.sdk.fixture.MockLabelServer;
+import com.tmindtech.api.waybill.sdk.fixture.StubPrinter;
+import com.tmindtech.api.waybill.sdk.log.PrintLogShipper;
+import com.tmindtech.api.waybill.sdk.model.PrintResult;
+import com.tmindtech.api.waybill.sdk.print.encoder.PrinterLanguage;
+import com.tmindtech.api.waybill.sdk.print.encoder.RawPrintProfile;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * 按唯一码打印一批面单的完整流程: 查询地址与面单信息、下载图片、转换、编码 ZPL 并发送到网络打印机
+ * 面单服务与打印机都是本机的替身(MockLabelServer, StubPrinter), 100x150mm 300dpi 面单打印到 203dpi 打印机
+ * cold: 每次都是新的唯一码, 且不缓存转换结果; warm: 重复打印同一批面单, 各级缓存命中
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PrintLabelBenchmark {
+
+    @Param({"1", "10"})
+    public int labelCount;
+
+    @Param({"cold", "warm"})
+    public String cache;
+
+    @Param({"false", "true"})
+    public boolean needAllSuccess;
+
+    private MockLabelServer server;
+    private StubPrinter printer;
+    private WaybillSDK sdk;
+    private File logDirectory;
+    private final AtomicLong sequence = new AtomicLong();
+    private final List<String> warmUuidCodes = new ArrayList<>();
+
+    @Setup
+    public void setUp() throws IOException {
+        server = new MockLabelServer(LabelImages.createPng(100, 150, 300));
+        printer = new StubPrinter();
+        logDirectory = Files.createTempDirectory("print-log").toFile();
+        sdk = new WaybillSDK();
+        sdk.init("access-key", "access-secret", server.url(), null);
+        sdk.setPrintLogShipping(logDirectory, PrintLogShipper.DEFAULT_BATCH_SIZE,
+                PrintLogShipper.DEFAULT_FLUSH_INTERVAL_MILLIS);
+        sdk.setLabelImageCache(null, 64L << 20, 0);
+        if (cache.equals("cold")) {
+            sdk.setPrintStreamCache(1);
+        }
+        sdk.addNetworkPrinter("benchmark", "127.0.0.1", printer.getPort(), 203, new RawPrintProfile(PrinterLanguage.ZPL));
+        for (int i = 0; i < labelCount; i++) {
+            warmUuidCodes.add("YXWARM" + i);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        sdk.shutdown();
+        server.close();
+        printer.close();
+        FileUtils.deleteDirectory(logDirectory);
+    }
+
+    @Benchmark
+    public PrintResult print() {
+        List<String> uuidCodeList = warmUuidCodes;
+        if (cache.equals("cold")) {
+            uuidCodeList = new ArrayList<>();
+            for (int i = 0; i < labelCount; i++) {
+                uuidCodeList.add("YX" + sequence.incrementAndGet());
+            }
+        }
+        PrintResult result = sdk.printLabelByUuidCodeAsync(uuidCodeList, "benchmark", needAllSuccess, 0).join();
+        if (!result.isAllSuccess()) {
+            throw new IllegalStateException(result.toString());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,162 @@
+package com.tmindtech.api.waybill.sdk.benchmark;
+
+import com.alibaba.fastjson.JSONObject;
+import com.tmindtech.api.waybill.sdk.interceptor.SignatureInterceptor;
+import com.tmindtech.api.waybill.sdk.model.YXMessage;
+import com.tmindtech.api.waybill.sdk.util.MessageCodec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.Interceptor;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 单个请求从构造消息到签名完成、请求体写出的开销, 新版编解码与旧版字符串往返的对比
+ * legacyEncode/encode 只包含消息的 JSON 编码, sign 只包含对已编码请求的签名
+ * uuid: 按唯一码查询图片地址; batch: 50个唯一码的批量查询
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RequestSigningBenchmark {
+    private static final String TOPIC = "logistics_label_address/get_label_image_by_uuid";
+
+    @Param({"uuid", "batch"})
+    public String payload;
+
+    private Object data;
+    private final Interceptor signature = new SignatureInterceptor("access-key", "access-secret");
+    private final Interceptor legacySignature = new LegacyRequestSigning.Interceptor("access-key", "access-secret");
+    private final SendingChain chain = new SendingChain();
+    private RequestBody encoded;
+
+    @Setup
+    public void setUp() {
+        if (payload.equals("uuid")) {
+            data = "YX20180101000000001";
+        } else {
+            List<String> uuidCodeList = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                uuidCodeList.add("YX201801010000000" + i);
+            }
+            data = uuidCodeList;
+        }
+        encoded = MessageCodec.encode(new YXMessage(MessageCodec.nextMessageId(), 0, TOPIC, "label_print", "api", "", data));
+    }
+
+    @Benchmark
+    public byte[] legacyEncode() {
+        return JSONObject.toJSONString(new LegacyRequestSigning.Message(UUID.randomUUID().toString(), 0, TOPIC,
+                "label_print", "api", "", data)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return MessageCodec.encode(new YXMessage(MessageCodec.nextMessageId(), 0, TOPIC, "label_print", "api", "", data))
+                .bytes();
+    }
+
+    @Benchmark
+    public Response sign() throws IOException {
+        return signature.intercept(chain.with(encoded));
+    }
+
+    @Benchmark
+    public Response legacy() throws IOException {
+        return legacySignature.intercept(chain.with(LegacyRequestSigning.createRequestBody(TOPIC, data)));
+    }
+
+    @Benchmark
+    public Response codec() throws IOException {
+        YXMessage message = new YXMessage(MessageCodec.nextMessageId(), 0, TOPIC, "label_print", "api", "", data);
+        return signature.intercept(chain.with(MessageCodec.encode(message)));
+    }
+
+    /**
+     * 模拟发送: 把签名后的请求体写入缓冲区, 返回固定的响应
+     */
+    private static class SendingChain implements Interceptor.Chain {
+        private final Buffer sink = new Buffer();
+        private final Request.Builder builder = new Request.Builder().url("http://127.0.0.1/request");
+        private Request request;
+        private Response response;
+
+        SendingChain with(RequestBody body) {
+            request = builder.post(body).build();
+            return this;
+        }
+
+        @Override
+        public Request request() {
+            return request;
+        }
+
+        @Override
+        public Response proceed(Request request) throws IOException {
+            request.body().writeTo(sink);
+            sink.clear();
+            if (response == null) {
+                response = new Response.Builder().request(request).protocol(Protocol.HTTP_1_1)
+                        .code(200).message("OK").build();
+            }
+            return response;
+        }
+
+        @Override
+        public Connection connection() {
+            return null;
+        }
+
+        @Override
+        public Call call() {
+            return null;
+        }
+
+        @Override
+        public int connectTimeoutMillis() {
+            return 0;
+        }
+
+        @Override
+        public Interceptor.Chain withConnectTimeout(int timeout, TimeUnit unit) {
+            return this;
+        }
+
+        @Override
+        public int readTimeoutMillis() {
+            return 0;
+        }
+
+        @Override
+        public Interceptor.Chain withReadTimeout(int timeout, TimeUnit unit) {
+            return this;
+        }
+
+        @Override
+        public int writeTimeoutMillis() {
+            return 0;
+        }
+
+        @Override
+        public Interceptor.Chain withWriteTimeout(int timeout, TimeUnit unit) {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.tmindtech.api.waybill.sdk.util;
+
+import com.tmindtech.api.waybill.sdk.fixture.LabelImages;
+import java.awt.image.AffineTransformOp;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * fastResample 各插值方式的开销: 100x150mm 面单从 300dpi 缩放到 203dpi
+ * SDK 目前使用最近邻插值, 双线性与双三次插值会先逐级减半; fastResample 不公开, 因此放在同一个包中
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ResampleBenchmark {
+
+    @Param({"NEAREST_NEIGHBOR", "BILINEAR", "BICUBIC"})
+    public String mode;
+
+    private BufferedImage source;
+    private int width;
+    private int height;
+    private int type;
+
+    @Setup
+    public void setUp() {
+        source = LabelImages.createImage(100, 150, 300);
+        width = Math.round(source.getWidth() * 203f / 300);
+        height = Math.round(source.getHeight() * 203f / 300);
+        switch (mode) {
+            case "BILINEAR":
+                type = AffineTransformOp.TYPE_BILINEAR;
+                break;
+            case "BICUBIC":
+                type = AffineTransformOp.TYPE_BICUBIC;
+                break;
+            default:
+                type = AffineTransformOp.TYPE_NEAREST_NEIGHBOR;
+        }
+    }
+
+    @Benchmark
+    public BufferedImage resample() {
+        return ImageStreamUtil.fastResample(source, null, width, height, type);
+    }
+}
@@ -0,0 +1,77 @@
+package com.tmindtech.api.waybill.sdk.loadtest;
+
+import com.tmindtech.api.waybill.sdk.fixture.LoopbackHttpServer;
+import com.tmindtech.api.waybill.sdk.util.ImageStreamUtil;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 本机的面单图片服务, 所有唯一码返回同一张生成的面单图片(白底黑字, 带条码, 写入dpi信息)
+ */
+public class LabelImageHost implements Closeable {
+    private final LoopbackHttpServer server;
+    private final byte[] image;
+    private final AtomicLong downloadCount = new AtomicLong();
+
+    /**
+     * @param widthMm  面单宽度(毫米)
+     * @param heightMm 面单高度(毫米)
+     * @param dpi      图片dpi
+     */
+    public LabelImageHost(int widthMm, int heightMm, int dpi) throws IOException {
+        this.image = ImageStreamUtil.encodePng(createImage(widthMm, heightMm, dpi), dpi, dpi);
+        this.server = new LoopbackHttpServer("label-image-host", (method, path, body) -> {
+            if (!path.startsWith("/label/")) {
+                return new LoopbackHttpServer.Response(404, "text/plain", new byte[0]);
+            }
+            downloadCount.incrementAndGet();
+            return new LoopbackHttpServer.Response(200, "image/png", image);
+        });
+    }
+
+    public String url() {
+        return server.url();
+    }
+
+    public long getDownloadCount() {
+        return downloadCount.get();
+    }
+
+    public int getImageBytes() {
+        return image.length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+
+    private static BufferedImage createImage(int widthMm, int heightMm, int dpi) {
+        int width = Math.round(widthMm / 25.4f * dpi);
+        int height = Math.round(heightMm / 25.4f * dpi);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, width, height);
+        g.setColor(Color.BLACK);
+        Random random = new Random(42);
+        int bar = Math.max(1, dpi / 100);
+        for (int x = width / 10; x < width * 9 / 10; x += bar * (1 + random.nextInt(3))) {
+            g.fillRect(x, height / 20, bar * (1 + random.nextInt(2)), height / 8);
+        }
+        g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, dpi / 10));
+        for (int line = 0; line < 12; line++) {
+            int y = height / 4 + line * height / 20;
+            g.drawString("YX" + random.nextInt(1000000) + " 收件人 杭州市滨江区 " + random.nextInt(10000), width / 20, y);
+            g.fillRect(0, y + dpi / 40, width, Math.max(1, dpi / 150));
+        }
+        g.dispose();
+        return image;
+    }
+}
@@ -0,0 +1,52 @@
+package com.tmindtech.api.waybill.sdk.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * 记录全部延迟样本, 结束后排序计算分位数
+ */
+public class LatencyRecorder {
+    private long[] samples = new long[1024];
+    private int count;
+
+    public synchronized void record(long millis) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = millis;
+    }
+
+    public synchronized int count() {
+        return count;
+    }
+
+    /**
+     * @param quantile 分位, 如 0.99
+     * @return 该分位的延迟(毫秒), 没有样本时为0
+     */
+    public synchronized long percentile(double quantile) {
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(quantile * count) - 1;
+        return sorted[Math.min(count - 1, Math.max(0, index))];
+    }
+
+    public synchronized long max() {
+        long max = 0;
+        for (int i = 0; i < count; i++) {
+            max = Math.max(max, samples[i]);
+        }
+        return max;
+    }
+
+    /**
+     * @return count, p50, p99, p999, max 的一行摘要
+     */
+    public String summary() {
+        return String.format("count=%d p50=%dms p99=%dms p999=%dms max=%dms",
+                count(), percentile(0.5), percentile(0.99), percentile(0.999), max());
+    }
+}
@@ -0,0 +1,177 @@
+package com.tmindtech.api.waybill.sdk.loadtest;
+
+import com.tmindtech.api.waybill.sdk.WaybillSDK;
+import com.tmindtech.api.waybill.sdk.fixture.MockLabelServer;
+import com.tmindtech.api.waybill.sdk.log.PrintLogShipper;
+import com.tmindtech.api.waybill.sdk.model.PrintItemResult;
+import com.tmindtech.api.waybill.sdk.model.PrintResult;
+import com.tmindtech.api.waybill.sdk.print.AdmissionController;
+import com.tmindtech.api.waybill.sdk.print.AdmissionPolicy;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * 压力测试: 启动进程内的面单服务、图片服务和虚拟打印机, 按波次通过 printLabelByUuidCode 与 splitPackageAndPrint
+ * 提交打印批次, 结束后输出吞吐量(张/秒)、批次和单张面单延迟的 p50/p99/p999 以及 SDK 各阶段的耗时分布
+ * 参数以 key=value 形式传入, 例如:
+ * waves=10 waveSize=20 labelsPerBatch=5 mode=mixed printers=4 spoolMillis=20 latencyMillis=5 notReadyRate=0.05
+ * traceDir 指定时开启调用链追踪, span 写入该目录
+ * admissionPolicy 指定时按 admissionCapacity、admissionMaxBytes、labelBytes 设置准入控制, 每个批次的优先级为 0 到 2 循环
+ */
+public class LoadTestDriver {
+    private final Map<String, String> options;
+    private final LatencyRecorder batchLatency = new LatencyRecorder();
+    private final LatencyRecorder labelLatency = new LatencyRecorder();
+    private final Map<String, AtomicLong> outcomes = new TreeMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    public LoadTestDriver(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("argument should be key=value: " + arg);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        new LoadTestDriver(options).run();
+        System.exit(0);
+    }
+
+    public void run() throws Exception {
+        int waves = intOption("waves", 5);
+        int waveSize = intOption("waveSize", 20);
+        int labelsPerBatch = intOption("labelsPerBatch", 5);
+        long waveIntervalMillis = longOption("waveIntervalMillis", 1000);
+        String mode = options.getOrDefault("mode", "mixed");
+        boolean needAllSuccess = Boolean.parseBoolean(options.getOrDefault("needAllSuccess", "false"));
+        int imageTimeout = intOption("imageTimeout", 5000);
+        String[] labelSize = options.getOrDefault("labelSize", "100x150").split("x");
+        VirtualPrintServiceLookup.configure(intOption("printers", 2), intOption("printerDpi", 203),
+                longOption("spoolMillis", 20));
+
+        File logDirectory = Files.createTempDirectory("loadtest-print-log").toFile();
+        try (LabelImageHost imageHost = new LabelImageHost(Integer.parseInt(labelSize[0]),
+                Integer.parseInt(labelSize[1]), intOption("imageDpi", 300));
+             MockLabelServer server = new MockLabelServer(imageHost.url())) {
+            server.latencyMillis = longOption("latencyMillis", 5);
+            server.latencyJitterMillis = longOption("jitterMillis", 10);
+            server.notReadyRate = Double.parseDouble(options.getOrDefault("notReadyRate", "0.05"));
+            server.readyDelayMillis = longOption("readyDelayMillis", 500);
+            server.errorRate = Double.parseDouble(options.getOrDefault("errorRate", "0"));
+
+            WaybillSDK sdk = new WaybillSDK();
+            sdk.init("loadtest-key", "loadtest-secret", server.url(), null);
+            sdk.setPrintLogShipping(logDirectory, PrintLogShipper.DEFAULT_BATCH_SIZE,
+                    PrintLogShipper.DEFAULT_FLUSH_INTERVAL_MILLIS);
+            sdk.setLabelImageCache(null, 64L << 20, 0);
+            if (options.containsKey("traceDir")) {
+                sdk.setTracing(new File(options.get("traceDir")));
+            }
+            if (options.containsKey("admissionPolicy")) {
+                sdk.setAdmissionControl(intOption("admissionCapacity", AdmissionController.DEFAULT_CAPACITY),
+                        longOption("admissionMaxBytes", AdmissionController.DEFAULT_MAX_BYTES),
+                        longOption("labelBytes", AdmissionController.DEFAULT_LABEL_BYTES),
+                        AdmissionPolicy.valueOf(options.get("admissionPolicy")));
+            }
+            List<String> printers = new ArrayList<>();
+            VirtualPrintServiceLookup.getVirtualPrinters().forEach(printer -> printers.add(printer.getName()));
+            System.out.println("printers=" + printers + ", label image " + imageHost.getImageBytes() + " bytes");
+
+            List<CompletableFuture<Void>> batches = new ArrayList<>();
+            long startTime = System.currentTimeMillis();
+            for (int wave = 0; wave < waves; wave++) {
+                long waveStart = startTime + wave * waveIntervalMillis;
+                long sleep = waveStart - System.currentTimeMillis();
+                if (sleep > 0) {
+                    TimeUnit.MILLISECONDS.sleep(sleep);
+                }
+                for (int i = 0; i < waveSize; i++) {
+                    String printer = printers.get(i % printers.size());
+                    boolean split = mode.equals("split") || (mode.equals("mixed") && i % 2 == 1);
+                    batches.add(submit(sdk, printer, split, labelsPerBatch, needAllSuccess, imageTimeout, i % 3));
+                }
+                System.out.println("wave " + (wave + 1) + " submitted, " + sdk.getPrintLaneStats() + ", "
+                        + sdk.getAdmissionStats());
+            }
+            CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0])).join();
+            long elapsed = System.currentTimeMillis() - startTime;
+
+            long printed = outcomes.getOrDefault("success", new AtomicLong()).get();
+            System.out.println();
+            System.out.printf("elapsed=%dms printed=%d throughput=%.1f labels/s%n", elapsed, printed,
+                    printed * 1000.0 / elapsed);
+            System.out.println("batch latency: " + batchLatency.summary());
+            System.out.println("label latency: " + labelLatency.summary());
+            System.out.println("outcomes: " + outcomes);
+            System.out.println(server.getStats() + ", imageDownloads=" + imageHost.getDownloadCount());
+            VirtualPrintServiceLookup.getVirtualPrinters().forEach(printer ->
+                    System.out.println(printer.getName() + ": jobs=" + printer.getJobCount()));
+            System.out.println(sdk.getAdmissionStats());
+            System.out.println(sdk.getMetrics());
+            sdk.shutdown();
+        } finally {
+            FileUtils.deleteQuietly(logDirectory);
+        }
+    }
+
+    private CompletableFuture<Void> submit(WaybillSDK sdk, String printer, boolean split, int labelCount,
+                                                  boolean needAllSuccess, int imageTimeout, int priority) {
+        String saleOrder = "SO" + sequence.incrementAndGet();
+        long submitTime = System.currentTimeMillis();
+        CompletableFuture<PrintResult> future;
+        if (split) {
+            future = sdk.splitPackageAndPrintAsync(saleOrder, "loadtest", labelCount, new ArrayList<>(), printer,
+                    needAllSuccess, imageTimeout, priority);
+        } else {
+            List<String> uuidCodeList = new ArrayList<>();
+            for (int seqNo = 1; seqNo <= labelCount; seqNo++) {
+                uuidCodeList.add(saleOrder + "-" + seqNo);
+            }
+            future = sdk.printLabelByUuidCodeAsync(uuidCodeList, printer, needAllSuccess, imageTimeout, priority);
+        }
+        return future.handle((result, ex) -> {
+            batchLatency.record(System.currentTimeMillis() - submitTime);
+            if (ex != null) {
+                count("batchFailed: " + (ex.getCause() != null ? ex.getCause().getMessage() : ex.getMessage()));
+                return null;
+            }
+            for (PrintItemResult item : result.items) {
+                if (Boolean.TRUE.equals(item.isSuccess)) {
+                    labelLatency.record(result.queuedMillis + item.elapsedMillis);
+                    count("success");
+                } else {
+                    count("failed: " + item.errorCode);
+                }
+            }
+            return null;
+        });
+    }
+
+    private void count(String outcome) {
+        synchronized (outcomes) {
+            outcomes.computeIfAbsent(outcome, key -> new AtomicLong()).incrementAndGet();
+        }
+    }
+
+    private int intOption(String key, int defaultValue) {
+        return Integer.parseInt(options.getOrDefault(key, Integer.toString(defaultValue)));
+    }
+
+    private long longOption(String key, long defaultValue) {
+        return Long.parseLong(options.getOrDefault(key, Long.toString(defaultValue)));
+    }
+}
@@ -0,0 +1,279 @@
+package com.tmindtech.api.waybill.sdk.loadtest;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.print.PageFormat;
+import java.awt.print.Paper;
+import java.awt.print.Printable;
+import java.awt.print.PrinterException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.print.Doc;
+import javax.print.DocFlavor;
+import javax.print.DocPrintJob;
+import javax.print.PrintException;
+import javax.print.PrintService;
+import javax.print.ServiceUIFactory;
+import javax.print.attribute.Attribute;
+import javax.print.attribute.AttributeSet;
+import javax.print.attribute.HashPrintServiceAttributeSet;
+import javax.print.attribute.PrintJobAttributeSet;
+import javax.print.attribute.PrintRequestAttributeSet;
+import javax.print.attribute.PrintServiceAttribute;
+import javax.print.attribute.PrintServiceAttributeSet;
+import javax.print.attribute.standard.PrinterName;
+import javax.print.attribute.standard.PrinterResolution;
+import javax.print.event.PrintJobAttributeListener;
+import javax.print.event.PrintJobEvent;
+import javax.print.event.PrintJobListener;
+import javax.print.event.PrintServiceAttributeListener;
+
+/**
+ * 模拟系统打印服务的虚拟打印机, 由 VirtualPrintServiceLookup 通过 javax.print 的 SPI 提供
+ * 接受 png 输入流和 Printable, 读完(或绘制完)打印数据后再等待 spoolMillis 模拟假脱机, 然后返回
+ */
+public class VirtualPrintService implements PrintService {
+    private static final DocFlavor[] FLAVORS = {DocFlavor.INPUT_STREAM.PNG, DocFlavor.SERVICE_FORMATTED.PRINTABLE};
+    // 打印坐标系中1英寸是72个单位
+    private static final double POINTS_PER_MM = 72 / 25.4;
+
+    private final String name;
+    private final PrinterResolution resolution;
+    private final long spoolMillis;
+    private final AtomicLong jobCount = new AtomicLong();
+    private final AtomicLong receivedBytes = new AtomicLong();
+
+    /**
+     * @param name        打印机名称
+     * @param dpi         打印机分辨率
+     * @param spoolMillis 每个打印任务的假脱机时间(毫秒)
+     */
+    public VirtualPrintService(String name, int dpi, long spoolMillis) {
+        this.name = name;
+        this.resolution = new PrinterResolution(dpi, dpi, PrinterResolution.DPI);
+        this.spoolMillis = spoolMillis;
+    }
+
+    /**
+     * @return 已完成的打印任务数
+     */
+    public long getJobCount() {
+        return jobCount.get();
+    }
+
+    /**
+     * @return 以输入流提交的打印数据字节数
+     */
+    public long getReceivedBytes() {
+        return receivedBytes.get();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public DocPrintJob createPrintJob() {
+        return new VirtualPrintJob();
+    }
+
+    @Override
+    public void addPrintServiceAttributeListener(PrintServiceAttributeListener listener) {
+    }
+
+    @Override
+    public void removePrintServiceAttributeListener(PrintServiceAttributeListener listener) {
+    }
+
+    @Override
+    public PrintServiceAttributeSet getAttributes() {
+        HashPrintServiceAttributeSet attributes = new HashPrintServiceAttributeSet();
+        attributes.add(new PrinterName(name, null));
+        return attributes;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends PrintServiceAttribute> T getAttribute(Class<T> category) {
+        return category == PrinterName.class ? (T) new PrinterName(name, null) : null;
+    }
+
+    @Override
+    public DocFlavor[] getSupportedDocFlavors() {
+        return FLAVORS.clone();
+    }
+
+    @Override
+    public boolean isDocFlavorSupported(DocFlavor flavor) {
+        for (DocFlavor item : FLAVORS) {
+            if (item.equals(flavor)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Class<?>[] getSupportedAttributeCategories() {
+        return new Class<?>[]{PrinterResolution.class};
+    }
+
+    @Override
+    public boolean isAttributeCategorySupported(Class<? extends Attribute> category) {
+        return category == PrinterResolution.class;
+    }
+
+    @Override
+    public Object getDefaultAttributeValue(Class<? extends Attribute> category) {
+        return category == PrinterResolution.class ? resolution : null;
+    }
+
+    @Override
+    public Object getSupportedAttributeValues(Class<? extends Attribute> category, DocFlavor flavor, AttributeSet attributes) {
+        return category == PrinterResolution.class ? new PrinterResolution[]{resolution} : null;
+    }
+
+    @Override
+    public boolean isAttributeValueSupported(Attribute attrval, DocFlavor flavor, AttributeSet attributes) {
+        return true;
+    }
+
+    @Override
+    public AttributeSet getUnsupportedAttributes(DocFlavor flavor, AttributeSet attributes) {
+        return null;
+    }
+
+    @Override
+    public ServiceUIFactory getServiceUIFactory() {
+        return null;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof VirtualPrintService && ((VirtualPrintService) obj).name.equals(name);
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "Virtual printer : " + name;
+    }
+
+    private class VirtualPrintJob implements DocPrintJob {
+        private PrintJobListener listener;
+
+        @Override
+        public PrintService getPrintService() {
+            return VirtualPrintService.this;
+        }
+
+        @Override
+        public PrintJobAttributeSet getAttributes() {
+            return null;
+        }
+
+        @Override
+        public void addPrintJobListener(PrintJobListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void removePrintJobListener(PrintJobListener listener) {
+            if (this.listener == listener) {
+                this.listener = null;
+            }
+        }
+
+        @Override
+        public void addPrintJobAttributeListener(PrintJobAttributeListener listener, PrintJobAttributeSet attributes) {
+        }
+
+        @Override
+        public void removePrintJobAttributeListener(PrintJobAttributeListener listener) {
+        }
+
+        @Override
+        public void print(Doc doc, PrintRequestAttributeSet attributes) throws PrintException {
+            if (!isDocFlavorSupported(doc.getDocFlavor())) {
+                throw new PrintException("flavor not supported: " + doc.getDocFlavor());
+            }
+            try {
+                Object data = doc.getPrintData();
+                if (data instanceof Printable) {
+                    render((Printable) data);
+                } else {
+                    drain((InputStream) data);
+                }
+                TimeUnit.MILLISECONDS.sleep(spoolMillis);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                notify(PrintJobEvent.JOB_FAILED);
+                throw new PrintException(ex);
+            } catch (IOException | PrinterException ex) {
+                notify(PrintJobEvent.JOB_FAILED);
+                throw new PrintException(ex);
+            }
+            jobCount.incrementAndGet();
+            notify(PrintJobEvent.DATA_TRANSFER_COMPLETE);
+            notify(PrintJobEvent.JOB_COMPLETE);
+            notify(PrintJobEvent.NO_MORE_EVENTS);
+        }
+
+        private void drain(InputStream input) throws IOException {
+            byte[] buffer = new byte[16 * 1024];
+            try (InputStream stream = input) {
+                int n;
+                while ((n = stream.read(buffer)) >= 0) {
+                    receivedBytes.addAndGet(n);
+                }
+            }
+        }
+
+        /**
+         * 按打印坐标系(72dpi)把页面绘制到一张灰度图上, 模拟系统打印服务的渲染
+         */
+        private void render(Printable printable) throws PrinterException {
+            Paper paper = new Paper();
+            paper.setImageableArea(0, 0, paper.getWidth(), paper.getHeight());
+            PageFormat pageFormat = new PageFormat();
+            pageFormat.setPaper(paper);
+            BufferedImage page = new BufferedImage((int) Math.ceil(100 * POINTS_PER_MM),
+                    (int) Math.ceil(150 * POINTS_PER_MM), BufferedImage.TYPE_BYTE_GRAY);
+            Graphics2D g = page.createGraphics();
+            try {
+                printable.print(g, pageFormat, 0);
+            } finally {
+                g.dispose();
+            }
+        }
+
+        private void notify(int reason) {
+            PrintJobListener current = listener;
+            if (current == null) {
+                return;
+            }
+            PrintJobEvent event = new PrintJobEvent(this, reason);
+            switch (reason) {
+                case PrintJobEvent.DATA_TRANSFER_COMPLETE:
+                    current.printDataTransferCompleted(event);
+                    break;
+                case PrintJobEvent.JOB_COMPLETE:
+                    current.printJobCompleted(event);
+                    break;
+                case PrintJobEvent.JOB_FAILED:
+                    current.printJobFailed(event);
+                    break;
+                default:
+                    current.printJobNoMoreEvents(event);
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.tmindtech.api.waybill.sdk.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.print.DocFlavor;
+import javax.print.MultiDocPrintService;
+import javax.print.PrintService;
+import javax.print.PrintServiceLookup;
+import javax.print.attribute.Attribute;
+import javax.print.attribute.AttributeSet;
+import javax.print.attribute.standard.PrinterName;
+
+/**
+ * 通过 META-INF/services/javax.print.PrintServiceLookup 注册的虚拟打印机查找服务
+ * 虚拟打印机名称为 virtual-printer-1 ... virtual-printer-N, 数量、分辨率与假脱机时间可用系统属性
+ * waybill.loadtest.printers, waybill.loadtest.printerDpi, waybill.loadtest.spoolMillis 设置, 也可在查找前调用 configure
+ */
+public class VirtualPrintServiceLookup extends PrintServiceLookup {
+    public static final String NAME_PREFIX = "virtual-printer-";
+
+    private static final Map<String, VirtualPrintService> SERVICES = new ConcurrentHashMap<>();
+    private static volatile int printerCount = Integer.getInteger("waybill.loadtest.printers", 2);
+    private static volatile int dpi = Integer.getInteger("waybill.loadtest.printerDpi", 203);
+    private static volatile long spoolMillis = Long.getLong("waybill.loadtest.spoolMillis", 20L);
+
+    /**
+     * 重新设置虚拟打印机, 已创建的虚拟打印机(及其统计)被丢弃
+     *
+     * @param count             打印机数量
+     * @param printerDpi        打印机分辨率
+     * @param spoolMillisPerJob 每个打印任务的假脱机时间(毫秒)
+     */
+    public static synchronized void configure(int count, int printerDpi, long spoolMillisPerJob) {
+        printerCount = count;
+        dpi = printerDpi;
+        spoolMillis = spoolMillisPerJob;
+        SERVICES.clear();
+    }
+
+    /**
+     * @return 当前的所有虚拟打印机
+     */
+    public static List<VirtualPrintService> getVirtualPrinters() {
+        List<VirtualPrintService> services = new ArrayList<>();
+        for (int i = 1; i <= printerCount; i++) {
+            String name = NAME_PREFIX + i;
+            services.add(SERVICES.computeIfAbsent(name, key -> new VirtualPrintService(key, dpi, spoolMillis)));
+        }
+        return services;
+    }
+
+    @Override
+    public PrintService[] getPrintServices(DocFlavor flavor, AttributeSet attributes) {
+        List<PrintService> matched = new ArrayList<>();
+        for (VirtualPrintService service : getVirtualPrinters()) {
+            if (flavor != null && !service.isDocFlavorSupported(flavor)) {
+                continue;
+            }
+            if (attributes != null && !matches(service, attributes)) {
+                continue;
+            }
+            matched.add(service);
+        }
+        return matched.toArray(new PrintService[0]);
+    }
+
+    @Override
+    public PrintService[] getPrintServices() {
+        return getVirtualPrinters().toArray(new PrintService[0]);
+    }
+
+    @Override
+    public MultiDocPrintService[] getMultiDocPrintServices(DocFlavor[] flavors, AttributeSet attributes) {
+        return new MultiDocPrintService[0];
+    }
+
+    @Override
+    public PrintService getDefaultPrintService() {
+        List<VirtualPrintService> services = getVirtualPrinters();
+        return services.isEmpty() ? null : services.get(0);
+    }
+
+    private static boolean matches(PrintService service, AttributeSet attributes) {
+        for (Attribute attribute : attributes.toArray()) {
+            if (attribute instanceof PrinterName
+                    && !((PrinterName) attribute).getValue().equals(service.getName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
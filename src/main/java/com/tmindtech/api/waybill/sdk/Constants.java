@@ -1,12 +1,18 @@
 package com.tmindtech.api.waybill.sdk;
 
 import java.text.SimpleDateFormat;
+import java.time.format.DateTimeFormatter;
 
 /**
  * 常量定义
  */
 public class Constants {
+    /**
+     * @deprecated SimpleDateFormat 不是线程安全的, 多个打印机队列同时写日志时会得到错误的时间, 请使用 LOG_TIME_FORMAT
+     */
+    @Deprecated
     public static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    public static final DateTimeFormatter LOG_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
     public static final String CLOUD_SERVER_ADDRESS = "http://logistics-gateway.test.you.163.com/labelservice/";
 
     public static final Number NONE = 0;
@@ -21,4 +27,6 @@ public class Constants {
     public static final Number PRINTER_NOT_SUPPORT = 0x00000200;
     public static final Number MEDIA_NOT_SUPPORT = 0x00000300;
     public static final Number NETWORK_ERROR = 0x00010000;
+    public static final Number PRINT_QUEUE_FULL = 0x00020000;
+    public static final Number PRINT_REQUEST_SHED = 0x00020001;
 }
@@ -0,0 +1,14 @@
+package com.tmindtech.api.waybill.sdk;
+
+import com.tmindtech.api.waybill.sdk.http.HealthEvent;
+
+public interface HealthListener {
+
+    /**
+     * 服务地址的熔断状态变化时回调, 在触发变化的线程(请求线程或健康检查线程)中同步执行, 不应阻塞
+     *
+     * @param event 状态变化
+     */
+    void onStateChanged(HealthEvent event);
+
+}
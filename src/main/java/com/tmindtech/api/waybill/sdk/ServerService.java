@@ -1,12 +1,17 @@
 package com.tmindtech.api.waybill.sdk;
 
+import com.tmindtech.api.waybill.sdk.http.HealthMonitor;
 import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.http.GET;
 
+/**
+ * @deprecated 本地服务的健康检查已由 HealthMonitor 完成, SDK 不再使用这个接口, 仅为兼容保留
+ */
+@Deprecated
 public interface ServerService {
 
-    @GET("label-print/health")
+    @GET(HealthMonitor.HEALTH_PATH)
     Call<ResponseBody> getBestHealthServer();
 
 }
@@ -1,42 +1,93 @@
 package com.tmindtech.api.waybill.sdk;
 
-import com.alibaba.fastjson.JSONObject;
+import com.tmindtech.api.waybill.sdk.cache.CacheStats;
+import com.tmindtech.api.waybill.sdk.cache.LabelImageCache;
+import com.tmindtech.api.waybill.sdk.cache.LabelInfoCache;
+import com.tmindtech.api.waybill.sdk.cache.PrintStreamCache;
+import com.tmindtech.api.waybill.sdk.http.EndpointTable;
+import com.tmindtech.api.waybill.sdk.http.HealthMonitor;
+import com.tmindtech.api.waybill.sdk.http.HttpTransport;
+import com.tmindtech.api.waybill.sdk.http.RequestHedger;
+import com.tmindtech.api.waybill.sdk.interceptor.HotSwitchInterceptor;
+import com.tmindtech.api.waybill.sdk.interceptor.MetricsInterceptor;
+import com.tmindtech.api.waybill.sdk.log.PrintLogJournal;
+import com.tmindtech.api.waybill.sdk.log.PrintLogShipper;
+import com.tmindtech.api.waybill.sdk.log.PrintLogStats;
+import com.tmindtech.api.waybill.sdk.metrics.MetricsRegistry;
+import com.tmindtech.api.waybill.sdk.metrics.MetricsSnapshot;
+import com.tmindtech.api.waybill.sdk.metrics.Stage;
 import com.tmindtech.api.waybill.sdk.interceptor.SignatureInterceptor;
+import com.tmindtech.api.waybill.sdk.interceptor.TracingInterceptor;
+import com.tmindtech.api.waybill.sdk.jfr.PipelineEvent;
+import com.tmindtech.api.waybill.sdk.jfr.PipelineEvents;
 import com.tmindtech.api.waybill.sdk.model.Data;
 import com.tmindtech.api.waybill.sdk.model.ImageData;
+import com.tmindtech.api.waybill.sdk.model.LabelAddress;
+import com.tmindtech.api.waybill.sdk.model.LabelAddressData;
 import com.tmindtech.api.waybill.sdk.model.LabelData;
 import com.tmindtech.api.waybill.sdk.model.LabelInfo;
 import com.tmindtech.api.waybill.sdk.model.Package;
 import com.tmindtech.api.waybill.sdk.model.Payload;
+import com.tmindtech.api.waybill.sdk.model.PrintImageInfo;
 import com.tmindtech.api.waybill.sdk.model.PrintLog;
-import com.tmindtech.api.waybill.sdk.model.PrintStreamInfo;
+import com.tmindtech.api.waybill.sdk.model.PrintResult;
 import com.tmindtech.api.waybill.sdk.model.YXMessage;
+import com.tmindtech.api.waybill.sdk.print.AdmissionController;
+import com.tmindtech.api.waybill.sdk.print.AdmissionPolicy;
+import com.tmindtech.api.waybill.sdk.print.AdmissionStats;
+import com.tmindtech.api.waybill.sdk.print.LabelTask;
+import com.tmindtech.api.waybill.sdk.print.LaneStats;
+import com.tmindtech.api.waybill.sdk.print.PageSlicer;
+import com.tmindtech.api.waybill.sdk.print.PrintMode;
+import com.tmindtech.api.waybill.sdk.print.PrintPipeline;
+import com.tmindtech.api.waybill.sdk.print.PrintResultCollector;
+import com.tmindtech.api.waybill.sdk.print.PrintScheduler;
+import com.tmindtech.api.waybill.sdk.print.RasterPrintable;
+import com.tmindtech.api.waybill.sdk.print.ReadinessScheduler;
+import com.tmindtech.api.waybill.sdk.print.encoder.RawPrintProfile;
+import com.tmindtech.api.waybill.sdk.print.transport.NetworkPrintService;
+import com.tmindtech.api.waybill.sdk.print.transport.RawPrintTransport;
+import com.tmindtech.api.waybill.sdk.trace.Span;
+import com.tmindtech.api.waybill.sdk.trace.SpanExporter;
+import com.tmindtech.api.waybill.sdk.trace.Tracer;
+import com.tmindtech.api.waybill.sdk.trace.ZipkinFileExporter;
+import com.tmindtech.api.waybill.sdk.util.CallFutures;
 import com.tmindtech.api.waybill.sdk.util.ImageStreamUtil;
-import com.tmindtech.api.waybill.sdk.util.InputStreamCacher;
+import com.tmindtech.api.waybill.sdk.util.MessageCodec;
+import com.tmindtech.api.waybill.sdk.util.NamedThreadFactory;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URL;
+import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Date;
-import java.util.LinkedHashMap;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import javax.imageio.ImageIO;
-import javax.imageio.stream.ImageOutputStream;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
 import javax.print.Doc;
 import javax.print.DocFlavor;
 import javax.print.DocPrintJob;
@@ -51,15 +102,14 @@ import javax.print.attribute.standard.MediaPrintableArea;
 import javax.print.attribute.standard.OrientationRequested;
 import javax.print.attribute.standard.PrintQuality;
 import javax.print.attribute.standard.PrinterName;
+import javax.print.attribute.standard.PrinterResolution;
 import javax.print.event.PrintJobAdapter;
 import javax.print.event.PrintJobEvent;
 import lombok.Getter;
-import okhttp3.MediaType;
+import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import okhttp3.RequestBody;
 import okhttp3.ResponseBody;
-import okhttp3.logging.HttpLoggingInterceptor;
-import org.apache.commons.io.IOUtils;
 import retrofit2.Response;
 import retrofit2.Retrofit;
 import retrofit2.converter.gson.GsonConverterFactory;
@@ -76,16 +126,56 @@ public class WaybillSDK {
     private String serverAddress;
     private PrintService printService;
     private PrintListener listener;
-    public ExecutorService executorService = Executors.newFixedThreadPool(1);
-    public ExecutorService serverExecutorService = Executors.newSingleThreadExecutor();
+    private volatile PrintMode printMode = PrintMode.PNG;
+    private final Map<String, RawPrintProfile> rawPrintProfiles = new ConcurrentHashMap<>();
+    private final Map<String, NetworkPrintService> networkPrinters = new ConcurrentHashMap<>();
+    private RawPrintTransport rawPrintTransport;
+    private final HttpTransport httpTransport = new HttpTransport();
+    private final EndpointTable endpointTable = new EndpointTable();
+    private HealthMonitor healthMonitor;
+    private volatile RequestHedger requestHedger;
+    private volatile PrintLogShipper printLogShipper;
+    private volatile boolean labelAddressBatchSupported = true;
+    private volatile boolean labelInfoBatchSupported = true;
+    private final PrintPipeline printPipeline = new PrintPipeline();
+    private final PrintScheduler printScheduler = new PrintScheduler();
+    private final ReadinessScheduler readinessScheduler = new ReadinessScheduler();
+    private volatile LabelInfoCache labelInfoCache = new LabelInfoCache();
+    private volatile LabelImageCache labelImageCache = new LabelImageCache();
+    private volatile PrintStreamCache printStreamCache = new PrintStreamCache();
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private volatile AdmissionController admissionController = new AdmissionController(metrics);
+    private final Tracer tracer = new Tracer();
+    /**
+     * @deprecated 打印批次已改为在各打印机的队列中执行, SDK 不再使用这个线程池, 仅为兼容保留; 空闲时不占用线程
+     */
+    @Deprecated
+    public ExecutorService executorService = idleExecutor("waybill-legacy-print");
+    /**
+     * @deprecated 健康检查已由 HealthMonitor 并发完成, SDK 不再使用这个线程池, 仅为兼容保留; 空闲时不占用线程
+     */
+    @Deprecated
+    public ExecutorService serverExecutorService = idleExecutor("waybill-legacy-server");
 
     private static final String SOURCE = "label_print";
     private static final String TARGET = "api";
     private static final String LABEL_ORDER_TOPIC = "logistics_label_address/find_by_sale_order";
     private static final String LABEL_ADDRESS_TOPIC = "logistics_label_address/get_label_image_by_uuid";
     private static final String LABEL_UUID_TOPIC = "logistics_label_address/find_by_uuid";
+    private static final String LABEL_ADDRESS_BATCH_TOPIC = "logistics_label_address/get_label_image_by_uuids";
+    private static final String LABEL_UUID_BATCH_TOPIC = "logistics_label_address/find_by_uuids";
+    // 批量查询时每个请求最多包含的唯一码数量
+    private static final int LABEL_BATCH_SIZE = 50;
+    // 不支持批量查询时最多同时进行的查询数量
+    private static final int LABEL_FAN_OUT = 8;
     private static final String SPLIT_ORDER_TOPIC = "relabel";
-    private static final String LABEL_PRINT_LOG = "local_print_log";
+    // 不知道承运商时统计面单生成时间的分类
+    private static final String DEFAULT_CATEGORY = "";
+    private static final String PRINTED_COUNTER = "print.pages";
+    private static final String PRINT_FAILURE_COUNTER = "print.failures";
+    private static final String DOWNLOAD_BYTES_COUNTER = "download.bytes";
+    private static final String DOWNLOAD_FAILURE_COUNTER = "download.failures";
+    private static final AtomicInteger INSTANCE_COUNT = new AtomicInteger();
 
 //    static {
 //        BasicConfigurator.configure();
@@ -107,46 +197,147 @@ public class WaybillSDK {
         this.accessKey = accessKey;
         this.accessSecret = accessSecret;
         this.serverAddress = serverAddress;
+        endpointTable.setPrimary(serverAddress);
+        endpointTable.setLocals(localAddresses == null ? Collections.emptyList() : localAddresses);
         this.printService = PrintServiceLookup.lookupDefaultPrintService();
 
+        //预先建立到面单服务与本地服务的连接
+        List<String> warmUpAddresses = new ArrayList<>();
+        warmUpAddresses.add(serverAddress);
+        if (localAddresses != null) {
+            warmUpAddresses.addAll(localAddresses);
+        }
+        httpTransport.warmUp(warmUpAddresses);
+        metrics.registerMBeans("waybill-sdk-" + INSTANCE_COUNT.incrementAndGet());
+        setPrintLogShipping(PrintLogShipper.DEFAULT_DIRECTORY, PrintLogShipper.DEFAULT_BATCH_SIZE,
+                PrintLogShipper.DEFAULT_FLUSH_INTERVAL_MILLIS);
+
         if (localAddresses != null && localAddresses.size() > 0) {
-            //定时获取当前最优服务器，若所有本地服务器down机，则使用云端服务器
-            getBestServerAddress(localAddresses);
+            //定时检查本地服务，若所有本地服务器down机，则使用云端服务器
+            healthMonitor = new HealthMonitor(endpointTable, httpTransport.getProbeClient());
+            healthMonitor.start();
         }
 
         return true;
     }
 
-    private void getBestServerAddress(List<String> urls) {
-        serverExecutorService.execute(() -> {
-            ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
-            executor.scheduleWithFixedDelay(() -> {
-                long responseTime = -1;
-                for (String url : urls) {
-                    try {
-                        long startTime = System.currentTimeMillis();
-                        Response<ResponseBody> response = buildBestHealthServer(url).getBestHealthServer().execute();
-                        if (response.isSuccessful()) {
-                            String content = IOUtils.toString(response.body().byteStream(), StandardCharsets.UTF_8);
-                            if ("ok".equals(content)) {
-                                long endTime = System.currentTimeMillis();
-                                if (responseTime == -1) {
-                                    responseTime = endTime - startTime;
-                                    serverAddress = url;
-                                    System.out.println("First connect time : " + responseTime + "milliseconds!");
-                                } else {
-                                    if (endTime - startTime < responseTime) {
-                                        responseTime = endTime - startTime;
-                                        serverAddress = url;
-                                    }
-                                }
-                            }
-                        }
-                    } catch (IOException ignore) {
-                    }
+    /**
+     * 所有服务器地址的熔断状态、延迟分位数与错误率
+     *
+     * @return 服务器地址状态, 本地服务在前, 云端服务器在最后
+     */
+    public List<String> getEndpoints() {
+        List<String> list = new ArrayList<>();
+        endpointTable.getAll().forEach(item -> list.add(item.toString()));
+        return list;
+    }
+
+    /**
+     * 设置打印日志的本地日志文件与上传批次, 本地日志文件中尚未上传的日志会继续上传
+     * 日志文件按服务器地址与 accessKey 区分, 只会上传到写入时的服务器, 应在 init 之后调用
+     *
+     * @param directory           本地日志文件所在目录
+     * @param batchSize           每批最多上传的日志条数, 积累到此数量时立即上传
+     * @param flushIntervalMillis 日志最长等待上传的时间(毫秒)
+     */
+    public synchronized void setPrintLogShipping(File directory, int batchSize, long flushIntervalMillis) {
+        if (printLogShipper != null) {
+            printLogShipper.close();
+            printLogShipper = null;
+        }
+        try {
+            printLogShipper = new PrintLogShipper(PrintLogJournal.open(directory, printLogKey()), (topic, data) -> {
+                Response<ResponseBody> response = getWaybillService()
+                        .savePrintResultLog(createRequestBody(topic, data)).execute();
+                try (ResponseBody body = response.isSuccessful() ? response.body() : response.errorBody()) {
+                    return PrintLogShipper.resultCode(response.code(),
+                            response.isSuccessful() && body != null ? body.string() : null);
                 }
-            }, 0, 20, TimeUnit.SECONDS);
-        });
+            }, batchSize, flushIntervalMillis);
+        } catch (IOException ex) {
+            //本地日志文件不可用时不记录打印日志, 不影响打印
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * @return 由服务器地址与 accessKey 得出的日志文件名称
+     */
+    private String printLogKey() {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest((serverAddress + "\n" + accessKey).getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                key.append(String.format("%02x", digest[i]));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * @return 打印日志的积压条数、等待时间与上传情况, 未初始化时为 null
+     */
+    public PrintLogStats getPrintLogStats() {
+        PrintLogShipper shipper = printLogShipper;
+        return shipper == null ? null : shipper.getStats();
+    }
+
+    /**
+     * 开启面单图片地址查询的对冲请求: 最优的本地服务超过其最近延迟的指定分位仍未返回时,
+     * 同样的查询发往次优的本地服务, 先返回的结果生效
+     *
+     * @param percentile  延迟分位, 如 0.95; 小于等于0时关闭对冲
+     * @param budgetRatio 对冲请求占全部查询的比例上限, 如 0.1
+     */
+    public synchronized void setLabelLookupHedging(double percentile, double budgetRatio) {
+        RequestHedger previous = requestHedger;
+        requestHedger = percentile > 0 ? new RequestHedger(endpointTable, percentile, budgetRatio) : null;
+        if (previous != null) {
+            previous.shutdown();
+        }
+    }
+
+    /**
+     * 监听服务器地址的熔断与恢复
+     */
+    public void addHealthListener(HealthListener listener) {
+        endpointTable.addListener(listener);
+    }
+
+    public void removeHealthListener(HealthListener listener) {
+        endpointTable.removeListener(listener);
+    }
+
+    /**
+     * 开启调用链追踪: 每个打印请求是一条 trace, 每次 HTTP 请求与每张面单的获取、转换、打印各是一个 span,
+     * trace 以 W3C traceparent 请求头传给服务器, span 以 Zipkin v2 JSON 格式写入本地滚动文件
+     *
+     * @param directory    span 文件所在目录, 为 null 时关闭追踪
+     * @param maxFileBytes 单个文件的最大字节数
+     * @param maxFiles     最多保留的文件数
+     */
+    public synchronized void setTracing(File directory, long maxFileBytes, int maxFiles) {
+        SpanExporter previous = tracer.getExporter();
+        tracer.setExporter(null);
+        if (previous instanceof ZipkinFileExporter) {
+            ((ZipkinFileExporter) previous).close();
+        }
+        if (directory == null) {
+            return;
+        }
+        try {
+            tracer.setExporter(new ZipkinFileExporter(directory, maxFileBytes, maxFiles));
+        } catch (IOException ex) {
+            //文件不可用时不追踪, 不影响打印
+            ex.printStackTrace();
+        }
+    }
+
+    public void setTracing(File directory) {
+        setTracing(directory, ZipkinFileExporter.DEFAULT_MAX_FILE_BYTES, ZipkinFileExporter.DEFAULT_MAX_FILES);
     }
 
     /**
@@ -161,6 +352,7 @@ public class WaybillSDK {
         if (printServices.length != 0) {
             Arrays.asList(printServices).forEach(item -> list.add(item.getName()));
         }
+        list.addAll(networkPrinters.keySet());
         return list;
     }
 
@@ -171,6 +363,11 @@ public class WaybillSDK {
      * @return true设置成功，false设置失败
      */
     public boolean setCurrentPrinter(String name) {
+        NetworkPrintService networkPrinter = networkPrinters.get(name);
+        if (networkPrinter != null) {
+            this.printService = networkPrinter;
+            return true;
+        }
         DocFlavor dof = DocFlavor.INPUT_STREAM.PNG;
         HashAttributeSet hs = new HashAttributeSet();
         hs.add(new PrinterName(name, null));
@@ -189,6 +386,10 @@ public class WaybillSDK {
      * @return 目标打印机名称
      */
     public PrintService getPrinterByName(String name) {
+        NetworkPrintService networkPrinter = networkPrinters.get(name);
+        if (networkPrinter != null) {
+            return networkPrinter;
+        }
         DocFlavor dof = DocFlavor.INPUT_STREAM.PNG;
         HashAttributeSet hs = new HashAttributeSet();
         hs.add(new PrinterName(name, null));
@@ -209,6 +410,206 @@ public class WaybillSDK {
         this.listener = listener;
     }
 
+    /**
+     * 设置打印流水线的预读深度, 即同一批次中可以提前下载、转换的面单数量
+     *
+     * @param lookahead 预读深度, 默认为 {@value PrintPipeline#DEFAULT_LOOKAHEAD}
+     */
+    public void setPrintLookahead(int lookahead) {
+        printPipeline.setLookahead(lookahead);
+    }
+
+    /**
+     * 设置提交打印任务的方式, 设为 AUTO 时按每台打印机支持的格式选择
+     *
+     * @param printMode 打印方式, 默认为 PNG
+     */
+    public void setPrintMode(PrintMode printMode) {
+        this.printMode = Objects.requireNonNull(printMode);
+    }
+
+    /**
+     * 为热敏打印机设置原始指令打印, 面单转换为1位位图后编码为打印机指令直接发送, 不经过系统的图片光栅化
+     * 设置后该打印机不再使用 setPrintMode 指定的方式
+     *
+     * @param printerName 打印机名称
+     * @param profile     指令集与单色转换方式, 为null时恢复为图片打印
+     */
+    public void setRawPrintProfile(String printerName, RawPrintProfile profile) {
+        if (profile == null) {
+            rawPrintProfiles.remove(printerName);
+        } else {
+            rawPrintProfiles.put(printerName, profile);
+        }
+    }
+
+    /**
+     * 添加一台直连的网络热敏打印机, 打印指令通过长连接直接写入打印机的原始端口, 不经过系统打印服务
+     * 添加后可以像系统打印机一样通过名称使用
+     *
+     * @param name    打印机名称
+     * @param host    打印机IP或主机名
+     * @param port    原始打印端口, 一般为 {@value RawPrintTransport#DEFAULT_PORT}
+     * @param dpi     打印机分辨率
+     * @param profile 打印机指令集与单色转换方式
+     */
+    public synchronized void addNetworkPrinter(String name, String host, int port, int dpi, RawPrintProfile profile) {
+        if (rawPrintTransport == null) {
+            rawPrintTransport = new RawPrintTransport();
+        }
+        rawPrintTransport.register(name, new InetSocketAddress(host, port));
+        setRawPrintProfile(name, Objects.requireNonNull(profile));
+        networkPrinters.put(name, new NetworkPrintService(name, rawPrintTransport, dpi));
+    }
+
+    /**
+     * 移除直连的网络打印机, 尚未发送的任务会失败
+     *
+     * @param name 打印机名称
+     */
+    public synchronized void removeNetworkPrinter(String name) {
+        if (networkPrinters.remove(name) != null) {
+            rawPrintTransport.unregister(name);
+            setRawPrintProfile(name, null);
+        }
+    }
+
+    /**
+     * 调整 HTTP 异步请求的并发上限, 接口调用、健康检查和图片下载共用
+     *
+     * @param maxRequests        同时执行的请求上限, 默认为 {@value HttpTransport#DEFAULT_MAX_REQUESTS}
+     * @param maxRequestsPerHost 每个服务器同时执行的请求上限, 默认为 {@value HttpTransport#DEFAULT_MAX_REQUESTS_PER_HOST}
+     */
+    public void setHttpLimits(int maxRequests, int maxRequestsPerHost) {
+        httpTransport.setMaxRequests(maxRequests, maxRequestsPerHost);
+    }
+
+    /**
+     * 获取各打印机打印队列的状态
+     *
+     * @return 每台使用过的打印机的排队批次数与执行中批次数
+     */
+    public List<LaneStats> getPrintLaneStats() {
+        return printScheduler.getStats();
+    }
+
+    /**
+     * 设置打印请求的准入控制, 只影响之后提交的请求
+     * 请求在进入打印机队列前申请准入: 排队中的请求数不超过 capacity, 所有未结束请求按面单数预估的内存不超过 maxBytes
+     *
+     * @param capacity   已接受但尚未开始执行的请求数上限, 默认为 {@value AdmissionController#DEFAULT_CAPACITY}
+     * @param maxBytes   未结束请求预估占用的内存上限, 默认为256M
+     * @param labelBytes 每张面单预估占用的内存, 默认为1M
+     * @param policy     超出上限时的处理方式, 默认为 FAIL_FAST; BLOCK 时提交请求的方法(包括异步方法)会阻塞调用线程,
+     *                   最多等待 {@value AdmissionController#DEFAULT_BLOCK_TIMEOUT_MILLIS} 毫秒
+     */
+    public void setAdmissionControl(int capacity, long maxBytes, long labelBytes, AdmissionPolicy policy) {
+        admissionController = new AdmissionController(capacity, maxBytes, labelBytes, policy,
+                AdmissionController.DEFAULT_BLOCK_TIMEOUT_MILLIS, metrics);
+    }
+
+    /**
+     * 获取打印请求的准入状态, 上游系统可据此限流; 等待时间分布见 getMetrics 中的 ADMISSION_WAIT
+     *
+     * @return 排队请求数、预估内存占用与累计拒绝、丢弃的请求数
+     */
+    public AdmissionStats getAdmissionStats() {
+        return admissionController.getStats();
+    }
+
+    /**
+     * @return 正在等待生成的面单数量
+     */
+    public int getWaitingLabelCount() {
+        return readinessScheduler.getParkedCount();
+    }
+
+    /**
+     * 关闭 SDK 的所有线程池与网络连接, 不再接受新的打印请求, 已排队的打印批次最多再等待10秒
+     */
+    public synchronized void shutdown() {
+        admissionController.shutdown();
+        readinessScheduler.shutdown();
+        printScheduler.shutdown(TimeUnit.SECONDS.toMillis(10));
+        printPipeline.shutdown();
+        if (healthMonitor != null) {
+            healthMonitor.shutdown();
+        }
+        setLabelLookupHedging(0, 0);
+        if (printLogShipper != null) {
+            printLogShipper.close();
+        }
+        if (rawPrintTransport != null) {
+            rawPrintTransport.close();
+        }
+        labelImageCache.close();
+        executorService.shutdown();
+        serverExecutorService.shutdown();
+        setTracing(null);
+        httpTransport.shutdown();
+        metrics.unregisterMBeans();
+    }
+
+    /**
+     * 各阶段耗时分布与计数的快照: 网络阶段按服务器地址区分, 解码、缩放、编码、提交打印与回调按打印机区分
+     * 同样的数据在 init 后注册为 JMX MBean(com.tmindtech.api.waybill.sdk:type=Latency/Counter)
+     *
+     * @return 耗时分布与计数
+     */
+    public MetricsSnapshot getMetrics() {
+        return metrics.snapshot();
+    }
+
+    /**
+     * 设置面单信息缓存的容量与存活时间, 重新设置会清空已有缓存
+     *
+     * @param maxSize   最多缓存的面单数量
+     * @param ttlMillis 缓存存活时间(毫秒计)
+     */
+    public void setLabelInfoCache(int maxSize, long ttlMillis) {
+        this.labelInfoCache = new LabelInfoCache(maxSize, ttlMillis);
+    }
+
+    /**
+     * 获取面单信息缓存的命中统计
+     *
+     * @return 命中、未命中、淘汰次数及当前条目数
+     */
+    public CacheStats getLabelInfoCacheStats() {
+        return labelInfoCache.getStats();
+    }
+
+    /**
+     * 设置面单图片缓存, 重打、补打时直接使用本地缓存的图片而不再下载
+     *
+     * @param directory 磁盘缓存目录, 为null时只使用内存缓存
+     * @param heapBytes 内存缓存最大字节数
+     * @param diskBytes 磁盘缓存最大字节数
+     */
+    public void setLabelImageCache(File directory, long heapBytes, long diskBytes) {
+        LabelImageCache previous = this.labelImageCache;
+        this.labelImageCache = new LabelImageCache(directory, heapBytes, diskBytes);
+        previous.close();
+    }
+
+    /**
+     * 设置转换后打印图片的缓存容量, 重新设置会清空已有缓存
+     *
+     * @param maxBytes 缓存的最大字节数
+     */
+    public void setPrintStreamCache(long maxBytes) {
+        this.printStreamCache = new PrintStreamCache(maxBytes);
+    }
+
+    /**
+     * 获取转换后打印图片缓存的命中统计
+     *
+     * @return 命中、未命中、淘汰次数及当前条目数
+     */
+    public CacheStats getPrintStreamCacheStats() {
+        return printStreamCache.getStats();
+    }
+
     /**
      * 获取面单信息，然后通过逻辑连接/唯一码获取到面单图片
      *
@@ -216,23 +617,220 @@ public class WaybillSDK {
      * @return 面单信息列表，兼容多包裹
      */
     public List<LabelInfo> getLabelInfo(String saleOrder) {
-        List<LabelInfo> labelInfos = new ArrayList<>();
-        try {
-            YXMessage message = new YXMessage(UUID.randomUUID().toString(), 0,
-                    LABEL_ORDER_TOPIC, SOURCE, TARGET, "", saleOrder);
-            RequestBody body = RequestBody.create(MediaType.parse("application/json; charset=utf-8"),
-                    JSONObject.toJSONString(message));
-            Data data = getWaybillService().getLabelInfo(body).execute().body();
-            if (data != null) {
-                if (data.data.isEmpty()) {
-                    throw new RuntimeException("SaleOrderNotExist");
+        return await(getLabelInfoAsync(saleOrder));
+    }
+
+    /**
+     * 异步获取面单信息, 等待响应时不占用调用线程
+     *
+     * @param saleOrder 出库批次号
+     * @return 面单信息列表，兼容多包裹
+     */
+    public CompletableFuture<List<LabelInfo>> getLabelInfoAsync(String saleOrder) {
+        RequestBody body = createRequestBody(LABEL_ORDER_TOPIC, saleOrder);
+        return CallFutures.enqueue(getWaybillService().getLabelInfo(body)).handle((response, ex) -> {
+            if (ex != null) {
+                throw new RuntimeException("当前服务不可用");
+            }
+            Data data = response.body();
+            if (data == null) {
+                return new ArrayList<>();
+            }
+            if (data.data.isEmpty()) {
+                throw new RuntimeException("SaleOrderNotExist");
+            }
+            labelInfoCache.putAll(data.data);
+            return data.data;
+        });
+    }
+
+    /**
+     * 异步通过唯一码获取面单信息, 优先使用缓存
+     *
+     * @param uuidCode 面单唯一码
+     * @return 面单信息
+     */
+    public CompletableFuture<LabelInfo> getLabelInfoByUuidCodeAsync(String uuidCode) {
+        LabelInfo cached = labelInfoCache.getIfPresent(uuidCode);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        MessageCodec.EncodedBody body = createRequestBody(LABEL_UUID_TOPIC, uuidCode);
+        PipelineEvent.LabelFetch fetch = labelFetch(body, uuidCode, 1);
+        return traced(fetch, CallFutures.enqueue(getWaybillService().findPictureByPath(body))).handle((response, ex) -> {
+            if (ex != null) {
+                throw new RuntimeException("server error");
+            }
+            if (!response.isSuccessful() || response.body() == null) {
+                throw new RuntimeException("labelNotExist");
+            }
+            LabelInfo labelInfo = response.body().data;
+            if (labelInfo != null) {
+                labelInfoCache.put(labelInfo);
+            }
+            return labelInfo;
+        });
+    }
+
+    /**
+     * 批量查询面单图片地址, 每 LABEL_BATCH_SIZE 个唯一码合并为一个请求, 各请求并行发出
+     * 服务端不支持批量查询时逐个查询, 最多 LABEL_FAN_OUT 个同时进行
+     *
+     * @param uuidCodeList 唯一码列表
+     * @return 已生成面单的唯一码到图片地址的映射, 未生成的面单不在其中
+     */
+    public CompletableFuture<Map<String, String>> getLabelImageAddressesAsync(List<String> uuidCodeList) {
+        return resolveLabelImageAddresses(uuidCodeList, false).thenApply(addresses -> {
+            addresses.values().removeIf(Objects::isNull);
+            return addresses;
+        });
+    }
+
+    /**
+     * @param stopAtNotReady 逐个查询时遇到第一张未生成的面单即取消其余查询, 其余面单不在结果中
+     * @return 唯一码到图片地址的映射, 未生成的面单对应 null
+     */
+    private CompletableFuture<Map<String, String>> resolveLabelImageAddresses(List<String> uuidCodeList,
+                                                                             boolean stopAtNotReady) {
+        if (!labelAddressBatchSupported || uuidCodeList.size() <= 1) {
+            return new AddressFanOut(uuidCodeList, stopAtNotReady).start();
+        }
+        List<CompletableFuture<List<LabelAddress>>> chunks = new ArrayList<>();
+        for (int i = 0; i < uuidCodeList.size(); i += LABEL_BATCH_SIZE) {
+            List<String> chunk = new ArrayList<>(uuidCodeList.subList(i, Math.min(i + LABEL_BATCH_SIZE, uuidCodeList.size())));
+            MessageCodec.EncodedBody body = createRequestBody(LABEL_ADDRESS_BATCH_TOPIC, chunk);
+            PipelineEvent.LabelFetch fetch = labelFetch(body, chunk.get(0), chunk.size());
+            //批量查询失败时本次改为逐个查询, 服务端不支持(404)时之后都逐个查询
+            chunks.add(traced(fetch, CallFutures.enqueue(getWaybillService().getOrderPicturesByPath(body))).handle((response, ex) -> {
+                if (ex != null) {
+                    return null;
+                }
+                if (response.code() == 404) {
+                    labelAddressBatchSupported = false;
                 }
-                labelInfos = data.data;
+                LabelAddressData data = response.body();
+                return response.isSuccessful() && data != null ? data.data : null;
+            }));
+        }
+        Span span = Tracer.current();
+        return CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0])).thenCompose(ignore -> {
+            Map<String, String> addresses = new HashMap<>();
+            for (CompletableFuture<List<LabelAddress>> chunk : chunks) {
+                List<LabelAddress> labelAddresses = chunk.join();
+                if (labelAddresses == null) {
+                    Tracer.Scope scope = Tracer.activate(span);
+                    try {
+                        return new AddressFanOut(uuidCodeList, stopAtNotReady).start();
+                    } finally {
+                        scope.close();
+                    }
+                }
+                labelAddresses.forEach(labelAddress -> addresses.put(labelAddress.uuidCode,
+                        labelAddress.code != null && labelAddress.code == 200 ? labelAddress.data : null));
             }
-        } catch (IOException ex) {
-            throw new RuntimeException("当前服务不可用");
+            return CompletableFuture.completedFuture(addresses);
+        });
+    }
+
+    /**
+     * 逐个并行查询面单图片地址, 同时进行的查询不超过 LABEL_FAN_OUT 个
+     */
+    private class AddressFanOut {
+        private final List<String> uuidCodeList;
+        private final boolean stopAtNotReady;
+        private final Map<String, String> addresses = Collections.synchronizedMap(new HashMap<>());
+        private final Set<CompletableFuture<?>> inFlight = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicInteger remaining;
+        private final CompletableFuture<Map<String, String>> result = new CompletableFuture<>();
+        // 后续的查询在上一个查询的回调线程上发出, 需要恢复创建时的 span
+        private final Span span = Tracer.current();
+
+        AddressFanOut(List<String> uuidCodeList, boolean stopAtNotReady) {
+            this.uuidCodeList = uuidCodeList;
+            this.stopAtNotReady = stopAtNotReady;
+            this.remaining = new AtomicInteger(uuidCodeList.size());
+        }
+
+        CompletableFuture<Map<String, String>> start() {
+            if (uuidCodeList.isEmpty()) {
+                result.complete(addresses);
+                return result;
+            }
+            //结束后取消仍在进行的查询
+            result.whenComplete((ignore, ex) -> inFlight.forEach(future -> future.cancel(false)));
+            for (int i = 0; i < Math.min(LABEL_FAN_OUT, uuidCodeList.size()); i++) {
+                launchNext();
+            }
+            return result;
+        }
+
+        private void launchNext() {
+            int index = next.getAndIncrement();
+            if (index >= uuidCodeList.size() || result.isDone()) {
+                return;
+            }
+            String uuidCode = uuidCodeList.get(index);
+            CompletableFuture<Response<ImageData>> lookup;
+            Tracer.Scope scope = Tracer.activate(span);
+            try {
+                lookup = lookupLabelImageAddress(uuidCode);
+            } finally {
+                scope.close();
+            }
+            inFlight.add(lookup);
+            lookup.whenComplete((response, ex) -> {
+                inFlight.remove(lookup);
+                if (ex != null) {
+                    result.completeExceptionally(new RuntimeException("server error"));
+                    return;
+                }
+                ImageData imageData = response.body();
+                if (imageData != null && imageData.code != null && imageData.code == 200) {
+                    addresses.put(uuidCode, imageData.data);
+                } else {
+                    addresses.put(uuidCode, null);
+                    if (stopAtNotReady) {
+                        result.complete(addresses);
+                        return;
+                    }
+                }
+                if (remaining.decrementAndGet() == 0) {
+                    result.complete(addresses);
+                } else {
+                    launchNext();
+                }
+            });
         }
-        return labelInfos;
+    }
+
+    /**
+     * 批量查询尚未缓存的面单信息并写入缓存, 失败或服务端不支持时忽略, 之后按唯一码逐个查询
+     */
+    private CompletableFuture<Void> prefetchLabelInfo(List<String> uuidCodeList) {
+        List<String> missing = new ArrayList<>();
+        uuidCodeList.stream().filter(uuidCode -> labelInfoCache.peek(uuidCode) == null).forEach(missing::add);
+        if (!labelInfoBatchSupported || missing.size() <= 1) {
+            return CompletableFuture.completedFuture(null);
+        }
+        List<CompletableFuture<Void>> chunks = new ArrayList<>();
+        for (int i = 0; i < missing.size(); i += LABEL_BATCH_SIZE) {
+            List<String> chunk = new ArrayList<>(missing.subList(i, Math.min(i + LABEL_BATCH_SIZE, missing.size())));
+            MessageCodec.EncodedBody body = createRequestBody(LABEL_UUID_BATCH_TOPIC, chunk);
+            PipelineEvent.LabelFetch fetch = labelFetch(body, chunk.get(0), chunk.size());
+            chunks.add(traced(fetch, CallFutures.enqueue(getWaybillService().findPicturesByPath(body))).handle((response, ex) -> {
+                if (ex != null) {
+                    return null;
+                }
+                if (response.code() == 404) {
+                    labelInfoBatchSupported = false;
+                } else if (response.isSuccessful() && response.body() != null && response.body().data != null) {
+                    labelInfoCache.putAll(response.body().data);
+                }
+                return null;
+            }));
+        }
+        return CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0]));
     }
 
     /**
@@ -242,17 +840,28 @@ public class WaybillSDK {
      * @return 面单图片字节流
      */
     public InputStream getLabelImageByUuidCode(String uuidCode) {
-        try {
-            YXMessage message = new YXMessage(UUID.randomUUID().toString(), 0,
-                    LABEL_ADDRESS_TOPIC, SOURCE, TARGET, "", uuidCode);
-            RequestBody body = RequestBody.create(MediaType.parse("application/json; charset=utf-8"),
-                    JSONObject.toJSONString(message));
-            ImageData imageData = getWaybillService().getOrderPictureByPath(body).execute().body();
+        byte[] image = await(getLabelImageByUuidCodeAsync(uuidCode));
+        return image == null ? null : new ByteArrayInputStream(image);
+    }
+
+    /**
+     * 异步通过唯一码获取面单图片, 查询图片地址不占用调用线程, 图片在下载线程池中下载
+     *
+     * @param uuidCode 面单唯一码
+     * @return 面单图片
+     */
+    public CompletableFuture<byte[]> getLabelImageByUuidCodeAsync(String uuidCode) {
+        LabelImageCache.CachedImage cachedImage = cachedLabelImage(uuidCode);
+        if (cachedImage != null) {
+            return CompletableFuture.completedFuture(cachedImage.data);
+        }
+        return lookupLabelImageAddress(uuidCode).thenApply(response -> {
+            ImageData imageData = response.body();
             if (imageData == null) {
                 throw new RuntimeException("当前服务不可用");
             }
             if (imageData.code == 200) { //200
-                return downloadImageStream(imageData.data);
+                return imageData.data;
             } else if (imageData.code == 404) { //404
                 throw new RuntimeException("LabelNotExist");
             } else if (imageData.code == 102) {
@@ -260,9 +869,13 @@ public class WaybillSDK {
             } else {
                 throw new RuntimeException("当前服务不可用");
             }
-        } catch (IOException ex) {
+        }).exceptionally(ex -> {
+            Throwable cause = ex instanceof CompletionException ? ex.getCause() : ex;
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
             throw new RuntimeException("当前服务不可用");
-        }
+        }).thenApplyAsync(imageUrl -> getLabelImage(uuidCode, imageUrl), printPipeline.getFetchExecutor());
     }
 
     /**
@@ -276,25 +889,36 @@ public class WaybillSDK {
      */
     public List<LabelInfo> splitPackage(String saleOrder, String carrierCode,
                                         Number packageCount, List<Package> packageList) {
-        List<LabelInfo> labelInfos = new ArrayList<>();
-        try {
-            Payload payload = new Payload(saleOrder, carrierCode, packageCount, packageList);
-
-            YXMessage message = new YXMessage(UUID.randomUUID().toString(), 0,
-                    SPLIT_ORDER_TOPIC, SOURCE, TARGET, "", payload);
-            RequestBody body = RequestBody.create(MediaType.parse("application/json; charset=utf-8"),
-                    JSONObject.toJSONString(message));
-            Data data = getWaybillService().splitPackage(body).execute().body();
-            if (data != null) {
-                if (data.data.isEmpty()) {
-                    throw new RuntimeException("saleOrderNotExist");
-                }
-                labelInfos = data.data;
+        return await(splitPackageAsync(saleOrder, carrierCode, packageCount, packageList));
+    }
+
+    /**
+     * 异步分包, 参数同 splitPackage
+     *
+     * @return 面单信息列表，兼容多包裹
+     */
+    public CompletableFuture<List<LabelInfo>> splitPackageAsync(String saleOrder, String carrierCode,
+                                                                Number packageCount, List<Package> packageList) {
+        Payload payload = new Payload(saleOrder, carrierCode, packageCount, packageList);
+        RequestBody body = createRequestBody(SPLIT_ORDER_TOPIC, payload);
+        return CallFutures.enqueue(getWaybillService().splitPackage(body)).handle((response, ex) -> {
+            if (ex != null) {
+                throw new RuntimeException("当前服务不可用");
             }
-        } catch (IOException ex) {
-            throw new RuntimeException("当前服务不可用");
-        }
-        return labelInfos;
+            Data data = response.body();
+            if (data == null) {
+                return new ArrayList<>();
+            }
+            if (data.data.isEmpty()) {
+                throw new RuntimeException("saleOrderNotExist");
+            }
+            List<LabelInfo> labelInfos = data.data;
+            //分包后旧面单作废，以新生成的面单信息为准
+            labelInfoCache.invalidateSaleOrder(saleOrder).forEach(labelImageCache::invalidate);
+            labelInfos.forEach(labelInfo -> labelImageCache.invalidate(labelInfo.uuidCode));
+            labelInfoCache.putAll(labelInfos);
+            return labelInfos;
+        });
     }
 
     /**
@@ -308,163 +932,497 @@ public class WaybillSDK {
      */
     public void printLabelByUuidCode(List<String> uuidCodeList, String printer,
                                      Boolean needAllSuccess, Integer getImageTimeout) {
-        getImageTimeout = getImageTimeout == null ? 0 : getImageTimeout;
-        final int timeout = getImageTimeout;
-        PrintService currPrinter = printer == null ? printService : getPrinterByName(printer);
-        if (Objects.isNull(currPrinter)) {
-            return;
-        }
-        executorService.execute(() -> syncPrintLabelByUuidCode(uuidCodeList, currPrinter,
-                needAllSuccess == null ? Boolean.FALSE : needAllSuccess, timeout));
+        rethrowIfRejected(printLabelByUuidCodeAsync(uuidCodeList, printer, needAllSuccess, getImageTimeout));
+    }
+
+    /**
+     * 异步通过唯一码打印面单, 参数同 printLabelByUuidCode, PrintListener 仍会收到每一张面单的回调
+     *
+     * @return 批次打印完成后得到每张面单的结果与耗时
+     */
+    public CompletableFuture<PrintResult> printLabelByUuidCodeAsync(List<String> uuidCodeList, String printer,
+                                                                    Boolean needAllSuccess, Integer getImageTimeout) {
+        return printLabelByUuidCodeAsync(uuidCodeList, printer, needAllSuccess, getImageTimeout,
+                AdmissionController.DEFAULT_PRIORITY);
     }
 
-    private void syncPrintLabelByUuidCode(List<String> uuidCodeList, PrintService currPrinter,
-                                          boolean needAllSuccess, int getImageTimeout) {
+    /**
+     * 异步通过唯一码打印面单, 并指定批次的优先级
+     *
+     * @param priority 优先级, 数值越大越优先, 准入策略为 SHED_LOWEST_PRIORITY 时排队中优先级较低的批次会被丢弃
+     */
+    public CompletableFuture<PrintResult> printLabelByUuidCodeAsync(List<String> uuidCodeList, String printer,
+                                                                    Boolean needAllSuccess, Integer getImageTimeout,
+                                                                    int priority) {
+        int timeout = getImageTimeout == null ? 0 : getImageTimeout;
+        boolean allSuccess = needAllSuccess == null ? Boolean.FALSE : needAllSuccess;
+        PrintResultCollector collector = new PrintResultCollector(uuidCodeList, listener, metrics);
+        Span trace = tracer.startTrace("printLabelByUuidCode").tag("labels", uuidCodeList.size());
+        return submitPrintJob(printer, uuidCodeList.size(), priority, collector, trace, (currPrinter, ticket) ->
+                syncPrintLabelByUuidCode(uuidCodeList, currPrinter, ticket, allSuccess, timeout, DEFAULT_CATEGORY,
+                        collector));
+    }
+
+    /**
+     * 在打印机队列中打印一批面单, 未生成的面单挂在 readinessScheduler 上等待, 不占用打印机队列
+     *
+     * @param ticket   批次的准入凭证, 挂起的面单放回打印机队列时占用排队位置
+     * @param category 统计面单生成时间的分类, 如承运商编码
+     * @return 挂起的面单全部处理完后结束的 future
+     */
+    private CompletableFuture<Void> syncPrintLabelByUuidCode(List<String> uuidCodeList, PrintService currPrinter,
+                                                             AdmissionController.Ticket ticket,
+                                                             boolean needAllSuccess, int getImageTimeout,
+                                                             String category, PrintListener batchListener) {
         long initialTime = System.currentTimeMillis();
-        Map<String, LabelInfo> map = new LinkedHashMap<>();
+        Span trace = Tracer.current();
+        List<LabelTask> tasks = new ArrayList<>();
         if (needAllSuccess) {
+            List<String> unresolved = new ArrayList<>();
             for (String uuidCode : uuidCodeList) {
-                YXMessage message = new YXMessage(UUID.randomUUID().toString(),
-                        0, LABEL_ADDRESS_TOPIC, SOURCE, TARGET, "", uuidCode);
-                RequestBody body = RequestBody.create(MediaType.parse("application/json; charset=utf-8"),
-                        JSONObject.toJSONString(message));
-                Response<ImageData> response;
-                try {
-                    response = getWaybillService().getOrderPictureByPath(body).execute();
-                } catch (IOException ex) {
-                    throw new RuntimeException("server error");
-                }
-                if (response.body().code != 200) {
-                    uuidCodeList.forEach(item -> {
-                        long lastTime = System.currentTimeMillis();
-                        if (uuidCode.equals(item)) {
-                            listener.onPrint(uuidCode, Boolean.FALSE, getLabelInfoByUuidCode(uuidCode),
-                                    Constants.LABEL_NOT_READY, "label_not_ready");
-                        } else {
-                            listener.onPrint(item, Boolean.FALSE, getLabelInfoByUuidCode(item),
-                                    Constants.USER_CANCEL, "user_cancel");
-                        }
-                        savePrintResultLog(uuidCode, lastTime - initialTime, "PRINT_FAIL");
-                    });
-                    return;
+                LabelTask task = new LabelTask(uuidCode);
+                task.span = trace;
+                tasks.add(task);
+                LabelImageCache.CachedImage cachedImage = cachedLabelImage(uuidCode);
+                if (cachedImage != null) {
+                    //本地已有面单图片，说明面单已生成，无需再查询图片地址
+                    task.imageAddress = cachedImage.imageUrl;
                 } else {
-                    LabelInfo labelInfo = getLabelInfoByUuidCode(uuidCode);
-                    labelInfo.data = response.body().data;
-                    map.put(uuidCode, labelInfo);
+                    unresolved.add(uuidCode);
                 }
             }
-            Set<String> uuidCodes = map.keySet();
-            for (String uuidCode : uuidCodes) {
-                LabelInfo labelInfo = map.get(uuidCode);
-                long startTime = System.currentTimeMillis();
-                InputStream imageStream = downloadImageStream(labelInfo.data);
-                PrintStreamInfo streamInfo = ImageStreamUtil.convertImageStream2MatchPrinter(imageStream,
-                        currPrinter, labelInfo.pageCount);
-                if (Objects.isNull(streamInfo)) {
-                    throw new RuntimeException("imageStream convert failure");
+            //面单信息与图片地址各自批量查询, 遇到未生成的面单时挂起等待, 生成后再查询其余的面单
+            CompletableFuture<Void> labelInfos = prefetchLabelInfo(uuidCodeList);
+            Map<String, String> addresses = unresolved.isEmpty() ? Collections.emptyMap()
+                    : await(resolveLabelImageAddresses(unresolved, true));
+            CompletableFuture<LabelTask> ready = awaitAllReady(tasks, addresses, category, initialTime + getImageTimeout);
+            if (ready.isDone() && ready.join() == null) {
+                labelInfos.join();
+                printAllLabels(tasks, currPrinter, batchListener);
+                return CompletableFuture.completedFuture(null);
+            }
+            //等待全部面单生成后再回到打印机队列中打印, 任意一张超时则整批取消
+            return ready.thenCompose(notReady -> {
+                if (notReady != null) {
+                    cancelBatch(uuidCodeList, notReady.uuidCode, initialTime, batchListener);
+                    return CompletableFuture.completedFuture(null);
                 }
+                return submitToLane(currPrinter, ticket, () -> {
+                    printAllLabels(tasks, currPrinter, batchListener);
+                    return CompletableFuture.completedFuture(null);
+                });
+            });
+        }
+        List<CompletableFuture<Void>> followUps = Collections.synchronizedList(new ArrayList<>());
+        uuidCodeList.forEach(uuidCode -> {
+            LabelTask task = new LabelTask(uuidCode);
+            task.span = trace;
+            tasks.add(task);
+        });
+        Consumer<LabelTask> spool = task -> {
+            boolean flag = spoolLabel(task, currPrinter, batchListener);
+            String logResult = flag ? "PRINT_SUCCESS" : "PRINT_FAIL";
+            long endTime = System.currentTimeMillis();
+            savePrintResultLog(task.uuidCode, endTime - task.startTime, logResult);
+        };
+        await(submitLabels(tasks, task -> {
+            task.startTime = System.currentTimeMillis();
+            LabelImageCache.CachedImage cachedImage = cachedLabelImage(task.uuidCode);
+            if (cachedImage != null) {
+                task.labelInfo = getLabelInfoByUuidCode(task.uuidCode);
+                task.imageAddress = cachedImage.imageUrl;
+                task.image = cachedImage.data;
+                return task;
+            }
+            ImageData imageData = findLabelImageAddress(task.uuidCode);
+            if (imageData.code == 200) {
+                task.labelInfo = getLabelInfoByUuidCode(task.uuidCode);
+                task.imageAddress = imageData.data;
+                downloadLabelImage(task);
+            } else {
+                //面单尚未生成，挂起等待, 生成后单独回到打印机队列中打印
+                followUps.add(printWhenReady(task, currPrinter, ticket, category, getImageTimeout, spool,
+                        batchListener));
+            }
+            return task;
+        }, task -> task.isReady() ? convertLabelImage(task, currPrinter) : task, task -> {
+            if (task.isReady()) {
+                spool.accept(task);
+            }
+        }, printScheduler.getSpoolExecutor(currPrinter)));
+        return CompletableFuture.allOf(followUps.toArray(new CompletableFuture<?>[0]));
+    }
 
-                //pageCount大于1，说明该面单需要分多张图片打印
-                if (labelInfo.pageCount > 1) {
-                    InputStreamCacher cacher = new InputStreamCacher(streamInfo.inputStream);
-                    for (int i = 0; i < labelInfo.pageCount; i++) {
-                        boolean result = printWaybill(currPrinter, cacher.getInputStream(), uuidCode, i,
-                                labelInfo.pageCount, streamInfo.width, streamInfo.height);
-                        if (!result) {
-                            throw new RuntimeException("print error");
-                        }
-                    }
-                }
-                if (labelInfo.pageCount == 1) {
-                    boolean result = printWaybill(currPrinter, streamInfo.inputStream, uuidCode, 0,
-                            1, streamInfo.width, streamInfo.height);
-                    if (!result) {
-                        throw new RuntimeException("print error");
-                    }
-                }
+    /**
+     * 把面单放入打印流水线, 每张面单的获取、转换、打印阶段在其 trace 中各记录一个 span
+     * 尚未生成的面单跳过转换与打印, 不记录这两个阶段
+     */
+    private CompletableFuture<Void> submitLabels(List<LabelTask> tasks, UnaryOperator<LabelTask> fetch,
+                                                 UnaryOperator<LabelTask> convert, Consumer<LabelTask> spool,
+                                                 Executor spoolExecutor) {
+        return printPipeline.submit(tasks, traced("fetch", false, fetch), traced("convert", true, convert),
+                task -> traced("spool", true, ready -> {
+                    spool.accept(ready);
+                    return ready;
+                }).apply(task), spoolExecutor);
+    }
+
+    /**
+     * @param readyOnly 只在面单已生成时记录
+     */
+    private UnaryOperator<LabelTask> traced(String stage, boolean readyOnly, UnaryOperator<LabelTask> operator) {
+        return task -> {
+            if (readyOnly && !task.isReady()) {
+                return operator.apply(task);
+            }
+            Span span = tracer.startSpan(stage, task.span, null).tag("uuidCode", task.uuidCode);
+            Tracer.Scope scope = Tracer.activate(span);
+            try {
+                return operator.apply(task);
+            } catch (RuntimeException ex) {
+                span.error(ex);
+                throw ex;
+            } finally {
+                scope.close();
+                span.finish();
+            }
+        };
+    }
+
+    /**
+     * 依次等待尚未生成的面单, 每等到一张就查询其余仍未确定的面单
+     *
+     * @param addresses 上一次查询的结果, 未生成的面单对应 null
+     * @param deadline  截止时刻(毫秒)
+     * @return 全部生成后以 null 完成, 否则以第一张超时的面单完成
+     */
+    private CompletableFuture<LabelTask> awaitAllReady(List<LabelTask> tasks, Map<String, String> addresses,
+                                                       String category, long deadline) {
+        for (LabelTask task : tasks) {
+            if (task.imageAddress == null) {
+                task.imageAddress = addresses.get(task.uuidCode);
+            }
+        }
+        //优先等待确定未生成的面单, 提前取消而没有结果的面单之后再查询
+        LabelTask waitingTask = tasks.stream()
+                .filter(task -> task.imageAddress == null && addresses.containsKey(task.uuidCode)).findFirst()
+                .orElseGet(() -> tasks.stream().filter(task -> task.imageAddress == null).findFirst().orElse(null));
+        if (waitingTask == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long timeout = Math.max(0, deadline - System.currentTimeMillis());
+        return awaitLabelReady(waitingTask.uuidCode, category, timeout).handle(Tracer.wrap((imageAddress, ex) -> {
+            if (ex != null) {
+                return CompletableFuture.completedFuture(waitingTask);
+            }
+            waitingTask.imageAddress = imageAddress;
+            List<String> unresolved = new ArrayList<>();
+            tasks.stream().filter(task -> task.imageAddress == null).forEach(task -> unresolved.add(task.uuidCode));
+            if (unresolved.isEmpty()) {
+                return CompletableFuture.<LabelTask>completedFuture(null);
+            }
+            return resolveLabelImageAddresses(unresolved, true)
+                    .thenCompose(next -> awaitAllReady(tasks, next, category, deadline));
+        })).thenCompose(future -> future);
+    }
+
+    private void printAllLabels(List<LabelTask> tasks, PrintService currPrinter, PrintListener batchListener) {
+        await(submitLabels(tasks, task -> {
+            task.startTime = System.currentTimeMillis();
+            task.labelInfo = getLabelInfoByUuidCode(task.uuidCode);
+            return downloadLabelImage(task);
+        }, task -> convertLabelImage(task, currPrinter), task -> {
+            if (!spoolLabel(task, currPrinter, batchListener)) {
+                throw new RuntimeException("print error");
+            }
+            long endTime = System.currentTimeMillis();
+            savePrintResultLog(task.uuidCode, endTime - task.startTime, "PRINT_SUCCESS");
+        }, printScheduler.getSpoolExecutor(currPrinter)));
+    }
+
+    private void cancelBatch(List<String> uuidCodeList, String notReadyUuidCode, long initialTime,
+                             PrintListener batchListener) {
+        uuidCodeList.forEach(item -> {
+            long lastTime = System.currentTimeMillis();
+            if (notReadyUuidCode.equals(item)) {
+                batchListener.onPrint(notReadyUuidCode, Boolean.FALSE, getLabelInfoByUuidCode(notReadyUuidCode),
+                        Constants.LABEL_NOT_READY, "label_not_ready");
+            } else {
+                batchListener.onPrint(item, Boolean.FALSE, getLabelInfoByUuidCode(item),
+                        Constants.USER_CANCEL, "user_cancel");
+            }
+            savePrintResultLog(notReadyUuidCode, lastTime - initialTime, "PRINT_FAIL");
+        });
+    }
+
+    /**
+     * 等待面单生成后把它作为单独的批次放回打印机队列, 超时则回调 LABEL_NOT_READY
+     */
+    private CompletableFuture<Void> printWhenReady(LabelTask task, PrintService currPrinter,
+                                                   AdmissionController.Ticket ticket, String category,
+                                                   long timeoutMillis, Consumer<LabelTask> spool,
+                                                   PrintListener batchListener) {
+        return awaitLabelReady(task.uuidCode, category, timeoutMillis).handle(Tracer.wrap((imageAddress, ex) -> {
+            if (ex != null) {
                 long endTime = System.currentTimeMillis();
-                savePrintResultLog(uuidCode, endTime - startTime, "PRINT_SUCCESS");
+                batchListener.onPrint(task.uuidCode, Boolean.FALSE, getLabelInfoByUuidCode(task.uuidCode),
+                        Constants.LABEL_NOT_READY, "label not ready");
+                savePrintResultLog(task.uuidCode, endTime - task.startTime, "PRINT_FAIL");
+                return CompletableFuture.<Void>completedFuture(null);
             }
-        } else {
-            for (String uuidCode : uuidCodeList) {
-                AtomicInteger printCount = new AtomicInteger(0);
-                while (printCount.get() != 1) {
-                    long startTime = System.currentTimeMillis();
-                    YXMessage message = new YXMessage(UUID.randomUUID().toString(), 0,
-                            LABEL_ADDRESS_TOPIC, SOURCE, TARGET, "", uuidCode);
-                    RequestBody body = RequestBody.create(MediaType.parse("application/json; charset=utf-8"),
-                            JSONObject.toJSONString(message));
-                    Response<ImageData> response;
-                    try {
-                        response = getWaybillService().getOrderPictureByPath(body).execute();
-                    } catch (IOException ex) {
-                        throw new RuntimeException("server error");
-                    }
-                    if (response.body().code == 200) {
-                        LabelInfo labelInfo = getLabelInfoByUuidCode(uuidCode);
-                        InputStream imageStream = downloadImageStream(response.body().data);
-                        PrintStreamInfo streamInfo = ImageStreamUtil.convertImageStream2MatchPrinter(imageStream,
-                                currPrinter, labelInfo.pageCount);
-                        if (Objects.isNull(streamInfo)) {
-                            throw new RuntimeException("imageStream convert failure");
-                        }
+            return submitToLane(currPrinter, ticket, () -> {
+                await(submitLabels(Collections.singletonList(task), ready -> {
+                    ready.startTime = System.currentTimeMillis();
+                    ready.labelInfo = getLabelInfoByUuidCode(ready.uuidCode);
+                    ready.imageAddress = imageAddress;
+                    return downloadLabelImage(ready);
+                }, ready -> convertLabelImage(ready, currPrinter), spool, printScheduler.getSpoolExecutor(currPrinter)));
+                return CompletableFuture.completedFuture(null);
+            });
+        })).thenCompose(future -> future);
+    }
 
-                        //pageCount大于1，说明该面单需要分多张图片打印
-                        boolean flag = true;
-                        if (labelInfo.pageCount > 1) {
-                            InputStreamCacher cacher = new InputStreamCacher(streamInfo.inputStream);
-                            for (int i = 0; i < labelInfo.pageCount; i++) {
-                                boolean result = printWaybill(currPrinter, cacher.getInputStream(), uuidCode, i,
-                                        labelInfo.pageCount, streamInfo.width, streamInfo.height);
-                                if (!result) {
-                                    flag = false;
-                                    break;
-                                }
-                            }
-                        }
-                        if (labelInfo.pageCount == 1) {
-                            flag = printWaybill(currPrinter, streamInfo.inputStream, uuidCode, 0,
-                                    1, streamInfo.width, streamInfo.height);
-                        }
-                        String logResult = flag ? "PRINT_SUCCESS" : "PRINT_FAIL";
-                        long endTime = System.currentTimeMillis();
-                        savePrintResultLog(uuidCode, endTime - startTime, logResult);
-                        printCount.compareAndSet(0, 1);
-                    } else {
-                        if (printCount.get() == 2) {
-                            long endTime = System.currentTimeMillis();
-                            listener.onPrint(uuidCode, Boolean.FALSE, getLabelInfoByUuidCode(uuidCode),
-                                    Constants.LABEL_NOT_READY, "label not ready");
-                            savePrintResultLog(uuidCode, endTime - startTime, "PRINT_FAIL");
-                            break;
-                        }
-                        try {
-                            Thread.sleep(getImageTimeout);
-                        } catch (InterruptedException ex) {
-                            ex.printStackTrace();
-                        }
-                        printCount.compareAndSet(0, 2);
+    /**
+     * 挂起等待面单生成, 不占用线程
+     *
+     * @return 面单生成后得到图片地址, 超时以 RuntimeException("LabelNotReady") 结束
+     */
+    private CompletableFuture<String> awaitLabelReady(String uuidCode, String category, long timeoutMillis) {
+        Span span = tracer.startSpan("await_ready").tag("uuidCode", uuidCode);
+        Supplier<CompletableFuture<String>> probe;
+        Tracer.Scope scope = Tracer.activate(span);
+        try {
+            //每次查询都在等待的 span 下
+            probe = Tracer.wrap(() -> lookupLabelImageAddress(uuidCode).thenApply(response -> {
+                ImageData imageData = response.body();
+                return imageData != null && imageData.code == 200 ? imageData.data : null;
+            }));
+        } finally {
+            scope.close();
+        }
+        CompletableFuture<String> ready = readinessScheduler.schedule(category, probe, timeoutMillis, Integer.MAX_VALUE);
+        ready.whenComplete((imageAddress, ex) -> {
+            if (ex != null) {
+                span.error(ex);
+            }
+            span.finish();
+        });
+        return ready;
+    }
+
+    /**
+     * 等待 future 完成, 以原始异常结束时直接抛出原始异常
+     */
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    private static MessageCodec.EncodedBody createRequestBody(String topic, Object data) {
+        return MessageCodec.encode(new YXMessage(MessageCodec.nextMessageId(), 0, topic, SOURCE, TARGET, "", data));
+    }
+
+    /**
+     * 开始一次查询面单的 JFR 事件
+     *
+     * @param uuidCode   面单唯一码, 批量查询时为第一个
+     * @param labelCount 本次查询的面单数
+     */
+    private static PipelineEvent.LabelFetch labelFetch(MessageCodec.EncodedBody body, String uuidCode, int labelCount) {
+        return PipelineEvents.labelFetch(body.topic(), body.messageId(), uuidCode, labelCount);
+    }
+
+    /**
+     * 请求结束时提交事件; 返回原来的 future, 调用方取消时仍会取消请求
+     */
+    private static <T> CompletableFuture<Response<T>> traced(PipelineEvent.LabelFetch fetch,
+                                                           CompletableFuture<Response<T>> future) {
+        future.whenComplete((response, ex) -> {
+            if (response == null) {
+                fetch.end(-1, -1);
+            } else {
+                ResponseBody raw = response.raw().body();
+                fetch.end(response.code(), raw == null ? -1 : raw.contentLength());
+            }
+        });
+        return future;
+    }
+
+    private ImageData findLabelImageAddress(String uuidCode) {
+        try {
+            return lookupLabelImageAddress(uuidCode).join().body();
+        } catch (CompletionException ex) {
+            throw new RuntimeException("server error");
+        }
+    }
+
+    /**
+     * 查询面单图片地址, 开启对冲时慢的本地服务由次优的本地服务补位
+     */
+    private CompletableFuture<Response<ImageData>> lookupLabelImageAddress(String uuidCode) {
+        MessageCodec.EncodedBody body = createRequestBody(LABEL_ADDRESS_TOPIC, uuidCode);
+        PipelineEvent.LabelFetch fetch = labelFetch(body, uuidCode, 1);
+        RequestHedger hedger = requestHedger;
+        if (hedger == null) {
+            return traced(fetch, CallFutures.enqueue(getWaybillService().getOrderPictureByPath(body)));
+        }
+        return traced(fetch, hedger.execute(endpoint -> getWaybillService().getOrderPictureByPath(endpoint, body)));
+    }
+
+    private LabelTask downloadLabelImage(LabelTask task) {
+        task.image = getLabelImage(task.uuidCode, task.imageAddress);
+        return task;
+    }
+
+    private LabelTask convertLabelImage(LabelTask task, PrintService currPrinter) {
+        RawPrintProfile rawProfile = rawPrintProfiles.get(currPrinter.getName());
+        //PRINTABLE 方式直接提交图片, 没有编码结果可以复用
+        Object format = Objects.nonNull(rawProfile) ? rawProfile
+                : printMode.resolve(currPrinter) == PrintMode.PRINTABLE ? null : PrintStreamCache.PNG_FORMAT;
+        PrintStreamCache.Key key = null;
+        if (Objects.nonNull(task.image)) {
+            int pageCount = task.labelInfo.pageCount;
+            PrinterResolution resolution = ImageStreamUtil.getPrinterResolution(currPrinter);
+            key = PrintStreamCache.key(task.image, resolution, pageCount);
+            PrintStreamCache.EncodedPages encoded = format == null ? null : printStreamCache.getEncoded(key, format);
+            if (Objects.nonNull(encoded)) {
+                //重打时直接使用编码好的各页, 不再解码、缩放和编码
+                task.imageInfo = new PrintImageInfo();
+                task.imageInfo.width = encoded.width;
+                task.imageInfo.height = encoded.height;
+                task.rawCommand = Objects.nonNull(rawProfile);
+                task.pages = encoded.pages.stream().map(CompletableFuture::completedFuture).collect(Collectors.toList());
+                return task;
+            }
+            Supplier<PrintImageInfo> decode = () -> {
+                PipelineEvent.ImageConversion conversion = PipelineEvents.imageConversion(task.uuidCode, currPrinter.getName());
+                PrintImageInfo decoded = ImageStreamUtil.decodeImage2MatchPrinter(task.image, resolution, pageCount);
+                if (Objects.nonNull(decoded)) {
+                    conversion.end(decoded.sourceDpi, decoded.crossFeedDpi, decoded.sourcePixels,
+                            (long) decoded.image.getWidth() * decoded.image.getHeight());
+                    metrics.record(Stage.DECODE, currPrinter.getName(), decoded.decodeNanos);
+                    if (decoded.resampled) {
+                        metrics.record(Stage.RESAMPLE, currPrinter.getName(), decoded.resampleNanos);
                     }
                 }
+                return decoded;
+            };
+            //编码结果单独缓存, 只有直接提交图片时才缓存体积较大的解码结果
+            task.imageInfo = format == null ? printStreamCache.get(key, decode) : decode.get();
+        }
+        if (Objects.isNull(task.imageInfo)) {
+            throw new RuntimeException("imageStream convert failure");
+        }
+        PipelineEvent.PageSlicing slicing = PipelineEvents.pageSlicing(task.uuidCode, currPrinter.getName(),
+                task.labelInfo.pageCount);
+        if (Objects.nonNull(rawProfile)) {
+            //热敏打印机直接发送指令，各页并行转换为单色位图并编码
+            task.rawCommand = true;
+            task.pages = endWhenEncoded(slicing, rawProfile.encodeAsync(task.imageInfo, task.labelInfo.pageCount,
+                    metrics.timed(printPipeline.getConvertExecutor(), Stage.ENCODE, currPrinter.getName())));
+            cacheWhenEncoded(key, format, task);
+            return task;
+        }
+        if (format == null) {
+            //直接提交解码后的图片，不需要编码png
+            task.rasterPages = PageSlicer.slice(task.imageInfo.image, task.labelInfo.pageCount);
+            slicing.end(0);
+            return task;
+        }
+        //各页在转换线程池上并行编码，打印阶段按页序等待
+        task.pages = endWhenEncoded(slicing, PageSlicer.encodeAsync(task.imageInfo.image, task.labelInfo.pageCount,
+                metrics.timed(printPipeline.getConvertExecutor(), Stage.ENCODE, currPrinter.getName())));
+        cacheWhenEncoded(key, format, task);
+        return task;
+    }
+
+    /**
+     * 所有分页编码成功后写入缓存, 重打时跳过整个图片处理流程
+     */
+    private void cacheWhenEncoded(PrintStreamCache.Key key, Object format, LabelTask task) {
+        if (key == null) {
+            return;
+        }
+        PrintStreamCache cache = printStreamCache;
+        List<CompletableFuture<byte[]>> pages = task.pages;
+        float width = task.imageInfo.width;
+        float height = task.imageInfo.height;
+        CompletableFuture.allOf(pages.toArray(new CompletableFuture<?>[0])).thenRun(() -> cache.putEncoded(key, format,
+                new PrintStreamCache.EncodedPages(pages.stream().map(CompletableFuture::join).collect(Collectors.toList()),
+                        width, height)));
+    }
+
+    /**
+     * 所有分页编码完成后提交分页事件, 编码失败时不提交
+     */
+    private static List<CompletableFuture<byte[]>> endWhenEncoded(PipelineEvent.PageSlicing slicing,
+                                                                 List<CompletableFuture<byte[]>> pages) {
+        CompletableFuture.allOf(pages.toArray(new CompletableFuture<?>[0])).thenRun(() ->
+                slicing.end(pages.stream().mapToLong(page -> page.join().length).sum()));
+        return pages;
+    }
+
+    /**
+     * 打印一张面单的所有分页
+     *
+     * @return 全部分页打印成功返回true, 任意一页失败返回false
+     */
+    private boolean spoolLabel(LabelTask task, PrintService currPrinter, PrintListener batchListener) {
+        PrintImageInfo imageInfo = task.imageInfo;
+        //pageCount大于1，说明该面单需要分多张图片打印
+        if (Objects.nonNull(task.rasterPages)) {
+            for (BufferedImage page : task.rasterPages) {
+                Doc doc = new SimpleDoc(new RasterPrintable(page, imageInfo.width, imageInfo.height),
+                        DocFlavor.SERVICE_FORMATTED.PRINTABLE, null);
+                if (!printWaybill(currPrinter, doc, imageAttributes(imageInfo.width, imageInfo.height), task.uuidCode,
+                        batchListener)) {
+                    return false;
+                }
             }
+            return true;
         }
+        for (CompletableFuture<byte[]> page : task.pages) {
+            byte[] pageImage;
+            try {
+                pageImage = page.join();
+            } catch (CompletionException ex) {
+                throw new RuntimeException("inputStream convert fail");
+            }
+            boolean result;
+            if (task.rawCommand) {
+                HashPrintRequestAttributeSet pras = new HashPrintRequestAttributeSet();
+                pras.add(new Copies(1));
+                result = printWaybill(currPrinter, new SimpleDoc(pageImage, DocFlavor.BYTE_ARRAY.AUTOSENSE, null),
+                        pras, task.uuidCode, batchListener);
+            } else {
+                result = printWaybill(currPrinter, pageImage, task.uuidCode, imageInfo.width, imageInfo.height,
+                        batchListener);
+            }
+            if (!result) {
+                return false;
+            }
+        }
+        return true;
     }
 
+    /**
+     * 打印日志写入本地日志文件后由后台线程批量上传, 不阻塞打印, 上传失败也不影响打印结果
+     */
     private void savePrintResultLog(String uuidCode, long printTime, String result) {
-        PrintLog printLog = new PrintLog(Constants.DATE_FORMAT.format(new Date()), result,
-                TimeUnit.MILLISECONDS.toSeconds(printTime), uuidCode);
-        YXMessage logMessage = new YXMessage(UUID.randomUUID().toString(), 0,
-                LABEL_PRINT_LOG, SOURCE, TARGET, "", JSONObject.toJSONString(printLog));
-        RequestBody logBody = RequestBody.create(MediaType.parse("application/json; charset=utf-8"),
-                JSONObject.toJSONString(logMessage));
-        try {
-            Response<ResponseBody> logResponse = getWaybillService().savePrintResultLog(logBody).execute();
-            if (!logResponse.isSuccessful()) {
-                throw new RuntimeException("server error");
-            }
-        } catch (IOException ex) {
-            throw new RuntimeException("server error");
+        PrintLogShipper shipper = printLogShipper;
+        if (shipper == null) {
+            return;
         }
+        PrintLog printLog = new PrintLog(LocalDateTime.now().format(Constants.LOG_TIME_FORMAT), result,
+                TimeUnit.MILLISECONDS.toSeconds(printTime), uuidCode);
+        printLog.printMillis = printTime;
+        shipper.append(printLog);
     }
 
     /**
@@ -482,87 +1440,265 @@ public class WaybillSDK {
     public void splitPackageAndPrint(String saleOrder, String carrierCode, Number packageCount,
                                      List<Package> packageList, String printer,
                                      Boolean needAllSuccess, Integer getImageTimeout) {
-        getImageTimeout = getImageTimeout == null ? 30000 : getImageTimeout;
-        final int timeout = getImageTimeout;
-        executorService.execute(() -> {
-            List<LabelInfo> labelInfoList = new ArrayList<>();
-            AtomicInteger splitCount = new AtomicInteger(0);
-            while (splitCount.get() != 1) {
-                labelInfoList = splitPackage(saleOrder, carrierCode, packageCount, packageList);
-                if (labelInfoList.size() > 0) {
-                    splitCount.compareAndSet(0, 1);
-                } else {
-                    if (splitCount.get() == 2) {
-                        throw new RuntimeException("LabelNotExist");
+        rethrowIfRejected(splitPackageAndPrintAsync(saleOrder, carrierCode, packageCount, packageList,
+                printer, needAllSuccess, getImageTimeout));
+    }
+
+    /**
+     * 异步分包并打印面单, 参数同 splitPackageAndPrint
+     *
+     * @return 批次打印完成后得到每张面单的结果与耗时, 分包失败时以异常结束
+     */
+    public CompletableFuture<PrintResult> splitPackageAndPrintAsync(String saleOrder, String carrierCode,
+                                                                    Number packageCount, List<Package> packageList,
+                                                                    String printer, Boolean needAllSuccess,
+                                                                    Integer getImageTimeout) {
+        return splitPackageAndPrintAsync(saleOrder, carrierCode, packageCount, packageList, printer, needAllSuccess,
+                getImageTimeout, AdmissionController.DEFAULT_PRIORITY);
+    }
+
+    /**
+     * 异步分包并打印面单, 并指定批次的优先级
+     *
+     * @param priority 优先级, 数值越大越优先, 准入策略为 SHED_LOWEST_PRIORITY 时排队中优先级较低的批次会被丢弃
+     */
+    public CompletableFuture<PrintResult> splitPackageAndPrintAsync(String saleOrder, String carrierCode,
+                                                                    Number packageCount, List<Package> packageList,
+                                                                    String printer, Boolean needAllSuccess,
+                                                                    Integer getImageTimeout, int priority) {
+        int timeout = getImageTimeout == null ? 30000 : getImageTimeout;
+        boolean allSuccess = needAllSuccess == null ? Boolean.FALSE : needAllSuccess;
+        PrintResultCollector collector = new PrintResultCollector(new ArrayList<>(), listener, metrics);
+        Span trace = tracer.startTrace("splitPackageAndPrint").tag("saleOrder", saleOrder).tag("carrierCode", carrierCode);
+        //分包与打印在同一条打印机队列中完成，保证与该打印机上其他批次的先后顺序
+        int labelCount = packageCount == null ? 1 : packageCount.intValue();
+        return submitPrintJob(printer, labelCount, priority, collector, trace, (currPrinter, ticket) -> {
+            List<LabelInfo> labelInfoList = splitPackage(saleOrder, carrierCode, packageCount, packageList);
+            if (labelInfoList.size() > 0) {
+                return printSplitLabels(labelInfoList, currPrinter, ticket, allSuccess, carrierCode, collector);
+            }
+            //面单尚未生成，挂起到超时时刻再分包一次(分包会作废旧面单, 不能提前重试), 不占用打印机队列
+            return readinessScheduler.scheduleAtDeadline(
+                    Tracer.wrap(() -> splitPackageAsync(saleOrder, carrierCode, packageCount, packageList)
+                            .thenApply(labelInfos -> labelInfos.isEmpty() ? null : labelInfos)), timeout)
+                    .handle((labelInfos, ex) -> {
+                        if (ex != null) {
+                            throw new RuntimeException("LabelNotExist");
+                        }
+                        return submitToLane(currPrinter, ticket, () -> printSplitLabels(labelInfos, currPrinter,
+                                ticket, allSuccess, carrierCode, collector));
+                    }).thenCompose(future -> future);
+        });
+    }
+
+    private CompletableFuture<Void> printSplitLabels(List<LabelInfo> labelInfoList, PrintService currPrinter,
+                                                     AdmissionController.Ticket ticket, boolean allSuccess, String carrierCode,
+                                                     PrintResultCollector collector) {
+        List<String> uuidCodeList = new ArrayList<>();
+        labelInfoList.forEach(labelInfo -> uuidCodeList.add(labelInfo.uuidCode));
+        collector.expect(uuidCodeList);
+        return syncPrintLabelByUuidCode(uuidCodeList, currPrinter, ticket, allSuccess, 0, carrierCode, collector);
+    }
+
+    /**
+     * 把一个打印批次放入打印机队列
+     *
+     * @param printer    打印机名称, 为null时使用当前打印机
+     * @param labelCount 批次中的面单数, 用于预估内存
+     * @param priority   批次的优先级
+     * @param collector  收集该批次的打印结果
+     * @param trace      该批次的 trace, 批次结束时结束
+     * @param job        在打印机队列中执行的批次, 参数为打印机与批次的准入凭证, 返回挂起的面单全部处理完后结束的 future
+     */
+    private CompletableFuture<PrintResult> submitPrintJob(String printer, int labelCount, int priority,
+                                                          PrintResultCollector collector, Span trace,
+                                                          BiFunction<PrintService, AdmissionController.Ticket,
+                                                                  CompletableFuture<Void>> job) {
+        CompletableFuture<PrintResult> future = new CompletableFuture<>();
+        future.whenComplete((result, ex) -> {
+            if (ex != null) {
+                trace.error(ex);
+            } else if (!result.isAllSuccess()) {
+                trace.tag("error", "some labels failed");
+            }
+            trace.finish();
+        });
+        try {
+            PrintService currPrinter = printer == null ? printService : getPrinterByName(printer);
+            if (Objects.isNull(currPrinter)) {
+                throw new RuntimeException("PrinterNotExist");
+            }
+            trace.tag("printer", currPrinter.getName());
+            AtomicReference<Runnable> queued = new AtomicReference<>();
+            try {
+                AdmissionController.Ticket ticket = admissionController.admit(currPrinter.getName(), priority,
+                        labelCount, () -> {
+                            //排队中被优先级更高的批次挤掉, 同时移出打印机队列, 让出队列位置
+                            Runnable task = queued.get();
+                            if (task != null) {
+                                printScheduler.remove(currPrinter, task);
+                            }
+                            collector.reject(Constants.PRINT_REQUEST_SHED, "print_request_shed");
+                            future.completeExceptionally(new RuntimeException("PrintRequestShed"));
+                        });
+                future.whenComplete((result, ex) -> ticket.release());
+                queued.set(printScheduler.submit(currPrinter, () -> {
+                    if (!ticket.start()) {
+                        return;
                     }
+                    collector.start(currPrinter.getName());
+                    CompletableFuture<Void> pending;
+                    Tracer.Scope scope = Tracer.activate(trace);
                     try {
-                        Thread.sleep(timeout);
-                    } catch (InterruptedException ex) {
-                        ex.printStackTrace();
+                        pending = job.apply(currPrinter, ticket);
+                    } catch (RuntimeException ex) {
+                        pending = new CompletableFuture<>();
+                        pending.completeExceptionally(ex);
+                    } finally {
+                        scope.close();
                     }
-                    splitCount.compareAndSet(0, 2);
-                }
+                    pending.whenComplete((ignore, ex) -> {
+                        if (ex == null) {
+                            future.complete(collector.finish(currPrinter.getName(), null));
+                            return;
+                        }
+                        Throwable cause = ex instanceof CompletionException && ex.getCause() != null
+                                ? ex.getCause() : ex;
+                        cause.printStackTrace();
+                        if (collector.isEmpty()) {
+                            future.completeExceptionally(cause);
+                        } else {
+                            future.complete(collector.finish(currPrinter.getName(), cause));
+                        }
+                    });
+                }));
+            } catch (RuntimeException ex) {
+                //准入或打印机队列拒绝
+                collector.reject(Constants.PRINT_QUEUE_FULL, "print_queue_full");
+                throw ex;
             }
-            List<String> uuidCodeList = new ArrayList<>();
-            labelInfoList.forEach(labelInfo -> uuidCodeList.add(labelInfo.uuidCode));
-            printLabelByUuidCode(uuidCodeList, printer, needAllSuccess, 0);
-        });
+        } catch (RuntimeException ex) {
+            future.completeExceptionally(ex);
+        }
+        return future;
     }
 
-    private boolean printWaybill(PrintService printService, InputStream inputStream,
-                                 String uuidCode, int index, int size, float width, float height) {
-        InputStream printStream;
+    /**
+     * 把挂起后就绪的面单放回打印机队列, 排队期间占用批次准入凭证的一个排队位置
+     *
+     * @param ticket 所属批次的准入凭证
+     * @param job    在打印机队列中执行, 返回其中挂起的面单全部处理完后结束的 future
+     */
+    private CompletableFuture<Void> submitToLane(PrintService currPrinter, AdmissionController.Ticket ticket,
+                                                 Supplier<CompletableFuture<Void>> job) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        Supplier<CompletableFuture<Void>> traced = Tracer.wrap(job);
+        ticket.followUp();
         try {
-            BufferedImage image = ImageIO.read(inputStream);
-            BufferedImage subImage = image.getSubimage(0, (int) (index * 1.0 / size * image.getHeight()),
-                    image.getWidth(), image.getHeight() / size);
-            ByteArrayOutputStream bs = new ByteArrayOutputStream();
-            ImageOutputStream ios = ImageIO.createImageOutputStream(bs);
-            ImageIO.write(subImage, "png", ios);
-            printStream = new ByteArrayInputStream(bs.toByteArray());
-        } catch (IOException ex) {
-            throw new RuntimeException("inputStream convert fail");
+            printScheduler.submit(currPrinter, () -> {
+                ticket.followUpStarted();
+                try {
+                    traced.get().whenComplete((ignore, ex) -> {
+                        if (ex == null) {
+                            future.complete(null);
+                        } else {
+                            future.completeExceptionally(ex);
+                        }
+                    });
+                } catch (RuntimeException ex) {
+                    future.completeExceptionally(ex);
+                }
+            });
+        } catch (RuntimeException ex) {
+            ticket.followUpStarted();
+            future.completeExceptionally(ex);
         }
+        return future;
+    }
 
+    /**
+     * @return 单线程的线程池, 空闲60秒后回收线程
+     */
+    private static ExecutorService idleExecutor(String name) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new NamedThreadFactory(name));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static void rethrowIfRejected(CompletableFuture<?> future) {
+        if (future.isCompletedExceptionally()) {
+            await(future);
+        }
+    }
+
+    private boolean printWaybill(PrintService printService, byte[] pageImage,
+                                 String uuidCode, float width, float height, PrintListener batchListener) {
+        InputStream printStream = new ByteArrayInputStream(pageImage);
         DocFlavor dof = DocFlavor.INPUT_STREAM.PNG;
+        return printWaybill(printService, new SimpleDoc(printStream, dof, null), imageAttributes(width, height), uuidCode,
+                batchListener);
+    }
+
+    private HashPrintRequestAttributeSet imageAttributes(float width, float height) {
         HashPrintRequestAttributeSet pras = new HashPrintRequestAttributeSet();
         pras.add(OrientationRequested.PORTRAIT);
         pras.add(PrintQuality.HIGH);
         pras.add(new Copies(1));
         pras.add(new MediaPrintableArea(0, 0, width, height, MediaPrintableArea.MM));
+        return pras;
+    }
+
+    private boolean printWaybill(PrintService printService, Doc doc, HashPrintRequestAttributeSet pras,
+                                 String uuidCode, PrintListener batchListener) {
+        String printerName = printService.getName();
         try {
-            Doc doc = new SimpleDoc(printStream, dof, null);
             DocPrintJob job = printService.createPrintJob();
             job.addPrintJobListener(new PrintJobAdapter() {
                 @Override
                 public void printJobNoMoreEvents(PrintJobEvent pje) {
                 }
             });
-            job.print(doc, pras);
-            listener.onPrint(uuidCode, Boolean.TRUE, getLabelInfoByUuidCode(uuidCode),
+            PipelineEvent.PrintJob printJob = PipelineEvents.printJob(uuidCode, printerName, doc.getDocFlavor().toString());
+            long spoolStart = System.nanoTime();
+            boolean submitted = false;
+            try {
+                job.print(doc, pras);
+                submitted = true;
+            } finally {
+                metrics.record(Stage.SPOOL, printerName, System.nanoTime() - spoolStart);
+                printJob.end(submitted);
+            }
+            metrics.increment(PRINTED_COUNTER, printerName);
+            batchListener.onPrint(uuidCode, Boolean.TRUE, getLabelInfoByUuidCode(uuidCode),
                     Constants.SUCCESS, "print success, please wait for next print job");
             return true;
         } catch (PrintException ex) {
             ex.printStackTrace();
-            listener.onPrint(uuidCode, Boolean.FALSE, getLabelInfoByUuidCode(uuidCode),
+            metrics.increment(PRINT_FAILURE_COUNTER, printerName);
+            batchListener.onPrint(uuidCode, Boolean.FALSE, getLabelInfoByUuidCode(uuidCode),
                     Constants.PRINTER_NOT_EXIST, "print failed, please check if the printer available");
             return false;
         }
     }
 
     private LabelInfo getLabelInfoByUuidCode(String uuidCode) {
+        return labelInfoCache.get(uuidCode, this::findLabelInfoByUuidCode);
+    }
+
+    private LabelInfo findLabelInfoByUuidCode(String uuidCode) {
         LabelInfo labelInfo;
-        YXMessage message = new YXMessage(UUID.randomUUID().toString(), 0,
-                LABEL_UUID_TOPIC, SOURCE, TARGET, "", uuidCode);
         Response<LabelData> response;
-        RequestBody body = RequestBody.create(MediaType.parse("application/json; charset=utf-8"),
-                JSONObject.toJSONString(message));
+        MessageCodec.EncodedBody body = createRequestBody(LABEL_UUID_TOPIC, uuidCode);
+        PipelineEvent.LabelFetch fetch = labelFetch(body, uuidCode, 1);
         try {
             response = getWaybillService().findPictureByPath(body).execute();
         } catch (IOException ex) {
+            fetch.end(-1, -1);
             ex.printStackTrace();
             throw new RuntimeException("server error");
         }
+        fetch.end(response.code(), -1);
         if (response.isSuccessful()) {
             labelInfo = response.body().data;
         } else {
@@ -572,60 +1708,67 @@ public class WaybillSDK {
         return labelInfo;
     }
 
-    private InputStream downloadImageStream(String imageUrl) {
-        URL url;
-        try {
-            url = new URL(imageUrl);
-            DataInputStream dataInputStream = new DataInputStream(url.openStream());
-
-            ByteArrayOutputStream output = new ByteArrayOutputStream();
-
-            byte[] buffer = new byte[1024];
-            int length;
+    /**
+     * 面单信息中的图片地址与缓存的图片地址相同时返回缓存的图片, 不知道当前地址或地址已变化(重新生成)时返回null
+     */
+    private LabelImageCache.CachedImage cachedLabelImage(String uuidCode) {
+        LabelInfo labelInfo = labelInfoCache.peek(uuidCode);
+        return labelImageCache.get(uuidCode, labelInfo == null ? null : labelInfo.data);
+    }
 
-            while ((length = dataInputStream.read(buffer)) > 0) {
-                output.write(buffer, 0, length);
-            }
-            dataInputStream.close();
+    /**
+     * 获取面单图片, 并把图片地址记入缓存的面单信息, 重新打印时 cachedLabelImage 据此直接使用本地图片
+     */
+    private byte[] getLabelImage(String uuidCode, String imageUrl) {
+        byte[] image = labelImageCache.get(uuidCode, imageUrl, () -> downloadImage(uuidCode, imageUrl));
+        LabelInfo labelInfo = labelInfoCache.peek(uuidCode);
+        if (labelInfo != null && image != null) {
+            labelInfo.data = imageUrl;
+        }
+        return image;
+    }
 
-            return new ByteArrayInputStream(output.toByteArray());
-        } catch (IOException ex) {
+    private byte[] downloadImage(String uuidCode, String imageUrl) {
+        HttpUrl url = HttpUrl.parse(imageUrl);
+        String endpoint = url == null ? "" : MetricsInterceptor.endpoint(url);
+        PipelineEvent.LabelFetch fetch = PipelineEvents.labelFetch(PipelineEvent.IMAGE_TOPIC, null, uuidCode, 1);
+        Span span = tracer.startSpan("download_image", Tracer.current(), "CLIENT")
+                .tag("uuidCode", uuidCode).tag("server.address", endpoint);
+        long startTime = System.nanoTime();
+        try {
+            byte[] image = httpTransport.download(imageUrl);
+            metrics.add(DOWNLOAD_BYTES_COUNTER, endpoint, image.length);
+            fetch.end(200, image.length);
+            span.tag("bytes", image.length);
+            return image;
+        } catch (IOException | IllegalArgumentException ex) {
             ex.printStackTrace();
+            metrics.increment(DOWNLOAD_FAILURE_COUNTER, endpoint);
+            fetch.end(-1, -1);
+            span.error(ex);
             return null;
+        } finally {
+            metrics.record(Stage.IMAGE_DOWNLOAD, endpoint, System.nanoTime() - startTime);
+            span.finish();
         }
     }
 
     @Getter(lazy = true)
-    private final WaybillService waybillService = buildWaybillService(serverAddress);
+    private final WaybillService waybillService = buildWaybillService();
 
-    private WaybillService buildWaybillService(String serverAddress) {
-        OkHttpClient okHttpClient = new OkHttpClient.Builder()
-                .addInterceptor(new SignatureInterceptor(accessKey, accessSecret))
-                .connectTimeout(10, TimeUnit.SECONDS)
-                .readTimeout(30, TimeUnit.SECONDS)
-                .addNetworkInterceptor(new HttpLoggingInterceptor().setLevel(HttpLoggingInterceptor.Level.BASIC))
-                .build();
+    /**
+     * 请求的目标地址由 HotSwitchInterceptor 按 endpointTable 逐个请求选择, 切换服务器不需要重建客户端
+     * callFactory 在发出请求的线程上把当前 span 放入请求, 由 TracingInterceptor 记录并传给服务器
+     */
+    private WaybillService buildWaybillService() {
+        OkHttpClient okHttpClient = httpTransport.newApiClient(new SignatureInterceptor(accessKey, accessSecret),
+                new HotSwitchInterceptor(endpointTable), new MetricsInterceptor(metrics), new TracingInterceptor(tracer));
 
         return new Retrofit.Builder()
-                .baseUrl(serverAddress)
+                .baseUrl(EndpointTable.ROUTED_BASE_URL)
                 .addConverterFactory(GsonConverterFactory.create())
-                .client(okHttpClient)
+                .callFactory(TracingInterceptor.callFactory(okHttpClient))
                 .build()
                 .create(WaybillService.class);
     }
-
-    private ServerService buildBestHealthServer(String url) {
-        OkHttpClient okHttpClient = new OkHttpClient.Builder()
-                .connectTimeout(10, TimeUnit.SECONDS)
-                .readTimeout(10, TimeUnit.SECONDS)
-                .addNetworkInterceptor(new HttpLoggingInterceptor().setLevel(HttpLoggingInterceptor.Level.BASIC))
-                .build();
-
-        return new Retrofit.Builder()
-                .baseUrl(url)
-                .addConverterFactory(GsonConverterFactory.create())
-                .client(okHttpClient)
-                .build()
-                .create(ServerService.class);
-    }
 }
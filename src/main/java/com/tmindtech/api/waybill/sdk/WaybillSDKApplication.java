@@ -153,7 +153,7 @@ public class WaybillSDKApplication implements PrintListener {
             }
         }
         //打印任务结束，关闭线程池
-        sdk.executorService.shutdown();
+        sdk.shutdown();
     }
 
     @Override
@@ -1,8 +1,10 @@
 package com.tmindtech.api.waybill.sdk;
 
+import com.tmindtech.api.waybill.sdk.http.RequestHedger;
 import com.tmindtech.api.waybill.sdk.model.Data;
 import com.tmindtech.api.waybill.sdk.model.ExampleModel;
 import com.tmindtech.api.waybill.sdk.model.ImageData;
+import com.tmindtech.api.waybill.sdk.model.LabelAddressData;
 import com.tmindtech.api.waybill.sdk.model.LabelData;
 import com.tmindtech.api.waybill.sdk.model.StatusModel;
 import okhttp3.RequestBody;
@@ -10,12 +12,15 @@ import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.http.Body;
 import retrofit2.http.GET;
+import retrofit2.http.Header;
 import retrofit2.http.Headers;
 import retrofit2.http.POST;
 import retrofit2.http.Query;
 
 /**
  * 这是一个接口, 方法将被自动实现
+ * 请求体的 Content-Type 由 MessageCodec.EncodedBody 给出, 不要在 @Headers 中声明,
+ * 否则 Retrofit 会包装请求体, 拦截器无法取得编码后的字节和消息主题
  */
 public interface WaybillService {
     /**
@@ -47,7 +52,7 @@ public interface WaybillService {
      * @param body RequestBody
      * @return 面单唯一码列表
      */
-    @Headers({"Content-Type: application/json", "Accept: application/json"})
+    @Headers("Accept: application/json")
     @POST("request")
     Call<Data> getLabelInfo(@Body RequestBody body);
 
@@ -57,19 +62,50 @@ public interface WaybillService {
      * @param body RequestBody
      * @return 面单唯一码列表
      */
-    @Headers({"Content-Type: application/json", "Accept: application/json"})
+    @Headers("Accept: application/json")
     @POST("request")
     Call<Data> splitPackage(@Body RequestBody body);
 
-    @Headers({"Content-Type: application/json", "Accept: application/json"})
+    @Headers("Accept: application/json")
     @POST("request")
     Call<LabelData> findPictureByPath(@Body RequestBody body);
 
-    @Headers({"Content-Type: application/json", "Accept: application/json"})
+    @Headers("Accept: application/json")
     @POST("request")
     Call<ImageData> getOrderPictureByPath(@Body RequestBody body);
 
-    @Headers({"Content-Type: application/json", "Accept: application/json"})
+    /**
+     * 发往指定服务器的查询, 用于对冲请求
+     *
+     * @param endpoint 目标服务器根地址, 为 null 时按地址表正常选择
+     * @param body     RequestBody
+     * @return 面单图片地址
+     */
+    @Headers("Accept: application/json")
+    @POST("request")
+    Call<ImageData> getOrderPictureByPath(@Header(RequestHedger.PIN_HEADER) String endpoint, @Body RequestBody body);
+
+    /**
+     * 根据唯一码列表批量查询面单图片地址
+     *
+     * @param body RequestBody
+     * @return 每个唯一码的图片地址, 服务端不支持时返回404
+     */
+    @Headers("Accept: application/json")
+    @POST("request")
+    Call<LabelAddressData> getOrderPicturesByPath(@Body RequestBody body);
+
+    /**
+     * 根据唯一码列表批量查询面单信息
+     *
+     * @param body RequestBody
+     * @return 面单信息列表, 服务端不支持时返回404
+     */
+    @Headers("Accept: application/json")
+    @POST("request")
+    Call<Data> findPicturesByPath(@Body RequestBody body);
+
+    @Headers("Accept: application/json")
     @POST("request")
     Call<ResponseBody> savePrintResultLog(@Body RequestBody body);
 }
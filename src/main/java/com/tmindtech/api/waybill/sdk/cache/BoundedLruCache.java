@@ -0,0 +1,83 @@
+package com.tmindtech.api.waybill.sdk.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * 按权重(通常是字节数)限制容量的 LRU 缓存, 超出容量时淘汰最久未访问的条目
+ * 单个条目的权重超过总容量时不会被缓存
+ */
+public class BoundedLruCache<K, V> {
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    public BoundedLruCache(long maxWeight, ToLongFunction<V> weigher) {
+        if (maxWeight < 1) {
+            throw new IllegalArgumentException("maxWeight must be positive");
+        }
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    public synchronized V get(K key) {
+        V value = entries.get(key);
+        if (value == null) {
+            missCount++;
+        } else {
+            hitCount++;
+        }
+        return value;
+    }
+
+    public synchronized void put(K key, V value) {
+        long valueWeight = weigher.applyAsLong(value);
+        if (valueWeight > maxWeight) {
+            remove(key);
+            return;
+        }
+        V previous = entries.put(key, value);
+        if (previous != null) {
+            weight -= weigher.applyAsLong(previous);
+        }
+        weight += valueWeight;
+        Iterator<Map.Entry<K, V>> it = entries.entrySet().iterator();
+        while (weight > maxWeight && it.hasNext()) {
+            V eldest = it.next().getValue();
+            it.remove();
+            weight -= weigher.applyAsLong(eldest);
+            evictionCount++;
+        }
+    }
+
+    public synchronized V remove(K key) {
+        V previous = entries.remove(key);
+        if (previous != null) {
+            weight -= weigher.applyAsLong(previous);
+        }
+        return previous;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    /**
+     * @return 当前所有条目的权重之和
+     */
+    public synchronized long weight() {
+        return weight;
+    }
+
+    public synchronized CacheStats getStats() {
+        return new CacheStats(hitCount, missCount, evictionCount, entries.size());
+    }
+}
@@ -0,0 +1,36 @@
+package com.tmindtech.api.waybill.sdk.cache;
+
+/**
+ * 缓存命中统计快照
+ */
+public class CacheStats {
+    public final long hitCount; // 命中次数
+
+    public final long missCount; // 未命中次数
+
+    public final long evictionCount; // 因容量或过期被淘汰的条目数
+
+    public final long size; // 当前条目数
+
+    public CacheStats(long hitCount, long missCount, long evictionCount, long size) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.size = size;
+    }
+
+    public double hitRate() {
+        long total = hitCount + missCount;
+        return total == 0 ? 1.0 : (double) hitCount / total;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{" +
+                "hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                ", evictionCount=" + evictionCount +
+                ", size=" + size +
+                '}';
+    }
+}
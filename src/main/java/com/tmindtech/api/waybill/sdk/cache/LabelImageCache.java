@@ -0,0 +1,191 @@
+package com.tmindtech.api.waybill.sdk.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 面单图片两级缓存, 以唯一码为键, 同时记录图片地址, 地址变化(重新生成面单)时视为未命中
+ * 一级为堆内按字节数限制的 LRU 缓存, 二级为内存映射的段文件, 进程重启后仍可命中
+ * 磁盘目录在第一次使用时才打开, 打开失败时只使用堆内缓存
+ */
+public class LabelImageCache {
+    public static final long DEFAULT_HEAP_BYTES = 64L << 20;
+    public static final long DEFAULT_DISK_BYTES = 512L << 20;
+    public static final File DEFAULT_DIRECTORY = new File(System.getProperty("user.home"), ".waybill-sdk/label-images");
+
+    private final BoundedLruCache<String, CachedImage> heap;
+    private final File directory;
+    private final long diskBytes;
+    private SegmentFileStore disk;
+    private boolean diskOpened;
+
+    private final AtomicLong diskHitCount = new AtomicLong();
+    private final AtomicLong loadCount = new AtomicLong();
+
+    public LabelImageCache() {
+        this(DEFAULT_DIRECTORY, DEFAULT_HEAP_BYTES, DEFAULT_DISK_BYTES);
+    }
+
+    /**
+     * @param directory 磁盘缓存目录, 为null时不使用磁盘缓存
+     * @param heapBytes 堆内缓存最大字节数
+     * @param diskBytes 磁盘缓存最大字节数
+     */
+    public LabelImageCache(File directory, long heapBytes, long diskBytes) {
+        this.heap = new BoundedLruCache<>(heapBytes, image -> image.data.length);
+        this.directory = directory;
+        this.diskBytes = diskBytes;
+    }
+
+    /**
+     * 读取某个唯一码最近一次缓存的图片, 不关心图片地址, 用于重打
+     *
+     * @param uuidCode 面单唯一码
+     * @return 缓存的图片, 不存在时为null
+     */
+    public CachedImage get(String uuidCode) {
+        CachedImage image = heap.get(uuidCode);
+        if (image != null) {
+            return image;
+        }
+        SegmentFileStore store = disk();
+        if (store == null) {
+            return null;
+        }
+        SegmentFileStore.Record record = store.get(uuidCode);
+        if (record == null) {
+            return null;
+        }
+        diskHitCount.incrementAndGet();
+        image = new CachedImage(record.version, record.data);
+        heap.put(uuidCode, image);
+        return image;
+    }
+
+    /**
+     * 读取缓存的图片, 只有图片地址与当前地址相同时才返回, 用于打印前确认不是已重新生成的旧面单
+     *
+     * @param uuidCode 面单唯一码
+     * @param imageUrl 当前的面单图片地址, 为null时视为未命中
+     * @return 缓存的图片, 不存在或地址不同时为null
+     */
+    public CachedImage get(String uuidCode, String imageUrl) {
+        if (imageUrl == null) {
+            return null;
+        }
+        CachedImage image = get(uuidCode);
+        return image != null && imageUrl.equals(image.imageUrl) ? image : null;
+    }
+
+    /**
+     * 读取图片, 缓存中没有该唯一码或图片地址不同时通过 loader 下载并写入两级缓存
+     *
+     * @param uuidCode 面单唯一码
+     * @param imageUrl 面单图片地址
+     * @param loader   下载方法, 返回null表示下载失败, 不会写入缓存
+     * @return 图片字节, 下载失败时为null
+     */
+    public byte[] get(String uuidCode, String imageUrl, Supplier<byte[]> loader) {
+        CachedImage image = get(uuidCode);
+        if (image != null && Objects.equals(image.imageUrl, imageUrl)) {
+            return image.data;
+        }
+        if (image != null) {
+            //面单已重新生成, 旧图片不再使用
+            invalidate(uuidCode);
+        }
+        byte[] data = loader.get();
+        if (data == null) {
+            return null;
+        }
+        loadCount.incrementAndGet();
+        put(uuidCode, imageUrl, data);
+        return data;
+    }
+
+    public void put(String uuidCode, String imageUrl, byte[] data) {
+        heap.put(uuidCode, new CachedImage(imageUrl, data));
+        SegmentFileStore store = disk();
+        if (store != null) {
+            try {
+                store.put(uuidCode, imageUrl == null ? "" : imageUrl, data);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    public void invalidate(String uuidCode) {
+        heap.remove(uuidCode);
+        SegmentFileStore store = disk();
+        if (store != null) {
+            try {
+                store.remove(uuidCode);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @return 堆内缓存的命中统计
+     */
+    public CacheStats getHeapStats() {
+        return heap.getStats();
+    }
+
+    /**
+     * @return 堆内未命中但磁盘命中的次数
+     */
+    public long getDiskHitCount() {
+        return diskHitCount.get();
+    }
+
+    /**
+     * @return 实际通过网络下载的次数
+     */
+    public long getLoadCount() {
+        return loadCount.get();
+    }
+
+    public synchronized void close() {
+        if (disk != null) {
+            try {
+                disk.close();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+            disk = null;
+        }
+    }
+
+    private synchronized SegmentFileStore disk() {
+        if (!diskOpened) {
+            diskOpened = true;
+            if (directory != null) {
+                try {
+                    disk = new SegmentFileStore(directory, diskBytes);
+                } catch (IOException | RuntimeException ex) {
+                    ex.printStackTrace();
+                }
+            }
+        }
+        return disk;
+    }
+
+    /**
+     * 缓存的图片及其来源地址
+     */
+    public static class CachedImage {
+        public final String imageUrl;
+        public final byte[] data;
+
+        public CachedImage(String imageUrl, byte[] data) {
+            this.imageUrl = imageUrl;
+            this.data = data;
+        }
+    }
+}
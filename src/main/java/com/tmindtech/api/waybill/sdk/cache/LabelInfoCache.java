@@ -0,0 +1,211 @@
+package com.tmindtech.api.waybill.sdk.cache;
+
+import com.tmindtech.api.waybill.sdk.model.LabelInfo;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 面单信息缓存, 以唯一码为键, 按容量(LRU)和存活时间淘汰
+ * 同一唯一码的并发未命中只会触发一次加载, 其余调用者等待同一个加载结果
+ * 另外维护批次号到唯一码的索引, 分包重新下单后可以整批失效旧面单
+ */
+public class LabelInfoCache {
+    public static final int DEFAULT_MAX_SIZE = 4096;
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private final int maxSize;
+    private final long ttlMillis;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Set<String>> orderIndex = new LinkedHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<LabelInfo>> loading = new ConcurrentHashMap<>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    public LabelInfoCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TTL_MILLIS);
+    }
+
+    public LabelInfoCache(int maxSize, long ttlMillis) {
+        if (maxSize < 1 || ttlMillis < 1) {
+            throw new IllegalArgumentException("maxSize and ttlMillis must be positive");
+        }
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * 获取面单信息, 未命中时通过 loader 加载并写入缓存
+     *
+     * @param uuidCode 面单唯一码
+     * @param loader   未命中时的加载方法, 抛出的异常会原样传给所有等待者
+     * @return 面单信息
+     */
+    public LabelInfo get(String uuidCode, Function<String, LabelInfo> loader) {
+        LabelInfo labelInfo = getIfPresent(uuidCode);
+        if (labelInfo != null) {
+            return labelInfo;
+        }
+        CompletableFuture<LabelInfo> created = new CompletableFuture<>();
+        CompletableFuture<LabelInfo> existing = loading.putIfAbsent(uuidCode, created);
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException ex) {
+                if (ex.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) ex.getCause();
+                }
+                throw ex;
+            }
+        }
+        try {
+            labelInfo = loader.apply(uuidCode);
+            put(labelInfo);
+            created.complete(labelInfo);
+            return labelInfo;
+        } catch (RuntimeException ex) {
+            created.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            loading.remove(uuidCode, created);
+        }
+    }
+
+    /**
+     * 只读取缓存, 不触发加载
+     *
+     * @param uuidCode 面单唯一码
+     * @return 缓存中的面单信息, 不存在或已过期时为null
+     */
+    public synchronized LabelInfo getIfPresent(String uuidCode) {
+        LabelInfo labelInfo = peek(uuidCode);
+        if (labelInfo == null) {
+            missCount.incrementAndGet();
+        } else {
+            hitCount.incrementAndGet();
+        }
+        return labelInfo;
+    }
+
+    /**
+     * 同 getIfPresent, 但不计入命中统计, 用于打印流程内部判断是否需要查询
+     *
+     * @param uuidCode 面单唯一码
+     * @return 缓存中的面单信息, 不存在或已过期时为null
+     */
+    public synchronized LabelInfo peek(String uuidCode) {
+        Entry entry = entries.get(uuidCode);
+        if (entry != null && entry.expireAt < System.currentTimeMillis()) {
+            remove(uuidCode);
+            evictionCount.incrementAndGet();
+            entry = null;
+        }
+        return entry == null ? null : entry.labelInfo;
+    }
+
+    public synchronized void put(LabelInfo labelInfo) {
+        if (labelInfo == null || labelInfo.uuidCode == null) {
+            return;
+        }
+        Entry previous = entries.put(labelInfo.uuidCode,
+                new Entry(labelInfo, System.currentTimeMillis() + ttlMillis));
+        //服务端返回的面单信息不带图片地址, 保留之前查询到的地址
+        if (labelInfo.data == null && previous != null) {
+            labelInfo.data = previous.labelInfo.data;
+        }
+        if (previous != null && !Objects.equals(previous.labelInfo.saleOrder, labelInfo.saleOrder)) {
+            unindex(previous.labelInfo);
+        }
+        if (labelInfo.saleOrder != null) {
+            orderIndex.computeIfAbsent(labelInfo.saleOrder, key -> new LinkedHashSet<>()).add(labelInfo.uuidCode);
+        }
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (entries.size() > maxSize && it.hasNext()) {
+            Entry eldest = it.next().getValue();
+            it.remove();
+            unindex(eldest.labelInfo);
+            evictionCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * 批量写入, 用于批次查询、分包等已经返回完整面单信息的接口
+     */
+    public void putAll(Collection<LabelInfo> labelInfos) {
+        if (labelInfos == null) {
+            return;
+        }
+        labelInfos.forEach(this::put);
+    }
+
+    public synchronized void invalidate(String uuidCode) {
+        remove(uuidCode);
+    }
+
+    /**
+     * 失效某个批次下的所有面单信息
+     *
+     * @param saleOrder 批次号
+     * @return 被失效的唯一码
+     */
+    public synchronized Set<String> invalidateSaleOrder(String saleOrder) {
+        Set<String> uuidCodes = orderIndex.remove(saleOrder);
+        if (uuidCodes == null) {
+            return Collections.emptySet();
+        }
+        uuidCodes.forEach(entries::remove);
+        return uuidCodes;
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+        orderIndex.clear();
+    }
+
+    public synchronized CacheStats getStats() {
+        return new CacheStats(hitCount.get(), missCount.get(), evictionCount.get(), entries.size());
+    }
+
+    private void remove(String uuidCode) {
+        Entry entry = entries.remove(uuidCode);
+        if (entry != null) {
+            unindex(entry.labelInfo);
+        }
+    }
+
+    private void unindex(LabelInfo labelInfo) {
+        if (labelInfo.saleOrder == null) {
+            return;
+        }
+        Set<String> uuidCodes = orderIndex.get(labelInfo.saleOrder);
+        if (uuidCodes != null) {
+            uuidCodes.remove(labelInfo.uuidCode);
+            if (uuidCodes.isEmpty()) {
+                orderIndex.remove(labelInfo.saleOrder);
+            }
+        }
+    }
+
+    private static class Entry {
+        final LabelInfo labelInfo;
+        final long expireAt;
+
+        Entry(LabelInfo labelInfo, long expireAt) {
+            this.labelInfo = labelInfo;
+            this.expireAt = expireAt;
+        }
+    }
+}
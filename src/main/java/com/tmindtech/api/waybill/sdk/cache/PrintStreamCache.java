@@ -0,0 +1,189 @@
+package com.tmindtech.api.waybill.sdk.cache;
+
+import com.tmindtech.api.waybill.sdk.model.PrintImageInfo;
+import java.awt.image.DataBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+import javax.print.attribute.standard.PrinterResolution;
+
+/**
+ * 转换后打印图片的缓存, 以(原图内容摘要, 打印机分辨率, 分图份数)为键
+ * 同型号打印机上重打或打印内容相同的面单时, 直接复用转换结果而不再走图片处理流程
+ * 缓存两种结果, 共用同一个容量: 按输出格式编码好的各页(按字节数计算), 以及直接提交图片(PRINTABLE)时已解码的图片(按像素数据占用的字节数计算)
+ * 缓存中的图片和编码结果只能读取不能修改
+ */
+public class PrintStreamCache {
+    public static final long DEFAULT_MAX_BYTES = 128L << 20;
+
+    /**
+     * png 编码结果的格式标识, 热敏打印机以其 RawPrintProfile 作为格式标识
+     */
+    public static final String PNG_FORMAT = "png";
+
+    private final BoundedLruCache<Key, Object> cache;
+
+    public PrintStreamCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param maxBytes 缓存的转换结果最大字节数
+     */
+    public PrintStreamCache(long maxBytes) {
+        this.cache = new BoundedLruCache<>(maxBytes, PrintStreamCache::weigh);
+    }
+
+    /**
+     * 计算缓存键, 同一张面单的多次查询可以复用, 避免重复计算摘要
+     *
+     * @param source     原始图片字节
+     * @param resolution 目标打印机分辨率
+     * @param pageCount  面单图片需要分图打印份数
+     * @return 缓存键
+     */
+    public static Key key(byte[] source, PrinterResolution resolution, int pageCount) {
+        return new Key(sha256(source), resolution.getCrossFeedResolution(PrinterResolution.DPI),
+                resolution.getFeedResolution(PrinterResolution.DPI), pageCount, null);
+    }
+
+    /**
+     * 获取转换后的打印图片, 未命中时调用 converter 转换并缓存结果
+     *
+     * @param source     原始图片字节
+     * @param resolution 目标打印机分辨率
+     * @param pageCount  面单图片需要分图打印份数
+     * @param converter  转换方法, 返回null表示转换失败, 不会写入缓存
+     * @return 转换结果
+     */
+    public PrintImageInfo get(byte[] source, PrinterResolution resolution, int pageCount,
+                              Supplier<PrintImageInfo> converter) {
+        return get(key(source, resolution, pageCount), converter);
+    }
+
+    /**
+     * 同 get(byte[], PrinterResolution, int, Supplier), 使用已计算好的缓存键
+     */
+    public PrintImageInfo get(Key key, Supplier<PrintImageInfo> converter) {
+        PrintImageInfo imageInfo = (PrintImageInfo) cache.get(key);
+        if (imageInfo == null) {
+            imageInfo = converter.get();
+            if (imageInfo != null) {
+                cache.put(key, imageInfo);
+            }
+        }
+        return imageInfo;
+    }
+
+    /**
+     * 读取编码好的各页
+     *
+     * @param key    缓存键
+     * @param format 输出格式, PNG_FORMAT 或热敏打印机的 RawPrintProfile
+     * @return 编码结果, 未命中时为null
+     */
+    public EncodedPages getEncoded(Key key, Object format) {
+        return (EncodedPages) cache.get(key.withFormat(format));
+    }
+
+    /**
+     * 写入编码好的各页, 应在所有页都编码成功后调用
+     */
+    public void putEncoded(Key key, Object format, EncodedPages pages) {
+        cache.put(key.withFormat(format), pages);
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    public CacheStats getStats() {
+        return cache.getStats();
+    }
+
+    private static long weigh(Object value) {
+        if (value instanceof EncodedPages) {
+            return ((EncodedPages) value).bytes();
+        }
+        DataBuffer buffer = ((PrintImageInfo) value).image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * 一张面单按某种输出格式编码好的各页, 以及每页的打印尺寸
+     */
+    public static class EncodedPages {
+        public final List<byte[]> pages;
+
+        public final float width; // 每一页的打印宽度(毫米)
+
+        public final float height; // 每一页的打印高度(毫米)
+
+        public EncodedPages(List<byte[]> pages, float width, float height) {
+            this.pages = Collections.unmodifiableList(pages);
+            this.width = width;
+            this.height = height;
+        }
+
+        long bytes() {
+            return pages.stream().mapToLong(page -> page.length).sum();
+        }
+    }
+
+    /**
+     * 缓存键, format 为null时对应已解码的图片
+     */
+    public static class Key {
+        final byte[] digest;
+        final int crossFeedDpi;
+        final int feedDpi;
+        final int pageCount;
+        final Object format;
+        final int hash;
+
+        Key(byte[] digest, int crossFeedDpi, int feedDpi, int pageCount, Object format) {
+            this.digest = digest;
+            this.crossFeedDpi = crossFeedDpi;
+            this.feedDpi = feedDpi;
+            this.pageCount = pageCount;
+            this.format = format;
+            this.hash = 31 * (31 * (31 * (31 * Arrays.hashCode(digest) + crossFeedDpi) + feedDpi) + pageCount)
+                    + Objects.hashCode(format);
+        }
+
+        Key withFormat(Object format) {
+            return new Key(digest, crossFeedDpi, feedDpi, pageCount, format);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return crossFeedDpi == key.crossFeedDpi && feedDpi == key.feedDpi
+                    && pageCount == key.pageCount && Arrays.equals(digest, key.digest)
+                    && Objects.equals(format, key.format);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
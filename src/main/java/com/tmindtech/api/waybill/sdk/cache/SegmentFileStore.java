@@ -0,0 +1,467 @@
+package com.tmindtech.api.waybill.sdk.cache;
+
+import com.tmindtech.api.waybill.sdk.util.NamedThreadFactory;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * 追加写的段文件存储, 读取通过按固定大小窗口的内存映射完成, 进程重启后数据仍然可用
+ * 记录格式: magic | keyLen | versionLen | dataLen | crc32(data) | key | version | data
+ * 删除与淘汰追加一条只有 key 的墓碑记录(magic 不同), 重启扫描时据此删除, 不会恢复已删除的记录
+ * 同一个 key 重复写入或被淘汰后旧记录成为垃圾, 垃圾超过有效数据量时在后台线程中压缩到新一代段文件
+ * 新一代段文件先写入临时文件并刷盘, 再原子地重命名, 压缩中途崩溃只会留下临时文件, 不影响当前一代
+ */
+public class SegmentFileStore implements Closeable {
+    private static final int MAGIC = 0x57424c53;
+    private static final int TOMBSTONE_MAGIC = 0x57424c54;
+    private static final int HEADER_SIZE = 20;
+    private static final long MIN_COMPACT_BYTES = 4L << 20;
+    private static final long MAX_BYTES = 1L << 30;
+    private static final String FILE_PREFIX = "labels-";
+    private static final String FILE_SUFFIX = ".seg";
+    private static final String TEMP_SUFFIX = ".tmp";
+    public static final int DEFAULT_WINDOW_BYTES = 64 << 20;
+
+    private final File directory;
+    private final long maxBytes;
+    private final int windowBytes;
+    private final ExecutorService compactor = new ThreadPoolExecutor(0, 1, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), new NamedThreadFactory("waybill-segment-compact"));
+
+    private LinkedHashMap<String, Location> index = new LinkedHashMap<>();
+    private FileChannel channel;
+    private final Map<Long, MappedByteBuffer> windows = new HashMap<>();
+    private long generation;
+    private long fileSize;
+    private long liveBytes;
+    private boolean compacting;
+
+    /**
+     * 打开(或创建)目录下最新一代的段文件, 并扫描重建索引, 文件末尾不完整的记录会被截断
+     *
+     * @param directory 段文件所在目录
+     * @param maxBytes  有效数据的最大字节数, 超出后淘汰最早写入的记录
+     */
+    public SegmentFileStore(File directory, long maxBytes) throws IOException {
+        this(directory, maxBytes, DEFAULT_WINDOW_BYTES);
+    }
+
+    /**
+     * @param windowBytes 每个映射窗口的字节数, 跨越窗口边界的记录直接从文件读取
+     */
+    public SegmentFileStore(File directory, long maxBytes, int windowBytes) throws IOException {
+        if (maxBytes < 1 || maxBytes > MAX_BYTES) {
+            throw new IllegalArgumentException("maxBytes must be between 1 and " + MAX_BYTES);
+        }
+        if (windowBytes < 1) {
+            throw new IllegalArgumentException("windowBytes must be positive");
+        }
+        this.windowBytes = windowBytes;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("can not create directory " + directory);
+        }
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        File[] temps = directory.listFiles((dir, name) -> name.startsWith(FILE_PREFIX) && name.endsWith(TEMP_SUFFIX));
+        if (temps != null) {
+            for (File temp : temps) {
+                //压缩中途退出留下的不完整文件
+                temp.delete();
+            }
+        }
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX));
+        generation = 1;
+        if (files != null) {
+            for (File file : files) {
+                generation = Math.max(generation, parseGeneration(file));
+            }
+            for (File file : files) {
+                if (parseGeneration(file) != generation) {
+                    //上一次压缩后未能删除的旧文件
+                    file.delete();
+                }
+            }
+        }
+        channel = FileChannel.open(segmentFile(generation).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        scan();
+    }
+
+    public synchronized Record get(String key) {
+        Location location = index.get(key);
+        if (location == null) {
+            return null;
+        }
+        byte[] version = new byte[location.versionLength];
+        byte[] data = new byte[location.dataLength];
+        try {
+            ByteBuffer buffer = read(location.offset + HEADER_SIZE + location.keyLength,
+                    location.versionLength + location.dataLength);
+            buffer.get(version);
+            buffer.get(data);
+            if (crc32(data) != location.crc) {
+                remove(key);
+                return null;
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            return null;
+        }
+        return new Record(new String(version, StandardCharsets.UTF_8), data);
+    }
+
+    public synchronized void put(String key, String version, byte[] data) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] versionBytes = version.getBytes(StandardCharsets.UTF_8);
+        int crc = crc32(data);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(keyBytes.length).putInt(versionBytes.length).putInt(data.length).putInt(crc);
+        header.flip();
+        ByteBuffer[] buffers = {header, ByteBuffer.wrap(keyBytes), ByteBuffer.wrap(versionBytes), ByteBuffer.wrap(data)};
+        Location location = new Location(fileSize, keyBytes.length, versionBytes.length, data.length, crc);
+        append(buffers, location.length);
+        drop(key);
+        index.put(key, location);
+        liveBytes += location.length;
+        evict();
+        maybeCompact();
+    }
+
+    /**
+     * 删除记录并写入墓碑, 重启后不会恢复
+     */
+    public synchronized void remove(String key) throws IOException {
+        if (drop(key)) {
+            appendTombstone(key);
+            maybeCompact();
+        }
+    }
+
+    public synchronized boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * @return 段文件当前大小(包含尚未压缩的垃圾数据)
+     */
+    public synchronized long fileSize() {
+        return fileSize;
+    }
+
+    /**
+     * @return 有效记录占用的字节数
+     */
+    public synchronized long liveBytes() {
+        return liveBytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            windows.clear();
+            channel.force(true);
+            channel.close();
+        }
+    }
+
+    private void scan() throws IOException {
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (position + HEADER_SIZE <= size) {
+            header.clear();
+            readFully(channel, header, position);
+            header.flip();
+            int magic = header.getInt();
+            if (magic != MAGIC && magic != TOMBSTONE_MAGIC) {
+                break;
+            }
+            int keyLength = header.getInt();
+            int versionLength = header.getInt();
+            int dataLength = header.getInt();
+            int crc = header.getInt();
+            if (keyLength < 0 || versionLength < 0 || dataLength < 0) {
+                break;
+            }
+            Location location = new Location(position, keyLength, versionLength, dataLength, crc);
+            if (position + location.length > size) {
+                break;
+            }
+            ByteBuffer key = ByteBuffer.allocate(keyLength);
+            readFully(channel, key, position + HEADER_SIZE);
+            String keyString = new String(key.array(), StandardCharsets.UTF_8);
+            drop(keyString);
+            if (magic == MAGIC) {
+                index.put(keyString, location);
+                liveBytes += location.length;
+            }
+            position += location.length;
+        }
+        if (position < size) {
+            channel.truncate(position);
+        }
+        fileSize = position;
+        //maxBytes 可能比上次运行时小
+        evict();
+    }
+
+    /**
+     * 淘汰最早写入的记录直到有效数据不超过 maxBytes, 被淘汰的记录写入墓碑
+     */
+    private void evict() throws IOException {
+        Iterator<Map.Entry<String, Location>> it = index.entrySet().iterator();
+        while (liveBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Location> entry = it.next();
+            liveBytes -= entry.getValue().length;
+            it.remove();
+            appendTombstone(entry.getKey());
+        }
+    }
+
+    /**
+     * 只从索引中删除
+     */
+    private boolean drop(String key) {
+        Location location = index.remove(key);
+        if (location == null) {
+            return false;
+        }
+        liveBytes -= location.length;
+        return true;
+    }
+
+    private void appendTombstone(String key) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(TOMBSTONE_MAGIC).putInt(keyBytes.length).putInt(0).putInt(0).putInt(0);
+        header.flip();
+        append(new ByteBuffer[]{header, ByteBuffer.wrap(keyBytes)}, HEADER_SIZE + keyBytes.length);
+    }
+
+    private void append(ByteBuffer[] buffers, long length) throws IOException {
+        channel.position(fileSize);
+        long remaining = length;
+        while (remaining > 0) {
+            remaining -= channel.write(buffers);
+        }
+        fileSize += length;
+    }
+
+    /**
+     * 读取文件中的一段, 在同一个映射窗口内时从映射读取, 否则直接读文件
+     */
+    private ByteBuffer read(long position, int length) throws IOException {
+        long window = position / windowBytes;
+        long windowStart = window * windowBytes;
+        if (position + length > windowStart + windowBytes) {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            readFully(channel, buffer, position);
+            buffer.flip();
+            return buffer;
+        }
+        MappedByteBuffer mapped = windows.get(window);
+        if (mapped == null || windowStart + mapped.capacity() < position + length) {
+            //只有最后一个窗口会随文件增长重新映射
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                    Math.min(windowBytes, fileSize - windowStart));
+            windows.put(window, mapped);
+        }
+        ByteBuffer buffer = mapped.duplicate();
+        buffer.position((int) (position - windowStart));
+        buffer.limit(buffer.position() + length);
+        return buffer;
+    }
+
+    private void maybeCompact() {
+        long garbage = fileSize - liveBytes;
+        if (!compacting && garbage > MIN_COMPACT_BYTES && garbage > liveBytes) {
+            compacting = true;
+            compactor.execute(this::compact);
+        }
+    }
+
+    /**
+     * 压缩分两步: 先在锁外复制快照中的有效记录, 再在锁内补齐快照之后追加的记录并切换到新文件
+     * 新文件刷盘后才重命名为下一代段文件, 重启时只会看到完整的段文件
+     */
+    private void compact() {
+        Map<String, Location> snapshot;
+        FileChannel source;
+        long nextGeneration;
+        synchronized (this) {
+            snapshot = new LinkedHashMap<>(index);
+            source = channel;
+            nextGeneration = generation + 1;
+        }
+        File target = segmentFile(nextGeneration);
+        File temp = new File(directory, target.getName() + TEMP_SUFFIX);
+        FileChannel output = null;
+        boolean switched = false;
+        try {
+            output = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Map<String, Location> moved = new HashMap<>();
+            long position = 0;
+            for (Map.Entry<String, Location> entry : snapshot.entrySet()) {
+                Location location = entry.getValue();
+                transfer(source, location, output);
+                moved.put(entry.getKey(), location.movedTo(position));
+                position += location.length;
+            }
+            synchronized (this) {
+                LinkedHashMap<String, Location> compacted = new LinkedHashMap<>();
+                for (Map.Entry<String, Location> entry : index.entrySet()) {
+                    Location location = entry.getValue();
+                    if (snapshot.get(entry.getKey()) == location) {
+                        compacted.put(entry.getKey(), moved.get(entry.getKey()));
+                    } else {
+                        transfer(source, location, output);
+                        compacted.put(entry.getKey(), location.movedTo(position));
+                        position += location.length;
+                    }
+                }
+                output.force(true);
+                output.close();
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                output = null;
+                syncDirectory();
+                FileChannel next = FileChannel.open(target.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                index = compacted;
+                channel = next;
+                fileSize = position;
+                windows.clear();
+                generation = nextGeneration;
+                switched = true;
+                source.close();
+                File previous = segmentFile(nextGeneration - 1);
+                if (!previous.delete()) {
+                    previous.deleteOnExit();
+                }
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException ignore) {
+                }
+            }
+            temp.delete();
+            if (!switched) {
+                //重命名后未能切换时仍使用当前一代, 不能让重启时选中缺少之后写入的新文件
+                target.delete();
+            }
+        } finally {
+            synchronized (this) {
+                compacting = false;
+            }
+        }
+    }
+
+    /**
+     * 刷新目录, 使重命名在删除旧文件之前落盘; 不支持打开目录的系统(Windows)上忽略
+     */
+    private void syncDirectory() {
+        try (FileChannel dir = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException ignore) {
+        }
+    }
+
+    private static void transfer(FileChannel source, Location location, FileChannel output) throws IOException {
+        long transferred = 0;
+        while (transferred < location.length) {
+            transferred += source.transferTo(location.offset + transferred, location.length - transferred, output);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("unexpected end of segment file");
+            }
+        }
+    }
+
+    private static int crc32(byte[] data) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(data, 0, data.length);
+        return (int) crc32.getValue();
+    }
+
+    private File segmentFile(long generation) {
+        return new File(directory, String.format("%s%06d%s", FILE_PREFIX, generation, FILE_SUFFIX));
+    }
+
+    private static long parseGeneration(File file) {
+        String name = file.getName();
+        try {
+            return Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    /**
+     * 读取到的一条记录
+     */
+    public static class Record {
+        public final String version;
+        public final byte[] data;
+
+        public Record(String version, byte[] data) {
+            this.version = version;
+            this.data = data;
+        }
+    }
+
+    private static class Location {
+        final long offset;
+        final int keyLength;
+        final int versionLength;
+        final int dataLength;
+        final int crc;
+        final long length;
+
+        Location(long offset, int keyLength, int versionLength, int dataLength, int crc) {
+            this.offset = offset;
+            this.keyLength = keyLength;
+            this.versionLength = versionLength;
+            this.dataLength = dataLength;
+            this.crc = crc;
+            this.length = (long) HEADER_SIZE + keyLength + versionLength + dataLength;
+        }
+
+        Location movedTo(long offset) {
+            return new Location(offset, keyLength, versionLength, dataLength, crc);
+        }
+    }
+}
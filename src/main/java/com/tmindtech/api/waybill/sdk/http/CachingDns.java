@@ -0,0 +1,58 @@
+package com.tmindtech.api.waybill.sdk.http;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import okhttp3.Dns;
+
+/**
+ * 带缓存的域名解析, 缓存有效期内不再解析;
+ * 过期后重新解析失败时继续使用上一次的结果, 避免 DNS 短暂故障导致打印中断
+ */
+public class CachingDns implements Dns {
+    public static final long DEFAULT_TTL_MILLIS = 60000;
+
+    private final Dns delegate;
+    private final long ttlMillis;
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+
+    public CachingDns() {
+        this(Dns.SYSTEM, DEFAULT_TTL_MILLIS);
+    }
+
+    public CachingDns(Dns delegate, long ttlMillis) {
+        this.delegate = delegate;
+        this.ttlMillis = ttlMillis;
+    }
+
+    @Override
+    public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+        Entry entry = cache.get(hostname);
+        long now = System.currentTimeMillis();
+        if (entry != null && entry.expireTime > now) {
+            return entry.addresses;
+        }
+        try {
+            List<InetAddress> addresses = delegate.lookup(hostname);
+            cache.put(hostname, new Entry(addresses, now + ttlMillis));
+            return addresses;
+        } catch (UnknownHostException ex) {
+            if (entry != null) {
+                return entry.addresses;
+            }
+            throw ex;
+        }
+    }
+
+    private static class Entry {
+        final List<InetAddress> addresses;
+        final long expireTime;
+
+        Entry(List<InetAddress> addresses, long expireTime) {
+            this.addresses = addresses;
+            this.expireTime = expireTime;
+        }
+    }
+}
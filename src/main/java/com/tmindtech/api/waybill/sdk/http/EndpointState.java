@@ -0,0 +1,21 @@
+package com.tmindtech.api.waybill.sdk.http;
+
+/**
+ * 服务地址的熔断状态
+ */
+public enum EndpointState {
+    /**
+     * 正常, 参与请求选择
+     */
+    CLOSED,
+
+    /**
+     * 已熔断, 冷却时间内不再发送请求
+     */
+    OPEN,
+
+    /**
+     * 冷却结束, 放行一次试探(本地服务为健康检查, 其余为一次真实请求), 成功后恢复, 失败后重新熔断
+     */
+    HALF_OPEN
+}
@@ -0,0 +1,311 @@
+package com.tmindtech.api.waybill.sdk.http;
+
+import com.tmindtech.api.waybill.sdk.Constants;
+import com.tmindtech.api.waybill.sdk.HealthListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import okhttp3.HttpUrl;
+
+/**
+ * 面单服务的可用地址表, 每个请求发出时按此表选择目标地址
+ * 选择顺序: 可用的本地服务(按延迟的指数加权移动平均从低到高), 然后是初始化时传入的服务器地址,
+ * 最后是云端服务器 Constants.CLOUD_SERVER_ADDRESS
+ * 表的内容随健康检查和实际请求的结果实时更新, 下一个请求立即生效, 无需重建客户端
+ * 每个地址带有熔断器: 连续失败或最近错误率过高时熔断, 冷却后半开试探, 试探成功才恢复
+ */
+public class EndpointTable {
+    /**
+     * Retrofit 使用的占位根地址, 实际地址由 HotSwitchInterceptor 按此表替换
+     */
+    public static final String ROUTED_BASE_URL = "http://waybill-endpoint/";
+
+    // 新样本的权重
+    private static final double EWMA_ALPHA = 0.3;
+    // 连续失败多少次后熔断
+    private static final int FAILURE_THRESHOLD = 3;
+    // 最近多少次请求结果参与错误率统计
+    private static final int OUTCOME_WINDOW = 20;
+    // 错误率统计至少需要的样本数
+    private static final int MIN_OUTCOMES = 10;
+    private static final double MAX_ERROR_RATE = 0.5;
+    // 保留最近多少个延迟样本计算分位数
+    private static final int LATENCY_WINDOW = 128;
+    private static final long MIN_COOLDOWN_MILLIS = 1000;
+    private static final long MAX_COOLDOWN_MILLIS = 30000;
+    // 试探请求没有结果(如被取消)时, 超过此时间后允许下一个试探
+    private static final long TRIAL_TIMEOUT_MILLIS = 30000;
+
+    private final List<Endpoint> locals = new CopyOnWriteArrayList<>();
+    private final List<HealthListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile Endpoint primary;
+    private final Endpoint cloud = new Endpoint(Constants.CLOUD_SERVER_ADDRESS, false);
+
+    /**
+     * @param serverAddress 初始化时传入的面单服务器地址
+     */
+    public void setPrimary(String serverAddress) {
+        this.primary = new Endpoint(serverAddress, false);
+    }
+
+    /**
+     * @param urls 本地服务地址, 在第一次健康检查成功前不会被使用
+     */
+    public void setLocals(List<String> urls) {
+        List<Endpoint> endpoints = new ArrayList<>();
+        for (String url : urls) {
+            endpoints.add(new Endpoint(url, true));
+        }
+        locals.clear();
+        locals.addAll(endpoints);
+    }
+
+    public void addListener(HealthListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(HealthListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * 熔断中的地址不参与选择; 半开的远端地址保留在列表中, 实际发送前需 tryAcquire 取得试探机会
+     * 云端服务器是最后的选择, 即使已熔断也总是保留
+     *
+     * @return 按优先级排列的候选地址
+     */
+    public List<Endpoint> candidates() {
+        List<Endpoint> candidates = new ArrayList<>();
+        for (Endpoint endpoint : locals) {
+            if (endpoint.getState() == EndpointState.CLOSED) {
+                candidates.add(endpoint);
+            }
+        }
+        candidates.sort(Comparator.comparingDouble(endpoint -> endpoint.latency));
+        Endpoint current = primary;
+        boolean primaryIsCloud = current != null && current.baseUrl.equals(cloud.baseUrl);
+        if (current != null && (primaryIsCloud || current.getState() == EndpointState.HALF_OPEN
+                || current.getState() == EndpointState.CLOSED)) {
+            candidates.add(current);
+        }
+        if (!primaryIsCloud) {
+            candidates.add(cloud);
+        }
+        return candidates;
+    }
+
+    public List<Endpoint> getLocals() {
+        return new ArrayList<>(locals);
+    }
+
+    /**
+     * @return 全部地址, 包括已熔断的
+     */
+    public List<Endpoint> getAll() {
+        List<Endpoint> all = new ArrayList<>(locals);
+        Endpoint current = primary;
+        if (current != null) {
+            all.add(current);
+        }
+        if (current == null || !current.baseUrl.equals(cloud.baseUrl)) {
+            all.add(cloud);
+        }
+        return all;
+    }
+
+    public Endpoint find(String url) {
+        HttpUrl target = normalize(url);
+        for (Endpoint endpoint : getAll()) {
+            if (endpoint.baseUrl.equals(target)) {
+                return endpoint;
+            }
+        }
+        return null;
+    }
+
+    static HttpUrl normalize(String url) {
+        String base = url.endsWith("/") ? url : url + "/";
+        HttpUrl httpUrl = HttpUrl.parse(base);
+        if (httpUrl == null) {
+            throw new IllegalArgumentException("illegal server address: " + url);
+        }
+        return httpUrl;
+    }
+
+    private void publish(HealthEvent event) {
+        for (HealthListener listener : listeners) {
+            try {
+                listener.onStateChanged(event);
+            } catch (RuntimeException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 一个服务地址及其最近的延迟、错误率与熔断状态
+     */
+    public class Endpoint {
+        public final HttpUrl baseUrl;
+        public final boolean local;
+        private volatile double latency = Double.MAX_VALUE; // 延迟的指数加权移动平均(毫秒), 尚无样本时为最大值
+        private final long[] latencies = new long[LATENCY_WINDOW];
+        private int latencyCount;
+        private final boolean[] outcomes = new boolean[OUTCOME_WINDOW]; // true 表示失败
+        private int outcomeCount;
+        private int consecutiveFailures;
+        private EndpointState state;
+        private long openUntil;
+        private long cooldown = MIN_COOLDOWN_MILLIS;
+        private long trialStarted;
+
+        Endpoint(String url, boolean local) {
+            this.baseUrl = normalize(url);
+            this.local = local;
+            //本地服务需要健康检查通过后才使用, 远端地址初始即可用
+            this.state = local ? EndpointState.HALF_OPEN : EndpointState.CLOSED;
+        }
+
+        /**
+         * 冷却时间结束的熔断地址在读取状态时转为半开
+         */
+        public synchronized EndpointState getState() {
+            if (state == EndpointState.OPEN && System.currentTimeMillis() >= openUntil) {
+                transition(EndpointState.HALF_OPEN, "cooldown elapsed");
+            }
+            return state;
+        }
+
+        public double getLatency() {
+            return latency;
+        }
+
+        /**
+         * 远端地址: 正常时总是放行, 半开时只放行一个试探请求
+         * 本地服务的试探由健康检查完成, 半开时不放行请求
+         */
+        public synchronized boolean tryAcquire() {
+            EndpointState current = getState();
+            if (current == EndpointState.CLOSED) {
+                return true;
+            }
+            long now = System.currentTimeMillis();
+            if (current == EndpointState.HALF_OPEN && !local && now - trialStarted >= TRIAL_TIMEOUT_MILLIS) {
+                trialStarted = now;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * 记录一次成功请求的延迟
+         */
+        public synchronized void recordSuccess(long latencyMillis) {
+            latency = latency == Double.MAX_VALUE ? latencyMillis : EWMA_ALPHA * latencyMillis + (1 - EWMA_ALPHA) * latency;
+            latencies[latencyCount++ % LATENCY_WINDOW] = latencyMillis;
+            outcomes[outcomeCount++ % OUTCOME_WINDOW] = false;
+            consecutiveFailures = 0;
+            trialStarted = 0;
+            if (getState() == EndpointState.HALF_OPEN) {
+                cooldown = MIN_COOLDOWN_MILLIS;
+                transition(EndpointState.CLOSED, "trial ok");
+            }
+        }
+
+        /**
+         * 记录一次失败
+         *
+         * @param fatal 是否为确定性的失败(如连接被拒绝), 是则立即熔断
+         */
+        public synchronized void recordFailure(boolean fatal) {
+            outcomes[outcomeCount++ % OUTCOME_WINDOW] = true;
+            consecutiveFailures++;
+            trialStarted = 0;
+            EndpointState current = getState();
+            if (current == EndpointState.HALF_OPEN) {
+                trip("trial failed");
+            } else if (current == EndpointState.CLOSED) {
+                if (fatal) {
+                    trip("connect failure");
+                } else if (consecutiveFailures >= FAILURE_THRESHOLD) {
+                    trip(consecutiveFailures + " consecutive failures");
+                } else if (outcomeCount >= MIN_OUTCOMES && getErrorRate() >= MAX_ERROR_RATE) {
+                    trip(String.format("error rate %.0f%%", getErrorRate() * 100));
+                }
+            }
+        }
+
+        private void trip(String reason) {
+            openUntil = System.currentTimeMillis() + cooldown;
+            //连续熔断时冷却时间翻倍
+            cooldown = Math.min(MAX_COOLDOWN_MILLIS, cooldown * 2);
+            transition(EndpointState.OPEN, reason);
+        }
+
+        private void transition(EndpointState next, String reason) {
+            EndpointState previous = state;
+            if (previous == next) {
+                return;
+            }
+            state = next;
+            if (next == EndpointState.CLOSED) {
+                outcomeCount = 0;
+            }
+            publish(new HealthEvent(baseUrl.toString(), previous, next, reason));
+        }
+
+        /**
+         * @return 最近请求的错误率
+         */
+        public synchronized double getErrorRate() {
+            int size = Math.min(outcomeCount, OUTCOME_WINDOW);
+            if (size == 0) {
+                return 0;
+            }
+            int failures = 0;
+            for (int i = 0; i < size; i++) {
+                if (outcomes[i]) {
+                    failures++;
+                }
+            }
+            return (double) failures / size;
+        }
+
+        /**
+         * @param quantile 分位, 如 0.5、0.99
+         * @return 最近成功请求延迟的分位数(毫秒), 没有样本时返回 -1
+         */
+        public long getLatencyPercentile(double quantile) {
+            long[] samples;
+            synchronized (this) {
+                samples = Arrays.copyOf(latencies, Math.min(latencyCount, LATENCY_WINDOW));
+            }
+            if (samples.length == 0) {
+                return -1;
+            }
+            Arrays.sort(samples);
+            int index = (int) Math.ceil(quantile * samples.length) - 1;
+            return samples[Math.max(0, Math.min(samples.length - 1, index))];
+        }
+
+        /**
+         * @param relative 相对于根地址的路径与参数
+         * @return 该服务上的完整地址
+         */
+        public HttpUrl resolve(String relative) {
+            return baseUrl.resolve(relative);
+        }
+
+        @Override
+        public String toString() {
+            String text = baseUrl + " " + getState();
+            long p50 = getLatencyPercentile(0.5);
+            if (p50 >= 0) {
+                text += " p50=" + p50 + "ms p99=" + getLatencyPercentile(0.99) + "ms";
+            }
+            return text + String.format(" errors=%.0f%%", getErrorRate() * 100);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.tmindtech.api.waybill.sdk.http;
+
+/**
+ * 服务地址熔断状态的一次变化
+ */
+public class HealthEvent {
+    public final String url;
+
+    public final EndpointState previous;
+
+    public final EndpointState current;
+
+    public final String reason; // 触发变化的原因, 如 "probe ok"、"3 consecutive failures"
+
+    public final long timestamp;
+
+    public HealthEvent(String url, EndpointState previous, EndpointState current, String reason) {
+        this.url = url;
+        this.previous = previous;
+        this.current = current;
+        this.reason = reason;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    @Override
+    public String toString() {
+        return "HealthEvent{url=" + url + ", " + previous + " -> " + current + ", reason=" + reason + "}";
+    }
+}
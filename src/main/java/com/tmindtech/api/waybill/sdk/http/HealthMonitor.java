@@ -0,0 +1,107 @@
+package com.tmindtech.api.waybill.sdk.http;
+
+import com.tmindtech.api.waybill.sdk.interceptor.HotSwitchInterceptor;
+import com.tmindtech.api.waybill.sdk.jfr.PipelineEvent;
+import com.tmindtech.api.waybill.sdk.jfr.PipelineEvents;
+import com.tmindtech.api.waybill.sdk.util.NamedThreadFactory;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * 本地服务的主动健康检查
+ * 每个周期并发地向所有未熔断的本地服务发送 label-print/health, 返回 "ok" 记为成功;
+ * 超时很短, 挂掉的服务在一两个周期内被熔断, 恢复的服务在冷却结束后的第一次检查成功时重新启用
+ * 实际请求的结果由 HotSwitchInterceptor 记入同一张地址表, 与健康检查共同决定熔断状态
+ */
+public class HealthMonitor {
+    public static final String HEALTH_PATH = "label-print/health";
+    public static final long DEFAULT_PROBE_INTERVAL_MILLIS = 500;
+    public static final long DEFAULT_PROBE_TIMEOUT_MILLIS = 300;
+
+    private final EndpointTable endpointTable;
+    private final OkHttpClient client;
+    private final long probeIntervalMillis;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("waybill-health"));
+    private final Set<EndpointTable.Endpoint> probing = ConcurrentHashMap.newKeySet();
+
+    public HealthMonitor(EndpointTable endpointTable, OkHttpClient baseClient) {
+        this(endpointTable, baseClient, DEFAULT_PROBE_INTERVAL_MILLIS, DEFAULT_PROBE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param endpointTable       地址表
+     * @param baseClient          共用连接池的客户端
+     * @param probeIntervalMillis 检查周期(毫秒)
+     * @param probeTimeoutMillis  单次检查的连接和读取超时(毫秒)
+     */
+    public HealthMonitor(EndpointTable endpointTable, OkHttpClient baseClient, long probeIntervalMillis, long probeTimeoutMillis) {
+        this.endpointTable = endpointTable;
+        this.probeIntervalMillis = probeIntervalMillis;
+        OkHttpClient.Builder builder = baseClient.newBuilder()
+                .connectTimeout(probeTimeoutMillis, TimeUnit.MILLISECONDS)
+                .readTimeout(probeTimeoutMillis, TimeUnit.MILLISECONDS)
+                .writeTimeout(probeTimeoutMillis, TimeUnit.MILLISECONDS);
+        //健康检查很频繁, 不输出请求日志
+        builder.networkInterceptors().clear();
+        this.client = builder.build();
+    }
+
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::probeAll, 0, probeIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private void probeAll() {
+        for (EndpointTable.Endpoint endpoint : endpointTable.getLocals()) {
+            //熔断冷却中的服务不检查; 上一次检查还没有结果的也跳过, 避免慢服务堆积请求
+            if (endpoint.getState() != EndpointState.OPEN && probing.add(endpoint)) {
+                probe(endpoint);
+            }
+        }
+    }
+
+    private void probe(EndpointTable.Endpoint endpoint) {
+        long startTime = System.nanoTime();
+        Request request = new Request.Builder().url(endpoint.resolve(HEALTH_PATH)).get().build();
+        PipelineEvent.HealthProbe event = PipelineEvents.healthProbe(endpoint.baseUrl.toString());
+        client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException ex) {
+                probing.remove(endpoint);
+                endpoint.recordFailure(HotSwitchInterceptor.isConnectFailure(ex));
+                event.end(false, -1);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                boolean healthy = false;
+                try (ResponseBody body = response.body()) {
+                    if (response.isSuccessful() && "ok".equals(body.string())) {
+                        healthy = true;
+                        endpoint.recordSuccess((System.nanoTime() - startTime) / 1000000);
+                    } else {
+                        endpoint.recordFailure(false);
+                    }
+                } catch (IOException ex) {
+                    endpoint.recordFailure(false);
+                } finally {
+                    probing.remove(endpoint);
+                    event.end(healthy, response.code());
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,151 @@
+package com.tmindtech.api.waybill.sdk.http;
+
+import com.tmindtech.api.waybill.sdk.util.NamedThreadFactory;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okhttp3.logging.HttpLoggingInterceptor;
+import okio.BufferedSource;
+
+/**
+ * SDK 共用的 HTTP 传输层
+ * 接口调用、健康检查和面单图片下载共用同一个连接池、调度器和 DNS 缓存, 连接保持长连接复用,
+ * 服务端支持时使用 HTTP/2
+ */
+public class HttpTransport {
+    public static final int DEFAULT_MAX_REQUESTS = 64;
+    public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 16;
+    public static final int DEFAULT_MAX_IDLE_CONNECTIONS = 16;
+    public static final long DEFAULT_KEEP_ALIVE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final Dispatcher dispatcher;
+    private final ConnectionPool connectionPool;
+    private final OkHttpClient baseClient;
+    private final OkHttpClient probeClient;
+
+    public HttpTransport() {
+        this(DEFAULT_MAX_REQUESTS, DEFAULT_MAX_REQUESTS_PER_HOST, DEFAULT_MAX_IDLE_CONNECTIONS, DEFAULT_KEEP_ALIVE_MILLIS);
+    }
+
+    /**
+     * @param maxRequests        同时执行的异步请求上限
+     * @param maxRequestsPerHost 每个主机同时执行的异步请求上限
+     * @param maxIdleConnections 连接池保留的空闲连接数
+     * @param keepAliveMillis    空闲连接保留时间(毫秒)
+     */
+    public HttpTransport(int maxRequests, int maxRequestsPerHost, int maxIdleConnections, long keepAliveMillis) {
+        this.dispatcher = new Dispatcher(new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), new NamedThreadFactory("waybill-http")));
+        this.dispatcher.setMaxRequests(maxRequests);
+        this.dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+        this.connectionPool = new ConnectionPool(maxIdleConnections, keepAliveMillis, TimeUnit.MILLISECONDS);
+        this.baseClient = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(connectionPool)
+                .dns(new CachingDns())
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectTimeout(10, TimeUnit.SECONDS)
+                .readTimeout(30, TimeUnit.SECONDS)
+                .addNetworkInterceptor(new HttpLoggingInterceptor().setLevel(HttpLoggingInterceptor.Level.BASIC))
+                .build();
+        this.probeClient = baseClient.newBuilder()
+                .connectTimeout(10, TimeUnit.SECONDS)
+                .readTimeout(10, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * @param interceptors 该客户端独有的拦截器, 如签名
+     * @return 与其他客户端共享连接池和调度器的接口客户端
+     */
+    public OkHttpClient newApiClient(Interceptor... interceptors) {
+        OkHttpClient.Builder builder = baseClient.newBuilder();
+        for (Interceptor interceptor : interceptors) {
+            builder.addInterceptor(interceptor);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return 健康检查使用的客户端, 超时较短
+     */
+    public OkHttpClient getProbeClient() {
+        return probeClient;
+    }
+
+    /**
+     * 调整异步请求并发上限, 立即生效
+     */
+    public void setMaxRequests(int maxRequests, int maxRequestsPerHost) {
+        dispatcher.setMaxRequests(maxRequests);
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+    }
+
+    /**
+     * 使用连接池下载, 响应带有长度时直接读入最终的数组, 不经过中间缓冲区复制
+     *
+     * @param url 下载地址
+     * @return 下载内容
+     * @throws IOException 网络异常或响应不是2xx
+     */
+    public byte[] download(String url) throws IOException {
+        Request request = new Request.Builder().url(url).get().build();
+        try (Response response = baseClient.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("download failure: " + response.code());
+            }
+            ResponseBody body = response.body();
+            long length = body.contentLength();
+            if (length < 0 || length > Integer.MAX_VALUE) {
+                return body.bytes();
+            }
+            byte[] data = new byte[(int) length];
+            BufferedSource source = body.source();
+            source.readFully(data);
+            return data;
+        }
+    }
+
+    /**
+     * 预先建立到各个服务的连接, 异步执行, 失败忽略
+     *
+     * @param baseUrls 服务根地址
+     */
+    public void warmUp(List<String> baseUrls) {
+        for (String baseUrl : baseUrls) {
+            HttpUrl url = HttpUrl.parse(baseUrl);
+            if (url == null) {
+                continue;
+            }
+            probeClient.newCall(new Request.Builder().url(url).head().build()).enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException ex) {
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) {
+                    response.close();
+                }
+            });
+        }
+    }
+
+    public void shutdown() {
+        dispatcher.executorService().shutdown();
+        connectionPool.evictAll();
+    }
+}
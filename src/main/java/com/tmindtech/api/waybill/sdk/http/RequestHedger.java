@@ -0,0 +1,165 @@
+package com.tmindtech.api.waybill.sdk.http;
+
+import com.tmindtech.api.waybill.sdk.util.CallFutures;
+import com.tmindtech.api.waybill.sdk.util.NamedThreadFactory;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import retrofit2.Call;
+import retrofit2.Response;
+
+/**
+ * 对幂等查询做对冲请求
+ * 请求照常发往最优地址, 超过该地址最近延迟的指定分位仍未返回或已经失败时, 把同样的请求发往次优的本地服务,
+ * 先返回的成功响应生效, 另一个请求被取消
+ * 对冲次数受令牌桶限制: 每个请求存入 budgetRatio 个令牌, 每次对冲消耗1个, 额外负载不超过该比例
+ */
+public class RequestHedger {
+    /**
+     * 指定目标地址的请求头, 由 HotSwitchInterceptor 读取并移除, 带有该请求头的请求不会切换地址
+     */
+    public static final String PIN_HEADER = "X-Waybill-Endpoint";
+    public static final long MIN_DELAY_MILLIS = 10;
+    // 令牌桶容量, 即允许的突发对冲次数
+    private static final double MAX_TOKENS = 10;
+
+    private final EndpointTable endpointTable;
+    private final double percentile;
+    private final double budgetRatio;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("waybill-hedge"));
+    private double tokens = MAX_TOKENS;
+    private final AtomicLong hedgeCount = new AtomicLong();
+    private final AtomicLong hedgeWinCount = new AtomicLong();
+
+    /**
+     * @param endpointTable 地址表
+     * @param percentile    等待最优地址最近延迟的哪个分位后发出对冲, 如 0.95
+     * @param budgetRatio   对冲请求占全部请求的比例上限, 如 0.1
+     */
+    public RequestHedger(EndpointTable endpointTable, double percentile, double budgetRatio) {
+        this.endpointTable = endpointTable;
+        this.percentile = percentile;
+        this.budgetRatio = budgetRatio;
+    }
+
+    /**
+     * 只有成功的响应(2xx)生效; 一个请求失败或返回错误状态时等待另一个, 原请求失败时立即发出对冲
+     *
+     * @param callFactory 按目标地址创建请求, 参数为 null 时按地址表正常选择
+     * @return 先返回的成功响应; 都没有成功时为最后一个错误响应, 没有响应时以最后一个异常完成
+     */
+    public <T> CompletableFuture<Response<T>> execute(Function<String, Call<T>> callFactory) {
+        deposit();
+        List<EndpointTable.Endpoint> candidates = endpointTable.candidates();
+        CompletableFuture<Response<T>> primary = CallFutures.enqueue(callFactory.apply(null));
+        //只在最优地址和次优地址都是本地服务时对冲, 云端服务器没有可对冲的同级地址
+        if (candidates.size() < 2 || !candidates.get(0).local || !candidates.get(1).local) {
+            return primary;
+        }
+        long latency = candidates.get(0).getLatencyPercentile(percentile);
+        if (latency < 0) {
+            return primary;
+        }
+        String hedgeTarget = candidates.get(1).baseUrl.toString();
+        CompletableFuture<Response<T>> result = new CompletableFuture<Response<T>>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                primary.cancel(mayInterruptIfRunning);
+                return super.cancel(mayInterruptIfRunning);
+            }
+        };
+        AtomicInteger pending = new AtomicInteger(1);
+        AtomicReference<Response<T>> fallback = new AtomicReference<>();
+        AtomicBoolean hedged = new AtomicBoolean();
+        Runnable hedge = () -> {
+            if (result.isDone() || !hedged.compareAndSet(false, true) || !withdraw()) {
+                return;
+            }
+            pending.incrementAndGet();
+            hedgeCount.incrementAndGet();
+            CompletableFuture<Response<T>> future = CallFutures.enqueue(callFactory.apply(hedgeTarget));
+            future.whenComplete((response, ex) -> {
+                if (settle(result, pending, fallback, response, ex)) {
+                    hedgeWinCount.incrementAndGet();
+                }
+            });
+            //任意一个成功后取消另一个
+            result.whenComplete((response, ex) -> {
+                primary.cancel(false);
+                future.cancel(false);
+            });
+        };
+        primary.whenComplete((response, ex) -> {
+            if (response == null || !response.isSuccessful()) {
+                hedge.run();
+            }
+            settle(result, pending, fallback, response, ex);
+        });
+        scheduler.schedule(hedge, Math.max(MIN_DELAY_MILLIS, latency), TimeUnit.MILLISECONDS);
+        return result;
+    }
+
+    /**
+     * 处理一个请求的结果
+     *
+     * @return 该请求的成功响应生效时返回true
+     */
+    private static <T> boolean settle(CompletableFuture<Response<T>> result, AtomicInteger pending,
+                                      AtomicReference<Response<T>> fallback, Response<T> response, Throwable ex) {
+        if (response != null && response.isSuccessful()) {
+            return result.complete(response);
+        }
+        if (response != null) {
+            Response<T> previous = fallback.getAndSet(response);
+            if (previous != null && previous.errorBody() != null) {
+                previous.errorBody().close();
+            }
+        }
+        if (pending.decrementAndGet() == 0) {
+            Response<T> last = fallback.get();
+            if (last != null) {
+                result.complete(last);
+            } else {
+                result.completeExceptionally(ex);
+            }
+        }
+        return false;
+    }
+
+    private synchronized void deposit() {
+        tokens = Math.min(MAX_TOKENS, tokens + budgetRatio);
+    }
+
+    private synchronized boolean withdraw() {
+        if (tokens < 1) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+
+    /**
+     * @return 已发出的对冲请求数
+     */
+    public long getHedgeCount() {
+        return hedgeCount.get();
+    }
+
+    /**
+     * @return 对冲请求先于原请求返回的次数
+     */
+    public long getHedgeWinCount() {
+        return hedgeWinCount.get();
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
@@ -1,57 +1,141 @@
 package com.tmindtech.api.waybill.sdk.interceptor;
 
+import com.tmindtech.api.waybill.sdk.http.EndpointTable;
+import com.tmindtech.api.waybill.sdk.http.RequestHedger;
+import com.tmindtech.api.waybill.sdk.jfr.PipelineEvents;
+import com.tmindtech.api.waybill.sdk.util.MessageCodec;
 import java.io.IOException;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Collections;
 import java.util.List;
-import lombok.AllArgsConstructor;
+import okhttp3.HttpUrl;
 import okhttp3.Interceptor;
 import okhttp3.Request;
 import okhttp3.Response;
-import org.apache.commons.io.IOUtils;
 
-@AllArgsConstructor
+/**
+ * 按地址表为每个请求选择目标服务器, 请求失败时依次尝试下一个候选地址
+ * 请求发往 EndpointTable.ROUTED_BASE_URL, 在这里替换为实际地址;
+ * SignatureInterceptor 把所有请求都改为 PUT, 因此按消息主题判断是否幂等: 只有面单查询可以在超时或网关错误后重试,
+ * 分包(relabel)、上传打印日志等只在连接失败(请求未到达服务器)时切换, 避免重复分包等副作用
+ * 每次尝试的结果都记入地址表, 用于延迟排序和熔断; 带有 RequestHedger.PIN_HEADER 的请求只发往指定地址
+ * 切换到下一个地址时记录 JFR 事件 EndpointSwitch
+ */
 public class HotSwitchInterceptor implements Interceptor {
-    public List<URL> localServerBaseUrls;
-    public String serverAddress;
+    /**
+     * 只读的面单查询主题前缀
+     */
+    public static final String QUERY_TOPIC_PREFIX = "logistics_label_address/";
+
+    private final EndpointTable endpointTable;
+
+    public HotSwitchInterceptor(EndpointTable endpointTable) {
+        this.endpointTable = endpointTable;
+    }
 
     @Override
     public Response intercept(Chain chain) throws IOException {
-        long responseTime = -1;
         Request request = chain.request();
-        Response response = null;
-
-        for (URL localServerUrl : localServerBaseUrls) {
-            Request localRequest = request.newBuilder()
-                    .url(request.url().newBuilder()
-                            .scheme(localServerUrl.getProtocol())
-                            .host(localServerUrl.getHost())
-                            .port(localServerUrl.getPort())
-                            .build()
-                    )
-                    .build();
+        String relative = relativePath(request.url());
+        boolean idempotent = isIdempotent(request);
+        List<EndpointTable.Endpoint> candidates = endpointTable.candidates();
+        String pinned = request.header(RequestHedger.PIN_HEADER);
+        if (pinned != null) {
+            //对冲请求只发往指定的地址, 不再切换
+            request = request.newBuilder().removeHeader(RequestHedger.PIN_HEADER).build();
+            EndpointTable.Endpoint endpoint = endpointTable.find(pinned);
+            if (endpoint != null) {
+                candidates = Collections.singletonList(endpoint);
+            }
+        }
+        IOException failure = null;
+        EndpointTable.Endpoint previous = null;
+        String switchReason = null;
+        for (int i = 0; i < candidates.size(); i++) {
+            EndpointTable.Endpoint endpoint = candidates.get(i);
+            boolean last = i == candidates.size() - 1;
+            if (!last && !endpoint.tryAcquire()) {
+                //熔断器半开且已有试探请求在进行
+                continue;
+            }
+            if (previous != null) {
+                switched(request, previous, endpoint, switchReason);
+            }
+            long startTime = System.nanoTime();
+            Response response;
             try {
-                long startTime = System.currentTimeMillis();
-                Response responseSelect = chain.proceed(localRequest);
-                if (responseSelect.isSuccessful()) {
-                    long endTime = System.currentTimeMillis();
-                    String content = IOUtils.toString(responseSelect.body().byteStream(), StandardCharsets.UTF_8);
-                    if ("ok".equals(content)) {
-                        if (responseTime == -1) {
-                            responseTime = endTime - startTime;
-                            serverAddress = localServerUrl.toString();
-                            response = responseSelect;
-                        } else {
-                            if ((endTime - startTime) < responseTime) {
-                                serverAddress = localServerUrl.toString();
-                                response = responseSelect;
-                            }
-                        }
-                    }
+                response = chain.proceed(request.newBuilder().url(endpoint.resolve(relative)).build());
+            } catch (IOException ex) {
+                if (chain.call().isCanceled()) {
+                    //调用方主动取消, 与服务器的状态无关
+                    throw ex;
+                }
+                endpoint.recordFailure(isConnectFailure(ex));
+                if (last || !(idempotent || isConnectFailure(ex))) {
+                    throw ex;
                 }
-            } catch (IOException ignored) {
+                failure = ex;
+                previous = endpoint;
+                switchReason = ex.getClass().getSimpleName();
+                continue;
+            }
+            if (response.code() >= 502 && response.code() <= 504 && idempotent && !last) {
+                //网关错误时请求可能已经被处理, 只有查询可以切换到下一个地址重试
+                endpoint.recordFailure(false);
+                response.close();
+                previous = endpoint;
+                switchReason = "HTTP " + response.code();
+                continue;
             }
+            if (response.code() >= 500) {
+                endpoint.recordFailure(false);
+                return response;
+            }
+            endpoint.recordSuccess((System.nanoTime() - startTime) / 1000000);
+            return response;
         }
-        return response;
+        throw failure != null ? failure : new IOException("no endpoint available");
+    }
+
+    private static void switched(Request request, EndpointTable.Endpoint from, EndpointTable.Endpoint to, String reason) {
+        String topic = null;
+        String messageId = null;
+        if (request.body() instanceof MessageCodec.EncodedBody) {
+            topic = ((MessageCodec.EncodedBody) request.body()).topic();
+            messageId = ((MessageCodec.EncodedBody) request.body()).messageId();
+        }
+        PipelineEvents.endpointSwitch(from.baseUrl.toString(), to.baseUrl.toString(), reason, topic, messageId);
+    }
+
+    /**
+     * @return 请求是否可以重复发送: GET/HEAD, 或主题为面单查询的消息
+     */
+    public static boolean isIdempotent(Request request) {
+        if ("GET".equals(request.method()) || "HEAD".equals(request.method())) {
+            return true;
+        }
+        if (request.body() instanceof MessageCodec.EncodedBody) {
+            String topic = ((MessageCodec.EncodedBody) request.body()).topic();
+            return topic != null && topic.startsWith(QUERY_TOPIC_PREFIX);
+        }
+        return false;
+    }
+
+    private static String relativePath(HttpUrl url) {
+        String path = url.encodedPath().substring(1);
+        String query = url.encodedQuery();
+        return query == null ? path : path + "?" + query;
+    }
+
+    /**
+     * @return 请求是否确定没有到达服务器
+     */
+    public static boolean isConnectFailure(IOException ex) {
+        return ex instanceof ConnectException || ex instanceof UnknownHostException
+                || ex instanceof NoRouteToHostException
+                || (ex instanceof SocketTimeoutException && "connect timed out".equals(ex.getMessage()));
     }
 }
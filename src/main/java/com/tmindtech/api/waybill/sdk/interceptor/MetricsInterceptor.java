@@ -0,0 +1,68 @@
+package com.tmindtech.api.waybill.sdk.interceptor;
+
+import com.tmindtech.api.waybill.sdk.metrics.MetricsRegistry;
+import com.tmindtech.api.waybill.sdk.metrics.Stage;
+import com.tmindtech.api.waybill.sdk.util.MessageCodec;
+import java.io.IOException;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * 统计每次接口请求的耗时, 按实际请求的服务器地址区分
+ * 放在 HotSwitchInterceptor 之后, 切换地址时每次尝试分别计时; 阶段由消息主题决定
+ */
+public class MetricsInterceptor implements Interceptor {
+    public static final String REQUEST_COUNTER = "http.requests";
+    public static final String FAILURE_COUNTER = "http.failures";
+
+    private final MetricsRegistry metrics;
+
+    public MetricsInterceptor(MetricsRegistry metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        String endpoint = endpoint(request.url());
+        Stage stage = stage(request);
+        long startTime = System.nanoTime();
+        metrics.increment(REQUEST_COUNTER, endpoint);
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException ex) {
+            metrics.increment(FAILURE_COUNTER, endpoint);
+            throw ex;
+        } finally {
+            metrics.record(stage, endpoint, System.nanoTime() - startTime);
+        }
+        if (!response.isSuccessful()) {
+            metrics.increment(FAILURE_COUNTER, endpoint);
+        }
+        return response;
+    }
+
+    /**
+     * @return host:port
+     */
+    public static String endpoint(HttpUrl url) {
+        return url.host() + ":" + url.port();
+    }
+
+    private static Stage stage(Request request) {
+        if (!(request.body() instanceof MessageCodec.EncodedBody)) {
+            return Stage.METADATA_LOOKUP;
+        }
+        String topic = ((MessageCodec.EncodedBody) request.body()).topic();
+        if (topic == null) {
+            return Stage.METADATA_LOOKUP;
+        }
+        if (topic.startsWith("local_print_log")) {
+            return Stage.LOG_SHIPPING;
+        }
+        return topic.equals("relabel") ? Stage.SPLIT_PACKAGE : Stage.METADATA_LOOKUP;
+    }
+}
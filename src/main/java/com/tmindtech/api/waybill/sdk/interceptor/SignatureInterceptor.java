@@ -1,15 +1,13 @@
 package com.tmindtech.api.waybill.sdk.interceptor;
 
+import com.tmindtech.api.waybill.sdk.util.MessageCodec;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.sql.Timestamp;
-import java.time.Instant;
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 import javax.annotation.Nonnull;
 import okhttp3.Interceptor;
-import okhttp3.MediaType;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
@@ -17,17 +15,28 @@ import okio.Buffer;
 
 /**
  * 这是一个拦截器, 他会处理所有即将发出去请求, 在这里可以给所有请求统一增加请求头
+ * 签名为 sha1(sha1(accessKey + accessSecret) + body + random + timestamp), 直接对请求体的字节计算,
+ * 密钥部分在构造时计算一次, MessageDigest 按线程复用
  */
 public class SignatureInterceptor implements Interceptor {
     private static final String ALGORITHM = "SHA-1";
+    private static final byte[] EMPTY = new byte[0];
     private static char[] DIGITS_LOWER = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    });
 
     private final String accessKey;
-    private final String accessSecret;
+    private final byte[] keyHash;
 
     public SignatureInterceptor(@Nonnull String accessKey, @Nonnull String accessSecret) {
         this.accessKey = accessKey;
-        this.accessSecret = accessSecret;
+        this.keyHash = hex(sha1((accessKey + accessSecret).getBytes(StandardCharsets.UTF_8)))
+                .getBytes(StandardCharsets.US_ASCII);
     }
 
     @Override
@@ -35,47 +44,58 @@ public class SignatureInterceptor implements Interceptor {
         //URL 参数规范化
         Request request = chain.request();
 
-        StringBuffer sb = new StringBuffer();
-
-        if (request.method().equals("POST")) {
-            Buffer buffer = new Buffer();
-            request.body().writeTo(buffer);
-            sb.append(buffer.readString(StandardCharsets.UTF_8));
+        RequestBody body;
+        byte[] bytes;
+        if (request.body() instanceof MessageCodec.EncodedBody) {
+            body = request.body();
+            bytes = ((MessageCodec.EncodedBody) body).bytes();
+        } else {
+            bytes = EMPTY;
+            if (request.method().equals("POST") && request.body() != null) {
+                Buffer buffer = new Buffer();
+                request.body().writeTo(buffer);
+                bytes = buffer.readByteArray();
+            }
+            body = RequestBody.create(MessageCodec.JSON_TYPE, bytes);
         }
 
-        String body = sb.toString();
-
-        int random = Math.abs(new Random().nextInt());
-        long timestamp = Timestamp.from(Instant.now()).getTime();
-        String sign = sha1(sha1(accessKey + accessSecret) + body + random + timestamp);
-        return chain.proceed(chain.request().newBuilder()
+        int random = Math.abs(ThreadLocalRandom.current().nextInt());
+        long timestamp = System.currentTimeMillis();
+        String sign = sign(bytes, random, timestamp);
+        return chain.proceed(request.newBuilder()
                 .header("appCode", accessKey)
                 .header("random", String.valueOf(random))
                 .header("timestamp", String.valueOf(timestamp))
                 .header("signature", sign)
-                .put(RequestBody.create(MediaType.parse("application/json; charset=utf-8"), body))
+                .put(body)
                 .build()
         );
     }
 
-    private String sha1(String origin) {
-        if (origin == null) {
-            return null;
-        }
-        try {
-            MessageDigest md = MessageDigest.getInstance(ALGORITHM);
-            md.update(origin.getBytes(StandardCharsets.UTF_8));
-            byte[] bytes = md.digest();
-            int len = bytes.length;
-            StringBuilder sb = new StringBuilder(len * 2);
-            for (byte aByte : bytes) {
-                sb.append(DIGITS_LOWER[(aByte >> 4) & 0x0f]);
-                sb.append(DIGITS_LOWER[aByte & 0x0f]);
-            }
-            return sb.toString();
-        } catch (NoSuchAlgorithmException ex) {
-            ex.printStackTrace();
-            return null;
+    /**
+     * @return sha1(sha1(accessKey + accessSecret) + body + random + timestamp) 的小写十六进制
+     */
+    public String sign(byte[] body, int random, long timestamp) {
+        MessageDigest md = DIGEST.get();
+        md.reset();
+        md.update(keyHash);
+        md.update(body);
+        md.update((String.valueOf(random) + timestamp).getBytes(StandardCharsets.US_ASCII));
+        return hex(md.digest());
+    }
+
+    private static byte[] sha1(byte[] origin) {
+        MessageDigest md = DIGEST.get();
+        md.reset();
+        return md.digest(origin);
+    }
+
+    private static String hex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = DIGITS_LOWER[(bytes[i] >> 4) & 0x0f];
+            chars[i * 2 + 1] = DIGITS_LOWER[bytes[i] & 0x0f];
         }
+        return new String(chars);
     }
 }
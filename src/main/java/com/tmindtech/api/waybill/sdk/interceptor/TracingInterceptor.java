@@ -0,0 +1,73 @@
+package com.tmindtech.api.waybill.sdk.interceptor;
+
+import com.tmindtech.api.waybill.sdk.trace.Span;
+import com.tmindtech.api.waybill.sdk.trace.Tracer;
+import com.tmindtech.api.waybill.sdk.util.MessageCodec;
+import java.io.IOException;
+import okhttp3.Call;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * 为每次请求记录一个 CLIENT span, 并以 W3C traceparent 请求头把 trace 传给服务器
+ * 放在 HotSwitchInterceptor 之后, 切换地址时每次尝试各是一个 span
+ * 请求由 OkHttp 的线程执行, 父 span 由 callFactory 在创建请求的线程上放入请求的 tag
+ */
+public class TracingInterceptor implements Interceptor {
+    public static final String TRACEPARENT_HEADER = "traceparent";
+
+    private final Tracer tracer;
+
+    public TracingInterceptor(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    /**
+     * 包装 OkHttpClient 作为 Retrofit 的 callFactory, 把当前线程的 span 放入请求的 tag
+     */
+    public static Call.Factory callFactory(OkHttpClient client) {
+        return request -> {
+            Span span = Tracer.current();
+            return client.newCall(span.isRecording() ? request.newBuilder().tag(span).build() : request);
+        };
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (!(request.tag() instanceof Span)) {
+            return chain.proceed(request);
+        }
+        String name = request.method() + " " + request.url().encodedPath();
+        String messageId = null;
+        if (request.body() instanceof MessageCodec.EncodedBody) {
+            MessageCodec.EncodedBody body = (MessageCodec.EncodedBody) request.body();
+            name = body.topic();
+            messageId = body.messageId();
+        }
+        Span span = tracer.startSpan(name, (Span) request.tag(), "CLIENT")
+                .tag("http.method", request.method())
+                .tag("http.path", request.url().encodedPath())
+                .tag("server.address", MetricsInterceptor.endpoint(request.url()))
+                .tag("message.id", messageId);
+        if (!span.isRecording()) {
+            return chain.proceed(request);
+        }
+        try {
+            Response response = chain.proceed(request.newBuilder()
+                    .header(TRACEPARENT_HEADER, span.traceparent()).build());
+            span.tag("http.status_code", response.code());
+            if (!response.isSuccessful()) {
+                span.tag("error", "HTTP " + response.code());
+            }
+            return response;
+        } catch (IOException ex) {
+            span.error(ex);
+            throw ex;
+        } finally {
+            span.finish();
+        }
+    }
+}
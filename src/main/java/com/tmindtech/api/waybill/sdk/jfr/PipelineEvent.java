@@ -0,0 +1,74 @@
+package com.tmindtech.api.waybill.sdk.jfr;
+
+/**
+ * 打印流程中的 JFR 事件, 由 PipelineEvents 创建时开始计时, 调用 end 时结束并提交
+ * 事件可以在另一个线程上结束, 如异步请求的回调中
+ */
+public interface PipelineEvent {
+    /**
+     * 下载面单图片时 LabelFetch 使用的主题, 这类请求没有消息 id
+     */
+    String IMAGE_TOPIC = "label_image";
+
+    /**
+     * 向面单服务查询面单信息、图片地址, 或下载面单图片
+     */
+    interface LabelFetch {
+
+        /**
+         * @param status HTTP 状态码, 请求失败时为-1
+         * @param bytes  响应的字节数, 未知时为-1
+         */
+        void end(int status, long bytes);
+
+    }
+
+    /**
+     * 解码面单图片并按打印机分辨率缩放
+     */
+    interface ImageConversion {
+
+        /**
+         * @param sourceDpi    原图的水平dpi
+         * @param targetDpi    打印机的水平dpi
+         * @param sourcePixels 原图的像素数
+         * @param targetPixels 缩放后的像素数, 未缩放时与原图相同
+         */
+        void end(int sourceDpi, int targetDpi, long sourcePixels, long targetPixels);
+
+    }
+
+    /**
+     * 把面单切分为多页并编码
+     */
+    interface PageSlicing {
+
+        /**
+         * @param bytes 各页编码后的总字节数, 直接提交图片不编码时为0
+         */
+        void end(long bytes);
+
+    }
+
+    /**
+     * 向打印机提交一个打印任务
+     */
+    interface PrintJob {
+
+        void end(boolean success);
+
+    }
+
+    /**
+     * 对本地服务的一次健康检查
+     */
+    interface HealthProbe {
+
+        /**
+         * @param healthy 是否返回 "ok"
+         * @param status  HTTP 状态码, 请求失败时为-1
+         */
+        void end(boolean healthy, int status);
+
+    }
+}
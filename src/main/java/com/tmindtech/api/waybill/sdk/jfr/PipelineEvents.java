@@ -0,0 +1,82 @@
+package com.tmindtech.api.waybill.sdk.jfr;
+
+/**
+ * 创建打印流程的 JFR 事件
+ * 这是 Java 8 上使用的空实现, 不依赖 jdk.jfr; 多版本 jar 的 META-INF/versions/11 中有同名的类,
+ * 在 Java 11 及以上运行时创建 jdk.jfr.Event, 开启 JFR 录制后可以与 GC 暂停、CPU 占用按时间对照
+ * 两个版本的公开方法必须保持一致
+ */
+public final class PipelineEvents {
+    private static final Noop NOOP = new Noop();
+
+    private PipelineEvents() {
+    }
+
+    /**
+     * @return 当前运行时是否会记录事件
+     */
+    public static boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * @param topic      消息主题, 下载图片时为 PipelineEvent.IMAGE_TOPIC
+     * @param messageId  消息 id
+     * @param uuidCode   面单唯一码, 批量查询时为第一个
+     * @param labelCount 本次查询的面单数
+     */
+    public static PipelineEvent.LabelFetch labelFetch(String topic, String messageId, String uuidCode, int labelCount) {
+        return NOOP;
+    }
+
+    public static PipelineEvent.ImageConversion imageConversion(String uuidCode, String printer) {
+        return NOOP;
+    }
+
+    public static PipelineEvent.PageSlicing pageSlicing(String uuidCode, String printer, int pageCount) {
+        return NOOP;
+    }
+
+    /**
+     * @param flavor 提交的文档格式
+     */
+    public static PipelineEvent.PrintJob printJob(String uuidCode, String printer, String flavor) {
+        return NOOP;
+    }
+
+    public static PipelineEvent.HealthProbe healthProbe(String endpoint) {
+        return NOOP;
+    }
+
+    /**
+     * 记录一次请求从一个地址切换到下一个地址
+     *
+     * @param reason 切换的原因, 如异常类名或状态码
+     */
+    public static void endpointSwitch(String from, String to, String reason, String topic, String messageId) {
+    }
+
+    private static final class Noop implements PipelineEvent.LabelFetch, PipelineEvent.ImageConversion,
+            PipelineEvent.PageSlicing, PipelineEvent.PrintJob, PipelineEvent.HealthProbe {
+
+        @Override
+        public void end(int status, long bytes) {
+        }
+
+        @Override
+        public void end(int sourceDpi, int targetDpi, long sourcePixels, long targetPixels) {
+        }
+
+        @Override
+        public void end(long bytes) {
+        }
+
+        @Override
+        public void end(boolean success) {
+        }
+
+        @Override
+        public void end(boolean healthy, int status) {
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package com.tmindtech.api.waybill.sdk.log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 打印日志的本地追加写日志文件
+ * 每条记录一行: 写入时间(毫秒) \t 日志 JSON \n; 检查点文件记录当前日志文件的代数和已确认上传的位置
+ * 已上传的部分累积到一定大小(或全部上传完)后, 把未上传的部分复制到新一代文件, 先写新文件再更新检查点,
+ * 进程在任意时刻退出都不会丢失未上传的记录, 最多重复上传一批
+ * 文件名包含 key(由服务器地址与 accessKey 得出), 日志只会上传到写入时的服务器; 同一个 key 的文件由锁文件保护,
+ * 被其他 SDK 实例或进程占用时使用 key.2、key.3 等, 只删除自己占用的 key 的旧文件
+ */
+public class PrintLogJournal implements Closeable {
+    private static final String FILE_PREFIX = "print-log-";
+    private static final String FILE_SUFFIX = ".journal";
+    private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+    private static final String LOCK_SUFFIX = ".lock";
+    // 同一个 key 最多同时打开的实例数
+    private static final int MAX_INSTANCES = 8;
+    // 已上传的部分超过此大小时压缩
+    private static final long COMPACT_BYTES = 4L << 20;
+    private static final long MAX_COMPACT_TAIL_BYTES = 16L << 20;
+    // 一次最多读取的字节数
+    private static final int MAX_READ_BYTES = 1 << 20;
+
+    private final File directory;
+    private final String key;
+    private final FileChannel lockChannel;
+    private final FileChannel checkpointChannel;
+    private FileChannel channel;
+    private long generation;
+    private long checkpoint;
+    private long size;
+    private int pendingCount;
+    private long oldestPendingMillis;
+
+    /**
+     * 打开(或创建)目录下 key 对应的日志文件, 从检查点开始扫描未上传的记录, 末尾不完整的记录会被截断
+     *
+     * @param directory 日志文件所在目录
+     * @param key       区分服务器与 accessKey 的名称, 只能包含文件名允许的字符
+     */
+    public static PrintLogJournal open(File directory, String key) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("can not create directory " + directory);
+        }
+        for (int instance = 1; instance <= MAX_INSTANCES; instance++) {
+            String slot = instance == 1 ? key : key + "." + instance;
+            FileChannel lockChannel = FileChannel.open(new File(directory, FILE_PREFIX + slot + LOCK_SUFFIX).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock lock;
+            try {
+                lock = lockChannel.tryLock();
+            } catch (OverlappingFileLockException ex) {
+                //同一进程中的其他实例持有
+                lock = null;
+            } catch (IOException ex) {
+                lockChannel.close();
+                throw ex;
+            }
+            if (lock == null) {
+                lockChannel.close();
+                continue;
+            }
+            try {
+                return new PrintLogJournal(directory, slot, lockChannel);
+            } catch (IOException | RuntimeException ex) {
+                lockChannel.close();
+                throw ex;
+            }
+        }
+        throw new IOException("print log journal " + key + " is used by " + MAX_INSTANCES + " instances");
+    }
+
+    private PrintLogJournal(File directory, String key, FileChannel lockChannel) throws IOException {
+        this.directory = directory;
+        this.key = key;
+        this.lockChannel = lockChannel;
+        this.checkpointChannel = FileChannel.open(new File(directory, FILE_PREFIX + key + CHECKPOINT_SUFFIX).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        if (checkpointChannel.read(buffer, 0) == 16) {
+            buffer.flip();
+            generation = buffer.getLong();
+            checkpoint = buffer.getLong();
+        } else {
+            generation = 1;
+            checkpoint = 0;
+        }
+        String prefix = FILE_PREFIX + key + "-";
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(prefix) && name.endsWith(FILE_SUFFIX)
+                && name.substring(prefix.length(), name.length() - FILE_SUFFIX.length()).matches("[0-9]+"));
+        if (files != null) {
+            for (File file : files) {
+                if (!file.equals(journalFile(generation))) {
+                    //压缩中途退出留下的新文件, 或压缩后未能删除的旧文件
+                    file.delete();
+                }
+            }
+        }
+        channel = FileChannel.open(journalFile(generation).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        size = channel.size();
+        if (checkpoint > size) {
+            checkpoint = 0;
+        }
+        scan();
+    }
+
+    /**
+     * 追加一条记录, 只写入操作系统缓存, 由 force 定期刷盘
+     *
+     * @param json 日志 JSON, 不能包含换行
+     */
+    public synchronized void append(String json) throws IOException {
+        long now = System.currentTimeMillis();
+        ByteBuffer line = ByteBuffer.wrap((now + "\t" + json + "\n").getBytes(StandardCharsets.UTF_8));
+        while (line.hasRemaining()) {
+            size += channel.write(line, size);
+        }
+        if (pendingCount++ == 0) {
+            oldestPendingMillis = now;
+        }
+    }
+
+    /**
+     * @param maxCount 最多读取的记录数
+     * @return 从检查点开始的未上传记录
+     */
+    public synchronized List<Entry> read(int maxCount) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        int length = (int) Math.min(MAX_READ_BYTES, size - checkpoint);
+        if (length <= 0) {
+            return entries;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        readFully(channel, buffer, checkpoint);
+        byte[] data = buffer.array();
+        int start = 0;
+        for (int i = 0; i < buffer.position() && entries.size() < maxCount; i++) {
+            if (data[i] == '\n') {
+                entries.add(parse(data, start, i, checkpoint + i + 1));
+                start = i + 1;
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * 确认已上传到 offset 为止的 count 条记录
+     */
+    public synchronized void commit(long offset, int count) throws IOException {
+        checkpoint = offset;
+        pendingCount = Math.max(0, pendingCount - count);
+        //未上传的部分过大时(如服务端长时间不可用)暂不压缩, 避免一次读入过多数据
+        if (pendingCount == 0 || (checkpoint >= COMPACT_BYTES && size - checkpoint <= MAX_COMPACT_TAIL_BYTES)) {
+            compact();
+        } else {
+            writeCheckpoint();
+            List<Entry> next = read(1);
+            oldestPendingMillis = next.isEmpty() ? 0 : next.get(0).timestamp;
+        }
+    }
+
+    /**
+     * 把已写入的记录刷到磁盘
+     */
+    public void force() throws IOException {
+        FileChannel current;
+        synchronized (this) {
+            current = channel;
+        }
+        current.force(false);
+    }
+
+    public synchronized int pendingCount() {
+        return pendingCount;
+    }
+
+    public synchronized long pendingBytes() {
+        return size - checkpoint;
+    }
+
+    /**
+     * @return 最早一条未上传记录的写入时间, 没有未上传记录时为0
+     */
+    public synchronized long oldestPendingMillis() {
+        return pendingCount == 0 ? 0 : oldestPendingMillis;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        channel.force(true);
+        channel.close();
+        checkpointChannel.close();
+        //关闭通道同时释放锁
+        lockChannel.close();
+    }
+
+    /**
+     * @return 实际使用的 key, 被占用时带有实例序号
+     */
+    public String getKey() {
+        return key;
+    }
+
+    private void scan() throws IOException {
+        //截断末尾不完整的记录
+        long position = size;
+        ByteBuffer one = ByteBuffer.allocate(1);
+        while (position > checkpoint) {
+            one.clear();
+            channel.read(one, position - 1);
+            if (one.get(0) == '\n') {
+                break;
+            }
+            position--;
+        }
+        if (position < size) {
+            channel.truncate(position);
+            size = position;
+        }
+        long offset = checkpoint;
+        while (offset < size) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(MAX_READ_BYTES, size - offset));
+            readFully(channel, buffer, offset);
+            byte[] data = buffer.array();
+            int start = 0;
+            for (int i = 0; i < buffer.position(); i++) {
+                if (data[i] == '\n') {
+                    if (pendingCount++ == 0) {
+                        oldestPendingMillis = parse(data, start, i, 0).timestamp;
+                    }
+                    start = i + 1;
+                }
+            }
+            if (start == 0) {
+                break;
+            }
+            offset += start;
+        }
+    }
+
+    private void compact() throws IOException {
+        long tailLength = size - checkpoint;
+        ByteBuffer tail = ByteBuffer.allocate((int) tailLength);
+        readFully(channel, tail, checkpoint);
+        tail.flip();
+        long nextGeneration = generation + 1;
+        FileChannel next = FileChannel.open(journalFile(nextGeneration).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        while (tail.hasRemaining()) {
+            next.write(tail);
+        }
+        next.force(false);
+        long previousGeneration = generation;
+        channel.close();
+        channel = next;
+        generation = nextGeneration;
+        checkpoint = 0;
+        size = tailLength;
+        writeCheckpoint();
+        journalFile(previousGeneration).delete();
+        if (pendingCount > 0) {
+            List<Entry> first = read(1);
+            oldestPendingMillis = first.isEmpty() ? 0 : first.get(0).timestamp;
+        }
+    }
+
+    private void writeCheckpoint() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        buffer.putLong(generation).putLong(checkpoint).flip();
+        while (buffer.hasRemaining()) {
+            checkpointChannel.write(buffer, buffer.position());
+        }
+        checkpointChannel.force(false);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+    }
+
+    private File journalFile(long generation) {
+        return new File(directory, FILE_PREFIX + key + "-" + generation + FILE_SUFFIX);
+    }
+
+    private static Entry parse(byte[] data, int start, int end, long nextOffset) {
+        String line = new String(data, start, end - start, StandardCharsets.UTF_8);
+        int tab = line.indexOf('\t');
+        long timestamp = 0;
+        try {
+            timestamp = Long.parseLong(line.substring(0, Math.max(tab, 0)));
+        } catch (NumberFormatException ignore) {
+        }
+        return new Entry(timestamp, line.substring(tab + 1), nextOffset);
+    }
+
+    /**
+     * 一条未上传的记录
+     */
+    public static class Entry {
+        public final long timestamp; // 写入时间
+
+        public final String json;
+
+        public final long nextOffset; // 该记录之后的位置, 确认上传时作为检查点
+
+        Entry(long timestamp, String json, long nextOffset) {
+            this.timestamp = timestamp;
+            this.json = json;
+            this.nextOffset = nextOffset;
+        }
+    }
+}
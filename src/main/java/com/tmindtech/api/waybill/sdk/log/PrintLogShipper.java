@@ -0,0 +1,233 @@
+package com.tmindtech.api.waybill.sdk.log;
+
+import com.alibaba.fastjson.JSONObject;
+import com.tmindtech.api.waybill.sdk.model.PrintLog;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 打印日志的后台上传
+ * append 只把日志追加到本地日志文件, 不等待网络, 也不会抛出异常;
+ * 后台线程在积累到 batchSize 条或距上次上传超过 flushIntervalMillis 时, 把一批日志合并为一个请求上传,
+ * 服务端确认后推进检查点, 失败时按指数退避重试, 日志保留在本地文件中, 进程重启后继续上传
+ * 只有响应体中的结果码为 200 时才算确认; 批量上传返回404或没有结果码时视为服务端不支持, 改为逐条上传
+ */
+public class PrintLogShipper implements Closeable {
+    public static final String SINGLE_TOPIC = "local_print_log";
+    public static final String BATCH_TOPIC = "local_print_log/batch";
+    public static final File DEFAULT_DIRECTORY = new File(System.getProperty("user.home"), ".waybill-sdk/print-log");
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+    /**
+     * HTTP 请求成功但响应体中没有结果码
+     */
+    public static final int NO_RESULT_CODE = 0;
+    private static final int RESULT_OK = 200;
+    private static final long MIN_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 60000;
+
+    /**
+     * 上传一个请求
+     */
+    public interface Uploader {
+
+        /**
+         * @param topic 消息主题
+         * @param data  消息内容
+         * @return HTTP 请求成功时为响应体中的结果码(code), 没有结果码时为 NO_RESULT_CODE; 否则为 HTTP 状态码
+         * @throws IOException 网络异常
+         */
+        int upload(String topic, String data) throws IOException;
+
+    }
+
+    private final PrintLogJournal journal;
+    private final Uploader uploader;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final Thread thread;
+    private final AtomicLong shippedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private volatile boolean batchSupported = true;
+    private volatile boolean closed;
+    private long backoff;
+
+    public PrintLogShipper(PrintLogJournal journal, Uploader uploader) {
+        this(journal, uploader, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param journal             本地日志文件
+     * @param uploader            上传请求
+     * @param batchSize           每批最多上传的日志条数, 积累到此数量时立即上传
+     * @param flushIntervalMillis 日志最长等待上传的时间(毫秒)
+     */
+    public PrintLogShipper(PrintLogJournal journal, Uploader uploader, int batchSize, long flushIntervalMillis) {
+        this.journal = journal;
+        this.uploader = uploader;
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.thread = new Thread(this::run, "waybill-print-log");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * 追加一条日志, 写入本地文件后立即返回, 写入失败时丢弃并计数
+     */
+    public void append(PrintLog printLog) {
+        try {
+            journal.append(JSONObject.toJSONString(printLog));
+        } catch (IOException ex) {
+            droppedCount.incrementAndGet();
+            ex.printStackTrace();
+            return;
+        }
+        if (journal.pendingCount() >= batchSize) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 从响应得出 Uploader 返回的结果码
+     *
+     * @param httpStatus HTTP 状态码
+     * @param body       响应体, 可以为null
+     */
+    public static int resultCode(int httpStatus, String body) {
+        if (httpStatus < 200 || httpStatus >= 300) {
+            return httpStatus;
+        }
+        try {
+            JSONObject json = JSONObject.parseObject(body);
+            Integer code = json == null ? null : json.getInteger("code");
+            return code == null ? NO_RESULT_CODE : code;
+        } catch (RuntimeException ex) {
+            return NO_RESULT_CODE;
+        }
+    }
+
+    public PrintLogStats getStats() {
+        long oldest = journal.oldestPendingMillis();
+        return new PrintLogStats(journal.pendingCount(), journal.pendingBytes(),
+                oldest == 0 ? 0 : Math.max(0, System.currentTimeMillis() - oldest),
+                shippedCount.get(), failedCount.get(), droppedCount.get());
+    }
+
+    /**
+     * 停止后台线程, 停止前尝试上传剩余的日志, 未上传的日志留在本地文件中
+     */
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (this) {
+            notifyAll();
+        }
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            journal.close();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    private void run() {
+        while (!closed) {
+            try {
+                awaitBatch();
+            } catch (InterruptedException ex) {
+                return;
+            }
+            //积压较多时连续上传, 直到不足一批
+            boolean shipped = ship();
+            while (shipped && !closed && journal.pendingCount() >= batchSize) {
+                shipped = ship();
+            }
+        }
+        ship();
+    }
+
+    private synchronized void awaitBatch() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + (backoff > 0 ? backoff : flushIntervalMillis);
+        long wait;
+        while (!closed && (backoff > 0 || journal.pendingCount() < batchSize)
+                && (wait = deadline - System.currentTimeMillis()) > 0) {
+            wait(wait);
+        }
+    }
+
+    /**
+     * @return 本次是否上传成功(没有待上传的日志也算成功)
+     */
+    private boolean ship() {
+        try {
+            List<PrintLogJournal.Entry> entries = journal.read(batchSize);
+            if (entries.isEmpty()) {
+                return true;
+            }
+            journal.force();
+            if (batchSupported) {
+                StringBuilder data = new StringBuilder("[");
+                for (PrintLogJournal.Entry entry : entries) {
+                    data.append(data.length() > 1 ? "," : "").append(entry.json);
+                }
+                int code = uploader.upload(BATCH_TOPIC, data.append(']').toString());
+                if (code == RESULT_OK) {
+                    committed(entries.get(entries.size() - 1).nextOffset, entries.size());
+                    return true;
+                }
+                if (code != 404 && code != NO_RESULT_CODE) {
+                    return failed();
+                }
+                batchSupported = false;
+            }
+            //逐条上传, 失败时确认已成功的部分; 原有接口不返回结果码时以 HTTP 成功为准
+            int count = 0;
+            boolean success = true;
+            for (PrintLogJournal.Entry entry : entries) {
+                int code;
+                try {
+                    code = uploader.upload(SINGLE_TOPIC, entry.json);
+                } catch (IOException ex) {
+                    code = -1;
+                }
+                if (code != RESULT_OK && code != NO_RESULT_CODE) {
+                    success = false;
+                    break;
+                }
+                count++;
+            }
+            if (count > 0) {
+                committed(entries.get(count - 1).nextOffset, count);
+            }
+            return success || failed();
+        } catch (IOException | RuntimeException ex) {
+            return failed();
+        }
+    }
+
+    private void committed(long offset, int count) throws IOException {
+        journal.commit(offset, count);
+        shippedCount.addAndGet(count);
+        synchronized (this) {
+            backoff = 0;
+        }
+    }
+
+    private synchronized boolean failed() {
+        failedCount.incrementAndGet();
+        backoff = backoff == 0 ? MIN_BACKOFF_MILLIS : Math.min(MAX_BACKOFF_MILLIS, backoff * 2);
+        return false;
+    }
+}
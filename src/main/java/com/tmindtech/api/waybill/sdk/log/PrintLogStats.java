@@ -0,0 +1,39 @@
+package com.tmindtech.api.waybill.sdk.log;
+
+/**
+ * 打印日志上传状态快照
+ */
+public class PrintLogStats {
+    public final int queueDepth; // 尚未上传的日志条数
+
+    public final long queuedBytes; // 尚未上传的日志字节数
+
+    public final long lagMillis; // 最早一条未上传日志已等待的时间(毫秒)
+
+    public final long shippedCount; // 已上传的日志条数
+
+    public final long failedCount; // 上传失败的次数
+
+    public final long droppedCount; // 无法写入本地日志文件而丢弃的日志条数
+
+    public PrintLogStats(int queueDepth, long queuedBytes, long lagMillis, long shippedCount, long failedCount, long droppedCount) {
+        this.queueDepth = queueDepth;
+        this.queuedBytes = queuedBytes;
+        this.lagMillis = lagMillis;
+        this.shippedCount = shippedCount;
+        this.failedCount = failedCount;
+        this.droppedCount = droppedCount;
+    }
+
+    @Override
+    public String toString() {
+        return "PrintLogStats{" +
+                "queueDepth=" + queueDepth +
+                ", queuedBytes=" + queuedBytes +
+                ", lagMillis=" + lagMillis +
+                ", shippedCount=" + shippedCount +
+                ", failedCount=" + failedCount +
+                ", droppedCount=" + droppedCount +
+                '}';
+    }
+}
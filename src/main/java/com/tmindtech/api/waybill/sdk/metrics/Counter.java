@@ -0,0 +1,36 @@
+package com.tmindtech.api.waybill.sdk.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 计数器, 多线程并发累加不竞争同一个变量
+ */
+public class Counter implements CounterMXBean {
+    private final String name;
+    private final String tag;
+    private final LongAdder count = new LongAdder();
+
+    public Counter(String name, String tag) {
+        this.name = name;
+        this.tag = tag;
+    }
+
+    public void add(long delta) {
+        count.add(delta);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getTag() {
+        return tag;
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+}
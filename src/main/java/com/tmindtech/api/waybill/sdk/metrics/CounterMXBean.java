@@ -0,0 +1,14 @@
+package com.tmindtech.api.waybill.sdk.metrics;
+
+/**
+ * 按打印机或服务器地址区分的计数
+ */
+public interface CounterMXBean {
+
+    String getName();
+
+    String getTag();
+
+    long getCount();
+
+}
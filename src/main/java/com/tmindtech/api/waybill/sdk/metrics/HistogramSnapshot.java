@@ -0,0 +1,42 @@
+package com.tmindtech.api.waybill.sdk.metrics;
+
+/**
+ * 耗时分布快照, 时间单位为毫秒
+ */
+public class HistogramSnapshot {
+    public final Stage stage;
+
+    public final String tag; // 打印机名称或服务器地址
+
+    public final long count;
+
+    public final double meanMillis;
+
+    public final double p50Millis;
+
+    public final double p90Millis;
+
+    public final double p99Millis;
+
+    public final double p999Millis;
+
+    public final double maxMillis;
+
+    HistogramSnapshot(Stage stage, LatencyHistogram histogram) {
+        this.stage = stage;
+        this.tag = histogram.getTag();
+        this.count = histogram.getCount();
+        this.meanMillis = histogram.getMeanMillis();
+        this.p50Millis = histogram.getP50Millis();
+        this.p90Millis = histogram.getP90Millis();
+        this.p99Millis = histogram.getP99Millis();
+        this.p999Millis = histogram.getP999Millis();
+        this.maxMillis = histogram.getMaxMillis();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[%s]{count=%d, mean=%.3fms, p50=%.3fms, p90=%.3fms, p99=%.3fms, p999=%.3fms, max=%.3fms}",
+                stage, tag, count, meanMillis, p50Millis, p90Millis, p99Millis, p999Millis, maxMillis);
+    }
+}
@@ -0,0 +1,26 @@
+package com.tmindtech.api.waybill.sdk.metrics;
+
+/**
+ * 一个阶段在一台打印机或一个服务器地址上的耗时分布, 时间单位为毫秒
+ */
+public interface LatencyHistogramMXBean {
+
+    String getStage();
+
+    String getTag();
+
+    long getCount();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP90Millis();
+
+    double getP99Millis();
+
+    double getP999Millis();
+
+    double getMaxMillis();
+
+}
@@ -0,0 +1,143 @@
+package com.tmindtech.api.waybill.sdk.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * 打印流程各阶段的耗时分布与计数, 按打印机或服务器地址区分
+ * 可通过 snapshot 读取, 也可注册为 JMX MBean:
+ * com.tmindtech.api.waybill.sdk:type=Latency,instance=..,stage=..,tag=.. 与 type=Counter,instance=..,name=..,tag=..
+ */
+public class MetricsRegistry {
+    public static final String JMX_DOMAIN = "com.tmindtech.api.waybill.sdk";
+
+    private final Map<Stage, Map<String, LatencyHistogram>> histograms = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Counter>> counters = new ConcurrentHashMap<>();
+    private final List<ObjectName> registeredNames = new ArrayList<>();
+    private String jmxInstance;
+
+    /**
+     * @param stage 阶段
+     * @param tag   打印机名称或服务器地址
+     * @param nanos 耗时(纳秒)
+     */
+    public void record(Stage stage, String tag, long nanos) {
+        histogram(stage, tag).record(nanos);
+    }
+
+    public void increment(String name, String tag) {
+        add(name, tag, 1);
+    }
+
+    public void add(String name, String tag, long delta) {
+        counter(name, tag).add(delta);
+    }
+
+    /**
+     * @return 在 executor 上执行并把每个任务的执行时间(不含排队时间)计入指定阶段的 Executor
+     */
+    public Executor timed(Executor executor, Stage stage, String tag) {
+        LatencyHistogram histogram = histogram(stage, tag);
+        return command -> executor.execute(() -> {
+            long start = System.nanoTime();
+            try {
+                command.run();
+            } finally {
+                histogram.record(System.nanoTime() - start);
+            }
+        });
+    }
+
+    public MetricsSnapshot snapshot() {
+        List<HistogramSnapshot> histogramList = new ArrayList<>();
+        histograms.forEach((stage, byTag) ->
+                byTag.values().forEach(histogram -> histogramList.add(new HistogramSnapshot(stage, histogram))));
+        histogramList.sort(Comparator.<HistogramSnapshot, Stage>comparing(item -> item.stage)
+                .thenComparing(item -> item.tag));
+        Map<String, Map<String, Long>> counterMap = new TreeMap<>();
+        counters.forEach((name, byTag) -> {
+            Map<String, Long> values = new TreeMap<>();
+            byTag.forEach((tag, counter) -> values.put(tag, counter.getCount()));
+            counterMap.put(name, values);
+        });
+        return new MetricsSnapshot(histogramList, counterMap);
+    }
+
+    /**
+     * 把已有和之后新增的耗时分布与计数注册为 MBean
+     *
+     * @param instance 区分同一进程中多个 SDK 实例的名称
+     */
+    public synchronized void registerMBeans(String instance) {
+        unregisterMBeans();
+        jmxInstance = instance;
+        histograms.forEach((stage, byTag) -> byTag.values().forEach(this::register));
+        counters.values().forEach(byTag -> byTag.values().forEach(this::register));
+    }
+
+    public synchronized void unregisterMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registeredNames) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException ignore) {
+            }
+        }
+        registeredNames.clear();
+        jmxInstance = null;
+    }
+
+    private LatencyHistogram histogram(Stage stage, String tag) {
+        Map<String, LatencyHistogram> byTag = histograms.computeIfAbsent(stage, key -> new ConcurrentHashMap<>());
+        LatencyHistogram histogram = byTag.get(tag);
+        if (histogram == null) {
+            histogram = byTag.computeIfAbsent(tag, key -> new LatencyHistogram(stage.name(), key));
+            register(histogram);
+        }
+        return histogram;
+    }
+
+    private Counter counter(String name, String tag) {
+        Map<String, Counter> byTag = counters.computeIfAbsent(name, key -> new ConcurrentHashMap<>());
+        Counter counter = byTag.get(tag);
+        if (counter == null) {
+            counter = byTag.computeIfAbsent(tag, key -> new Counter(name, key));
+            register(counter);
+        }
+        return counter;
+    }
+
+    private synchronized void register(Object bean) {
+        if (jmxInstance == null) {
+            return;
+        }
+        try {
+            ObjectName name;
+            if (bean instanceof LatencyHistogram) {
+                LatencyHistogram histogram = (LatencyHistogram) bean;
+                name = new ObjectName(JMX_DOMAIN + ":type=Latency,instance=" + ObjectName.quote(jmxInstance)
+                        + ",stage=" + histogram.getStage() + ",tag=" + ObjectName.quote(histogram.getTag()));
+            } else {
+                Counter counter = (Counter) bean;
+                name = new ObjectName(JMX_DOMAIN + ":type=Counter,instance=" + ObjectName.quote(jmxInstance)
+                        + ",name=" + ObjectName.quote(counter.getName()) + ",tag=" + ObjectName.quote(counter.getTag()));
+            }
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(name)) {
+                server.registerMBean(bean, name);
+                registeredNames.add(name);
+            }
+        } catch (JMException ex) {
+            ex.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.tmindtech.api.waybill.sdk.metrics;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 所有阶段耗时分布与计数的快照
+ */
+public class MetricsSnapshot {
+    public final List<HistogramSnapshot> histograms; // 按阶段、标签排序
+
+    public final Map<String, Map<String, Long>> counters; // 计数名称 -> 标签 -> 计数
+
+    MetricsSnapshot(List<HistogramSnapshot> histograms, Map<String, Map<String, Long>> counters) {
+        this.histograms = histograms;
+        this.counters = counters;
+    }
+
+    /**
+     * @return 指定阶段与标签的耗时分布, 没有记录时为 null
+     */
+    public HistogramSnapshot getHistogram(Stage stage, String tag) {
+        for (HistogramSnapshot histogram : histograms) {
+            if (histogram.stage == stage && histogram.tag.equals(tag)) {
+                return histogram;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return 指定计数在某个标签上的值, 没有记录时为0
+     */
+    public long getCounter(String name, String tag) {
+        Map<String, Long> byTag = counters.get(name);
+        return byTag == null ? 0 : byTag.getOrDefault(tag, 0L);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("MetricsSnapshot{");
+        histograms.forEach(histogram -> builder.append("\n  ").append(histogram));
+        counters.forEach((name, byTag) -> builder.append("\n  ").append(name).append(byTag));
+        return builder.append("\n}").toString();
+    }
+}
@@ -0,0 +1,57 @@
+package com.tmindtech.api.waybill.sdk.metrics;
+
+/**
+ * 打印流程中计时的阶段
+ * 网络阶段按服务器地址(host:port)区分, 其余阶段按打印机名称区分
+ */
+public enum Stage {
+    /**
+     * 打印请求从提交到在打印机队列中开始执行, 包括等待准入的时间(按打印机)
+     */
+    ADMISSION_WAIT,
+
+    /**
+     * 查询面单信息、面单图片地址(按服务器地址)
+     */
+    METADATA_LOOKUP,
+
+    /**
+     * 分包请求(按服务器地址)
+     */
+    SPLIT_PACKAGE,
+
+    /**
+     * 下载面单图片(按图片服务器地址)
+     */
+    IMAGE_DOWNLOAD,
+
+    /**
+     * 解码面单图片(按打印机)
+     */
+    DECODE,
+
+    /**
+     * 按打印机分辨率缩放(按打印机)
+     */
+    RESAMPLE,
+
+    /**
+     * 编码为 png 或打印机指令, 每页一次(按打印机)
+     */
+    ENCODE,
+
+    /**
+     * 提交打印任务, 每页一次(按打印机)
+     */
+    SPOOL,
+
+    /**
+     * 回调 PrintListener(按打印机)
+     */
+    LISTENER_DISPATCH,
+
+    /**
+     * 上传打印日志(按服务器地址)
+     */
+    LOG_SHIPPING
+}
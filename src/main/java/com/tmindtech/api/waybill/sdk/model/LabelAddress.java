@@ -0,0 +1,22 @@
+package com.tmindtech.api.waybill.sdk.model;
+
+/**
+ * 批量查询中单张面单的图片地址
+ */
+public class LabelAddress {
+
+    public String uuidCode; // 唯一码
+
+    public Integer code; // 200 表示面单已生成
+
+    public String data; // 面单图片地址
+
+    @Override
+    public String toString() {
+        return "LabelAddress{" +
+                "uuidCode='" + uuidCode + '\'' +
+                ", code=" + code +
+                ", data='" + data + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,7 @@
+package com.tmindtech.api.waybill.sdk.model;
+
+import java.util.List;
+
+public class LabelAddressData {
+    public List<LabelAddress> data;
+}
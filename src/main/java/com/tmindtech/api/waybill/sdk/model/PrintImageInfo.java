@@ -0,0 +1,28 @@
+package com.tmindtech.api.waybill.sdk.model;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * 已解码并按打印机分辨率缩放好的面单图片, 打印阶段可以直接使用, 无需再次解码
+ */
+public class PrintImageInfo {
+    public BufferedImage image; // 匹配打印机分辨率后的图片
+
+    public float width; // 每一页的打印宽度(毫米)
+
+    public float height; // 每一页的打印高度(毫米)
+
+    public int crossFeedDpi; // 图片水平dpi
+
+    public int feedDpi; // 图片垂直dpi
+
+    public boolean resampled; // 是否经过缩放, 未缩放时图片即原图
+
+    public int sourceDpi; // 原图水平dpi
+
+    public long sourcePixels; // 原图像素数
+
+    public long decodeNanos; // 解码耗时(纳秒)
+
+    public long resampleNanos; // 缩放耗时(纳秒), 未缩放时为0
+}
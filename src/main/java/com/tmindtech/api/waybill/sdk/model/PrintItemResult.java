@@ -0,0 +1,22 @@
+package com.tmindtech.api.waybill.sdk.model;
+
+/**
+ * 单张面单的打印结果
+ */
+public class PrintItemResult {
+    public String uuidCode;
+
+    public Boolean isSuccess;
+
+    public Number errorCode; // 错误码, 见 Constants
+
+    public String errorMessage;
+
+    public long elapsedMillis; // 从批次开始到得到结果的耗时(毫秒)
+
+    @Override
+    public String toString() {
+        return "PrintItemResult{uuidCode=" + uuidCode + ", isSuccess=" + isSuccess + ", errorCode=" + errorCode
+                + ", errorMessage=" + errorMessage + ", elapsedMillis=" + elapsedMillis + "}";
+    }
+}
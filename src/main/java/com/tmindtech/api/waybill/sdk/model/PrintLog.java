@@ -5,7 +5,8 @@ public class PrintLog {
     public Long id;
     public String logTime;
     public String target;
-    public Long timeOut;
+    public Long timeOut; // 打印耗时(秒), 不足1秒的部分被舍去
+    public Long printMillis; // 打印耗时(毫秒)
     public String uuidCode;
 
     public PrintLog(String logTime, String target, Long timeOut, String uuidCode) {
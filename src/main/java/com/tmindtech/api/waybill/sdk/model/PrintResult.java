@@ -0,0 +1,27 @@
+package com.tmindtech.api.waybill.sdk.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 一个打印批次的结果, items 与请求的唯一码顺序一致
+ */
+public class PrintResult {
+    public String printerName;
+
+    public List<PrintItemResult> items = new ArrayList<>();
+
+    public long queuedMillis; // 在打印机队列中等待的时间(毫秒)
+
+    public long elapsedMillis; // 批次开始执行到结束的耗时(毫秒)
+
+    public boolean isAllSuccess() {
+        return items.stream().allMatch(item -> Boolean.TRUE.equals(item.isSuccess));
+    }
+
+    @Override
+    public String toString() {
+        return "PrintResult{printerName=" + printerName + ", items=" + items + ", queuedMillis=" + queuedMillis
+                + ", elapsedMillis=" + elapsedMillis + "}";
+    }
+}
@@ -5,6 +5,8 @@ import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 
 public class YXMessage {
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
     public String id;
     public Integer async;
     public String topic;
@@ -22,6 +24,6 @@ public class YXMessage {
         this.target = target;
         this.sign = sign;
         this.payload = payload;
-        this.timestamp = ZonedDateTime.now(ZoneOffset.UTC).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+        this.timestamp = ZonedDateTime.now(ZoneOffset.UTC).format(TIMESTAMP_FORMAT);
     }
 }
@@ -0,0 +1,268 @@
+package com.tmindtech.api.waybill.sdk.print;
+
+import com.tmindtech.api.waybill.sdk.metrics.MetricsRegistry;
+import com.tmindtech.api.waybill.sdk.metrics.Stage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 打印请求进入打印机队列前的准入控制
+ * 限制已接受但尚未开始执行的请求数(capacity), 以及所有未结束请求按面单数预估的内存(maxBytes),
+ * 超出时按 AdmissionPolicy 阻塞、拒绝或丢弃低优先级请求, 避免高峰时请求在内存中无限堆积
+ * 已开始的请求把挂起后就绪的面单放回打印机队列(followUp)时同样占用排队位置, 但不会被拒绝或丢弃
+ * 从提交到开始执行的时间计入 ADMISSION_WAIT, 拒绝与丢弃的请求分别计入 admission.rejected 与 admission.shed
+ */
+public class AdmissionController {
+    public static final int DEFAULT_CAPACITY = 256;
+    public static final long DEFAULT_MAX_BYTES = 256L << 20;
+    public static final long DEFAULT_LABEL_BYTES = 1L << 20;
+    public static final long DEFAULT_BLOCK_TIMEOUT_MILLIS = 30000;
+    public static final int DEFAULT_PRIORITY = 0;
+    public static final String REJECTED_COUNTER = "admission.rejected";
+    public static final String SHED_COUNTER = "admission.shed";
+
+    private static final int QUEUED = 0;
+    private static final int STARTED = 1;
+    private static final int SHED = 2;
+    private static final int RELEASED = 3;
+
+    private final int capacity;
+    private final long maxBytes;
+    private final long labelBytes;
+    private final AdmissionPolicy policy;
+    private final long blockTimeoutMillis;
+    private final MetricsRegistry metrics;
+    private final List<Ticket> queue = new ArrayList<>();
+    private int followUps;
+    private int outstanding;
+    private long reservedBytes;
+    private int blocked;
+    private long admittedCount;
+    private long rejectedCount;
+    private long shedCount;
+    private boolean shutdown;
+
+    public AdmissionController(MetricsRegistry metrics) {
+        this(DEFAULT_CAPACITY, DEFAULT_MAX_BYTES, DEFAULT_LABEL_BYTES, AdmissionPolicy.FAIL_FAST,
+                DEFAULT_BLOCK_TIMEOUT_MILLIS, metrics);
+    }
+
+    /**
+     * @param capacity           已接受但尚未开始执行的请求数上限
+     * @param maxBytes           所有未结束请求预估占用的内存上限, 单个请求超出时只在没有其他请求时接受
+     * @param labelBytes         每张面单预估占用的内存(下载的图片、解码后的图片与打印数据)
+     * @param policy             超出上限时的处理方式
+     * @param blockTimeoutMillis BLOCK 时最长的等待时间(毫秒)
+     */
+    public AdmissionController(int capacity, long maxBytes, long labelBytes, AdmissionPolicy policy,
+                               long blockTimeoutMillis, MetricsRegistry metrics) {
+        this.capacity = Math.max(1, capacity);
+        this.maxBytes = maxBytes;
+        this.labelBytes = labelBytes;
+        this.policy = policy;
+        this.blockTimeoutMillis = blockTimeoutMillis;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 申请把一个请求放入打印机队列, BLOCK 时可能阻塞调用线程
+     *
+     * @param printerName 目标打印机, 用于区分计数
+     * @param priority    优先级, 数值越大越优先, 只在 SHED_LOWEST_PRIORITY 时使用
+     * @param labelCount  请求中的面单数, 用于预估内存
+     * @param onShed      请求在排队中被丢弃时回调, 在提交新请求的线程上执行
+     * @return 准入凭证, 请求开始执行时调用 start, 结束时调用 release
+     * @throws RuntimeException PrintQueueFull 请求被拒绝; SDK shutdown 已关闭
+     */
+    public Ticket admit(String printerName, int priority, int labelCount, Runnable onShed) {
+        long startTime = System.nanoTime();
+        long bytes = Math.max(1, labelCount) * labelBytes;
+        List<Ticket> victims = Collections.emptyList();
+        Ticket ticket;
+        synchronized (this) {
+            if (!shutdown && !fits(queued(), reservedBytes, outstanding, bytes)) {
+                if (policy == AdmissionPolicy.BLOCK) {
+                    await(bytes, startTime);
+                } else if (policy == AdmissionPolicy.SHED_LOWEST_PRIORITY) {
+                    victims = shed(priority, bytes);
+                }
+            }
+            if (shutdown) {
+                throw new RuntimeException("SDK shutdown");
+            }
+            if (!fits(queued(), reservedBytes, outstanding, bytes)) {
+                rejectedCount++;
+                metrics.increment(REJECTED_COUNTER, printerName);
+                throw new RuntimeException("PrintQueueFull");
+            }
+            ticket = new Ticket(printerName, priority, bytes, startTime, onShed);
+            queue.add(ticket);
+            outstanding++;
+            reservedBytes += bytes;
+            admittedCount++;
+        }
+        for (Ticket victim : victims) {
+            metrics.increment(SHED_COUNTER, victim.printerName);
+            try {
+                victim.onShed.run();
+            } catch (RuntimeException ex) {
+                ex.printStackTrace();
+            }
+        }
+        return ticket;
+    }
+
+    public synchronized AdmissionStats getStats() {
+        return new AdmissionStats(policy, queued(), capacity, outstanding, reservedBytes, maxBytes, blocked,
+                admittedCount, rejectedCount, shedCount);
+    }
+
+    /**
+     * 不再接受新的请求, 唤醒阻塞中的提交线程, 已接受的请求不受影响
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        notifyAll();
+    }
+
+    private int queued() {
+        return queue.size() + followUps;
+    }
+
+    private boolean fits(int queued, long reserved, int running, long bytes) {
+        //单个请求超出内存预算时, 没有其他请求则仍然接受, 否则它永远无法执行
+        return queued < capacity && (reserved + bytes <= maxBytes || running == 0);
+    }
+
+    private void await(long bytes, long startTime) {
+        long deadline = startTime + TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis);
+        blocked++;
+        try {
+            while (!shutdown && !fits(queued(), reservedBytes, outstanding, bytes)) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            blocked--;
+        }
+    }
+
+    /**
+     * 从优先级最低、最后提交的排队请求开始丢弃, 直到新请求可以接受; 丢弃全部候选仍不够时不丢弃
+     */
+    private List<Ticket> shed(int priority, long bytes) {
+        List<Ticket> candidates = new ArrayList<>();
+        for (Ticket ticket : queue) {
+            if (ticket.priority < priority) {
+                candidates.add(ticket);
+            }
+        }
+        candidates.sort(Comparator.<Ticket>comparingInt(ticket -> ticket.priority)
+                .thenComparing(Comparator.<Ticket>comparingLong(ticket -> ticket.admitTime).reversed()));
+        int queued = queued();
+        long reserved = reservedBytes;
+        int running = outstanding;
+        int count = 0;
+        while (!fits(queued, reserved, running, bytes)) {
+            if (count == candidates.size()) {
+                return Collections.emptyList();
+            }
+            Ticket ticket = candidates.get(count++);
+            queued--;
+            reserved -= ticket.bytes;
+            running--;
+        }
+        List<Ticket> victims = new ArrayList<>(candidates.subList(0, count));
+        for (Ticket ticket : victims) {
+            queue.remove(ticket);
+            ticket.state = SHED;
+            outstanding--;
+            reservedBytes -= ticket.bytes;
+            shedCount++;
+        }
+        return victims;
+    }
+
+    /**
+     * 一个已接受请求的准入凭证
+     */
+    public class Ticket {
+        private final String printerName;
+        private final int priority;
+        private final long bytes;
+        private final long admitTime;
+        private final Runnable onShed;
+        private int state = QUEUED;
+
+        Ticket(String printerName, int priority, long bytes, long admitTime, Runnable onShed) {
+            this.printerName = printerName;
+            this.priority = priority;
+            this.bytes = bytes;
+            this.admitTime = admitTime;
+            this.onShed = onShed;
+        }
+
+        /**
+         * 请求开始执行, 让出排队位置, 内存预算保留到 release
+         *
+         * @return 请求已被丢弃或已结束时返回false, 不应再执行
+         */
+        public boolean start() {
+            synchronized (AdmissionController.this) {
+                if (state != QUEUED) {
+                    return false;
+                }
+                state = STARTED;
+                queue.remove(this);
+                AdmissionController.this.notifyAll();
+            }
+            metrics.record(Stage.ADMISSION_WAIT, printerName, System.nanoTime() - admitTime);
+            return true;
+        }
+
+        /**
+         * 已开始的请求把一批面单放回打印机队列, 占用一个排队位置直到 followUpStarted, 内存已在准入时预留
+         */
+        public void followUp() {
+            synchronized (AdmissionController.this) {
+                followUps++;
+            }
+        }
+
+        /**
+         * 放回队列的面单开始执行或提交失败, 让出排队位置
+         */
+        public void followUpStarted() {
+            synchronized (AdmissionController.this) {
+                followUps--;
+                AdmissionController.this.notifyAll();
+            }
+        }
+
+        /**
+         * 请求结束(包括提交失败), 释放排队位置与内存预算, 可重复调用
+         */
+        public void release() {
+            synchronized (AdmissionController.this) {
+                if (state == SHED || state == RELEASED) {
+                    return;
+                }
+                if (state == QUEUED) {
+                    queue.remove(this);
+                }
+                state = RELEASED;
+                outstanding--;
+                reservedBytes -= bytes;
+                AdmissionController.this.notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.tmindtech.api.waybill.sdk.print;
+
+/**
+ * 打印请求超出排队容量或内存预算时的处理方式
+ */
+public enum AdmissionPolicy {
+    /**
+     * 阻塞提交请求的线程, 直到有空位或超时, 超时后按 FAIL_FAST 处理
+     */
+    BLOCK,
+
+    /**
+     * 立即拒绝新请求, 每张面单回调 Constants.PRINT_QUEUE_FULL
+     */
+    FAIL_FAST,
+
+    /**
+     * 丢弃排队中优先级比新请求低的请求(同优先级时不丢弃), 被丢弃的面单回调 Constants.PRINT_REQUEST_SHED;
+     * 没有可丢弃的请求时按 FAIL_FAST 处理
+     */
+    SHED_LOWEST_PRIORITY
+}
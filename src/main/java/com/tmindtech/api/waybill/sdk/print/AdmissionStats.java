@@ -0,0 +1,48 @@
+package com.tmindtech.api.waybill.sdk.print;
+
+/**
+ * 打印请求准入状态的快照
+ */
+public class AdmissionStats {
+    public final AdmissionPolicy policy;
+
+    public final int queued; // 已接受但尚未开始执行的请求数, 包括等待后放回打印机队列的面单
+
+    public final int capacity; // 排队请求数上限
+
+    public final int outstanding; // 已接受但尚未结束的请求数, 包括排队中、执行中和等待面单生成的请求
+
+    public final long reservedBytes; // 未结束的请求预估占用的内存
+
+    public final long maxBytes; // 内存预算
+
+    public final int blocked; // 正在阻塞等待准入的提交线程数
+
+    public final long admittedCount; // 累计接受的请求数
+
+    public final long rejectedCount; // 累计拒绝的请求数
+
+    public final long shedCount; // 累计在排队中被丢弃的请求数
+
+    public AdmissionStats(AdmissionPolicy policy, int queued, int capacity, int outstanding, long reservedBytes,
+                          long maxBytes, int blocked, long admittedCount, long rejectedCount, long shedCount) {
+        this.policy = policy;
+        this.queued = queued;
+        this.capacity = capacity;
+        this.outstanding = outstanding;
+        this.reservedBytes = reservedBytes;
+        this.maxBytes = maxBytes;
+        this.blocked = blocked;
+        this.admittedCount = admittedCount;
+        this.rejectedCount = rejectedCount;
+        this.shedCount = shedCount;
+    }
+
+    @Override
+    public String toString() {
+        return "AdmissionStats{policy=" + policy + ", queued=" + queued + "/" + capacity + ", outstanding=" + outstanding
+                + ", reservedBytes=" + reservedBytes + "/" + maxBytes + ", blocked=" + blocked
+                + ", admittedCount=" + admittedCount + ", rejectedCount=" + rejectedCount + ", shedCount=" + shedCount
+                + "}";
+    }
+}
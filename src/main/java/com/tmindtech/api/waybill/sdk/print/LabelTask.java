@@ -0,0 +1,41 @@
+package com.tmindtech.api.waybill.sdk.print;
+
+import com.tmindtech.api.waybill.sdk.model.LabelInfo;
+import com.tmindtech.api.waybill.sdk.model.PrintImageInfo;
+import com.tmindtech.api.waybill.sdk.trace.Span;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 打印流水线中单张面单的处理状态, 依次经过获取、转换、打印三个阶段
+ */
+public class LabelTask {
+    public final String uuidCode;
+
+    public LabelInfo labelInfo; // 面单信息
+
+    public String imageAddress; // 面单图片地址, 为 null 表示面单尚未生成
+
+    public byte[] image; // 下载得到的面单图片
+
+    public PrintImageInfo imageInfo; // 匹配打印机分辨率后的图片
+
+    public List<CompletableFuture<byte[]>> pages; // 按页序排列的各页png(或打印机指令), 在转换阶段开始并行编码
+
+    public boolean rawCommand; // pages 中是否为热敏打印机指令而不是png
+
+    public List<BufferedImage> rasterPages; // PRINTABLE 方式下按页序排列的各页图片, 不为 null 时不使用 pages
+
+    public long startTime; // 开始处理的时间(毫秒)
+
+    public Span span = Span.NOOP; // 所属打印请求的 trace, 各阶段的 span 都是它的子 span
+
+    public LabelTask(String uuidCode) {
+        this.uuidCode = uuidCode;
+    }
+
+    public boolean isReady() {
+        return imageAddress != null;
+    }
+}
@@ -0,0 +1,27 @@
+package com.tmindtech.api.waybill.sdk.print;
+
+/**
+ * 一台打印机打印队列的状态快照
+ */
+public class LaneStats {
+    public final String printerName;
+
+    public final int depth; // 排队中尚未开始的打印批次数
+
+    public final int inFlight; // 正在执行的打印批次数
+
+    public final long completedCount; // 已完成的打印批次数
+
+    public LaneStats(String printerName, int depth, int inFlight, long completedCount) {
+        this.printerName = printerName;
+        this.depth = depth;
+        this.inFlight = inFlight;
+        this.completedCount = completedCount;
+    }
+
+    @Override
+    public String toString() {
+        return "LaneStats{printerName=" + printerName + ", depth=" + depth + ", inFlight=" + inFlight
+                + ", completedCount=" + completedCount + "}";
+    }
+}
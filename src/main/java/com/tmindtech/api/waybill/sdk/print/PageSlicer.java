@@ -0,0 +1,64 @@
+package com.tmindtech.api.waybill.sdk.print;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import javax.imageio.ImageIO;
+
+/**
+ * 多页面单的分页工具
+ * 一张面单图片只解码一次, 每一页是原图上的一个横条(共享像素数据, 不复制),
+ * 各页的png编码并行进行, 第一页编码完成即可开始打印
+ */
+public class PageSlicer {
+
+    /**
+     * 将图片按高度平均切分为若干页
+     *
+     * @param image     整张面单图片
+     * @param pageCount 页数
+     * @return 每一页的图片, 与原图共享像素数据
+     */
+    public static List<BufferedImage> slice(BufferedImage image, int pageCount) {
+        List<BufferedImage> pages = new ArrayList<>(pageCount);
+        for (int i = 0; i < pageCount; i++) {
+            pages.add(image.getSubimage(0, (int) (i * 1.0 / pageCount * image.getHeight()),
+                    image.getWidth(), image.getHeight() / pageCount));
+        }
+        return pages;
+    }
+
+    /**
+     * 切分并在 executor 上并行编码所有页
+     *
+     * @param image     整张面单图片
+     * @param pageCount 页数
+     * @param executor  编码所用的线程池
+     * @return 按页序排列的编码结果
+     */
+    public static List<CompletableFuture<byte[]>> encodeAsync(BufferedImage image, int pageCount, Executor executor) {
+        List<CompletableFuture<byte[]>> pages = new ArrayList<>(pageCount);
+        for (BufferedImage page : slice(image, pageCount)) {
+            pages.add(CompletableFuture.supplyAsync(() -> encode(page), executor));
+        }
+        return pages;
+    }
+
+    /**
+     * 将一页编码为png
+     */
+    public static byte[] encode(BufferedImage page) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(page, "png", output);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return output.toByteArray();
+    }
+}
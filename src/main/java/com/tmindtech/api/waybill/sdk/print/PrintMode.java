@@ -0,0 +1,35 @@
+package com.tmindtech.api.waybill.sdk.print;
+
+import javax.print.DocFlavor;
+import javax.print.PrintService;
+
+/**
+ * 提交打印任务的方式
+ */
+public enum PrintMode {
+    /**
+     * 每一页编码为png, 以 DocFlavor.INPUT_STREAM.PNG 提交, 由打印服务重新解码
+     */
+    PNG,
+
+    /**
+     * 直接把已解码、已缩放的图片以 DocFlavor.SERVICE_FORMATTED.PRINTABLE 提交, 省去png编码和解码
+     */
+    PRINTABLE,
+
+    /**
+     * 按打印机支持的格式自动选择, 支持 PRINTABLE 时优先使用
+     */
+    AUTO;
+
+    /**
+     * @param printService 目标打印机
+     * @return 该打印机实际使用的打印方式, 只会是 PNG 或 PRINTABLE
+     */
+    public PrintMode resolve(PrintService printService) {
+        if (this != AUTO) {
+            return this;
+        }
+        return printService.isDocFlavorSupported(DocFlavor.SERVICE_FORMATTED.PRINTABLE) ? PRINTABLE : PNG;
+    }
+}
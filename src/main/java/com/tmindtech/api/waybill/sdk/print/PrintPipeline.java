@@ -0,0 +1,116 @@
+package com.tmindtech.api.waybill.sdk.print;
+
+import com.tmindtech.api.waybill.sdk.util.NamedThreadFactory;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * 分阶段打印流水线
+ * 获取(fetch)、转换(convert)、打印(spool) 三个阶段分别运行在各自的有界线程池上,
+ * 第 N+1 张面单的下载与转换可以和第 N 张面单的打印同时进行, 但打印顺序严格保持提交顺序
+ * 预读深度(lookahead)限制了同一批次中已开始处理但尚未打印完成的面单数量
+ */
+public class PrintPipeline {
+    public static final int DEFAULT_LOOKAHEAD = 4;
+
+    private final ExecutorService fetchExecutor;
+    private final ExecutorService convertExecutor;
+    private final ExecutorService spoolExecutor;
+    private volatile int lookahead = DEFAULT_LOOKAHEAD;
+
+    public PrintPipeline() {
+        this(4, Runtime.getRuntime().availableProcessors(), 2);
+    }
+
+    public PrintPipeline(int fetchThreads, int convertThreads, int spoolThreads) {
+        this.fetchExecutor = newPool("waybill-fetch", fetchThreads);
+        this.convertExecutor = newPool("waybill-convert", convertThreads);
+        this.spoolExecutor = newPool("waybill-spool", spoolThreads);
+    }
+
+    private static ExecutorService newPool(String name, int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new NamedThreadFactory(name));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    public int getLookahead() {
+        return lookahead;
+    }
+
+    /**
+     * 设置预读深度
+     *
+     * @param lookahead 同一批次中最多同时处理的面单数量, 最小为1
+     */
+    public void setLookahead(int lookahead) {
+        if (lookahead < 1) {
+            throw new IllegalArgumentException("lookahead must be positive");
+        }
+        this.lookahead = lookahead;
+    }
+
+    public ExecutorService getFetchExecutor() {
+        return fetchExecutor;
+    }
+
+    public ExecutorService getConvertExecutor() {
+        return convertExecutor;
+    }
+
+    /**
+     * 按顺序处理一批面单, 调用线程会在预读窗口用满时阻塞
+     * 任意一张面单在任意阶段抛出异常, 其后的面单都不会再打印, 返回的 future 以该异常结束
+     *
+     * @param tasks   按打印顺序排列的面单
+     * @param fetch   获取阶段, 查询图片地址并下载
+     * @param convert 转换阶段, 转换图片以匹配打印机
+     * @param spool   打印阶段, 提交打印任务并记录日志
+     * @return 全部面单打印完成后结束的 future
+     */
+    public <T> CompletableFuture<Void> submit(List<T> tasks, UnaryOperator<T> fetch,
+                                              UnaryOperator<T> convert, Consumer<T> spool) {
+        return submit(tasks, fetch, convert, spool, spoolExecutor);
+    }
+
+    /**
+     * 同 submit, 打印阶段在指定的线程池上执行, 用于每台打印机独立的打印线程
+     */
+    public <T> CompletableFuture<Void> submit(List<T> tasks, UnaryOperator<T> fetch, UnaryOperator<T> convert,
+                                              Consumer<T> spool, Executor spoolExecutor) {
+        Semaphore window = new Semaphore(lookahead);
+        CompletableFuture<Void> previous = CompletableFuture.completedFuture(null);
+        for (T task : tasks) {
+            window.acquireUninterruptibly();
+            if (previous.isCompletedExceptionally()) {
+                window.release();
+                break;
+            }
+            CompletableFuture<T> converted = CompletableFuture
+                    .supplyAsync(() -> fetch.apply(task), fetchExecutor)
+                    .thenApplyAsync(convert, convertExecutor);
+            CompletableFuture<Void> spooled = previous.thenCombineAsync(converted, (ignore, result) -> {
+                spool.accept(result);
+                return null;
+            }, spoolExecutor);
+            spooled.whenComplete((ignore, ex) -> window.release());
+            previous = spooled;
+        }
+        return previous;
+    }
+
+    public void shutdown() {
+        fetchExecutor.shutdown();
+        convertExecutor.shutdown();
+        spoolExecutor.shutdown();
+    }
+}
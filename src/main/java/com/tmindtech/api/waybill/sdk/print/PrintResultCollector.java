@@ -0,0 +1,121 @@
+package com.tmindtech.api.waybill.sdk.print;
+
+import com.tmindtech.api.waybill.sdk.Constants;
+import com.tmindtech.api.waybill.sdk.PrintListener;
+import com.tmindtech.api.waybill.sdk.metrics.MetricsRegistry;
+import com.tmindtech.api.waybill.sdk.metrics.Stage;
+import com.tmindtech.api.waybill.sdk.model.LabelInfo;
+import com.tmindtech.api.waybill.sdk.model.PrintItemResult;
+import com.tmindtech.api.waybill.sdk.model.PrintResult;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 收集一个批次中每张面单的打印结果, 同时把回调转发给用户设置的 PrintListener
+ * 多页面单每页都会回调一次, 任意一页失败即记为失败; 回调 PrintListener 的耗时计入 LISTENER_DISPATCH
+ */
+public class PrintResultCollector implements PrintListener {
+    private final PrintListener delegate;
+    private final MetricsRegistry metrics;
+    private final Map<String, PrintItemResult> items = new LinkedHashMap<>();
+    private final long submitTime;
+    private long startTime;
+    private volatile String printerName = "";
+
+    public PrintResultCollector(List<String> uuidCodeList, PrintListener delegate, MetricsRegistry metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+        this.submitTime = System.currentTimeMillis();
+        this.startTime = submitTime;
+        uuidCodeList.forEach(uuidCode -> items.put(uuidCode, null));
+    }
+
+    /**
+     * 追加批次中的面单, 用于分包后才知道唯一码的批次
+     */
+    public synchronized void expect(List<String> uuidCodeList) {
+        uuidCodeList.forEach(uuidCode -> items.putIfAbsent(uuidCode, null));
+    }
+
+    public synchronized boolean isEmpty() {
+        return items.isEmpty();
+    }
+
+    /**
+     * 批次开始执行, 之前的时间计入排队时间
+     *
+     * @param printerName 执行批次的打印机
+     */
+    public synchronized void start(String printerName) {
+        this.printerName = printerName;
+        startTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 批次未执行(被拒绝或丢弃), 每张尚无结果的面单回调一次失败
+     */
+    public void reject(Number errorCode, String errorMessage) {
+        List<String> pending = new ArrayList<>();
+        synchronized (this) {
+            items.forEach((uuidCode, item) -> {
+                if (item == null) {
+                    pending.add(uuidCode);
+                }
+            });
+        }
+        pending.forEach(uuidCode -> onPrint(uuidCode, Boolean.FALSE, null, errorCode, errorMessage));
+    }
+
+    @Override
+    public void onPrint(String uuidCode, Boolean isSuccess, LabelInfo labelInfo, Number errorCode, String errorMessage) {
+        synchronized (this) {
+            PrintItemResult item = items.get(uuidCode);
+            if (item == null || Boolean.TRUE.equals(item.isSuccess)) {
+                item = new PrintItemResult();
+                item.uuidCode = uuidCode;
+                item.isSuccess = isSuccess;
+                item.errorCode = errorCode;
+                item.errorMessage = errorMessage;
+                item.elapsedMillis = System.currentTimeMillis() - startTime;
+                items.put(uuidCode, item);
+            }
+        }
+        if (Objects.nonNull(delegate)) {
+            long dispatchStart = System.nanoTime();
+            try {
+                delegate.onPrint(uuidCode, isSuccess, labelInfo, errorCode, errorMessage);
+            } finally {
+                metrics.record(Stage.LISTENER_DISPATCH, printerName, System.nanoTime() - dispatchStart);
+            }
+        }
+    }
+
+    /**
+     * 结束批次, 没有得到结果的面单(批次因异常中断)记为失败
+     *
+     * @param printerName 打印机名称
+     * @param error       中断批次的异常, 正常结束时为null
+     */
+    public synchronized PrintResult finish(String printerName, Throwable error) {
+        long now = System.currentTimeMillis();
+        PrintResult result = new PrintResult();
+        result.printerName = printerName;
+        result.queuedMillis = startTime - submitTime;
+        result.elapsedMillis = now - startTime;
+        items.forEach((uuidCode, item) -> {
+            if (item == null) {
+                item = new PrintItemResult();
+                item.uuidCode = uuidCode;
+                item.isSuccess = Boolean.FALSE;
+                item.errorCode = Constants.UNKNOWN;
+                item.errorMessage = error == null ? "not printed" : error.getMessage();
+                item.elapsedMillis = now - startTime;
+            }
+            result.items.add(item);
+        });
+        return result;
+    }
+}
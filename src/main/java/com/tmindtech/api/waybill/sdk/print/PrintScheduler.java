@@ -0,0 +1,141 @@
+package com.tmindtech.api.waybill.sdk.print;
+
+import com.tmindtech.api.waybill.sdk.util.NamedThreadFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.print.PrintService;
+
+/**
+ * 按打印机划分的打印队列
+ * 每台打印机有一条独立的有界先进先出队列(lane), 同一台打印机的批次按提交顺序逐个执行,
+ * 不同打印机之间完全并行, 一台打印机缓慢或离线不会影响其他打印机
+ * 下载与图片转换使用 PrintPipeline 的共享线程池, 每条队列只额外持有批次线程和打印线程
+ * 排队的请求数由 AdmissionController 控制, 队列容量大于准入容量, 只作为最后的保护
+ */
+public class PrintScheduler {
+    public static final int DEFAULT_LANE_CAPACITY = 4 * AdmissionController.DEFAULT_CAPACITY;
+
+    private final int laneCapacity;
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+    private volatile boolean shutdown;
+
+    public PrintScheduler() {
+        this(DEFAULT_LANE_CAPACITY);
+    }
+
+    /**
+     * @param laneCapacity 每台打印机最多排队的批次数
+     */
+    public PrintScheduler(int laneCapacity) {
+        this.laneCapacity = laneCapacity;
+    }
+
+    /**
+     * 把一个打印批次加入打印机的队列
+     *
+     * @param printService 目标打印机
+     * @param job          打印批次, 在该打印机的批次线程上执行
+     * @return 队列中的任务, 可用于 remove
+     */
+    public Runnable submit(PrintService printService, Runnable job) {
+        if (shutdown) {
+            throw new RuntimeException("SDK shutdown");
+        }
+        Lane lane = getLane(printService);
+        Runnable task = () -> {
+            lane.inFlight.incrementAndGet();
+            try {
+                job.run();
+            } finally {
+                lane.inFlight.decrementAndGet();
+                lane.completed.incrementAndGet();
+            }
+        };
+        try {
+            lane.driver.execute(task);
+        } catch (RejectedExecutionException ex) {
+            throw new RuntimeException("PrintQueueFull");
+        }
+        return task;
+    }
+
+    /**
+     * 从打印机队列中移除尚未开始的任务, 如被准入控制丢弃的批次
+     *
+     * @param task submit 返回的任务
+     * @return 任务仍在排队并已移除时返回true
+     */
+    public boolean remove(PrintService printService, Runnable task) {
+        Lane lane = lanes.get(printService.getName());
+        return lane != null && lane.driver.remove(task);
+    }
+
+    /**
+     * @return 该打印机的打印线程, 打印阶段在此执行以保证同一台打印机的任务不并发提交
+     */
+    public ExecutorService getSpoolExecutor(PrintService printService) {
+        return getLane(printService).spooler;
+    }
+
+    public List<LaneStats> getStats() {
+        List<LaneStats> stats = new ArrayList<>();
+        lanes.forEach((name, lane) -> stats.add(new LaneStats(name, lane.driver.getQueue().size(),
+                lane.inFlight.get(), lane.completed.get())));
+        return stats;
+    }
+
+    /**
+     * 不再接受新的批次, 并等待已排队的批次执行完
+     *
+     * @param timeoutMillis 最长等待时间(毫秒)
+     * @return 所有批次在超时前执行完返回true
+     */
+    public boolean shutdown(long timeoutMillis) {
+        shutdown = true;
+        lanes.values().forEach(lane -> lane.driver.shutdown());
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        boolean terminated = true;
+        try {
+            for (Lane lane : lanes.values()) {
+                terminated &= lane.driver.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()),
+                        TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            terminated = false;
+        }
+        lanes.values().forEach(lane -> lane.spooler.shutdown());
+        return terminated;
+    }
+
+    private Lane getLane(PrintService printService) {
+        return lanes.computeIfAbsent(printService.getName(), Lane::new);
+    }
+
+    private class Lane {
+        final ThreadPoolExecutor driver;
+        final ThreadPoolExecutor spooler;
+        final AtomicInteger inFlight = new AtomicInteger(0);
+        final AtomicLong completed = new AtomicLong(0);
+
+        Lane(String printerName) {
+            //空闲的队列不保留线程
+            driver = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(laneCapacity), new NamedThreadFactory("waybill-lane-" + printerName));
+            driver.allowCoreThreadTimeOut(true);
+            spooler = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), new NamedThreadFactory("waybill-spool-" + printerName));
+            spooler.allowCoreThreadTimeOut(true);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.tmindtech.api.waybill.sdk.print;
+
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.print.PageFormat;
+import java.awt.print.Printable;
+
+/**
+ * 把一页已缩放好的面单图片按实际物理尺寸绘制到打印页面上
+ * 使用最近邻插值, 避免条码边缘在设备分辨率转换时被模糊
+ */
+public class RasterPrintable implements Printable {
+    // 打印坐标系中1英寸是72个单位
+    private static final double POINTS_PER_MM = 72 / 25.4;
+
+    private final BufferedImage page;
+    private final float width;
+    private final float height;
+
+    /**
+     * @param page   一页面单图片
+     * @param width  打印宽度(毫米)
+     * @param height 打印高度(毫米)
+     */
+    public RasterPrintable(BufferedImage page, float width, float height) {
+        this.page = page;
+        this.width = width;
+        this.height = height;
+    }
+
+    @Override
+    public int print(Graphics graphics, PageFormat pageFormat, int pageIndex) {
+        if (pageIndex > 0) {
+            return NO_SUCH_PAGE;
+        }
+        Graphics2D g2d = (Graphics2D) graphics;
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g2d.drawImage(page, (int) Math.round(pageFormat.getImageableX()), (int) Math.round(pageFormat.getImageableY()),
+                (int) Math.round(width * POINTS_PER_MM), (int) Math.round(height * POINTS_PER_MM), null);
+        return PAGE_EXISTS;
+    }
+}
@@ -0,0 +1,247 @@
+package com.tmindtech.api.waybill.sdk.print;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 等待尚未生成的面单
+ * 未就绪的面单挂在时间轮上, 不占用任何线程; 到期时由时间轮线程发出一次异步查询,
+ * 仍未就绪则按指数退避(带随机抖动)重新挂起, 直到就绪或超过截止时间
+ * 按承运商统计面单从挂起到就绪的时间, 第一次查询安排在预计就绪的时刻
+ */
+public class ReadinessScheduler {
+    public static final long TICK_MILLIS = 20;
+    private static final int WHEEL_SIZE = 512;
+    // 没有统计数据时第一次查询的等待时间
+    private static final long DEFAULT_ESTIMATE_MILLIS = 1000;
+    private static final long MIN_DELAY_MILLIS = 50;
+    private static final long MAX_DELAY_MILLIS = 5000;
+    private static final double JITTER = 0.2;
+    private static final double EWMA_ALPHA = 0.3;
+
+    private final List<Queue<Parked<?>>> wheel = new ArrayList<>(WHEEL_SIZE);
+    private final Queue<Parked<?>> incoming = new ConcurrentLinkedQueue<>();
+    private final Map<String, Double> estimates = new ConcurrentHashMap<>();
+    private final AtomicInteger parkedCount = new AtomicInteger();
+    private final Thread thread;
+    private final long startTime = System.currentTimeMillis();
+    private long tick;
+    private volatile boolean closed;
+
+    public ReadinessScheduler() {
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel.add(new ArrayDeque<>());
+        }
+        thread = new Thread(this::run, "waybill-readiness");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 挂起一个尚未就绪的对象, 直到查询结果不为 null
+     *
+     * @param category      统计就绪时间的分类, 如承运商编码
+     * @param probe         发出一次异步查询, 结果为 null 表示仍未就绪; 查询异常也按未就绪处理
+     * @param timeoutMillis 最长等待时间(毫秒), 截止时刻总会再查询一次
+     * @param maxPolls      最多查询次数, 查询有副作用时用于限制次数
+     * @return 就绪后以查询结果完成; 超时以 RuntimeException("LabelNotReady") 结束
+     */
+    public <T> CompletableFuture<T> schedule(String category, Supplier<CompletableFuture<T>> probe,
+                                             long timeoutMillis, int maxPolls) {
+        if (closed) {
+            throw new RuntimeException("scheduler closed");
+        }
+        Parked<T> parked = new Parked<>(category, probe, Math.max(0, timeoutMillis), maxPolls);
+        parkedCount.incrementAndGet();
+        parked.future.whenComplete((result, ex) -> parkedCount.decrementAndGet());
+        long first = Math.round(getEstimate(category));
+        park(parked, Math.max(MIN_DELAY_MILLIS, first));
+        return parked.future;
+    }
+
+    /**
+     * 只在截止时刻查询一次, 用于有副作用、提前查询会改变结果的操作(如分包), 不参与就绪时间的统计
+     *
+     * @param probe         发出一次异步查询, 结果为 null 表示仍未就绪
+     * @param timeoutMillis 到查询时刻的等待时间(毫秒)
+     * @return 就绪后以查询结果完成; 未就绪以 RuntimeException("LabelNotReady") 结束
+     */
+    public <T> CompletableFuture<T> scheduleAtDeadline(Supplier<CompletableFuture<T>> probe, long timeoutMillis) {
+        if (closed) {
+            throw new RuntimeException("scheduler closed");
+        }
+        Parked<T> parked = new Parked<>(null, probe, Math.max(0, timeoutMillis), 1);
+        parkedCount.incrementAndGet();
+        parked.future.whenComplete((result, ex) -> parkedCount.decrementAndGet());
+        park(parked, parked.deadline - parked.parkedAt);
+        return parked.future;
+    }
+
+    /**
+     * @return 该分类预计从挂起到就绪的时间(毫秒)
+     */
+    public double getEstimate(String category) {
+        return estimates.getOrDefault(category, (double) DEFAULT_ESTIMATE_MILLIS);
+    }
+
+    /**
+     * @return 正在等待的数量
+     */
+    public int getParkedCount() {
+        return parkedCount.get();
+    }
+
+    /**
+     * 停止时间轮, 仍在等待的对象以 RuntimeException("LabelNotReady") 结束
+     */
+    public void shutdown() {
+        closed = true;
+        thread.interrupt();
+    }
+
+    private void park(Parked<?> parked, long delayMillis) {
+        long now = System.currentTimeMillis();
+        //最后一次查询落在截止时刻
+        parked.fireAt = Math.min(now + delayMillis, parked.deadline);
+        incoming.add(parked);
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                long nextTick = startTime + (tick + 1) * TICK_MILLIS;
+                long sleep = nextTick - System.currentTimeMillis();
+                if (sleep > 0) {
+                    Thread.sleep(sleep);
+                }
+                tick++;
+                transferIncoming();
+                Iterator<Parked<?>> it = wheel.get((int) (tick % WHEEL_SIZE)).iterator();
+                while (it.hasNext()) {
+                    Parked<?> parked = it.next();
+                    if (parked.rounds > 0) {
+                        parked.rounds--;
+                        continue;
+                    }
+                    it.remove();
+                    poll(parked);
+                }
+            }
+        } catch (InterruptedException ignore) {
+        } finally {
+            Parked<?> parked;
+            while ((parked = incoming.poll()) != null) {
+                parked.future.completeExceptionally(new RuntimeException("LabelNotReady"));
+            }
+            for (Queue<Parked<?>> bucket : wheel) {
+                for (Parked<?> item : bucket) {
+                    item.future.completeExceptionally(new RuntimeException("LabelNotReady"));
+                }
+                bucket.clear();
+            }
+        }
+    }
+
+    private void transferIncoming() {
+        Parked<?> parked;
+        while ((parked = incoming.poll()) != null) {
+            if (parked.future.isDone()) {
+                continue;
+            }
+            long ticks = Math.max(1, (parked.fireAt - startTime + TICK_MILLIS - 1) / TICK_MILLIS - tick);
+            parked.rounds = (ticks - 1) / WHEEL_SIZE;
+            wheel.get((int) ((tick + ticks) % WHEEL_SIZE)).add(parked);
+        }
+    }
+
+    private <T> void poll(Parked<T> parked) {
+        if (parked.future.isDone()) {
+            return;
+        }
+        long pollTime = System.currentTimeMillis();
+        parked.polls++;
+        CompletableFuture<T> result;
+        try {
+            result = parked.probe.get();
+        } catch (RuntimeException ex) {
+            result = null;
+        }
+        if (result == null) {
+            notReady(parked, pollTime);
+            return;
+        }
+        result.whenComplete((value, ex) -> {
+            if (value != null) {
+                learn(parked, pollTime);
+                parked.future.complete(value);
+            } else {
+                notReady(parked, pollTime);
+            }
+        });
+    }
+
+    private void notReady(Parked<?> parked, long pollTime) {
+        long now = System.currentTimeMillis();
+        if (closed || parked.polls >= parked.maxPolls || pollTime >= parked.deadline) {
+            if (!closed && pollTime < parked.deadline) {
+                //截止前用尽查询次数, 实际就绪时间晚于本次查询, 按两倍计入统计使下次查询推迟
+                record(parked.category, Math.min(2 * (pollTime - parked.parkedAt), parked.deadline - parked.parkedAt));
+            }
+            parked.future.completeExceptionally(new RuntimeException("LabelNotReady"));
+            return;
+        }
+        parked.lastMissTime = pollTime;
+        //第一次没有命中后从预计时间的四分之一开始退避, 每次翻倍
+        long base = Math.max(MIN_DELAY_MILLIS, Math.round(getEstimate(parked.category) / 4));
+        long delay = Math.min(MAX_DELAY_MILLIS, base << Math.min(parked.polls - 1, 16));
+        double jitter = 1 + (ThreadLocalRandom.current().nextDouble() * 2 - 1) * JITTER;
+        park(parked, Math.max(MIN_DELAY_MILLIS, Math.round(delay * jitter) - (now - pollTime)));
+    }
+
+    /**
+     * 实际就绪时刻在上一次未命中(或挂起时刻)与本次命中之间, 取中点作为本次的就绪时间,
+     * 第一次查询就命中时预计时间随之缩短, 下次从更早的时刻开始查询
+     */
+    private void learn(Parked<?> parked, long pollTime) {
+        long readyTime = ((parked.lastMissTime > 0 ? parked.lastMissTime : parked.parkedAt) + pollTime) / 2;
+        record(parked.category, readyTime - parked.parkedAt);
+    }
+
+    private void record(String category, long observed) {
+        if (category == null) {
+            return;
+        }
+        estimates.merge(category, (double) Math.max(MIN_DELAY_MILLIS, observed),
+                (previous, sample) -> EWMA_ALPHA * sample + (1 - EWMA_ALPHA) * previous);
+    }
+
+    private static class Parked<T> {
+        final String category;
+        final Supplier<CompletableFuture<T>> probe;
+        final long parkedAt = System.currentTimeMillis();
+        final long deadline;
+        final int maxPolls;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        long fireAt;
+        long rounds;
+        long lastMissTime;
+        int polls;
+
+        Parked(String category, Supplier<CompletableFuture<T>> probe, long timeoutMillis, int maxPolls) {
+            this.category = category;
+            this.probe = probe;
+            this.deadline = parkedAt + timeoutMillis;
+            this.maxPolls = maxPolls;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.tmindtech.api.waybill.sdk.print.encoder;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Eltron/Zebra EPL2 指令, 位图使用 GW 直接写入图像缓冲区, 数据为二进制且 0 为黑点
+ */
+public class EplEncoder implements LabelEncoder {
+
+    @Override
+    public byte[] encode(MonochromeBitmap page, float width, float height) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(page.data.length + 64);
+        TsplEncoder.write(output, "\r\nN\r\n"
+                + "q" + page.width + "\r\n"
+                + "Q" + page.height + ",24\r\n"
+                + "GW0,0," + page.bytesPerRow + "," + page.height + ",");
+        byte[] data = page.toInverted();
+        output.write(data, 0, data.length);
+        TsplEncoder.write(output, "\r\nP1\r\n");
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,15 @@
+package com.tmindtech.api.waybill.sdk.print.encoder;
+
+/**
+ * 把一页单色位图编码为打印机指令, 以 DocFlavor.BYTE_ARRAY.AUTOSENSE 原样发送给打印机
+ */
+public interface LabelEncoder {
+
+    /**
+     * @param page   一页面单的单色位图, 分辨率与打印机一致
+     * @param width  打印宽度(毫米)
+     * @param height 打印高度(毫米)
+     * @return 打印一页面单的完整指令
+     */
+    byte[] encode(MonochromeBitmap page, float width, float height);
+}
@@ -0,0 +1,46 @@
+package com.tmindtech.api.waybill.sdk.print.encoder;
+
+/**
+ * 1位单色位图, 每行按字节对齐, 高位在前, 1 表示黑点(需要加热), 行尾补齐的位为 0
+ */
+public class MonochromeBitmap {
+    public final int width; // 宽度(点)
+
+    public final int height; // 高度(点)
+
+    public final int bytesPerRow; // 每行字节数
+
+    public final byte[] data; // 位图数据, 长度为 bytesPerRow * height
+
+    public MonochromeBitmap(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.bytesPerRow = (width + 7) / 8;
+        this.data = new byte[bytesPerRow * height];
+    }
+
+    public boolean isBlack(int x, int y) {
+        return (data[y * bytesPerRow + (x >> 3)] & (0x80 >> (x & 7))) != 0;
+    }
+
+    public void setBlack(int x, int y) {
+        data[y * bytesPerRow + (x >> 3)] |= 0x80 >> (x & 7);
+    }
+
+    /**
+     * TSPL、EPL 等指令集中 0 为黑点, 返回反色后的数据, 行尾补齐的位为 1(白色)
+     */
+    public byte[] toInverted() {
+        byte[] inverted = new byte[data.length];
+        int padding = bytesPerRow * 8 - width;
+        int mask = (1 << padding) - 1;
+        for (int y = 0; y < height; y++) {
+            int offset = y * bytesPerRow;
+            for (int i = 0; i < bytesPerRow; i++) {
+                inverted[offset + i] = (byte) ~data[offset + i];
+            }
+            inverted[offset + bytesPerRow - 1] |= mask;
+        }
+        return inverted;
+    }
+}
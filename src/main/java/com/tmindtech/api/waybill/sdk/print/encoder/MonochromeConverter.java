@@ -0,0 +1,82 @@
+package com.tmindtech.api.waybill.sdk.print.encoder;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * 将面单图片转换为1位单色位图
+ * 固定阈值适合只有文字和条码的面单, Floyd-Steinberg 误差扩散适合带有灰度图案(如logo)的面单
+ */
+public class MonochromeConverter {
+    public static final int DEFAULT_THRESHOLD = 128;
+
+    private final int threshold;
+    private final boolean dither;
+
+    public MonochromeConverter() {
+        this(DEFAULT_THRESHOLD, false);
+    }
+
+    /**
+     * @param threshold 亮度阈值(0-255), 低于阈值的点为黑点
+     * @param dither    是否使用 Floyd-Steinberg 误差扩散
+     */
+    public MonochromeConverter(int threshold, boolean dither) {
+        if (threshold < 0 || threshold > 255) {
+            throw new IllegalArgumentException("threshold must be between 0 and 255");
+        }
+        this.threshold = threshold;
+        this.dither = dither;
+    }
+
+    public MonochromeBitmap convert(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        MonochromeBitmap bitmap = new MonochromeBitmap(width, height);
+        int[] row = new int[width];
+        //误差扩散只需要保留当前行和下一行的累计误差
+        int[] error = dither ? new int[width + 2] : null;
+        int[] nextError = dither ? new int[width + 2] : null;
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                int gray = luminance(row[x]);
+                if (!dither) {
+                    if (gray < threshold) {
+                        bitmap.setBlack(x, y);
+                    }
+                    continue;
+                }
+                int value = gray + error[x + 1];
+                int output = value < threshold ? 0 : 255;
+                if (output == 0) {
+                    bitmap.setBlack(x, y);
+                }
+                int err = value - output;
+                error[x + 2] += err * 7 / 16;
+                nextError[x] += err * 3 / 16;
+                nextError[x + 1] += err * 5 / 16;
+                nextError[x + 2] += err / 16;
+            }
+            if (dither) {
+                int[] swap = error;
+                error = nextError;
+                nextError = swap;
+                Arrays.fill(nextError, 0);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * 透明像素视为白色
+     */
+    private static int luminance(int argb) {
+        int alpha = (argb >>> 24) & 0xff;
+        int r = (argb >> 16) & 0xff;
+        int g = (argb >> 8) & 0xff;
+        int b = argb & 0xff;
+        int gray = (r * 299 + g * 587 + b * 114) / 1000;
+        return (gray * alpha + 255 * (255 - alpha)) / 255;
+    }
+}
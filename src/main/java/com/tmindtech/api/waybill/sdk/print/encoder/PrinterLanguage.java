@@ -0,0 +1,20 @@
+package com.tmindtech.api.waybill.sdk.print.encoder;
+
+/**
+ * 热敏打印机的指令集
+ */
+public enum PrinterLanguage {
+    ZPL(new ZplEncoder()),
+    TSPL(new TsplEncoder()),
+    EPL(new EplEncoder());
+
+    private final LabelEncoder encoder;
+
+    PrinterLanguage(LabelEncoder encoder) {
+        this.encoder = encoder;
+    }
+
+    public LabelEncoder getEncoder() {
+        return encoder;
+    }
+}
@@ -0,0 +1,51 @@
+package com.tmindtech.api.waybill.sdk.print.encoder;
+
+import com.tmindtech.api.waybill.sdk.model.PrintImageInfo;
+import com.tmindtech.api.waybill.sdk.print.PageSlicer;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * 一台热敏打印机的原始指令打印配置: 单色转换方式和指令编码器
+ */
+public class RawPrintProfile {
+    public final LabelEncoder encoder;
+
+    public final MonochromeConverter converter;
+
+    public RawPrintProfile(PrinterLanguage language) {
+        this(language.getEncoder(), new MonochromeConverter());
+    }
+
+    public RawPrintProfile(LabelEncoder encoder, MonochromeConverter converter) {
+        this.encoder = Objects.requireNonNull(encoder);
+        this.converter = Objects.requireNonNull(converter);
+    }
+
+    /**
+     * 编码一页面单
+     */
+    public byte[] encode(BufferedImage page, float width, float height) {
+        return encoder.encode(converter.convert(page), width, height);
+    }
+
+    /**
+     * 切分并在 executor 上并行编码所有页
+     *
+     * @param imageInfo 匹配打印机分辨率后的图片
+     * @param pageCount 页数
+     * @param executor  编码所用的线程池
+     * @return 按页序排列的打印指令
+     */
+    public List<CompletableFuture<byte[]>> encodeAsync(PrintImageInfo imageInfo, int pageCount, Executor executor) {
+        List<CompletableFuture<byte[]>> pages = new ArrayList<>(pageCount);
+        for (BufferedImage page : PageSlicer.slice(imageInfo.image, pageCount)) {
+            pages.add(CompletableFuture.supplyAsync(() -> encode(page, imageInfo.width, imageInfo.height), executor));
+        }
+        return pages;
+    }
+}
@@ -0,0 +1,50 @@
+package com.tmindtech.api.waybill.sdk.print.encoder;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * TSC TSPL/TSPL2 指令, 位图使用 BITMAP 的覆盖模式, 数据为二进制且 0 为黑点
+ */
+public class TsplEncoder implements LabelEncoder {
+    private static final float DEFAULT_GAP = 2f;
+
+    private final float gap;
+
+    public TsplEncoder() {
+        this(DEFAULT_GAP);
+    }
+
+    /**
+     * @param gap 面单之间的间隙(毫米)
+     */
+    public TsplEncoder(float gap) {
+        this.gap = gap;
+    }
+
+    @Override
+    public byte[] encode(MonochromeBitmap page, float width, float height) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(page.data.length + 128);
+        write(output, "SIZE " + format(width) + " mm," + format(height) + " mm\r\n"
+                + "GAP " + format(gap) + " mm,0 mm\r\n"
+                + "CLS\r\n"
+                + "BITMAP 0,0," + page.bytesPerRow + "," + page.height + ",0,");
+        byte[] data = page.toInverted();
+        output.write(data, 0, data.length);
+        write(output, "\r\nPRINT 1,1\r\n");
+        return output.toByteArray();
+    }
+
+    static void write(ByteArrayOutputStream output, String command) {
+        byte[] bytes = command.getBytes(StandardCharsets.US_ASCII);
+        output.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * 毫米数保留一位小数, 整数时不带小数点
+     */
+    static String format(float mm) {
+        float rounded = Math.round(mm * 10) / 10f;
+        return rounded == (int) rounded ? Integer.toString((int) rounded) : Float.toString(rounded);
+    }
+}
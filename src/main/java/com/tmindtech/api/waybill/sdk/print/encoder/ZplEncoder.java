@@ -0,0 +1,92 @@
+package com.tmindtech.api.waybill.sdk.print.encoder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Zebra ZPL II 指令, 位图使用 ^GFA 并采用 ZPL 的 ASCII 压缩:
+ * 连续重复的十六进制字符用 G-Y(1-19) 与 g-z(20-400) 表示重复次数,
+ * ',' 表示本行剩余全为0, '!' 表示本行剩余全为1, ':' 表示与上一行相同
+ * ZPL 中 1 为黑点, 与 MonochromeBitmap 一致
+ */
+public class ZplEncoder implements LabelEncoder {
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    @Override
+    public byte[] encode(MonochromeBitmap page, float width, float height) {
+        int total = page.bytesPerRow * page.height;
+        StringBuilder builder = new StringBuilder(total);
+        builder.append("^XA\n^PW").append(page.width).append("\n^LL").append(page.height).append('\n')
+                .append("^FO0,0^GFA,").append(total).append(',').append(total).append(',')
+                .append(page.bytesPerRow).append(',');
+        compress(page, builder);
+        builder.append("^FS\n^XZ\n");
+        return builder.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    static void compress(MonochromeBitmap page, StringBuilder builder) {
+        char[] line = new char[page.bytesPerRow * 2];
+        char[] previous = null;
+        for (int y = 0; y < page.height; y++) {
+            int offset = y * page.bytesPerRow;
+            for (int i = 0; i < page.bytesPerRow; i++) {
+                int value = page.data[offset + i] & 0xff;
+                line[i * 2] = HEX[value >> 4];
+                line[i * 2 + 1] = HEX[value & 0x0f];
+            }
+            if (previous != null && Arrays.equals(line, previous)) {
+                builder.append(':');
+                continue;
+            }
+            compressLine(line, builder);
+            if (previous == null) {
+                previous = new char[line.length];
+            }
+            System.arraycopy(line, 0, previous, 0, line.length);
+        }
+    }
+
+    private static void compressLine(char[] line, StringBuilder builder) {
+        //行尾连续的0或F分别用','和'!'代替
+        int end = line.length;
+        char tail = line[end - 1];
+        char fill = 0;
+        if (tail == '0' || tail == 'F') {
+            while (end > 0 && line[end - 1] == tail) {
+                end--;
+            }
+            fill = tail == '0' ? ',' : '!';
+        }
+        int i = 0;
+        while (i < end) {
+            char c = line[i];
+            int count = 1;
+            while (i + count < end && line[i + count] == c) {
+                count++;
+            }
+            appendCount(count, builder);
+            builder.append(c);
+            i += count;
+        }
+        if (fill != 0) {
+            builder.append(fill);
+        }
+    }
+
+    private static void appendCount(int count, StringBuilder builder) {
+        if (count == 1) {
+            return;
+        }
+        while (count > 400) {
+            builder.append('z');
+            count -= 400;
+        }
+        if (count >= 20) {
+            builder.append((char) ('g' + count / 20 - 1));
+            count %= 20;
+        }
+        if (count > 0) {
+            builder.append((char) ('G' + count - 1));
+        }
+    }
+}
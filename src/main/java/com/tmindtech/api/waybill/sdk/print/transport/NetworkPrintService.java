@@ -0,0 +1,271 @@
+package com.tmindtech.api.waybill.sdk.print.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.print.Doc;
+import javax.print.DocFlavor;
+import javax.print.DocPrintJob;
+import javax.print.PrintException;
+import javax.print.PrintService;
+import javax.print.ServiceUIFactory;
+import javax.print.attribute.Attribute;
+import javax.print.attribute.AttributeSet;
+import javax.print.attribute.HashPrintServiceAttributeSet;
+import javax.print.attribute.PrintJobAttributeSet;
+import javax.print.attribute.PrintRequestAttributeSet;
+import javax.print.attribute.PrintServiceAttribute;
+import javax.print.attribute.PrintServiceAttributeSet;
+import javax.print.attribute.standard.PrinterName;
+import javax.print.attribute.standard.PrinterResolution;
+import javax.print.event.PrintJobAttributeListener;
+import javax.print.event.PrintJobEvent;
+import javax.print.event.PrintJobListener;
+import javax.print.event.PrintServiceAttributeListener;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * 通过 RawPrintTransport 直连的网络打印机, 不经过系统打印服务(CUPS/Windows 打印队列)
+ * 只接受打印机指令, 即 DocFlavor.BYTE_ARRAY.AUTOSENSE 或 DocFlavor.INPUT_STREAM.AUTOSENSE
+ */
+public class NetworkPrintService implements PrintService {
+    public static final long DEFAULT_PRINT_TIMEOUT_MILLIS = 60000;
+    private static final DocFlavor[] FLAVORS = {DocFlavor.BYTE_ARRAY.AUTOSENSE, DocFlavor.INPUT_STREAM.AUTOSENSE};
+
+    private final String name;
+    private final RawPrintTransport transport;
+    private final PrinterResolution resolution;
+    private final long printTimeoutMillis;
+
+    /**
+     * @param name      打印机名称, 需已在 transport 中注册
+     * @param transport 原始端口传输
+     * @param dpi       打印机分辨率, 面单图片按此分辨率缩放
+     */
+    public NetworkPrintService(String name, RawPrintTransport transport, int dpi) {
+        this(name, transport, dpi, DEFAULT_PRINT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param printTimeoutMillis 单个打印任务从提交到写完的最长等待时间(毫秒), 超时后任务失败
+     */
+    public NetworkPrintService(String name, RawPrintTransport transport, int dpi, long printTimeoutMillis) {
+        this.name = name;
+        this.transport = transport;
+        this.resolution = new PrinterResolution(dpi, dpi, PrinterResolution.DPI);
+        this.printTimeoutMillis = printTimeoutMillis;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public DocPrintJob createPrintJob() {
+        return new NetworkPrintJob();
+    }
+
+    @Override
+    public void addPrintServiceAttributeListener(PrintServiceAttributeListener listener) {
+    }
+
+    @Override
+    public void removePrintServiceAttributeListener(PrintServiceAttributeListener listener) {
+    }
+
+    @Override
+    public PrintServiceAttributeSet getAttributes() {
+        HashPrintServiceAttributeSet attributes = new HashPrintServiceAttributeSet();
+        attributes.add(new PrinterName(name, null));
+        return attributes;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends PrintServiceAttribute> T getAttribute(Class<T> category) {
+        return category == PrinterName.class ? (T) new PrinterName(name, null) : null;
+    }
+
+    @Override
+    public DocFlavor[] getSupportedDocFlavors() {
+        return FLAVORS.clone();
+    }
+
+    @Override
+    public boolean isDocFlavorSupported(DocFlavor flavor) {
+        for (DocFlavor item : FLAVORS) {
+            if (item.equals(flavor)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Class<?>[] getSupportedAttributeCategories() {
+        return new Class<?>[]{PrinterResolution.class};
+    }
+
+    @Override
+    public boolean isAttributeCategorySupported(Class<? extends Attribute> category) {
+        return category == PrinterResolution.class;
+    }
+
+    @Override
+    public Object getDefaultAttributeValue(Class<? extends Attribute> category) {
+        return category == PrinterResolution.class ? resolution : null;
+    }
+
+    @Override
+    public Object getSupportedAttributeValues(Class<? extends Attribute> category, DocFlavor flavor, AttributeSet attributes) {
+        return category == PrinterResolution.class ? new PrinterResolution[]{resolution} : null;
+    }
+
+    @Override
+    public boolean isAttributeValueSupported(Attribute attrval, DocFlavor flavor, AttributeSet attributes) {
+        return resolution.equals(attrval);
+    }
+
+    /**
+     * 指令中已包含打印参数, 请求中的属性全部忽略
+     */
+    @Override
+    public AttributeSet getUnsupportedAttributes(DocFlavor flavor, AttributeSet attributes) {
+        return null;
+    }
+
+    @Override
+    public ServiceUIFactory getServiceUIFactory() {
+        return null;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof NetworkPrintService && ((NetworkPrintService) obj).name.equals(name);
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "Network printer : " + name;
+    }
+
+    private class NetworkPrintJob implements DocPrintJob {
+        private PrintJobListener listener;
+
+        @Override
+        public PrintService getPrintService() {
+            return NetworkPrintService.this;
+        }
+
+        @Override
+        public PrintJobAttributeSet getAttributes() {
+            return null;
+        }
+
+        @Override
+        public void addPrintJobListener(PrintJobListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void removePrintJobListener(PrintJobListener listener) {
+            if (this.listener == listener) {
+                this.listener = null;
+            }
+        }
+
+        @Override
+        public void addPrintJobAttributeListener(PrintJobAttributeListener listener, PrintJobAttributeSet attributes) {
+        }
+
+        @Override
+        public void removePrintJobAttributeListener(PrintJobAttributeListener listener) {
+        }
+
+        /**
+         * 阻塞到指令全部写入 socket, 与系统打印服务的 print 一样在提交完成后返回; 最多等待 printTimeoutMillis
+         */
+        @Override
+        public void print(Doc doc, PrintRequestAttributeSet attributes) throws PrintException {
+            if (!isDocFlavorSupported(doc.getDocFlavor())) {
+                throw new FlavorException(doc.getDocFlavor());
+            }
+            CompletableFuture<Void> sent = null;
+            try {
+                sent = transport.send(name, readPayload(doc));
+                sent.get(printTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ex) {
+                //尚未开始写出时不再发送
+                sent.cancel(false);
+                notify(PrintJobEvent.JOB_FAILED);
+                throw new PrintException("print timeout: " + name);
+            } catch (ExecutionException ex) {
+                notify(PrintJobEvent.JOB_FAILED);
+                throw new PrintException(ex.getCause().getMessage());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                notify(PrintJobEvent.JOB_FAILED);
+                throw new PrintException(ex);
+            } catch (IOException | RuntimeException ex) {
+                notify(PrintJobEvent.JOB_FAILED);
+                throw new PrintException(ex.getMessage());
+            }
+            notify(PrintJobEvent.DATA_TRANSFER_COMPLETE);
+            notify(PrintJobEvent.NO_MORE_EVENTS);
+        }
+
+        private byte[] readPayload(Doc doc) throws IOException {
+            Object data = doc.getPrintData();
+            if (data instanceof byte[]) {
+                return (byte[]) data;
+            }
+            try (InputStream input = (InputStream) data) {
+                return IOUtils.toByteArray(input);
+            }
+        }
+
+        private void notify(int reason) {
+            PrintJobListener current = listener;
+            if (current == null) {
+                return;
+            }
+            PrintJobEvent event = new PrintJobEvent(this, reason);
+            switch (reason) {
+                case PrintJobEvent.DATA_TRANSFER_COMPLETE:
+                    current.printDataTransferCompleted(event);
+                    break;
+                case PrintJobEvent.JOB_FAILED:
+                    current.printJobFailed(event);
+                    break;
+                default:
+                    current.printJobNoMoreEvents(event);
+                    break;
+            }
+        }
+    }
+
+    private static class FlavorException extends PrintException implements javax.print.FlavorException {
+        private static final long serialVersionUID = 1L;
+
+        private final DocFlavor flavor;
+
+        FlavorException(DocFlavor flavor) {
+            super("flavor not supported: " + flavor);
+            this.flavor = flavor;
+        }
+
+        @Override
+        public DocFlavor[] getUnsupportedFlavors() {
+            return new DocFlavor[]{flavor};
+        }
+    }
+}
@@ -0,0 +1,448 @@
+package com.tmindtech.api.waybill.sdk.print.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 网络打印机的原始端口(通常为9100)传输
+ * 每台打印机保持一条长连接, 所有连接由同一个 Selector 线程以非阻塞方式写入;
+ * 每台打印机有独立的写队列, 队列积压超过上限时 send 阻塞调用方, 形成背压;
+ * 连接失败按指数退避重连, 打印机主动断开后下一次发送时重新连接;
+ * 打印机长时间不读取数据(写入停滞超过 writeTimeoutMillis)时断开连接, 排队的任务全部失败
+ * 只负责把字节完整写入 socket, 发送的内容应是打印机指令(ZPL/TSPL/EPL 等)
+ */
+public class RawPrintTransport implements Closeable {
+    public static final int DEFAULT_PORT = 9100;
+    public static final long DEFAULT_MAX_QUEUED_BYTES = 8L * 1024 * 1024;
+    public static final long DEFAULT_SEND_TIMEOUT_MILLIS = 30000;
+    public static final long DEFAULT_WRITE_TIMEOUT_MILLIS = 30000;
+    private static final long CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final long MIN_BACKOFF_MILLIS = 200;
+    private static final long MAX_BACKOFF_MILLIS = 30000;
+
+    private final long maxQueuedBytes;
+    private final long sendTimeoutMillis;
+    private final long writeTimeoutMillis;
+    private final Selector selector;
+    private final Thread selectorThread;
+    private final Map<String, Connection> connections = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Connection> pendingFlush = new ConcurrentLinkedQueue<>();
+    private volatile boolean closed;
+
+    public RawPrintTransport() {
+        this(DEFAULT_MAX_QUEUED_BYTES, DEFAULT_SEND_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param maxQueuedBytes    每台打印机写队列中最多积压的字节数
+     * @param sendTimeoutMillis 队列已满时 send 最长等待时间(毫秒)
+     */
+    public RawPrintTransport(long maxQueuedBytes, long sendTimeoutMillis) {
+        this(maxQueuedBytes, sendTimeoutMillis, DEFAULT_WRITE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param maxQueuedBytes     每台打印机写队列中最多积压的字节数
+     * @param sendTimeoutMillis  队列已满时 send 最长等待时间(毫秒)
+     * @param writeTimeoutMillis 打印机不读取数据时最长等待时间(毫秒), 超过后断开连接
+     */
+    public RawPrintTransport(long maxQueuedBytes, long sendTimeoutMillis, long writeTimeoutMillis) {
+        this.maxQueuedBytes = maxQueuedBytes;
+        this.sendTimeoutMillis = sendTimeoutMillis;
+        this.writeTimeoutMillis = writeTimeoutMillis;
+        try {
+            this.selector = Selector.open();
+        } catch (IOException ex) {
+            throw new RuntimeException("transport open failure");
+        }
+        this.selectorThread = new Thread(this::run, "waybill-raw-transport");
+        this.selectorThread.setDaemon(true);
+        this.selectorThread.start();
+    }
+
+    /**
+     * 注册一台网络打印机, 连接在第一次发送时建立
+     *
+     * @param name    打印机名称
+     * @param address 打印机地址
+     */
+    public void register(String name, InetSocketAddress address) {
+        Connection previous = connections.put(name, new Connection(name, address));
+        if (previous != null) {
+            previous.retire();
+        }
+    }
+
+    public void unregister(String name) {
+        Connection connection = connections.remove(name);
+        if (connection != null) {
+            connection.retire();
+        }
+    }
+
+    public boolean isRegistered(String name) {
+        return connections.containsKey(name);
+    }
+
+    /**
+     * 发送一个打印任务, 写队列已满时阻塞等待
+     *
+     * @param name    打印机名称
+     * @param payload 打印机指令
+     * @return 全部字节写入 socket 后完成; 连接失败、写入中断或停滞时异常完成;
+     * 调用方在开始写出前取消 future 时该任务不再发送
+     */
+    public CompletableFuture<Void> send(String name, byte[] payload) {
+        Connection connection = connections.get(name);
+        if (connection == null) {
+            throw new RuntimeException("PrinterNotExist");
+        }
+        if (closed) {
+            throw new RuntimeException("transport closed");
+        }
+        PendingWrite write = new PendingWrite(payload);
+        connection.enqueue(write);
+        pendingFlush.add(connection);
+        selector.wakeup();
+        return write.future;
+    }
+
+    /**
+     * @return 该打印机写队列中尚未写出的字节数
+     */
+    public long getQueuedBytes(String name) {
+        Connection connection = connections.get(name);
+        return connection == null ? 0 : connection.queuedBytes();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+        try {
+            selectorThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                selector.select(nextTimeout());
+                Connection connection;
+                while ((connection = pendingFlush.poll()) != null) {
+                    connection.flushRequested();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    ((Connection) key.attachment()).handle(key);
+                }
+                long now = System.currentTimeMillis();
+                for (Connection item : connections.values()) {
+                    item.checkTimers(now);
+                }
+            }
+        } catch (IOException | ClosedSelectorException ex) {
+            ex.printStackTrace();
+        } finally {
+            for (Connection item : connections.values()) {
+                item.retire();
+            }
+            Connection connection;
+            while ((connection = pendingFlush.poll()) != null) {
+                connection.retire();
+            }
+            try {
+                selector.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    private long nextTimeout() {
+        long now = System.currentTimeMillis();
+        long timeout = 1000;
+        for (Connection connection : connections.values()) {
+            long deadline = connection.nextDeadline();
+            if (deadline > 0) {
+                timeout = Math.min(timeout, Math.max(1, deadline - now));
+            }
+        }
+        return timeout;
+    }
+
+    private static class PendingWrite {
+        final ByteBuffer buffer;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        long progressAt; // 最近一次写出数据的时间, 尚未开始写时为0
+
+        PendingWrite(byte[] payload) {
+            this.buffer = ByteBuffer.wrap(payload);
+        }
+    }
+
+    /**
+     * 一台打印机的连接与写队列, 除 enqueue 和 queuedBytes 外只在 Selector 线程中访问
+     */
+    private class Connection {
+        private final String name;
+        private final InetSocketAddress address;
+        private final Deque<PendingWrite> queue = new ArrayDeque<>();
+        private long queuedBytes;
+        private SocketChannel channel;
+        private SelectionKey key;
+        private long connectDeadline;
+        private long retryTime;
+        private int failures;
+        private boolean retired;
+
+        Connection(String name, InetSocketAddress address) {
+            this.name = name;
+            this.address = address;
+        }
+
+        synchronized void enqueue(PendingWrite write) {
+            long deadline = System.currentTimeMillis() + sendTimeoutMillis;
+            //队列为空时总是允许入队, 避免单个超过上限的任务永远无法发送
+            while (!queue.isEmpty() && queuedBytes + write.buffer.remaining() > maxQueuedBytes) {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0 || retired || closed) {
+                    throw new RuntimeException("printer queue full: " + name);
+                }
+                try {
+                    wait(wait);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("printer queue full: " + name);
+                }
+            }
+            if (retired) {
+                throw new RuntimeException("PrinterNotExist");
+            }
+            queue.add(write);
+            queuedBytes += write.buffer.remaining();
+        }
+
+        synchronized long queuedBytes() {
+            return queuedBytes;
+        }
+
+        private synchronized PendingWrite peek() {
+            return queue.peek();
+        }
+
+        private synchronized void complete(PendingWrite write) {
+            queue.remove(write);
+            queuedBytes -= write.buffer.limit();
+            notifyAll();
+        }
+
+        private void fail(PendingWrite write, String message) {
+            synchronized (this) {
+                queue.remove(write);
+                queuedBytes -= write.buffer.limit();
+                notifyAll();
+            }
+            write.future.completeExceptionally(new RuntimeException(message));
+        }
+
+        private void failAll(String message) {
+            PendingWrite write;
+            while ((write = peek()) != null) {
+                fail(write, message);
+            }
+        }
+
+        void flushRequested() {
+            if (retired) {
+                closeChannel();
+                failAll("PrinterNotExist");
+                return;
+            }
+            if (channel == null) {
+                if (System.currentTimeMillis() >= retryTime) {
+                    connect();
+                }
+            } else if (channel.isConnected()) {
+                write();
+            }
+        }
+
+        long nextDeadline() {
+            if (channel != null && !channel.isConnected()) {
+                return connectDeadline;
+            }
+            PendingWrite head = peek();
+            if (channel != null && head != null && head.progressAt > 0) {
+                return head.progressAt + writeTimeoutMillis;
+            }
+            if (channel == null && peek() != null) {
+                return retryTime;
+            }
+            return 0;
+        }
+
+        void checkTimers(long now) {
+            if (channel != null && !channel.isConnected() && now >= connectDeadline) {
+                connectFailed("connect timeout: " + name);
+            } else if (channel != null && isStalled(now)) {
+                //打印机不再读取数据, 断开后按退避重连
+                connectFailed("write timeout: " + name);
+            } else if (channel == null && peek() != null && now >= retryTime) {
+                connect();
+            }
+        }
+
+        private void connect() {
+            try {
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+                connectDeadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLIS;
+                if (channel.connect(address)) {
+                    key = channel.register(selector, SelectionKey.OP_READ, this);
+                    connected();
+                } else {
+                    key = channel.register(selector, SelectionKey.OP_CONNECT, this);
+                }
+            } catch (IOException ex) {
+                connectFailed("printer unreachable: " + name);
+            }
+        }
+
+        private boolean isStalled(long now) {
+            PendingWrite head = peek();
+            return head != null && head.progressAt > 0 && now - head.progressAt >= writeTimeoutMillis;
+        }
+
+        private void connected() {
+            failures = 0;
+            write();
+        }
+
+        /**
+         * 连接失败时按指数退避安排下一次重连, 当前排队的任务全部失败, 由调用方决定是否重打
+         */
+        private void connectFailed(String message) {
+            closeChannel();
+            failures++;
+            long backoff = Math.min(MAX_BACKOFF_MILLIS, MIN_BACKOFF_MILLIS << Math.min(failures - 1, 16));
+            retryTime = System.currentTimeMillis() + backoff;
+            failAll(message);
+        }
+
+        void handle(SelectionKey selectionKey) {
+            try {
+                if (selectionKey.isConnectable()) {
+                    if (channel.finishConnect()) {
+                        selectionKey.interestOps(SelectionKey.OP_READ);
+                        connected();
+                    }
+                    return;
+                }
+                if (selectionKey.isReadable()) {
+                    //打印机返回的状态数据直接丢弃, 读到结尾说明对方关闭了连接
+                    ByteBuffer discard = ByteBuffer.allocate(256);
+                    if (channel.read(discard) < 0) {
+                        disconnected();
+                        return;
+                    }
+                }
+                if (selectionKey.isValid() && selectionKey.isWritable()) {
+                    write();
+                }
+            } catch (IOException ex) {
+                if (channel != null && !channel.isConnected()) {
+                    connectFailed("printer unreachable: " + name);
+                } else {
+                    disconnected();
+                }
+            }
+        }
+
+        private void write() {
+            PendingWrite write;
+            try {
+                while ((write = peek()) != null) {
+                    if (write.future.isDone() && write.buffer.position() == 0) {
+                        //调用方已放弃等待, 尚未写出的任务不再发送
+                        complete(write);
+                        continue;
+                    }
+                    long now = System.currentTimeMillis();
+                    if (channel.write(write.buffer) > 0 || write.progressAt == 0) {
+                        write.progressAt = now;
+                    }
+                    if (write.buffer.hasRemaining()) {
+                        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    complete(write);
+                    write.future.complete(null);
+                }
+                key.interestOps(SelectionKey.OP_READ);
+            } catch (IOException ex) {
+                disconnected();
+            }
+        }
+
+        /**
+         * 连接被断开: 已写出部分字节的任务无法安全重发, 直接失败; 其余任务在重连后继续发送
+         */
+        private void disconnected() {
+            closeChannel();
+            PendingWrite head = peek();
+            if (head != null && head.buffer.position() > 0) {
+                fail(head, "connection reset: " + name);
+            }
+            retryTime = System.currentTimeMillis();
+        }
+
+        private void closeChannel() {
+            if (key != null) {
+                key.cancel();
+                key = null;
+            }
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignore) {
+                }
+                channel = null;
+            }
+        }
+
+        void retire() {
+            synchronized (this) {
+                retired = true;
+                notifyAll();
+            }
+            if (Thread.currentThread() == selectorThread) {
+                closeChannel();
+                failAll("PrinterNotExist");
+            } else {
+                pendingFlush.add(this);
+                selector.wakeup();
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.tmindtech.api.waybill.sdk.trace;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 一段被追踪的操作, 由 Tracer 创建, 调用 finish 后交给导出器写入文件
+ * 同一个打印请求中的所有 span 共用一个 traceId, 通过 parentId 组成树
+ */
+public class Span {
+    /**
+     * 未开启追踪时使用的 span, 不记录任何内容, 也不会传播到请求头
+     */
+    public static final Span NOOP = new Span(null, null, null, null, null, null);
+
+    public final String traceId; // 32位十六进制
+
+    public final String spanId; // 16位十六进制
+
+    public final String parentId; // 根 span 为 null
+
+    public final String name;
+
+    public final String kind; // CLIENT 表示发往服务器的请求, 其他为 null
+
+    public final long timestampMicros; // 开始时间(微秒)
+
+    private final Tracer tracer;
+    private final long startNanos;
+    private final Map<String, String> tags = new LinkedHashMap<>();
+    private long durationMicros = -1;
+
+    Span(Tracer tracer, String traceId, String spanId, String parentId, String name, String kind) {
+        this.tracer = tracer;
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.parentId = parentId;
+        this.name = name;
+        this.kind = kind;
+        this.timestampMicros = System.currentTimeMillis() * 1000;
+        this.startNanos = System.nanoTime();
+    }
+
+    public boolean isRecording() {
+        return tracer != null;
+    }
+
+    public synchronized Span tag(String key, Object value) {
+        if (tracer != null && value != null) {
+            tags.put(key, String.valueOf(value));
+        }
+        return this;
+    }
+
+    public synchronized Map<String, String> getTags() {
+        return new LinkedHashMap<>(tags);
+    }
+
+    /**
+     * @return 耗时(微秒), 尚未结束时为-1
+     */
+    public synchronized long getDurationMicros() {
+        return durationMicros;
+    }
+
+    /**
+     * 以异常结束时记录异常信息
+     */
+    public Span error(Throwable ex) {
+        return tag("error", ex.getMessage() == null ? ex.getClass().getName() : ex.getMessage());
+    }
+
+    /**
+     * 结束并导出, 重复调用只导出一次
+     */
+    public void finish() {
+        if (tracer == null) {
+            return;
+        }
+        synchronized (this) {
+            if (durationMicros >= 0) {
+                return;
+            }
+            durationMicros = Math.max(1, (System.nanoTime() - startNanos) / 1000);
+        }
+        tracer.report(this);
+    }
+
+    /**
+     * @return W3C Trace Context 的 traceparent 请求头, 未开启追踪时为 null
+     */
+    public String traceparent() {
+        return tracer == null ? null : "00-" + traceId + "-" + spanId + "-01";
+    }
+
+    @Override
+    public String toString() {
+        return "Span{name=" + name + ", traceId=" + traceId + ", spanId=" + spanId + ", parentId=" + parentId
+                + ", duration=" + durationMicros + "us, tags=" + getTags() + "}";
+    }
+}
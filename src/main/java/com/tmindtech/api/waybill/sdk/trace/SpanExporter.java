@@ -0,0 +1,13 @@
+package com.tmindtech.api.waybill.sdk.trace;
+
+/**
+ * 导出已结束的 span
+ */
+public interface SpanExporter {
+
+    /**
+     * 在结束 span 的线程上调用, 不能阻塞
+     */
+    void export(Span span);
+
+}
@@ -0,0 +1,136 @@
+package com.tmindtech.api.waybill.sdk.trace;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * 轻量的调用链追踪
+ * 每个打印请求是一条 trace, 其中每次 HTTP 请求、每张面单的获取、转换、打印各是一个 span
+ * 当前 span 保存在线程变量中: 切换到其他线程池执行时, 由 activate 或 wrap 在目标线程上恢复
+ * 未设置导出器时不追踪, 所有 span 都是 Span.NOOP
+ */
+public class Tracer {
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+
+    private volatile SpanExporter exporter;
+
+    /**
+     * @param exporter 导出器, 为 null 时关闭追踪
+     */
+    public void setExporter(SpanExporter exporter) {
+        this.exporter = exporter;
+    }
+
+    public SpanExporter getExporter() {
+        return exporter;
+    }
+
+    public boolean isEnabled() {
+        return exporter != null;
+    }
+
+    /**
+     * 开始一条新的 trace
+     */
+    public Span startTrace(String name) {
+        if (exporter == null) {
+            return Span.NOOP;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return new Span(this, hex(random.nextLong()) + hex(random.nextLong()), hex(random.nextLong()), null, name, null);
+    }
+
+    /**
+     * 在当前 span 下开始一个子 span
+     */
+    public Span startSpan(String name) {
+        return startSpan(name, current(), null);
+    }
+
+    /**
+     * @param parent 父 span, 不在追踪中(Span.NOOP)时返回 Span.NOOP
+     * @param kind   CLIENT 或 null
+     */
+    public Span startSpan(String name, Span parent, String kind) {
+        if (exporter == null || parent == null || !parent.isRecording()) {
+            return Span.NOOP;
+        }
+        return new Span(this, parent.traceId, hex(ThreadLocalRandom.current().nextLong()), parent.spanId, name, kind);
+    }
+
+    void report(Span span) {
+        SpanExporter current = exporter;
+        if (current != null) {
+            current.export(span);
+        }
+    }
+
+    /**
+     * @return 当前线程的 span, 没有时为 Span.NOOP
+     */
+    public static Span current() {
+        Span span = CURRENT.get();
+        return span == null ? Span.NOOP : span;
+    }
+
+    /**
+     * 把 span 设为当前线程的 span, 关闭返回的 Scope 时恢复原来的 span
+     */
+    public static Scope activate(Span span) {
+        Span previous = CURRENT.get();
+        CURRENT.set(span);
+        return () -> {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        };
+    }
+
+    /**
+     * 捕获当前线程的 span, 在执行时恢复, 用于异步回调
+     */
+    public static <T> Supplier<T> wrap(Supplier<T> supplier) {
+        Span span = current();
+        return () -> {
+            Scope scope = activate(span);
+            try {
+                return supplier.get();
+            } finally {
+                scope.close();
+            }
+        };
+    }
+
+    /**
+     * 同 wrap(Supplier)
+     */
+    public static <T, U, R> BiFunction<T, U, R> wrap(BiFunction<T, U, R> function) {
+        Span span = current();
+        return (t, u) -> {
+            Scope scope = activate(span);
+            try {
+                return function.apply(t, u);
+            } finally {
+                scope.close();
+            }
+        };
+    }
+
+    private static String hex(long value) {
+        String text = Long.toHexString(value);
+        return text.length() == 16 ? text : "0000000000000000".substring(text.length()) + text;
+    }
+
+    /**
+     * 当前 span 的作用范围
+     */
+    public interface Scope extends AutoCloseable {
+
+        @Override
+        void close();
+
+    }
+}
@@ -0,0 +1,194 @@
+package com.tmindtech.api.waybill.sdk.trace;
+
+import com.alibaba.fastjson.JSONObject;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 把 span 以 Zipkin v2 JSON 格式写入本地文件, 每行一个 span
+ * 文件超过 maxFileBytes 时滚动: spans.json 改名为 spans.json.1, 原来的 .1 改为 .2, 依此类推, 最多保留 maxFiles 个文件
+ * export 只放入内存队列, 由后台线程批量写入; 队列满时丢弃并计数, 不阻塞打印
+ * 导入 Zipkin 时把各行用 [ ] 和逗号连接为一个数组, POST 到 /api/v2/spans
+ */
+public class ZipkinFileExporter implements SpanExporter, Closeable {
+    public static final String FILE_NAME = "spans.json";
+    public static final File DEFAULT_DIRECTORY = new File(System.getProperty("user.home"), ".waybill-sdk/trace");
+    public static final long DEFAULT_MAX_FILE_BYTES = 16L << 20;
+    public static final int DEFAULT_MAX_FILES = 5;
+    public static final String SERVICE_NAME = "waybill-sdk";
+    private static final int QUEUE_CAPACITY = 8192;
+    private static final long FLUSH_INTERVAL_MILLIS = 1000;
+
+    private final File directory;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final BlockingQueue<Span> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicLong exportedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final Thread thread;
+    private OutputStream output;
+    private long size;
+    private volatile boolean closed;
+
+    public ZipkinFileExporter(File directory) throws IOException {
+        this(directory, DEFAULT_MAX_FILE_BYTES, DEFAULT_MAX_FILES);
+    }
+
+    /**
+     * @param directory    文件所在目录
+     * @param maxFileBytes 单个文件的最大字节数
+     * @param maxFiles     最多保留的文件数, 包括正在写入的文件
+     */
+    public ZipkinFileExporter(File directory, long maxFileBytes, int maxFiles) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("can not create directory " + directory);
+        }
+        this.directory = directory;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = Math.max(1, maxFiles);
+        open();
+        this.thread = new Thread(this::run, "waybill-trace");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    @Override
+    public void export(Span span) {
+        if (closed || !queue.offer(span)) {
+            droppedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return 已写入文件的 span 数
+     */
+    public long getExportedCount() {
+        return exportedCount.get();
+    }
+
+    /**
+     * @return 队列已满或已关闭时丢弃的 span 数
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * 写入队列中剩余的 span 后关闭文件
+     */
+    @Override
+    public void close() {
+        closed = true;
+        thread.interrupt();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<Span> batch = new ArrayList<>();
+        try {
+            while (!closed) {
+                Span first;
+                try {
+                    first = queue.poll(FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ex) {
+                    break;
+                }
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch);
+                    write(batch);
+                    batch.clear();
+                }
+            }
+            queue.drainTo(batch);
+            write(batch);
+        } finally {
+            try {
+                output.close();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    private void write(List<Span> spans) {
+        try {
+            for (Span span : spans) {
+                byte[] line = (toJson(span) + "\n").getBytes(StandardCharsets.UTF_8);
+                if (size > 0 && size + line.length > maxFileBytes) {
+                    rotate();
+                }
+                output.write(line);
+                size += line.length;
+                exportedCount.incrementAndGet();
+            }
+            output.flush();
+        } catch (IOException ex) {
+            droppedCount.addAndGet(spans.size());
+            ex.printStackTrace();
+        }
+    }
+
+    private void rotate() throws IOException {
+        output.close();
+        new File(directory, FILE_NAME + "." + (maxFiles - 1)).delete();
+        for (int i = maxFiles - 2; i >= 1; i--) {
+            new File(directory, FILE_NAME + "." + i).renameTo(new File(directory, FILE_NAME + "." + (i + 1)));
+        }
+        File current = new File(directory, FILE_NAME);
+        if (maxFiles > 1) {
+            current.renameTo(new File(directory, FILE_NAME + ".1"));
+        } else {
+            current.delete();
+        }
+        open();
+    }
+
+    private void open() throws IOException {
+        File file = new File(directory, FILE_NAME);
+        output = new BufferedOutputStream(new FileOutputStream(file, true));
+        size = file.length();
+    }
+
+    /**
+     * @return Zipkin v2 格式的 span
+     */
+    public static String toJson(Span span) {
+        JSONObject json = new JSONObject(true);
+        json.put("traceId", span.traceId);
+        json.put("id", span.spanId);
+        if (span.parentId != null) {
+            json.put("parentId", span.parentId);
+        }
+        json.put("name", span.name);
+        if (span.kind != null) {
+            json.put("kind", span.kind);
+        }
+        json.put("timestamp", span.timestampMicros);
+        json.put("duration", span.getDurationMicros());
+        JSONObject localEndpoint = new JSONObject(true);
+        localEndpoint.put("serviceName", SERVICE_NAME);
+        json.put("localEndpoint", localEndpoint);
+        Map<String, String> tags = span.getTags();
+        if (!tags.isEmpty()) {
+            json.put("tags", tags);
+        }
+        return json.toJSONString();
+    }
+}
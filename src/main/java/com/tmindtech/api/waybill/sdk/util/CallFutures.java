@@ -0,0 +1,40 @@
+package com.tmindtech.api.waybill.sdk.util;
+
+import java.util.concurrent.CompletableFuture;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * 把 Retrofit 的 Call 转换为 CompletableFuture, 基于 Call.enqueue, 等待响应时不占用调用线程
+ */
+public class CallFutures {
+
+    /**
+     * 异步执行请求, 取消返回的 future 会同时取消请求
+     *
+     * @param call 尚未执行的请求
+     * @return 收到响应后完成, 网络异常时以 IOException 异常完成
+     */
+    public static <T> CompletableFuture<Response<T>> enqueue(Call<T> call) {
+        CompletableFuture<Response<T>> future = new CompletableFuture<Response<T>>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                call.cancel();
+                return super.cancel(mayInterruptIfRunning);
+            }
+        };
+        call.enqueue(new Callback<T>() {
+            @Override
+            public void onResponse(Call<T> call, Response<T> response) {
+                future.complete(response);
+            }
+
+            @Override
+            public void onFailure(Call<T> call, Throwable throwable) {
+                future.completeExceptionally(throwable);
+            }
+        });
+        return future;
+    }
+}
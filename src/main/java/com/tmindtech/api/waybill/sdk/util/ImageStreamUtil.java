@@ -1,12 +1,10 @@
 package com.tmindtech.api.waybill.sdk.util;
 
+import com.tmindtech.api.waybill.sdk.model.PrintImageInfo;
 import com.tmindtech.api.waybill.sdk.model.PrintStreamInfo;
-import java.awt.Graphics2D;
-import java.awt.RenderingHints;
 import java.awt.geom.AffineTransform;
 import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
-import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -26,6 +24,7 @@ import javax.imageio.stream.ImageInputStream;
 import javax.imageio.stream.ImageOutputStream;
 import javax.print.PrintService;
 import javax.print.attribute.standard.PrinterResolution;
+import org.apache.commons.io.IOUtils;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -37,6 +36,7 @@ import org.w3c.dom.NodeList;
 public class ImageStreamUtil {
     // 1英寸是25.4毫米
     private static final float INCH_2_MM = 25.4f;
+    private static final String PNG_METADATA_FORMAT = "javax_imageio_png_1.0";
 
     /**
      * @param inputStream 需要转换的目标图片流
@@ -44,146 +44,186 @@ public class ImageStreamUtil {
      * @return 转换后的结果图片流 如果打印机未设置成功，会抛出NullPointerException异常
      */
     public static PrintStreamInfo convertImageStream2MatchPrinter(InputStream inputStream, PrintService printService, int pageCount) {
-        PrintStreamInfo streamInfo = new PrintStreamInfo();
-        InputStreamCacher cacher = new InputStreamCacher(inputStream);
-        PrinterResolution resolution;
-        PrinterResolution[] resolutions = (PrinterResolution[]) printService.getSupportedAttributeValues(PrinterResolution.class, null, null);
-        if (Objects.isNull(resolutions) || resolutions.length == 0) {
-            resolution = new PrinterResolution(300, 300, PrinterResolution.DPI);
-        } else {
-            resolution = resolutions[0];
+        PrinterResolution resolution = getPrinterResolution(printService);
+        if (Objects.isNull(inputStream)) {
+            return null;
         }
-
         try {
-            BufferedImage image = ImageIO.read(cacher.getInputStream());
-            int width = image.getWidth();
-            int height = image.getHeight();
-            int crossResolution = 0;
-            int feedResolution = 0;
+            return convertImage2MatchPrinter(IOUtils.toByteArray(inputStream), resolution, pageCount);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        return null;
+    }
 
-            ImageInputStream iis = ImageIO.createImageInputStream(cacher.getInputStream());
-            Iterator it = ImageIO.getImageReaders(iis);
-            if (!it.hasNext()) {
+    /**
+     * 转换图片以匹配打印机分辨率, 并编码为带有目标dpi信息的png图片
+     * 图片dpi与打印机相同时直接返回原图, 不会重新编码
+     *
+     * @param source     原始图片
+     * @param resolution 目标打印机分辨率
+     * @param pageCount  面单图片需要分图打印份数
+     * @return 转换后的结果图片流, 图片无法解码时为null
+     */
+    public static PrintStreamInfo convertImage2MatchPrinter(byte[] source, PrinterResolution resolution, int pageCount) {
+        PrintImageInfo imageInfo = decodeImage2MatchPrinter(source, resolution, pageCount);
+        if (Objects.isNull(imageInfo)) {
+            return null;
+        }
+        PrintStreamInfo streamInfo = new PrintStreamInfo();
+        streamInfo.width = imageInfo.width;
+        streamInfo.height = imageInfo.height;
+        if (imageInfo.resampled) {
+            byte[] encoded = encodePng(imageInfo.image, imageInfo.crossFeedDpi, imageInfo.feedDpi);
+            if (Objects.isNull(encoded)) {
                 return null;
             }
-            ImageReader reader = (ImageReader) it.next();
-            reader.setInput(iis);
+            streamInfo.inputStream = new ByteArrayInputStream(encoded);
+        } else {
+            streamInfo.inputStream = new ByteArrayInputStream(source);
+        }
+        return streamInfo;
+    }
 
-            IIOMetadata meta = reader.getImageMetadata(0);
-            IIOMetadataNode root = (IIOMetadataNode) meta.getAsTree("javax_imageio_1.0");
-            NodeList nodes = root.getElementsByTagName("HorizontalPixelSize");
-            if (nodes.getLength() > 0) {
-                IIOMetadataNode dpcWidth = (IIOMetadataNode) nodes.item(0);
-                NamedNodeMap nnm = dpcWidth.getAttributes();
-                Node item = nnm.item(0);
-                crossResolution = Math.round(INCH_2_MM / Float.parseFloat(item.getNodeValue()));
-            }
-            if (nodes.getLength() > 0) {
-                nodes = root.getElementsByTagName("VerticalPixelSize");
-                IIOMetadataNode dpcHeight = (IIOMetadataNode) nodes.item(0);
-                NamedNodeMap nnm = dpcHeight.getAttributes();
-                Node item = nnm.item(0);
-                feedResolution = Math.round(INCH_2_MM / Float.parseFloat(item.getNodeValue()));
+    /**
+     * 解码图片并按打印机分辨率缩放, 整个过程只解码一次、缩放一次
+     * 图片的dpi信息从解码所用的同一个 ImageReader 中读取, 图片未声明dpi时视为与打印机相同
+     *
+     * @param source     原始图片
+     * @param resolution 目标打印机分辨率
+     * @param pageCount  面单图片需要分图打印份数
+     * @return 缩放后的图片及每页的打印尺寸, 图片无法解码时为null
+     */
+    public static PrintImageInfo decodeImage2MatchPrinter(byte[] source, PrinterResolution resolution, int pageCount) {
+        int xdpi = resolution.getCrossFeedResolution(PrinterResolution.DPI);
+        int ydpi = resolution.getFeedResolution(PrinterResolution.DPI);
+        long decodeStart = System.nanoTime();
+        BufferedImage image;
+        IIOMetadata meta;
+        try (ImageInputStream iis = ImageIO.createImageInputStream(new ByteArrayInputStream(source))) {
+            Iterator<ImageReader> it = ImageIO.getImageReaders(iis);
+            if (!it.hasNext()) {
+                return null;
             }
-
-            streamInfo.width = (float) (width * 1.0 / crossResolution * 25.4);
-            streamInfo.height = (float) (height * 1.0 / feedResolution / pageCount * 25.4);
-
-            //如果图片的原始dpi和目标打印机的dpi相同，则不需要转换图片流
-            if (crossResolution == resolution.getCrossFeedResolution(PrinterResolution.DPI)) {
-                streamInfo.inputStream = cacher.getInputStream();
-                return streamInfo;
+            ImageReader reader = it.next();
+            try {
+                reader.setInput(iis, true);
+                meta = reader.getImageMetadata(0);
+                image = reader.read(0);
+            } finally {
+                reader.dispose();
             }
-
-            int xdpi = resolution.getCrossFeedResolution(PrinterResolution.DPI);
-            int ydpi = resolution.getFeedResolution(PrinterResolution.DPI);
-            int convertWidth = Math.round((float) width * xdpi / crossResolution);
-            int convertHeight = Math.round((float) height * ydpi / feedResolution);
-
-            BufferedImage bufferedImage = fastResample(ImageIO.read(cacher.getInputStream()), null, convertWidth, convertHeight, 1);
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            BufferedOutputStream bufferStream = new BufferedOutputStream(bos);
-            ImageIO.write(bufferedImage, "png", bufferStream);
-            bufferStream.close();
-            streamInfo.inputStream = resetImageDpi(new ByteArrayInputStream(bos.toByteArray()), convertWidth, convertHeight, xdpi, ydpi);
-            return streamInfo;
         } catch (IOException ex) {
             ex.printStackTrace();
+            return null;
         }
-        return null;
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int crossResolution = readDpi(meta, "HorizontalPixelSize", xdpi);
+        int feedResolution = readDpi(meta, "VerticalPixelSize", ydpi);
+
+        PrintImageInfo imageInfo = new PrintImageInfo();
+        imageInfo.decodeNanos = System.nanoTime() - decodeStart;
+        imageInfo.sourceDpi = crossResolution;
+        imageInfo.sourcePixels = (long) width * height;
+        imageInfo.width = (float) (width * 1.0 / crossResolution * INCH_2_MM);
+        imageInfo.height = (float) (height * 1.0 / feedResolution / pageCount * INCH_2_MM);
+
+        //如果图片的原始dpi和目标打印机的dpi相同，则不需要转换图片
+        if (crossResolution == xdpi) {
+            imageInfo.image = image;
+            imageInfo.crossFeedDpi = crossResolution;
+            imageInfo.feedDpi = feedResolution;
+            return imageInfo;
+        }
+
+        int convertWidth = Math.round((float) width * xdpi / crossResolution);
+        int convertHeight = Math.round((float) height * ydpi / feedResolution);
+        long resampleStart = System.nanoTime();
+        imageInfo.image = fastResample(image, null, convertWidth, convertHeight, AffineTransformOp.TYPE_NEAREST_NEIGHBOR);
+        imageInfo.resampleNanos = System.nanoTime() - resampleStart;
+        imageInfo.crossFeedDpi = xdpi;
+        imageInfo.feedDpi = ydpi;
+        imageInfo.resampled = true;
+        return imageInfo;
     }
 
     /**
-     * 重置图片的dpi
+     * 将图片编码为png, 并写入dpi信息
      *
-     * @param inputStream 图片输入流
-     * @param crossDpi    水平dpi
-     * @param feedDpi     垂直dpi
-     * @return 重置后的图片流
+     * @param image    需要编码的图片
+     * @param crossDpi 水平dpi
+     * @param feedDpi  垂直dpi
+     * @return png图片字节, 没有可用的png编码器时为null
      */
-    private static InputStream resetImageDpi(InputStream inputStream, int width, int height, int crossDpi, int feedDpi) {
-        BufferedImage image = scaleImage(width, height, inputStream);
+    public static byte[] encodePng(BufferedImage image, int crossDpi, int feedDpi) {
         for (Iterator<ImageWriter> iw = ImageIO.getImageWritersByFormatName("png"); iw.hasNext(); ) {
             ImageWriter writer = iw.next();
             ImageWriteParam writeParam = writer.getDefaultWriteParam();
-            ImageTypeSpecifier typeSpecifier = ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_INT_RGB);
+            ImageTypeSpecifier typeSpecifier = ImageTypeSpecifier.createFromRenderedImage(image);
             IIOMetadata metadata = writer.getDefaultImageMetadata(typeSpecifier, writeParam);
-            if (metadata.isReadOnly() || !metadata.isStandardMetadataFormatSupported()) {
+            if (metadata.isReadOnly() || !PNG_METADATA_FORMAT.equals(metadata.getNativeMetadataFormatName())) {
+                writer.dispose();
                 continue;
             }
             ByteArrayOutputStream output = new ByteArrayOutputStream();
-            ImageOutputStream stream = null;
-            try {
+            try (ImageOutputStream stream = ImageIO.createImageOutputStream(output)) {
                 setDPI(metadata, crossDpi, feedDpi);
-                stream = ImageIO.createImageOutputStream(output);
                 writer.setOutput(stream);
-                writer.write(metadata, new IIOImage(image, null, metadata), writeParam);
+                writer.write(null, new IIOImage(image, null, metadata), writeParam);
             } catch (IOException ex) {
                 ex.printStackTrace();
+                return null;
             } finally {
-                try {
-                    if (stream != null) {
-                        stream.close();
-                    }
-                } catch (IOException ignore) {
-                }
+                writer.dispose();
             }
-            return new ByteArrayInputStream(output.toByteArray());
+            return output.toByteArray();
         }
         return null;
     }
 
-    private static BufferedImage scaleImage(int width, int height, InputStream inputStream) {
-        BufferedImage bi = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g2d = bi.createGraphics();
-        g2d.addRenderingHints(new RenderingHints(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY));
-        try {
-            g2d.drawImage(ImageIO.read(inputStream), 0, 0, width, height, null);
-        } catch (IOException ignore) {
+    /**
+     * 从图片元数据中读取dpi, png中记录的是每个像素的毫米数
+     */
+    private static int readDpi(IIOMetadata meta, String nodeName, int defaultDpi) {
+        IIOMetadataNode root = (IIOMetadataNode) meta.getAsTree("javax_imageio_1.0");
+        NodeList nodes = root.getElementsByTagName(nodeName);
+        if (nodes.getLength() == 0) {
+            return defaultDpi;
         }
-        return bi;
+        IIOMetadataNode node = (IIOMetadataNode) nodes.item(0);
+        NamedNodeMap nnm = node.getAttributes();
+        Node item = nnm.item(0);
+        return Math.round(INCH_2_MM / Float.parseFloat(item.getNodeValue()));
     }
 
-    private static void setDPI(IIOMetadata metadata, int crossDpi, int feedDpi) {
-
-        // for PMG, it's dots per millimeter
-        double crossDotsPerMilli = 1.0 * crossDpi / INCH_2_MM;
-        double feedDotsPerMilli = 1.0 * feedDpi / INCH_2_MM;
-        IIOMetadataNode horiz = new IIOMetadataNode("HorizontalPixelSize");
-        horiz.setAttribute("value", Double.toString(crossDotsPerMilli));
-
-        IIOMetadataNode vert = new IIOMetadataNode("VerticalPixelSize");
-        vert.setAttribute("value", Double.toString(feedDotsPerMilli));
+    /**
+     * 获取打印机的分辨率, 打印机未声明支持的分辨率时默认为300dpi
+     *
+     * @param printService 目标打印机
+     * @return 打印机分辨率
+     */
+    public static PrinterResolution getPrinterResolution(PrintService printService) {
+        PrinterResolution[] resolutions = (PrinterResolution[]) printService.getSupportedAttributeValues(PrinterResolution.class, null, null);
+        if (Objects.isNull(resolutions) || resolutions.length == 0) {
+            return new PrinterResolution(300, 300, PrinterResolution.DPI);
+        }
+        return resolutions[0];
+    }
 
-        IIOMetadataNode dim = new IIOMetadataNode("Dimension");
-        dim.appendChild(horiz);
-        dim.appendChild(vert);
+    private static void setDPI(IIOMetadata metadata, int crossDpi, int feedDpi) {
+        // 直接写入png的pHYs块(每米像素数), 标准元数据格式中的像素尺寸在 JDK 8 的png编码器中会被当作每毫米像素数处理
+        IIOMetadataNode phys = new IIOMetadataNode("pHYs");
+        phys.setAttribute("pixelsPerUnitXAxis", Integer.toString(Math.round(crossDpi * 1000 / INCH_2_MM)));
+        phys.setAttribute("pixelsPerUnitYAxis", Integer.toString(Math.round(feedDpi * 1000 / INCH_2_MM)));
+        phys.setAttribute("unitSpecifier", "meter");
 
-        IIOMetadataNode root = new IIOMetadataNode("javax_imageio_1.0");
-        root.appendChild(dim);
+        IIOMetadataNode root = new IIOMetadataNode(PNG_METADATA_FORMAT);
+        root.appendChild(phys);
 
         try {
-            metadata.mergeTree("javax_imageio_1.0", root);
+            metadata.mergeTree(PNG_METADATA_FORMAT, root);
         } catch (IIOInvalidTreeException ex) {
             ex.printStackTrace();
         }
@@ -196,10 +236,10 @@ public class ImageStreamUtil {
      * @param output output image
      * @param width  width
      * @param height height
-     * @param type   type
+     * @param type   插值方式, AffineTransformOp.TYPE_NEAREST_NEIGHBOR / TYPE_BILINEAR / TYPE_BICUBIC
      * @return 缩放后的图片缓冲流
      */
-    private static BufferedImage fastResample(final BufferedImage input, final BufferedImage output, final int width, final int height, final int type) {
+    static BufferedImage fastResample(final BufferedImage input, final BufferedImage output, final int width, final int height, final int type) {
         BufferedImage temp = input;
 
         double xScale;
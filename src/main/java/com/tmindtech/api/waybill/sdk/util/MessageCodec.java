@@ -0,0 +1,87 @@
+package com.tmindtech.api.waybill.sdk.util;
+
+import com.alibaba.fastjson.JSON;
+import com.tmindtech.api.waybill.sdk.model.YXMessage;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+/**
+ * 请求消息的编码
+ * 消息只序列化一次, 直接得到 UTF-8 字节; 签名与发送都使用这份字节, 不再经过字符串来回转换
+ */
+public class MessageCodec {
+    public static final MediaType JSON_TYPE = MediaType.parse("application/json; charset=utf-8");
+
+    /**
+     * @param message 请求消息
+     * @return 可重复发送的请求体, 签名时直接读取其中的字节
+     */
+    public static EncodedBody encode(YXMessage message) {
+        return new EncodedBody(JSON.toJSONBytes(message), message.topic, message.id);
+    }
+
+    /**
+     * 生成消息 id, 格式与 UUID.randomUUID 相同, 使用 ThreadLocalRandom 避免 SecureRandom 的开销与竞争
+     */
+    public static String nextMessageId() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long mostSigBits = (random.nextLong() & ~0xf000L) | 0x4000L;
+        long leastSigBits = (random.nextLong() & ~(0xc000000000000000L)) | 0x8000000000000000L;
+        return new UUID(mostSigBits, leastSigBits).toString();
+    }
+
+    /**
+     * 已编码的 JSON 请求体
+     */
+    public static final class EncodedBody extends RequestBody {
+        private final byte[] bytes;
+        private final String topic;
+        private final String messageId;
+
+        EncodedBody(byte[] bytes, String topic, String messageId) {
+            this.bytes = bytes;
+            this.topic = topic;
+            this.messageId = messageId;
+        }
+
+        /**
+         * @return 编码后的字节, 调用方不能修改
+         */
+        public byte[] bytes() {
+            return bytes;
+        }
+
+        /**
+         * @return 消息主题, 用于按接口统计
+         */
+        public String topic() {
+            return topic;
+        }
+
+        /**
+         * @return 消息 id, 用于关联 JFR 事件与服务端日志
+         */
+        public String messageId() {
+            return messageId;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return JSON_TYPE;
+        }
+
+        @Override
+        public long contentLength() {
+            return bytes.length;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            sink.write(bytes);
+        }
+    }
+}
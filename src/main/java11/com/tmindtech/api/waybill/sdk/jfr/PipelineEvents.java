@@ -0,0 +1,242 @@
+package com.tmindtech.api.waybill.sdk.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 创建打印流程的 JFR 事件
+ * 这是 Java 11 及以上使用的实现, 打包在多版本 jar 的 META-INF/versions/11 中, 公开方法与 Java 8 的空实现一致
+ * 未开启 JFR 录制时 end 只做一次判断, 不写入任何内容
+ * 事件名以 com.tmindtech.waybill 开头, 可在 .jfc 配置中单独开关或设置阈值
+ */
+public final class PipelineEvents {
+    private PipelineEvents() {
+    }
+
+    public static boolean isSupported() {
+        return true;
+    }
+
+    public static PipelineEvent.LabelFetch labelFetch(String topic, String messageId, String uuidCode, int labelCount) {
+        LabelFetchEvent event = new LabelFetchEvent();
+        event.topic = topic;
+        event.messageId = messageId;
+        event.uuidCode = uuidCode;
+        event.labelCount = labelCount;
+        event.begin();
+        return event;
+    }
+
+    public static PipelineEvent.ImageConversion imageConversion(String uuidCode, String printer) {
+        ImageConversionEvent event = new ImageConversionEvent();
+        event.uuidCode = uuidCode;
+        event.printer = printer;
+        event.begin();
+        return event;
+    }
+
+    public static PipelineEvent.PageSlicing pageSlicing(String uuidCode, String printer, int pageCount) {
+        PageSlicingEvent event = new PageSlicingEvent();
+        event.uuidCode = uuidCode;
+        event.printer = printer;
+        event.pageCount = pageCount;
+        event.begin();
+        return event;
+    }
+
+    public static PipelineEvent.PrintJob printJob(String uuidCode, String printer, String flavor) {
+        PrintJobEvent event = new PrintJobEvent();
+        event.uuidCode = uuidCode;
+        event.printer = printer;
+        event.flavor = flavor;
+        event.begin();
+        return event;
+    }
+
+    public static PipelineEvent.HealthProbe healthProbe(String endpoint) {
+        HealthProbeEvent event = new HealthProbeEvent();
+        event.endpoint = endpoint;
+        event.begin();
+        return event;
+    }
+
+    public static void endpointSwitch(String from, String to, String reason, String topic, String messageId) {
+        EndpointSwitchEvent event = new EndpointSwitchEvent();
+        if (!event.isEnabled()) {
+            return;
+        }
+        event.from = from;
+        event.to = to;
+        event.reason = reason;
+        event.topic = topic;
+        event.messageId = messageId;
+        event.commit();
+    }
+
+    @Name("com.tmindtech.waybill.LabelFetch")
+    @Label("Label Fetch")
+    @Category({"Waybill SDK", "Print Pipeline"})
+    @Description("查询面单信息、图片地址或下载面单图片")
+    @StackTrace(false)
+    static final class LabelFetchEvent extends Event implements PipelineEvent.LabelFetch {
+        @Label("Topic")
+        String topic;
+
+        @Label("Message Id")
+        String messageId;
+
+        @Label("UUID Code")
+        String uuidCode;
+
+        @Label("Label Count")
+        int labelCount;
+
+        @Label("Status")
+        int status;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Override
+        public void end(int status, long bytes) {
+            this.status = status;
+            this.bytes = bytes;
+            commit();
+        }
+    }
+
+    @Name("com.tmindtech.waybill.ImageConversion")
+    @Label("Image Conversion")
+    @Category({"Waybill SDK", "Print Pipeline"})
+    @Description("解码面单图片并按打印机分辨率缩放")
+    @StackTrace(false)
+    static final class ImageConversionEvent extends Event implements PipelineEvent.ImageConversion {
+        @Label("UUID Code")
+        String uuidCode;
+
+        @Label("Printer")
+        String printer;
+
+        @Label("Source DPI")
+        int sourceDpi;
+
+        @Label("Target DPI")
+        int targetDpi;
+
+        @Label("Source Pixels")
+        long sourcePixels;
+
+        @Label("Target Pixels")
+        long targetPixels;
+
+        @Override
+        public void end(int sourceDpi, int targetDpi, long sourcePixels, long targetPixels) {
+            this.sourceDpi = sourceDpi;
+            this.targetDpi = targetDpi;
+            this.sourcePixels = sourcePixels;
+            this.targetPixels = targetPixels;
+            commit();
+        }
+    }
+
+    @Name("com.tmindtech.waybill.PageSlicing")
+    @Label("Page Slicing")
+    @Category({"Waybill SDK", "Print Pipeline"})
+    @Description("把面单切分为多页并编码")
+    @StackTrace(false)
+    static final class PageSlicingEvent extends Event implements PipelineEvent.PageSlicing {
+        @Label("UUID Code")
+        String uuidCode;
+
+        @Label("Printer")
+        String printer;
+
+        @Label("Page Count")
+        int pageCount;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Override
+        public void end(long bytes) {
+            this.bytes = bytes;
+            commit();
+        }
+    }
+
+    @Name("com.tmindtech.waybill.PrintJob")
+    @Label("Print Job")
+    @Category({"Waybill SDK", "Print Pipeline"})
+    @Description("向打印机提交一个打印任务")
+    @StackTrace(false)
+    static final class PrintJobEvent extends Event implements PipelineEvent.PrintJob {
+        @Label("UUID Code")
+        String uuidCode;
+
+        @Label("Printer")
+        String printer;
+
+        @Label("Flavor")
+        String flavor;
+
+        @Label("Success")
+        boolean success;
+
+        @Override
+        public void end(boolean success) {
+            this.success = success;
+            commit();
+        }
+    }
+
+    @Name("com.tmindtech.waybill.HealthProbe")
+    @Label("Health Probe")
+    @Category({"Waybill SDK", "Endpoint"})
+    @Description("对本地服务的一次健康检查")
+    @StackTrace(false)
+    static final class HealthProbeEvent extends Event implements PipelineEvent.HealthProbe {
+        @Label("Endpoint")
+        String endpoint;
+
+        @Label("Healthy")
+        boolean healthy;
+
+        @Label("Status")
+        int status;
+
+        @Override
+        public void end(boolean healthy, int status) {
+            this.healthy = healthy;
+            this.status = status;
+            commit();
+        }
+    }
+
+    @Name("com.tmindtech.waybill.EndpointSwitch")
+    @Label("Endpoint Switch")
+    @Category({"Waybill SDK", "Endpoint"})
+    @Description("请求从一个地址切换到下一个地址")
+    static final class EndpointSwitchEvent extends Event {
+        @Label("From")
+        String from;
+
+        @Label("To")
+        String to;
+
+        @Label("Reason")
+        String reason;
+
+        @Label("Topic")
+        String topic;
+
+        @Label("Message Id")
+        String messageId;
+    }
+}
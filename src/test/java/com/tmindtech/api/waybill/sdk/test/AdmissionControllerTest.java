@@ -0,0 +1,140 @@
+package com.tmindtech.api.waybill.sdk.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.tmindtech.api.waybill.sdk.metrics.MetricsRegistry;
+import com.tmindtech.api.waybill.sdk.metrics.MetricsSnapshot;
+import com.tmindtech.api.waybill.sdk.metrics.Stage;
+import com.tmindtech.api.waybill.sdk.print.AdmissionController;
+import com.tmindtech.api.waybill.sdk.print.AdmissionPolicy;
+import com.tmindtech.api.waybill.sdk.print.AdmissionStats;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * 打印请求准入测试: 排队容量、内存预算与三种拒绝策略
+ */
+public class AdmissionControllerTest {
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final List<String> shed = new CopyOnWriteArrayList<>();
+
+    @Test
+    public void failFastWhenQueueFull() {
+        AdmissionController controller = new AdmissionController(2, 1 << 20, 1024, AdmissionPolicy.FAIL_FAST,
+                1000, metrics);
+        AdmissionController.Ticket first = controller.admit("p1", 0, 1, null);
+        controller.admit("p1", 0, 1, null);
+        assertRejected(controller, 0, 1);
+        //开始执行后让出排队位置
+        assertTrue(first.start());
+        controller.admit("p1", 0, 1, null);
+
+        AdmissionStats stats = controller.getStats();
+        assertEquals(2, stats.queued);
+        assertEquals(3, stats.outstanding);
+        assertEquals(3 * 1024, stats.reservedBytes);
+        assertEquals(3, stats.admittedCount);
+        assertEquals(1, stats.rejectedCount);
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(1, snapshot.getCounter(AdmissionController.REJECTED_COUNTER, "p1"));
+        assertEquals(1, snapshot.getHistogram(Stage.ADMISSION_WAIT, "p1").count);
+    }
+
+    @Test
+    public void limitReservedBytes() {
+        AdmissionController controller = new AdmissionController(10, 4096, 1024, AdmissionPolicy.FAIL_FAST,
+                1000, metrics);
+        //超出预算的单个请求在没有其他请求时仍然接受
+        AdmissionController.Ticket large = controller.admit("p1", 0, 8, null);
+        assertTrue(large.start());
+        assertRejected(controller, 0, 1);
+        large.release();
+        large.release();
+        AdmissionController.Ticket small = controller.admit("p1", 0, 3, null);
+        controller.admit("p1", 0, 1, null);
+        assertRejected(controller, 0, 1);
+        small.release();
+        assertEquals(1024, controller.getStats().reservedBytes);
+        assertEquals(1, controller.getStats().outstanding);
+    }
+
+    @Test
+    public void blockUntilReleased() throws Exception {
+        AdmissionController controller = new AdmissionController(1, 1 << 20, 1024, AdmissionPolicy.BLOCK,
+                5000, metrics);
+        AdmissionController.Ticket first = controller.admit("p1", 0, 1, null);
+        CompletableFuture<AdmissionController.Ticket> second = CompletableFuture.supplyAsync(() ->
+                controller.admit("p1", 0, 1, null));
+        Thread.sleep(200);
+        assertFalse(second.isDone());
+        assertEquals(1, controller.getStats().blocked);
+        assertTrue(first.start());
+        assertTrue(second.get(2, TimeUnit.SECONDS).start());
+        assertEquals(0, controller.getStats().blocked);
+        assertTrue(metrics.snapshot().getHistogram(Stage.ADMISSION_WAIT, "p1").maxMillis >= 190);
+    }
+
+    @Test
+    public void blockTimeout() {
+        AdmissionController controller = new AdmissionController(1, 1 << 20, 1024, AdmissionPolicy.BLOCK,
+                300, metrics);
+        controller.admit("p1", 0, 1, null);
+        long start = System.currentTimeMillis();
+        assertRejected(controller, 0, 1);
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue("elapsed " + elapsed, elapsed >= 300 && elapsed < 2000);
+    }
+
+    @Test
+    public void shedLowestPriority() {
+        AdmissionController controller = new AdmissionController(3, 1 << 20, 1024,
+                AdmissionPolicy.SHED_LOWEST_PRIORITY, 1000, metrics);
+        AdmissionController.Ticket low = controller.admit("p1", 1, 1, () -> shed.add("low"));
+        AdmissionController.Ticket lowest = controller.admit("p1", 0, 1, () -> shed.add("lowest"));
+        AdmissionController.Ticket newest = controller.admit("p2", 0, 1, () -> shed.add("newest"));
+        //同优先级时不丢弃
+        assertRejected(controller, 0, 1);
+        //优先级最低的请求中最后提交的先被丢弃
+        controller.admit("p1", 5, 1, () -> shed.add("high"));
+        controller.admit("p1", 5, 1, () -> shed.add("high"));
+        assertEquals(2, shed.size());
+        assertEquals("newest", shed.get(0));
+        assertEquals("lowest", shed.get(1));
+        assertFalse(newest.start());
+        assertFalse(lowest.start());
+        assertTrue(low.start());
+
+        AdmissionStats stats = controller.getStats();
+        assertEquals(2, stats.queued);
+        assertEquals(3, stats.outstanding);
+        assertEquals(2, stats.shedCount);
+        assertEquals(1, metrics.snapshot().getCounter(AdmissionController.SHED_COUNTER, "p2"));
+    }
+
+    @Test
+    public void rejectAfterShutdown() {
+        AdmissionController controller = new AdmissionController(metrics);
+        controller.shutdown();
+        try {
+            controller.admit("p1", 0, 1, null);
+            fail();
+        } catch (RuntimeException ex) {
+            assertEquals("SDK shutdown", ex.getMessage());
+        }
+    }
+
+    private static void assertRejected(AdmissionController controller, int priority, int labelCount) {
+        try {
+            controller.admit("p1", priority, labelCount, null);
+            fail();
+        } catch (RuntimeException ex) {
+            assertEquals("PrintQueueFull", ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.tmindtech.api.waybill.sdk.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import com.tmindtech.api.waybill.sdk.http.EndpointState;
+import com.tmindtech.api.waybill.sdk.http.EndpointTable;
+import com.tmindtech.api.waybill.sdk.http.HealthEvent;
+import com.tmindtech.api.waybill.sdk.http.HealthMonitor;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
+import okhttp3.OkHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 健康检查与熔断测试, 用本地 HttpServer 模拟本地服务, 可随时变慢或停止
+ */
+public class HealthMonitorTest {
+    private final List<StandIn> servers = new ArrayList<>();
+    private final List<HealthEvent> events = new CopyOnWriteArrayList<>();
+    private EndpointTable endpointTable;
+    private HealthMonitor healthMonitor;
+
+    @Before
+    public void setUp() throws IOException {
+        servers.add(new StandIn());
+        servers.add(new StandIn());
+        endpointTable = new EndpointTable();
+        endpointTable.setPrimary("http://127.0.0.1:1/");
+        endpointTable.setLocals(Arrays.asList(servers.get(0).url(), servers.get(1).url()));
+        endpointTable.addListener(events::add);
+        healthMonitor = new HealthMonitor(endpointTable, new OkHttpClient(), 100, 200);
+        healthMonitor.start();
+    }
+
+    @After
+    public void tearDown() {
+        healthMonitor.shutdown();
+        for (StandIn server : servers) {
+            server.server.stop(0);
+        }
+    }
+
+    @Test
+    public void ejectKilledServer() throws Exception {
+        awaitState(servers.get(0), EndpointState.CLOSED, 2000);
+        awaitState(servers.get(1), EndpointState.CLOSED, 2000);
+        assertEquals(4, endpointTable.candidates().size());
+
+        servers.get(0).server.stop(0);
+        awaitState(servers.get(0), EndpointState.OPEN, 1000);
+        List<EndpointTable.Endpoint> candidates = endpointTable.candidates();
+        assertEquals(3, candidates.size());
+        assertEquals(servers.get(1).url(), candidates.get(0).baseUrl.toString());
+        assertTrue(hasEvent(servers.get(0), EndpointState.CLOSED, EndpointState.OPEN));
+    }
+
+    @Test
+    public void ejectSlowServerAndRecover() throws Exception {
+        StandIn slow = servers.get(1);
+        awaitState(slow, EndpointState.CLOSED, 2000);
+        slow.delayMillis = 1000;
+        awaitState(slow, EndpointState.OPEN, 2000);
+
+        slow.delayMillis = 0;
+        //冷却结束后半开, 下一次检查成功即恢复
+        awaitState(slow, EndpointState.CLOSED, 3000);
+        assertTrue(hasEvent(slow, EndpointState.OPEN, EndpointState.HALF_OPEN));
+        assertTrue(hasEvent(slow, EndpointState.HALF_OPEN, EndpointState.CLOSED));
+    }
+
+    @Test
+    public void tripOnPassiveFailures() throws Exception {
+        EndpointTable.Endpoint primary = endpointTable.find("http://127.0.0.1:1/");
+        for (int i = 0; i < 9; i++) {
+            primary.recordSuccess(10 + i);
+        }
+        primary.recordSuccess(100);
+        assertEquals(14, primary.getLatencyPercentile(0.5));
+        assertEquals(100, primary.getLatencyPercentile(0.99));
+
+        primary.recordFailure(false);
+        primary.recordFailure(false);
+        assertEquals(EndpointState.CLOSED, primary.getState());
+        primary.recordFailure(false);
+        assertEquals(EndpointState.OPEN, primary.getState());
+        assertFalse(primary.tryAcquire());
+
+        //半开时只放行一个试探请求
+        awaitState(primary, EndpointState.HALF_OPEN, 2000);
+        assertTrue(primary.tryAcquire());
+        assertFalse(primary.tryAcquire());
+        primary.recordSuccess(10);
+        assertEquals(EndpointState.CLOSED, primary.getState());
+    }
+
+    private boolean hasEvent(StandIn server, EndpointState previous, EndpointState current) {
+        return events.stream().anyMatch(event -> event.url.equals(server.url())
+                && event.previous == previous && event.current == current);
+    }
+
+    private void awaitState(StandIn server, EndpointState state, long timeoutMillis) throws InterruptedException {
+        awaitState(endpointTable.find(server.url()), state, timeoutMillis);
+    }
+
+    private static void awaitState(EndpointTable.Endpoint endpoint, EndpointState state, long timeoutMillis)
+            throws InterruptedException {
+        await(() -> endpoint.getState() == state, timeoutMillis, endpoint.baseUrl + " should be " + state);
+    }
+
+    private static void await(BooleanSupplier condition, long timeoutMillis, String message) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!condition.getAsBoolean()) {
+            assertTrue(message, System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * 模拟本地服务, delayMillis 大于0时健康检查变慢
+     */
+    private static class StandIn {
+        final HttpServer server;
+        volatile long delayMillis;
+
+        StandIn() throws IOException {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/" + HealthMonitor.HEALTH_PATH, exchange -> {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException ignore) {
+                }
+                byte[] body = "ok".getBytes();
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            });
+            server.setExecutor(Executors.newCachedThreadPool());
+            server.start();
+        }
+
+        String url() {
+            return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.tmindtech.api.waybill.sdk.test;
+
+import static org.junit.Assert.assertEquals;
+
+import com.sun.net.httpserver.HttpServer;
+import com.tmindtech.api.waybill.sdk.http.EndpointTable;
+import com.tmindtech.api.waybill.sdk.interceptor.HotSwitchInterceptor;
+import com.tmindtech.api.waybill.sdk.interceptor.SignatureInterceptor;
+import com.tmindtech.api.waybill.sdk.model.YXMessage;
+import com.tmindtech.api.waybill.sdk.util.MessageCodec;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 切换服务器测试: 经过 SignatureInterceptor 后所有请求都是 PUT, 只有面单查询在网关错误后切换
+ */
+public class HotSwitchInterceptorTest {
+    private StandIn gateway;
+    private StandIn primary;
+    private EndpointTable endpointTable;
+
+    @Before
+    public void setUp() throws IOException {
+        gateway = new StandIn(502);
+        primary = new StandIn(200);
+        endpointTable = new EndpointTable();
+        endpointTable.setPrimary(primary.url());
+        endpointTable.setLocals(Collections.singletonList(gateway.url()));
+        //跳过健康检查, 本地服务直接可用
+        endpointTable.find(gateway.url()).recordSuccess(1);
+    }
+
+    @After
+    public void tearDown() {
+        gateway.server.stop(0);
+        primary.server.stop(0);
+    }
+
+    @Test
+    public void retryQueryOnGatewayError() throws IOException {
+        assertEquals(200, send("logistics_label_address/find_by_uuid"));
+        assertEquals(1, gateway.hits.get());
+        assertEquals(1, primary.hits.get());
+    }
+
+    @Test
+    public void neverReplaySplitOnGatewayError() throws IOException {
+        assertEquals(502, send("relabel"));
+        assertEquals(502, send("local_print_log"));
+        assertEquals(2, gateway.hits.get());
+        assertEquals(0, primary.hits.get());
+    }
+
+    @Test
+    public void switchSplitOnConnectFailure() throws IOException {
+        endpointTable.setLocals(Collections.singletonList("http://127.0.0.1:1/"));
+        endpointTable.find("http://127.0.0.1:1/").recordSuccess(1);
+        assertEquals(200, send("relabel"));
+        assertEquals(1, primary.hits.get());
+    }
+
+    private int send(String topic) throws IOException {
+        OkHttpClient client = new OkHttpClient.Builder()
+                .addInterceptor(new SignatureInterceptor("key", "secret"))
+                .addInterceptor(new HotSwitchInterceptor(endpointTable))
+                .build();
+        MessageCodec.EncodedBody body = MessageCodec.encode(
+                new YXMessage(MessageCodec.nextMessageId(), 0, topic, "test", "test", "", "{}"));
+        Request request = new Request.Builder().url(EndpointTable.ROUTED_BASE_URL + "api").post(body).build();
+        try (Response response = client.newCall(request).execute()) {
+            return response.code();
+        }
+    }
+
+    /**
+     * 模拟服务器, 所有请求都返回固定的状态码并计数
+     */
+    private static class StandIn {
+        final HttpServer server;
+        final AtomicInteger hits = new AtomicInteger();
+
+        StandIn(int status) throws IOException {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/", exchange -> {
+                hits.incrementAndGet();
+                byte[] body = "{}".getBytes();
+                exchange.sendResponseHeaders(status, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            });
+            server.start();
+        }
+
+        String url() {
+            return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+        }
+    }
+}
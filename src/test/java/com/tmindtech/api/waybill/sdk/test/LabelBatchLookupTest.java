@@ -0,0 +1,150 @@
+package com.tmindtech.api.waybill.sdk.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.tmindtech.api.waybill.sdk.Constants;
+import com.tmindtech.api.waybill.sdk.WaybillSDK;
+import com.tmindtech.api.waybill.sdk.fixture.LabelImages;
+import com.tmindtech.api.waybill.sdk.fixture.MockLabelServer;
+import com.tmindtech.api.waybill.sdk.fixture.StubPrinter;
+import com.tmindtech.api.waybill.sdk.model.PrintItemResult;
+import com.tmindtech.api.waybill.sdk.model.PrintResult;
+import com.tmindtech.api.waybill.sdk.print.encoder.PrinterLanguage;
+import com.tmindtech.api.waybill.sdk.print.encoder.RawPrintProfile;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 批量查询面单图片地址测试, 用 MockLabelServer 模拟面单服务
+ * 以 R 开头的唯一码已生成, 以 N 开头的尚未生成
+ */
+public class LabelBatchLookupTest {
+    private static final String ADDRESS_TOPIC = "logistics_label_address/get_label_image_by_uuid";
+    private static final String ADDRESS_BATCH_TOPIC = "logistics_label_address/get_label_image_by_uuids";
+
+    private MockLabelServer server;
+    private StubPrinter printer;
+    private WaybillSDK sdk;
+    private final AtomicInteger concurrent = new AtomicInteger();
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockLabelServer(LabelImages.createPng(40, 30, 203));
+        for (int i = 0; i < 8; i++) {
+            server.setReady("N" + i, false);
+        }
+        server.requestHook = (topic, message) -> {
+            if (topic.equals(ADDRESS_TOPIC)) {
+                maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+                //已生成的面单查询较慢, 未生成的立即返回
+                Thread.sleep(message.getString("payload").startsWith("R") ? 100 : 0);
+                concurrent.decrementAndGet();
+            }
+        };
+        sdk = new WaybillSDK();
+        sdk.init("key", "secret", server.url(), null);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        sdk.shutdown();
+        if (printer != null) {
+            printer.close();
+        }
+        server.close();
+    }
+
+    @Test
+    public void resolveInChunks() throws Exception {
+        List<String> uuidCodeList = uuidCodes("R", 120);
+        uuidCodeList.set(7, "N7");
+        Map<String, String> addresses = sdk.getLabelImageAddressesAsync(uuidCodeList).get(5, TimeUnit.SECONDS);
+        assertEquals(119, addresses.size());
+        assertEquals(server.url() + "label/R0.png", addresses.get("R0"));
+        assertFalse(addresses.containsKey("N7"));
+        assertEquals(3, count(ADDRESS_BATCH_TOPIC));
+        assertEquals(0, count(ADDRESS_TOPIC));
+    }
+
+    @Test
+    public void fallbackToBoundedFanOut() throws Exception {
+        server.batchSupported = false;
+        List<String> uuidCodeList = uuidCodes("R", 40);
+        Map<String, String> addresses = sdk.getLabelImageAddressesAsync(uuidCodeList).get(5, TimeUnit.SECONDS);
+        assertEquals(40, addresses.size());
+        assertEquals(1, count(ADDRESS_BATCH_TOPIC));
+        assertEquals(40, count(ADDRESS_TOPIC));
+        assertTrue("max concurrent " + maxConcurrent.get(), maxConcurrent.get() > 1 && maxConcurrent.get() <= 8);
+
+        //不支持批量查询后不再尝试
+        sdk.getLabelImageAddressesAsync(uuidCodes("R", 5)).get(5, TimeUnit.SECONDS);
+        assertEquals(1, count(ADDRESS_BATCH_TOPIC));
+    }
+
+    @Test
+    public void stopFanOutAtFirstNotReady() throws Exception {
+        server.batchSupported = false;
+        sdk.addNetworkPrinter("zebra", "127.0.0.1", 9, 203, new RawPrintProfile(PrinterLanguage.ZPL));
+        List<String> uuidCodeList = uuidCodes("R", 40);
+        uuidCodeList.set(0, "N0");
+        PrintResult result = sdk.printLabelByUuidCodeAsync(uuidCodeList, "zebra", true, 0).get(5, TimeUnit.SECONDS);
+        PrintItemResult notReady = result.items.get(0);
+        assertEquals("N0", notReady.uuidCode);
+        assertEquals(Constants.LABEL_NOT_READY, notReady.errorCode);
+        assertEquals(Constants.USER_CANCEL, result.items.get(1).errorCode);
+        //同时进行的查询之后不再发出新的查询, 另有一次挂起后的查询
+        assertTrue("lookups " + count(ADDRESS_TOPIC), count(ADDRESS_TOPIC) <= 8 + 1);
+    }
+
+    @Test
+    public void keepFetchPoolFreeWhileWaiting() throws Exception {
+        printer = new StubPrinter();
+        List<String> printed = new CopyOnWriteArrayList<>();
+        sdk.setPrintListener((uuidCode, isSuccess, labelInfo, errorCode, errorMessage) -> {
+            if (Boolean.TRUE.equals(isSuccess)) {
+                printed.add(uuidCode);
+            }
+        });
+        sdk.addNetworkPrinter("waiting", "127.0.0.1", 9, 203, new RawPrintProfile(PrinterLanguage.ZPL));
+        sdk.addNetworkPrinter("ready", "127.0.0.1", printer.getPort(), 203, new RawPrintProfile(PrinterLanguage.ZPL));
+        //未生成的面单挂起等待, 不占用共享的下载线程, 其他打印机的批次不受影响
+        sdk.printLabelByUuidCodeAsync(uuidCodes("N", 8), "waiting", false, 10000);
+        long deadline = System.currentTimeMillis() + 2000;
+        while (sdk.getWaitingLabelCount() < 8) {
+            assertTrue("N0..N7 should be parked", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        long start = System.currentTimeMillis();
+        List<String> uuidCodeList = uuidCodes("R", 4);
+        PrintResult result = sdk.printLabelByUuidCodeAsync(uuidCodeList, "ready", false, 0).get(5, TimeUnit.SECONDS);
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue("elapsed " + elapsed, elapsed < 2000);
+        assertTrue(result.toString(), result.isAllSuccess());
+        //按唯一码顺序打印
+        assertEquals(uuidCodeList, printed);
+        assertEquals(8, sdk.getWaitingLabelCount());
+    }
+
+    private long count(String topic) {
+        return server.getRequestCount(topic);
+    }
+
+    private static List<String> uuidCodes(String prefix, int count) {
+        List<String> uuidCodeList = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            uuidCodeList.add(prefix + i);
+        }
+        return uuidCodeList;
+    }
+}
@@ -0,0 +1,93 @@
+package com.tmindtech.api.waybill.sdk.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.tmindtech.api.waybill.sdk.print.encoder.EplEncoder;
+import com.tmindtech.api.waybill.sdk.print.encoder.LabelEncoder;
+import com.tmindtech.api.waybill.sdk.print.encoder.MonochromeBitmap;
+import com.tmindtech.api.waybill.sdk.print.encoder.MonochromeConverter;
+import com.tmindtech.api.waybill.sdk.print.encoder.TsplEncoder;
+import com.tmindtech.api.waybill.sdk.print.encoder.ZplEncoder;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+/**
+ * 热敏打印机指令编码测试, 输出与 src/test/resources/encoder 下的样本逐字节比较
+ */
+public class LabelEncoderTest {
+
+    @Test
+    public void zplCompression() {
+        MonochromeBitmap bitmap = new MonochromeBitmap(16, 4);
+        for (int x = 0; x < 16; x++) {
+            bitmap.setBlack(x, 0);
+        }
+        bitmap.setBlack(0, 3);
+        String zpl = new String(new ZplEncoder().encode(bitmap, 2, 0.5f), StandardCharsets.US_ASCII);
+        assertEquals("^XA\n^PW16\n^LL4\n^FO0,0^GFA,8,8,2,!,:8,^FS\n^XZ\n", zpl);
+
+        MonochromeBitmap stripes = new MonochromeBitmap(200, 1);
+        for (int x = 0; x < 200; x += 2) {
+            stripes.setBlack(x, 0);
+        }
+        zpl = new String(new ZplEncoder().encode(stripes, 25, 0.125f), StandardCharsets.US_ASCII);
+        assertEquals("^XA\n^PW200\n^LL1\n^FO0,0^GFA,25,25,25,hPA^FS\n^XZ\n", zpl);
+    }
+
+    @Test
+    public void invertedPadding() {
+        MonochromeBitmap bitmap = new MonochromeBitmap(12, 1);
+        bitmap.setBlack(0, 0);
+        assertArrayEquals(new byte[]{0x7f, (byte) 0xff}, bitmap.toInverted());
+    }
+
+    @Test
+    public void thresholdGolden() throws Exception {
+        MonochromeBitmap bitmap = new MonochromeConverter().convert(createLabel());
+        assertGolden("label.zpl", new ZplEncoder(), bitmap);
+        assertGolden("label.tspl", new TsplEncoder(), bitmap);
+        assertGolden("label.epl", new EplEncoder(), bitmap);
+    }
+
+    @Test
+    public void ditherGolden() throws Exception {
+        MonochromeBitmap bitmap = new MonochromeConverter(MonochromeConverter.DEFAULT_THRESHOLD, true).convert(createLabel());
+        assertGolden("label-dither.zpl", new ZplEncoder(), bitmap);
+    }
+
+    private static void assertGolden(String name, LabelEncoder encoder, MonochromeBitmap bitmap) throws Exception {
+        byte[] expected;
+        try (InputStream input = LabelEncoderTest.class.getResourceAsStream("/encoder/" + name)) {
+            expected = IOUtils.toByteArray(input);
+        }
+        assertArrayEquals(name, expected, encoder.encode(bitmap, 12.7f, 5));
+    }
+
+    /**
+     * 100 x 40 点的测试面单: 边框、条码状竖线和一段灰度渐变
+     */
+    private static BufferedImage createLabel() {
+        BufferedImage image = new BufferedImage(100, 40, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setColor(Color.WHITE);
+        g2d.fillRect(0, 0, 100, 40);
+        g2d.setColor(Color.BLACK);
+        g2d.drawRect(0, 0, 99, 39);
+        for (int x = 4; x < 60; x += 3) {
+            g2d.fillRect(x, 4, x % 2 + 1, 20);
+        }
+        for (int x = 64; x < 96; x++) {
+            int gray = (x - 64) * 8;
+            g2d.setColor(new Color(gray, gray, gray));
+            g2d.fillRect(x, 4, 1, 32);
+        }
+        g2d.dispose();
+        return image;
+    }
+}
@@ -0,0 +1,119 @@
+package com.tmindtech.api.waybill.sdk.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.tmindtech.api.waybill.sdk.cache.CacheStats;
+import com.tmindtech.api.waybill.sdk.cache.LabelInfoCache;
+import com.tmindtech.api.waybill.sdk.model.LabelInfo;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+/**
+ * 面单信息缓存测试: 存活时间与 LRU 淘汰、并发未命中只加载一次、按批次失效与命中统计
+ */
+public class LabelInfoCacheTest {
+
+    @Test
+    public void expireAfterTtl() throws InterruptedException {
+        LabelInfoCache cache = new LabelInfoCache(10, 100);
+        cache.put(labelInfo("SO-1", "u1"));
+        assertNotNull(cache.getIfPresent("u1"));
+        Thread.sleep(150);
+        assertNull(cache.getIfPresent("u1"));
+        CacheStats stats = cache.getStats();
+        assertEquals(1, stats.evictionCount);
+        assertEquals(0, stats.size);
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() {
+        LabelInfoCache cache = new LabelInfoCache(2, 60000);
+        cache.put(labelInfo("SO-1", "u1"));
+        cache.put(labelInfo("SO-1", "u2"));
+        //访问 u1 后 u2 成为最久未使用的条目
+        cache.getIfPresent("u1");
+        cache.put(labelInfo("SO-1", "u3"));
+        assertNotNull(cache.peek("u1"));
+        assertNull(cache.peek("u2"));
+        assertNotNull(cache.peek("u3"));
+        assertEquals(1, cache.getStats().evictionCount);
+    }
+
+    @Test
+    public void loadOnceForConcurrentMisses() throws Exception {
+        LabelInfoCache cache = new LabelInfoCache(10, 60000);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<CompletableFuture<LabelInfo>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(CompletableFuture.supplyAsync(() -> cache.get("u1", uuidCode -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ignore) {
+                }
+                return labelInfo("SO-1", uuidCode);
+            })));
+        }
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        release.countDown();
+        LabelInfo first = futures.get(0).get(5, TimeUnit.SECONDS);
+        for (CompletableFuture<LabelInfo> future : futures) {
+            assertSame(first, future.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loads.get());
+        assertSame(first, cache.get("u1", uuidCode -> {
+            throw new AssertionError("should be cached");
+        }));
+    }
+
+    @Test
+    public void invalidateSaleOrder() {
+        LabelInfoCache cache = new LabelInfoCache(10, 60000);
+        cache.put(labelInfo("SO-1", "u1"));
+        cache.put(labelInfo("SO-1", "u2"));
+        cache.put(labelInfo("SO-2", "u3"));
+        Set<String> invalidated = cache.invalidateSaleOrder("SO-1");
+        assertEquals(2, invalidated.size());
+        assertTrue(invalidated.contains("u1") && invalidated.contains("u2"));
+        assertNull(cache.peek("u1"));
+        assertNull(cache.peek("u2"));
+        assertNotNull(cache.peek("u3"));
+        assertTrue(cache.invalidateSaleOrder("SO-1").isEmpty());
+    }
+
+    @Test
+    public void countOnlyLookups() {
+        LabelInfoCache cache = new LabelInfoCache(10, 60000);
+        //内部判断不计入命中统计
+        cache.peek("u1");
+        cache.get("u1", uuidCode -> labelInfo("SO-1", uuidCode));
+        cache.peek("u1");
+        cache.get("u1", uuidCode -> labelInfo("SO-1", uuidCode));
+        CacheStats stats = cache.getStats();
+        assertEquals(1, stats.hitCount);
+        assertEquals(1, stats.missCount);
+    }
+
+    private static LabelInfo labelInfo(String saleOrder, String uuidCode) {
+        LabelInfo labelInfo = new LabelInfo();
+        labelInfo.saleOrder = saleOrder;
+        labelInfo.uuidCode = uuidCode;
+        labelInfo.seqNo = 1;
+        labelInfo.pageCount = 1;
+        return labelInfo;
+    }
+}
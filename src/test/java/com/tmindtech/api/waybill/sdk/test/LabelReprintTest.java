@@ -0,0 +1,70 @@
+package com.tmindtech.api.waybill.sdk.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.tmindtech.api.waybill.sdk.WaybillSDK;
+import com.tmindtech.api.waybill.sdk.fixture.LabelImages;
+import com.tmindtech.api.waybill.sdk.fixture.MockLabelServer;
+import com.tmindtech.api.waybill.sdk.fixture.StubPrinter;
+import com.tmindtech.api.waybill.sdk.model.PrintResult;
+import com.tmindtech.api.waybill.sdk.print.encoder.PrinterLanguage;
+import com.tmindtech.api.waybill.sdk.print.encoder.RawPrintProfile;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 重新打印测试: 面单图片已在本地缓存时不再查询图片地址, 也不再下载图片, 直接使用编码好的打印指令
+ */
+public class LabelReprintTest {
+    private static final String ADDRESS_TOPIC = "logistics_label_address/get_label_image_by_uuid";
+
+    private final byte[] image = LabelImages.createPng(40, 30, 203);
+    private MockLabelServer server;
+    private StubPrinter printer;
+    private WaybillSDK sdk;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockLabelServer(image);
+        printer = new StubPrinter();
+        sdk = new WaybillSDK();
+        sdk.init("key", "secret", server.url(), null);
+        sdk.setLabelImageCache(null, 16L << 20, 0);
+        sdk.addNetworkPrinter("zebra", "127.0.0.1", printer.getPort(), 203, new RawPrintProfile(PrinterLanguage.ZPL));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        sdk.shutdown();
+        printer.close();
+        server.close();
+    }
+
+    @Test
+    public void reprintFromLocalImage() throws Exception {
+        List<String> uuidCodeList = Arrays.asList("SO-1-1", "SO-1-2");
+        assertTrue(print(uuidCodeList, false).isAllSuccess());
+        long lookups = server.getRequestCount(ADDRESS_TOPIC);
+        long downloads = server.getImageDownloadCount();
+        assertEquals(2, downloads);
+        long encodedHits = sdk.getPrintStreamCacheStats().hitCount;
+
+        assertTrue(print(uuidCodeList, false).isAllSuccess());
+        assertTrue(print(uuidCodeList, true).isAllSuccess());
+        assertArrayEquals(image, sdk.getLabelImageByUuidCodeAsync("SO-1-1").get(5, TimeUnit.SECONDS));
+        assertEquals(lookups, server.getRequestCount(ADDRESS_TOPIC));
+        assertEquals(downloads, server.getImageDownloadCount());
+        assertEquals(encodedHits + 4, sdk.getPrintStreamCacheStats().hitCount);
+    }
+
+    private PrintResult print(List<String> uuidCodeList, boolean needAllSuccess) throws Exception {
+        return sdk.printLabelByUuidCodeAsync(uuidCodeList, "zebra", needAllSuccess, 0).get(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,102 @@
+package com.tmindtech.api.waybill.sdk.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.tmindtech.api.waybill.sdk.metrics.HistogramSnapshot;
+import com.tmindtech.api.waybill.sdk.metrics.LatencyHistogram;
+import com.tmindtech.api.waybill.sdk.metrics.MetricsRegistry;
+import com.tmindtech.api.waybill.sdk.metrics.MetricsSnapshot;
+import com.tmindtech.api.waybill.sdk.metrics.Stage;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.Test;
+
+/**
+ * 各阶段耗时分布与计数测试
+ */
+public class MetricsRegistryTest {
+
+    @Test
+    public void percentilesWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram("SPOOL", "p1");
+        //1ms ~ 1000ms 均匀分布
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500.5, histogram.getMeanMillis(), 0.01);
+        assertEquals(500, histogram.getP50Millis(), 500 / 32.0);
+        assertEquals(990, histogram.getP99Millis(), 990 / 32.0);
+        assertEquals(999, histogram.getP999Millis(), 999 / 32.0);
+        assertEquals(1000, histogram.getMaxMillis(), 0);
+        //不足1毫秒的耗时保留微秒精度
+        LatencyHistogram fast = new LatencyHistogram("DECODE", "p1");
+        fast.record(TimeUnit.MICROSECONDS.toNanos(250));
+        assertEquals(0.25, fast.getP50Millis(), 0.01);
+    }
+
+    @Test
+    public void snapshotByStageAndTag() throws Exception {
+        MetricsRegistry metrics = new MetricsRegistry();
+        metrics.record(Stage.METADATA_LOOKUP, "127.0.0.1:8080", TimeUnit.MILLISECONDS.toNanos(5));
+        metrics.record(Stage.METADATA_LOOKUP, "127.0.0.1:8081", TimeUnit.MILLISECONDS.toNanos(50));
+        metrics.increment("http.requests", "127.0.0.1:8080");
+        metrics.add("download.bytes", "images:80", 1024);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        metrics.timed(executor, Stage.ENCODE, "printer-1").execute(() -> sleep(20));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(3, snapshot.histograms.size());
+        assertEquals(5, snapshot.getHistogram(Stage.METADATA_LOOKUP, "127.0.0.1:8080").p50Millis, 0.2);
+        assertEquals(50, snapshot.getHistogram(Stage.METADATA_LOOKUP, "127.0.0.1:8081").p50Millis, 2);
+        HistogramSnapshot encode = snapshot.getHistogram(Stage.ENCODE, "printer-1");
+        assertEquals(1, encode.count);
+        assertTrue(encode.maxMillis >= 20);
+        assertNull(snapshot.getHistogram(Stage.SPOOL, "printer-1"));
+        assertEquals(1, snapshot.getCounter("http.requests", "127.0.0.1:8080"));
+        assertEquals(1024, snapshot.getCounter("download.bytes", "images:80"));
+        assertEquals(0, snapshot.getCounter("http.failures", "127.0.0.1:8080"));
+    }
+
+    @Test
+    public void exposeMBeans() throws Exception {
+        MetricsRegistry metrics = new MetricsRegistry();
+        metrics.record(Stage.SPOOL, "printer-1", TimeUnit.MILLISECONDS.toNanos(10));
+        metrics.registerMBeans("metrics-test");
+        //注册之后新增的分布也会注册
+        metrics.increment("print.pages", "printer-1");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName spool = new ObjectName(MetricsRegistry.JMX_DOMAIN
+                + ":type=Latency,instance=\"metrics-test\",stage=SPOOL,tag=\"printer-1\"");
+        ObjectName pages = new ObjectName(MetricsRegistry.JMX_DOMAIN
+                + ":type=Counter,instance=\"metrics-test\",name=\"print.pages\",tag=\"printer-1\"");
+        try {
+            assertEquals(1L, server.getAttribute(spool, "Count"));
+            assertEquals(10, (Double) server.getAttribute(spool, "P99Millis"), 0.5);
+            assertNotNull(server.getAttribute(pages, "Count"));
+            assertEquals(1L, server.getAttribute(pages, "Count"));
+        } finally {
+            metrics.unregisterMBeans();
+        }
+        assertFalse(server.isRegistered(spool));
+        assertFalse(server.isRegistered(pages));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.tmindtech.api.waybill.sdk.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.tmindtech.api.waybill.sdk.Constants;
+import com.tmindtech.api.waybill.sdk.WaybillSDK;
+import com.tmindtech.api.waybill.sdk.fixture.MockLabelServer;
+import com.tmindtech.api.waybill.sdk.model.PrintResult;
+import com.tmindtech.api.waybill.sdk.print.AdmissionPolicy;
+import com.tmindtech.api.waybill.sdk.print.LaneStats;
+import com.tmindtech.api.waybill.sdk.print.encoder.PrinterLanguage;
+import com.tmindtech.api.waybill.sdk.print.encoder.RawPrintProfile;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 打印请求准入与打印机队列的配合测试, 用 MockLabelServer 模拟面单服务
+ * 以 S 开头的唯一码查询时阻塞到 gate 打开, 用于占住打印机队列; N0 在 setReady 前尚未生成
+ */
+public class PrintAdmissionTest {
+    private static final String ADDRESS_TOPIC = "logistics_label_address/get_label_image_by_uuid";
+
+    private MockLabelServer server;
+    private WaybillSDK sdk;
+    private final CountDownLatch gate = new CountDownLatch(1);
+    private final AtomicInteger blocked = new AtomicInteger();
+    private final Map<String, Number> errorCodes = new ConcurrentHashMap<>();
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockLabelServer(new byte[0]);
+        server.setReady("N0", false);
+        server.requestHook = (topic, message) -> {
+            if (topic.equals(ADDRESS_TOPIC) && message.getString("payload").startsWith("S")) {
+                blocked.incrementAndGet();
+                gate.await(10, TimeUnit.SECONDS);
+            }
+        };
+        sdk = new WaybillSDK();
+        sdk.init("key", "secret", server.url(), null);
+        sdk.addNetworkPrinter("zebra", "127.0.0.1", 9, 203, new RawPrintProfile(PrinterLanguage.ZPL));
+        sdk.setPrintListener((uuidCode, isSuccess, labelInfo, errorCode, errorMessage) -> {
+            if (errorCode != null) {
+                errorCodes.put(uuidCode, errorCode);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        gate.countDown();
+        sdk.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void removeShedBatchFromLane() throws Exception {
+        sdk.setAdmissionControl(2, 1L << 30, 1, AdmissionPolicy.SHED_LOWEST_PRIORITY);
+        CompletableFuture<PrintResult> running = print("S0", 0);
+        await(() -> blocked.get() == 1, 2000, "S0 should hold the lane");
+        CompletableFuture<PrintResult> low = print("R1", 0);
+        CompletableFuture<PrintResult> lowest = print("R2", 0);
+        assertEquals(2, laneDepth());
+
+        CompletableFuture<PrintResult> high = print("R3", 5);
+        assertFailed(lowest, "PrintRequestShed");
+        assertEquals(Constants.PRINT_REQUEST_SHED, errorCodes.get("R2"));
+        //被丢弃的批次不再占用打印机队列
+        assertEquals(2, laneDepth());
+        assertEquals(2, sdk.getAdmissionStats().queued);
+
+        gate.countDown();
+        running.get(5, TimeUnit.SECONDS);
+        low.get(5, TimeUnit.SECONDS);
+        high.get(5, TimeUnit.SECONDS);
+        assertEquals(0, sdk.getAdmissionStats().outstanding);
+    }
+
+    @Test
+    public void countFollowUpAgainstCapacity() throws Exception {
+        sdk.setAdmissionControl(1, 1L << 30, 1, AdmissionPolicy.FAIL_FAST);
+        CompletableFuture<PrintResult> waiting = sdk.printLabelByUuidCodeAsync(Collections.singletonList("N0"),
+                "zebra", false, 10000, 0);
+        await(() -> sdk.getWaitingLabelCount() == 1, 2000, "N0 should be parked");
+        CompletableFuture<PrintResult> running = print("S0", 0);
+        await(() -> blocked.get() == 1, 2000, "S0 should hold the lane");
+
+        //N0 生成后放回打印机队列, 排在 S0 之后并占用排队位置
+        server.setReady("N0", true);
+        await(() -> sdk.getAdmissionStats().queued == 1, 5000, "N0 should be queued behind S0");
+        assertFailed(print("R1", 0), "PrintQueueFull");
+        assertEquals(Constants.PRINT_QUEUE_FULL, errorCodes.get("R1"));
+
+        gate.countDown();
+        running.get(5, TimeUnit.SECONDS);
+        waiting.get(5, TimeUnit.SECONDS);
+        assertEquals(0, sdk.getAdmissionStats().queued);
+    }
+
+    private CompletableFuture<PrintResult> print(String uuidCode, int priority) {
+        return sdk.printLabelByUuidCodeAsync(Collections.singletonList(uuidCode), "zebra", false, 0, priority);
+    }
+
+    private int laneDepth() {
+        for (LaneStats stats : sdk.getPrintLaneStats()) {
+            if (stats.printerName.equals("zebra")) {
+                return stats.depth;
+            }
+        }
+        return 0;
+    }
+
+    private static void assertFailed(CompletableFuture<PrintResult> future, String message) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException ex) {
+            assertEquals(message, ex.getCause().getMessage());
+        }
+    }
+
+    private static void await(BooleanSupplier condition, long timeoutMillis, String message) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!condition.getAsBoolean()) {
+            assertTrue(message, System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.tmindtech.api.waybill.sdk.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.tmindtech.api.waybill.sdk.log.PrintLogJournal;
+import com.tmindtech.api.waybill.sdk.log.PrintLogShipper;
+import com.tmindtech.api.waybill.sdk.log.PrintLogStats;
+import com.tmindtech.api.waybill.sdk.model.PrintLog;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 打印日志上传测试, 用内存中的 Uploader 模拟服务端
+ */
+public class PrintLogShipperTest {
+    private File directory;
+    private final List<PrintLogShipper> shippers = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("print-log").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        shippers.forEach(PrintLogShipper::close);
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void shipInBatches() throws Exception {
+        FakeServer server = new FakeServer();
+        PrintLogShipper shipper = open(server, 10, 200);
+        for (int i = 0; i < 25; i++) {
+            shipper.append(printLog(i));
+        }
+        await(() -> server.received.size() == 25, 3000);
+        assertEquals(3, server.requests.size());
+        assertTrue(server.requests.stream().allMatch(topic -> topic.equals(PrintLogShipper.BATCH_TOPIC)));
+        assertOrdered(server.received, 25);
+        //确认写入日志文件后才累加上传条数
+        await(() -> shipper.getStats().shippedCount == 25, 1000);
+        assertEquals(0, shipper.getStats().queueDepth);
+        assertEquals(0, shipper.getStats().queuedBytes);
+    }
+
+    @Test
+    public void fallbackToSingleUploads() throws Exception {
+        FakeServer server = new FakeServer();
+        server.batchStatus = 404;
+        PrintLogShipper shipper = open(server, 10, 100);
+        for (int i = 0; i < 5; i++) {
+            shipper.append(printLog(i));
+        }
+        await(() -> server.received.size() == 5, 3000);
+        assertEquals(PrintLogShipper.BATCH_TOPIC, server.requests.get(0));
+        assertEquals(6, server.requests.size());
+        assertOrdered(server.received, 5);
+    }
+
+    @Test
+    public void keepLogsDuringOutage() throws Exception {
+        FakeServer down = new FakeServer();
+        down.batchStatus = 503;
+        PrintLogShipper shipper = open(down, 10, 50);
+        for (int i = 0; i < 5; i++) {
+            shipper.append(printLog(i));
+        }
+        await(() -> shipper.getStats().failedCount > 0, 2000);
+        Thread.sleep(50);
+        PrintLogStats stats = shipper.getStats();
+        assertEquals(5, stats.queueDepth);
+        assertTrue(stats.lagMillis > 0);
+        shipper.close();
+
+        //重启后从本地日志文件继续上传
+        FakeServer up = new FakeServer();
+        PrintLogShipper restarted = open(up, 10, 50);
+        restarted.append(printLog(5));
+        await(() -> up.received.size() == 6, 3000);
+        assertOrdered(up.received, 6);
+        await(() -> restarted.getStats().queueDepth == 0, 1000);
+    }
+
+    @Test
+    public void requireResultCode() throws Exception {
+        assertEquals(500, PrintLogShipper.resultCode(200, "{\"code\":500}"));
+        assertEquals(200, PrintLogShipper.resultCode(201, "{\"code\":200,\"data\":null}"));
+        assertEquals(PrintLogShipper.NO_RESULT_CODE, PrintLogShipper.resultCode(200, "ok"));
+        assertEquals(503, PrintLogShipper.resultCode(503, null));
+
+        //HTTP 成功但结果码不是200时不确认
+        FakeServer rejecting = new FakeServer();
+        rejecting.batchStatus = 500;
+        PrintLogShipper shipper = open(rejecting, 10, 50);
+        for (int i = 0; i < 3; i++) {
+            shipper.append(printLog(i));
+        }
+        await(() -> shipper.getStats().failedCount > 0, 2000);
+        assertEquals(3, shipper.getStats().queueDepth);
+        assertTrue(rejecting.requests.stream().allMatch(topic -> topic.equals(PrintLogShipper.BATCH_TOPIC)));
+
+        //批量上传没有结果码时视为不支持, 逐条上传
+        FakeServer legacy = new FakeServer();
+        legacy.batchStatus = PrintLogShipper.NO_RESULT_CODE;
+        PrintLogShipper fallback = open(legacy, "server-b", 10, 50);
+        fallback.append(printLog(0));
+        await(() -> legacy.received.size() == 1, 3000);
+        assertEquals(PrintLogShipper.SINGLE_TOPIC, legacy.requests.get(1));
+    }
+
+    @Test
+    public void separateInstancesAndServers() throws Exception {
+        FakeServer down = new FakeServer();
+        down.batchStatus = 503;
+        PrintLogShipper first = open(down, "server-a", 10, 50);
+        first.append(printLog(0));
+        //同一个 key 被占用时使用另一组文件, 不删除或覆盖其他实例的文件
+        PrintLogJournal second = PrintLogJournal.open(directory, "server-a");
+        assertEquals("server-a.2", second.getKey());
+        second.append("{\"uuidCode\":\"uuid-other\"}");
+        second.close();
+        await(() -> first.getStats().failedCount > 0, 2000);
+        assertEquals(1, first.getStats().queueDepth);
+        first.close();
+
+        //其他服务器的实例不会上传这些日志
+        FakeServer other = new FakeServer();
+        PrintLogShipper otherServer = open(other, "server-b", 10, 50);
+        otherServer.append(printLog(9));
+        await(() -> other.received.size() == 1, 3000);
+        assertEquals("uuid-9", other.received.get(0));
+
+        FakeServer up = new FakeServer();
+        open(up, "server-a", 10, 50);
+        await(() -> up.received.size() == 1, 3000);
+        assertEquals("uuid-0", up.received.get(0));
+        PrintLogJournal reopened = PrintLogJournal.open(directory, "server-a");
+        assertEquals("server-a.2", reopened.getKey());
+        assertEquals(1, reopened.pendingCount());
+        reopened.close();
+    }
+
+    private PrintLogShipper open(FakeServer server, int batchSize, long flushIntervalMillis) throws IOException {
+        return open(server, "server-a", batchSize, flushIntervalMillis);
+    }
+
+    private PrintLogShipper open(FakeServer server, String key, int batchSize, long flushIntervalMillis)
+            throws IOException {
+        PrintLogShipper shipper = new PrintLogShipper(PrintLogJournal.open(directory, key), server, batchSize,
+                flushIntervalMillis);
+        shippers.add(shipper);
+        return shipper;
+    }
+
+    private static PrintLog printLog(int index) {
+        return new PrintLog("2018-01-01 00:00:00", "PRINT_SUCCESS", 1L, "uuid-" + index);
+    }
+
+    private static void assertOrdered(List<String> received, int count) {
+        for (int i = 0; i < count; i++) {
+            assertEquals("uuid-" + i, received.get(i));
+        }
+    }
+
+    private static void await(BooleanSupplier condition, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!condition.getAsBoolean()) {
+            assertTrue("timeout", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static class FakeServer implements PrintLogShipper.Uploader {
+        final List<String> requests = new CopyOnWriteArrayList<>();
+        final List<String> received = new CopyOnWriteArrayList<>();
+        volatile int batchStatus = 200;
+
+        @Override
+        public int upload(String topic, String data) {
+            requests.add(topic);
+            if (topic.equals(PrintLogShipper.BATCH_TOPIC)) {
+                if (batchStatus != 200) {
+                    return batchStatus;
+                }
+                JSONArray array = JSONArray.parseArray(data);
+                for (int i = 0; i < array.size(); i++) {
+                    received.add(array.getJSONObject(i).getString("uuidCode"));
+                }
+            } else {
+                received.add(JSONObject.parseObject(data).getString("uuidCode"));
+            }
+            return 200;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.tmindtech.api.waybill.sdk.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import com.tmindtech.api.waybill.sdk.cache.CacheStats;
+import com.tmindtech.api.waybill.sdk.cache.PrintStreamCache;
+import com.tmindtech.api.waybill.sdk.model.PrintImageInfo;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.print.attribute.standard.PrinterResolution;
+import org.junit.Test;
+
+/**
+ * 转换结果缓存测试: 缓存键的组成、命中统计与按字节数淘汰
+ */
+public class PrintStreamCacheTest {
+    private static final PrinterResolution DPI_203 = new PrinterResolution(203, 203, PrinterResolution.DPI);
+    private static final PrinterResolution DPI_300 = new PrinterResolution(300, 300, PrinterResolution.DPI);
+
+    @Test
+    public void keyByContentResolutionAndPageCount() {
+        PrintStreamCache.Key key = PrintStreamCache.key(source(1), DPI_203, 1);
+        //内容相同的不同数组得到相同的键
+        assertEquals(key, PrintStreamCache.key(source(1), DPI_203, 1));
+        assertEquals(key.hashCode(), PrintStreamCache.key(source(1), DPI_203, 1).hashCode());
+        assertNotEquals(key, PrintStreamCache.key(source(2), DPI_203, 1));
+        assertNotEquals(key, PrintStreamCache.key(source(1), DPI_300, 1));
+        assertNotEquals(key, PrintStreamCache.key(source(1), DPI_203, 2));
+    }
+
+    @Test
+    public void convertOnlyOnMiss() {
+        PrintStreamCache cache = new PrintStreamCache(1 << 20);
+        AtomicInteger conversions = new AtomicInteger();
+        PrintImageInfo first = cache.get(source(1), DPI_203, 1, () -> {
+            conversions.incrementAndGet();
+            return imageInfo(100, 100);
+        });
+        assertSame(first, cache.get(source(1), DPI_203, 1, () -> {
+            conversions.incrementAndGet();
+            return imageInfo(100, 100);
+        }));
+        assertEquals(1, conversions.get());
+        //转换失败不写入缓存
+        assertNull(cache.get(source(2), DPI_203, 1, () -> null));
+        CacheStats stats = cache.getStats();
+        assertEquals(1, stats.hitCount);
+        assertEquals(2, stats.missCount);
+        assertEquals(1, stats.size);
+    }
+
+    @Test
+    public void separateEncodedPagesByFormat() {
+        PrintStreamCache cache = new PrintStreamCache(1 << 20);
+        PrintStreamCache.Key key = PrintStreamCache.key(source(1), DPI_203, 2);
+        Object zpl = new Object();
+        cache.putEncoded(key, zpl, new PrintStreamCache.EncodedPages(Arrays.asList(new byte[10], new byte[20]), 100, 75));
+        PrintStreamCache.EncodedPages pages = cache.getEncoded(PrintStreamCache.key(source(1), DPI_203, 2), zpl);
+        assertNotNull(pages);
+        assertEquals(2, pages.pages.size());
+        assertEquals(100, pages.width, 0);
+        assertEquals(75, pages.height, 0);
+        assertNull(cache.getEncoded(key, PrintStreamCache.PNG_FORMAT));
+        assertNull(cache.getEncoded(key, new Object()));
+        //编码结果与解码结果互不影响
+        assertNull(cache.get(key, () -> null));
+    }
+
+    @Test
+    public void evictByBytes() {
+        //100x100 灰度图占 10000 字节
+        PrintStreamCache cache = new PrintStreamCache(25000);
+        cache.get(source(1), DPI_203, 1, () -> imageInfo(100, 100));
+        cache.get(source(2), DPI_203, 1, () -> imageInfo(100, 100));
+        PrintStreamCache.Key key = PrintStreamCache.key(source(3), DPI_203, 1);
+        cache.putEncoded(key, PrintStreamCache.PNG_FORMAT,
+                new PrintStreamCache.EncodedPages(Collections.singletonList(new byte[10000]), 100, 150));
+        assertEquals(2, cache.getStats().size);
+        assertEquals(1, cache.getStats().evictionCount);
+        //最早写入的被淘汰
+        AtomicInteger conversions = new AtomicInteger();
+        cache.get(source(2), DPI_203, 1, () -> {
+            conversions.incrementAndGet();
+            return imageInfo(100, 100);
+        });
+        assertEquals(0, conversions.get());
+        assertNotNull(cache.getEncoded(key, PrintStreamCache.PNG_FORMAT));
+        cache.get(source(1), DPI_203, 1, () -> {
+            conversions.incrementAndGet();
+            return imageInfo(100, 100);
+        });
+        assertEquals(1, conversions.get());
+        //超过总容量的结果不缓存
+        cache.putEncoded(key, PrintStreamCache.PNG_FORMAT,
+                new PrintStreamCache.EncodedPages(Collections.singletonList(new byte[30000]), 100, 150));
+        assertNull(cache.getEncoded(key, PrintStreamCache.PNG_FORMAT));
+    }
+
+    private static byte[] source(int seed) {
+        byte[] source = new byte[256];
+        Arrays.fill(source, (byte) seed);
+        return source;
+    }
+
+    private static PrintImageInfo imageInfo(int width, int height) {
+        PrintImageInfo imageInfo = new PrintImageInfo();
+        imageInfo.image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        imageInfo.width = width;
+        imageInfo.height = height;
+        return imageInfo;
+    }
+}
@@ -0,0 +1,246 @@
+package com.tmindtech.api.waybill.sdk.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.tmindtech.api.waybill.sdk.print.transport.NetworkPrintService;
+import com.tmindtech.api.waybill.sdk.print.transport.RawPrintTransport;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.print.DocFlavor;
+import javax.print.PrintException;
+import javax.print.SimpleDoc;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 原始端口传输测试, 用本地 ServerSocket 模拟网络打印机
+ */
+public class RawPrintTransportTest {
+    private RawPrintTransport transport;
+    private final List<ServerSocket> servers = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        transport = new RawPrintTransport(256 * 1024, 500);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        transport.close();
+        for (ServerSocket server : servers) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void sendToSeveralPrinters() throws Exception {
+        int printers = 3;
+        int jobs = 200;
+        byte[] payload = new byte[10 * 1024];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) i;
+        }
+        List<Printer> stands = new ArrayList<>();
+        for (int p = 0; p < printers; p++) {
+            Printer printer = new Printer(openServer(), () -> {
+            });
+            stands.add(printer);
+            transport.register("printer-" + p, localAddress(printer.server));
+        }
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < jobs; i++) {
+            for (int p = 0; p < printers; p++) {
+                futures.add(transport.send("printer-" + p, payload));
+            }
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+        for (Printer printer : stands) {
+            byte[] received = printer.await(jobs * payload.length);
+            assertEquals(jobs * payload.length, received.length);
+            for (int i = 0; i < jobs; i++) {
+                assertArrayEquals(payload, Arrays.copyOfRange(received, i * payload.length, (i + 1) * payload.length));
+            }
+        }
+    }
+
+    @Test
+    public void blockWhenPrinterStopsReading() throws Exception {
+        CountDownLatch resume = new CountDownLatch(1);
+        Printer printer = new Printer(openServer(), () -> {
+            try {
+                resume.await();
+            } catch (InterruptedException ignore) {
+            }
+        });
+        transport.register("stalled", localAddress(printer.server));
+        byte[] payload = new byte[64 * 1024];
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        boolean blocked = false;
+        for (int i = 0; i < 1000 && !blocked; i++) {
+            try {
+                futures.add(transport.send("stalled", payload));
+            } catch (RuntimeException ex) {
+                blocked = true;
+            }
+        }
+        assertTrue("send should block once the queue is full", blocked);
+        assertTrue(transport.getQueuedBytes("stalled") <= 256 * 1024);
+
+        resume.countDown();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+        assertEquals(futures.size() * payload.length, printer.await(futures.size() * payload.length).length);
+        assertEquals(0, transport.getQueuedBytes("stalled"));
+    }
+
+    @Test
+    public void reconnectAfterPrinterCloses() throws Exception {
+        ServerSocket server = openServer();
+        transport.register("flaky", localAddress(server));
+        CompletableFuture<Void> first = transport.send("flaky", "^XA^XZ".getBytes());
+        try (Socket socket = server.accept()) {
+            first.get(5, TimeUnit.SECONDS);
+            assertEquals('^', socket.getInputStream().read());
+        }
+        Thread.sleep(100);
+        CompletableFuture<Void> second = transport.send("flaky", "^XA^XZ".getBytes());
+        try (Socket socket = server.accept()) {
+            second.get(5, TimeUnit.SECONDS);
+            byte[] received = new byte[6];
+            int read = 0;
+            InputStream input = socket.getInputStream();
+            while (read < received.length) {
+                read += input.read(received, read, received.length - read);
+            }
+            assertArrayEquals("^XA^XZ".getBytes(), received);
+        }
+    }
+
+    @Test
+    public void failWhenPrinterUnreachable() throws Exception {
+        ServerSocket server = openServer();
+        InetSocketAddress address = localAddress(server);
+        server.close();
+        transport.register("offline", address);
+        try {
+            transport.send("offline", new byte[16]).get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause().getMessage().startsWith("printer unreachable"));
+        }
+    }
+
+    @Test
+    public void failWhenWriteStalls() throws Exception {
+        RawPrintTransport stalling = new RawPrintTransport(256 * 1024, 500, 300);
+        try {
+            CountDownLatch resume = new CountDownLatch(1);
+            Printer printer = new Printer(openServer(), () -> {
+                try {
+                    resume.await();
+                } catch (InterruptedException ignore) {
+                }
+            });
+            stalling.register("stalled", localAddress(printer.server));
+            long start = System.currentTimeMillis();
+            try {
+                stalling.send("stalled", new byte[16 * 1024 * 1024]).get(10, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException ex) {
+                assertTrue(ex.getCause().getMessage().startsWith("write timeout"));
+            }
+            assertTrue(System.currentTimeMillis() - start < 5000);
+            assertEquals(0, stalling.getQueuedBytes("stalled"));
+            resume.countDown();
+        } finally {
+            stalling.close();
+        }
+    }
+
+    @Test
+    public void failPrintAfterTimeout() throws Exception {
+        CountDownLatch resume = new CountDownLatch(1);
+        Printer printer = new Printer(openServer(), () -> {
+            try {
+                resume.await();
+            } catch (InterruptedException ignore) {
+            }
+        });
+        transport.register("stalled", localAddress(printer.server));
+        NetworkPrintService printService = new NetworkPrintService("stalled", transport, 203, 300);
+        long start = System.currentTimeMillis();
+        try {
+            printService.createPrintJob().print(new SimpleDoc(new byte[16 * 1024 * 1024],
+                    DocFlavor.BYTE_ARRAY.AUTOSENSE, null), null);
+            fail();
+        } catch (PrintException ex) {
+            assertEquals("print timeout: stalled", ex.getMessage());
+        }
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        resume.countDown();
+    }
+
+    private ServerSocket openServer() throws IOException {
+        ServerSocket server = new ServerSocket(0);
+        server.setReceiveBufferSize(8 * 1024);
+        servers.add(server);
+        return server;
+    }
+
+    private static InetSocketAddress localAddress(ServerSocket server) {
+        return new InetSocketAddress("127.0.0.1", server.getLocalPort());
+    }
+
+    /**
+     * 模拟打印机: 接受一个连接并读取全部数据, 开始读取前先执行 beforeRead
+     */
+    private static class Printer {
+        final ServerSocket server;
+        final ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+        Printer(ServerSocket server, Runnable beforeRead) {
+            this.server = server;
+            Thread thread = new Thread(() -> {
+                try (Socket socket = server.accept()) {
+                    beforeRead.run();
+                    InputStream input = socket.getInputStream();
+                    byte[] buffer = new byte[8192];
+                    int read;
+                    while ((read = input.read(buffer)) > 0) {
+                        synchronized (received) {
+                            received.write(buffer, 0, read);
+                            received.notifyAll();
+                        }
+                    }
+                } catch (IOException ignore) {
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        byte[] await(int length) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 10000;
+            synchronized (received) {
+                while (received.size() < length && System.currentTimeMillis() < deadline) {
+                    received.wait(100);
+                }
+                return received.toByteArray();
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.tmindtech.api.waybill.sdk.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.tmindtech.api.waybill.sdk.print.ReadinessScheduler;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * 面单就绪等待测试, 模拟在固定时间后生成的面单
+ */
+public class ReadinessSchedulerTest {
+    private final ReadinessScheduler scheduler = new ReadinessScheduler();
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void completeWhenReady() {
+        long start = System.currentTimeMillis();
+        String address = scheduler.schedule("sf", readyAfter(300, null), 5000, Integer.MAX_VALUE).join();
+        long elapsed = System.currentTimeMillis() - start;
+        assertEquals("address", address);
+        assertTrue("elapsed " + elapsed, elapsed >= 300 && elapsed < 2500);
+        assertEquals(0, scheduler.getParkedCount());
+    }
+
+    @Test
+    public void learnGenerationLatency() {
+        for (int i = 0; i < 10; i++) {
+            scheduler.schedule("yto", readyAfter(400, null), 5000, Integer.MAX_VALUE).join();
+        }
+        double estimate = scheduler.getEstimate("yto");
+        assertTrue("estimate " + estimate, estimate > 150 && estimate < 900);
+        //学习后第一次查询接近就绪时刻, 查询次数减少
+        AtomicInteger polls = new AtomicInteger();
+        scheduler.schedule("yto", readyAfter(400, polls), 5000, Integer.MAX_VALUE).join();
+        assertTrue("polls " + polls.get(), polls.get() <= 3);
+        assertEquals(1000, scheduler.getEstimate("zto"), 0);
+    }
+
+    @Test
+    public void failAtDeadline() {
+        AtomicInteger polls = new AtomicInteger();
+        long start = System.currentTimeMillis();
+        CompletableFuture<String> future = scheduler.schedule("sf", readyAfter(60000, polls), 500, Integer.MAX_VALUE);
+        assertNotReady(future);
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue("elapsed " + elapsed, elapsed >= 500 && elapsed < 1000);
+        assertTrue(polls.get() >= 1);
+    }
+
+    @Test
+    public void limitPolls() {
+        AtomicInteger polls = new AtomicInteger();
+        assertNotReady(scheduler.schedule("sf", readyAfter(60000, polls), 1000, 1));
+        assertEquals(1, polls.get());
+    }
+
+    @Test
+    public void pollOnceAtDeadline() {
+        AtomicInteger polls = new AtomicInteger();
+        long start = System.currentTimeMillis();
+        CompletableFuture<String> future = scheduler.scheduleAtDeadline(readyAfter(300, polls), 500);
+        assertEquals("address", future.join());
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue("elapsed " + elapsed, elapsed >= 500 && elapsed < 1000);
+        assertEquals(1, polls.get());
+    }
+
+    @Test
+    public void failParkedOnShutdown() {
+        CompletableFuture<String> future = scheduler.schedule("sf", readyAfter(60000, null), 60000, Integer.MAX_VALUE);
+        scheduler.shutdown();
+        assertNotReady(future);
+    }
+
+    private static Supplier<CompletableFuture<String>> readyAfter(long millis, AtomicInteger polls) {
+        long readyAt = System.currentTimeMillis() + millis;
+        return () -> {
+            if (polls != null) {
+                polls.incrementAndGet();
+            }
+            return CompletableFuture.completedFuture(System.currentTimeMillis() >= readyAt ? "address" : null);
+        };
+    }
+
+    private static void assertNotReady(CompletableFuture<String> future) {
+        try {
+            future.join();
+            fail("expected LabelNotReady");
+        } catch (CompletionException ex) {
+            assertEquals("LabelNotReady", ex.getCause().getMessage());
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.tmindtech.api.waybill.sdk.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.tmindtech.api.waybill.sdk.http.EndpointTable;
+import com.tmindtech.api.waybill.sdk.http.RequestHedger;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * 对冲请求测试: 只有成功的响应生效, 对冲次数受令牌桶限制
+ * 用定时返回的 Call 模拟两个本地服务, 最优地址最近延迟为20ms
+ */
+public class RequestHedgerTest {
+    private static final String PRIMARY = "http://127.0.0.1:1/";
+    private static final String SECONDARY = "http://127.0.0.1:2/";
+
+    private final ScheduledExecutorService timer = Executors.newScheduledThreadPool(2);
+    private RequestHedger hedger;
+
+    @Before
+    public void setUp() {
+        EndpointTable endpointTable = new EndpointTable();
+        endpointTable.setPrimary("http://127.0.0.1:3/");
+        endpointTable.setLocals(Arrays.asList(PRIMARY, SECONDARY));
+        for (int i = 0; i < 10; i++) {
+            endpointTable.find(PRIMARY).recordSuccess(20);
+            endpointTable.find(SECONDARY).recordSuccess(40);
+        }
+        hedger = new RequestHedger(endpointTable, 0.95, 0.1);
+    }
+
+    @After
+    public void tearDown() {
+        hedger.shutdown();
+        timer.shutdownNow();
+    }
+
+    @Test
+    public void hedgeWinsWhenPrimarySlow() throws Exception {
+        FakeCall primary = new FakeCall(500, 200, "primary");
+        Response<String> response = execute(primary, new FakeCall(0, 200, "hedge"));
+        assertEquals("hedge", response.body());
+        assertEquals(1, hedger.getHedgeCount());
+        awaitHedgeWins(1);
+        assertTrue(primary.canceled);
+    }
+
+    @Test
+    public void primaryWinsBeforeHedgeDelay() throws Exception {
+        Response<String> response = execute(new FakeCall(0, 200, "primary"), new FakeCall(0, 200, "hedge"));
+        assertEquals("primary", response.body());
+        Thread.sleep(100);
+        assertEquals(0, hedger.getHedgeCount());
+    }
+
+    @Test
+    public void ignoreServerErrorFromEitherSide() throws Exception {
+        //原请求较快地返回503, 不应胜出
+        assertEquals("hedge", execute(new FakeCall(100, 503, null), new FakeCall(200, 200, "hedge")).body());
+        //对冲请求先返回503, 等待原请求
+        assertEquals("primary", execute(new FakeCall(200, 200, "primary"), new FakeCall(0, 503, null)).body());
+        awaitHedgeWins(1);
+    }
+
+    @Test
+    public void hedgeImmediatelyAfterPrimaryFails() throws Exception {
+        long start = System.currentTimeMillis();
+        Response<String> response = execute(new FakeCall(0, 502, null), new FakeCall(0, 200, "hedge"));
+        assertEquals("hedge", response.body());
+        assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+
+    @Test
+    public void returnLastErrorWhenBothFail() throws Exception {
+        Response<String> response = execute(new FakeCall(100, 503, null), new FakeCall(0, 504, null));
+        assertEquals(503, response.code());
+    }
+
+    @Test
+    public void limitHedgesByTokenBucket() throws Exception {
+        int requests = 30;
+        for (int i = 0; i < requests; i++) {
+            execute(new FakeCall(60, 200, "primary"), new FakeCall(0, 200, "hedge"));
+        }
+        //初始10个令牌, 每个请求存入0.1个
+        long hedges = hedger.getHedgeCount();
+        assertTrue("hedges " + hedges, hedges >= 10 && hedges <= 10 + requests / 10);
+    }
+
+    private Response<String> execute(FakeCall primary, FakeCall hedge) throws Exception {
+        return hedger.execute(endpoint -> endpoint == null ? primary : hedge).get(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 胜出次数在结果返回之后才累加, 稍等片刻再比较
+     */
+    private void awaitHedgeWins(long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (hedger.getHedgeWinCount() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        Thread.sleep(20);
+        assertEquals(expected, hedger.getHedgeWinCount());
+    }
+
+    /**
+     * 经过 delayMillis 后以指定状态码返回的请求
+     */
+    private class FakeCall implements Call<String> {
+        private final long delayMillis;
+        private final int code;
+        private final String body;
+        private volatile ScheduledFuture<?> pending;
+        volatile boolean canceled;
+
+        FakeCall(long delayMillis, int code, String body) {
+            this.delayMillis = delayMillis;
+            this.code = code;
+            this.body = body;
+        }
+
+        @Override
+        public Response<String> execute() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void enqueue(Callback<String> callback) {
+            pending = timer.schedule(() -> {
+                if (canceled) {
+                    callback.onFailure(this, new IOException("Canceled"));
+                } else if (code == 200) {
+                    callback.onResponse(this, Response.success(body));
+                } else {
+                    callback.onResponse(this, Response.error(code,
+                            ResponseBody.create(MediaType.parse("application/json"), "{}")));
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return pending != null;
+        }
+
+        @Override
+        public void cancel() {
+            canceled = true;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return canceled;
+        }
+
+        @Override
+        public Call<String> clone() {
+            return new FakeCall(delayMillis, code, body);
+        }
+
+        @Override
+        public Request request() {
+            return new Request.Builder().url(PRIMARY).build();
+        }
+    }
+}
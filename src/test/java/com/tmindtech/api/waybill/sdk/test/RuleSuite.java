@@ -12,7 +12,24 @@ import org.junit.runners.Suite;
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
         StatusTest.class,
-        ExampleTest.class
+        LabelInfoCacheTest.class,
+        PrintStreamCacheTest.class,
+        ExampleTest.class,
+        SegmentFileStoreTest.class,
+        LabelEncoderTest.class,
+        RawPrintTransportTest.class,
+        HealthMonitorTest.class,
+        HotSwitchInterceptorTest.class,
+        RequestHedgerTest.class,
+        PrintLogShipperTest.class,
+        ReadinessSchedulerTest.class,
+        LabelBatchLookupTest.class,
+        LabelReprintTest.class,
+        SignatureInterceptorTest.class,
+        MetricsRegistryTest.class,
+        TracingTest.class,
+        AdmissionControllerTest.class,
+        PrintAdmissionTest.class
 })
 public class RuleSuite {
     @ClassRule
@@ -0,0 +1,164 @@
+package com.tmindtech.api.waybill.sdk.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.tmindtech.api.waybill.sdk.cache.LabelImageCache;
+import com.tmindtech.api.waybill.sdk.cache.SegmentFileStore;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Objects;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 段文件存储测试: 删除与淘汰在重启后不会恢复, 跨映射窗口的记录可以正确读取, 压缩中途崩溃不丢失数据
+ */
+public class SegmentFileStoreTest {
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("segment").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void keepRemovalAfterRestart() throws IOException {
+        SegmentFileStore store = new SegmentFileStore(directory, 1 << 20);
+        store.put("a", "v1", data(100, 1));
+        store.put("b", "v1", data(100, 2));
+        store.remove("a");
+        store.close();
+
+        store = new SegmentFileStore(directory, 1 << 20);
+        assertFalse(store.contains("a"));
+        assertEquals("v1", store.get("b").version);
+        store.close();
+    }
+
+    @Test
+    public void keepEvictionAfterRestart() throws IOException {
+        SegmentFileStore store = new SegmentFileStore(directory, 300);
+        store.put("a", "v1", data(100, 1));
+        store.put("b", "v1", data(100, 2));
+        store.put("c", "v1", data(100, 3));
+        assertFalse(store.contains("a"));
+        store.close();
+
+        store = new SegmentFileStore(directory, 300);
+        assertFalse(store.contains("a"));
+        assertTrue(store.contains("b"));
+        store.close();
+        //重新打开时容量变小, 扫描后立即淘汰
+        store = new SegmentFileStore(directory, 150);
+        assertEquals(1, store.size());
+        assertTrue(store.contains("c"));
+        assertTrue(store.liveBytes() <= 150);
+        store.close();
+        store = new SegmentFileStore(directory, 1 << 20);
+        assertEquals(1, store.size());
+        store.close();
+    }
+
+    @Test
+    public void readAcrossWindows() throws IOException {
+        SegmentFileStore store = new SegmentFileStore(directory, 1 << 20, 256);
+        for (int i = 0; i < 50; i++) {
+            store.put("key-" + i, "v" + i, data(37 + i * 13, i));
+        }
+        for (int i = 0; i < 50; i++) {
+            SegmentFileStore.Record record = store.get("key-" + i);
+            assertEquals("v" + i, record.version);
+            assertArrayEquals(data(37 + i * 13, i), record.data);
+        }
+        store.close();
+    }
+
+    @Test
+    public void ignorePartialCompaction() throws IOException {
+        SegmentFileStore store = new SegmentFileStore(directory, 1 << 20);
+        store.put("a", "v1", data(100, 1));
+        store.put("b", "v1", data(100, 2));
+        store.close();
+        //模拟压缩写了一半时进程退出
+        File[] segments = segments();
+        assertEquals(1, segments.length);
+        byte[] content = Files.readAllBytes(segments[0].toPath());
+        File partial = new File(directory, "labels-000002.seg.tmp");
+        Files.write(partial.toPath(), Arrays.copyOf(content, content.length / 2));
+
+        store = new SegmentFileStore(directory, 1 << 20);
+        assertArrayEquals(data(100, 1), store.get("a").data);
+        assertArrayEquals(data(100, 2), store.get("b").data);
+        store.close();
+        assertFalse(partial.exists());
+        assertEquals(segments[0].getName(), segments()[0].getName());
+    }
+
+    @Test
+    public void keepDataAfterCompaction() throws Exception {
+        SegmentFileStore store = new SegmentFileStore(directory, 1 << 20);
+        //重复写入同一批 key, 垃圾超过 4MB 后在后台压缩
+        for (int round = 0; round < 60; round++) {
+            for (int i = 0; i < 10; i++) {
+                store.put("key-" + i, "v" + round, data(10000 + i, round));
+            }
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!new File(directory, "labels-000002.seg").exists()) {
+            assertTrue("compaction", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+        store.put("key-0", "v60", data(10000, 60));
+        store.remove("key-1");
+        store.close();
+
+        File[] segments = segments();
+        assertEquals(1, segments.length);
+        assertEquals("labels-000002.seg", segments[0].getName());
+        store = new SegmentFileStore(directory, 1 << 20);
+        assertEquals(9, store.size());
+        assertEquals("v60", store.get("key-0").version);
+        assertFalse(store.contains("key-1"));
+        assertArrayEquals(data(10009, 59), store.get("key-9").data);
+        store.close();
+    }
+
+    @Test
+    public void ignoreStaleImageUrl() throws IOException {
+        LabelImageCache cache = new LabelImageCache(directory, 1 << 20, 1 << 20);
+        cache.put("uuid-1", "http://image/1-v1.png", data(100, 1));
+        assertNull(cache.get("uuid-1", "http://image/1-v2.png"));
+        assertNull(cache.get("uuid-1", null));
+        assertArrayEquals(data(100, 1), cache.get("uuid-1", "http://image/1-v1.png").data);
+        cache.invalidate("uuid-1");
+        cache.close();
+
+        cache = new LabelImageCache(directory, 1 << 20, 1 << 20);
+        assertNull(cache.get("uuid-1"));
+        cache.close();
+    }
+
+    private File[] segments() {
+        return Objects.requireNonNull(directory.listFiles((dir, name) -> name.startsWith("labels-")));
+    }
+
+    private static byte[] data(int length, int seed) {
+        byte[] data = new byte[length];
+        Arrays.fill(data, (byte) seed);
+        data[0] = (byte) length;
+        return data;
+    }
+}
@@ -0,0 +1,135 @@
+package com.tmindtech.api.waybill.sdk.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.alibaba.fastjson.JSONObject;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpServer;
+import com.tmindtech.api.waybill.sdk.WaybillService;
+import com.tmindtech.api.waybill.sdk.interceptor.SignatureInterceptor;
+import com.tmindtech.api.waybill.sdk.model.YXMessage;
+import com.tmindtech.api.waybill.sdk.util.MessageCodec;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+/**
+ * 请求签名测试, 签名与请求体必须与原来按字符串计算的结果一致
+ */
+public class SignatureInterceptorTest {
+    private static final String KEY = "access-key";
+    private static final String SECRET = "access-secret";
+
+    private HttpServer server;
+    private OkHttpClient client;
+    private volatile String method;
+    private volatile Headers headers;
+    private volatile String body;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/request", exchange -> {
+            method = exchange.getRequestMethod();
+            headers = exchange.getRequestHeaders();
+            body = IOUtils.toString(exchange.getRequestBody(), StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        client = new OkHttpClient.Builder().addInterceptor(new SignatureInterceptor(KEY, SECRET)).build();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void signEncodedMessage() throws IOException {
+        YXMessage message = new YXMessage(MessageCodec.nextMessageId(), 0, "logistics_label_address/find_by_uuid",
+                "label_print", "api", "", Collections.singletonList("面单-1"));
+        send(MessageCodec.encode(message));
+        assertEquals("PUT", method);
+        assertEquals(JSONObject.toJSONString(message), body);
+        assertSignature();
+    }
+
+    @Test
+    public void signPlainBody() throws IOException {
+        send(RequestBody.create(MediaType.parse("application/json; charset=utf-8"), "{\"topic\":\"测试\"}"));
+        assertEquals("PUT", method);
+        assertEquals("{\"topic\":\"测试\"}", body);
+        assertSignature();
+    }
+
+    @Test
+    public void keepEncodedBodyThroughService() throws IOException {
+        //经过 Retrofit 生成的 WaybillService 发送时, 拦截器仍应拿到 MessageCodec.EncodedBody
+        List<RequestBody> seen = new ArrayList<>();
+        OkHttpClient probed = new OkHttpClient.Builder().addInterceptor(chain -> {
+            seen.add(chain.request().body());
+            return chain.proceed(chain.request());
+        }).addInterceptor(new SignatureInterceptor(KEY, SECRET)).build();
+        WaybillService service = new Retrofit.Builder()
+                .baseUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/")
+                .addConverterFactory(GsonConverterFactory.create())
+                .client(probed)
+                .build()
+                .create(WaybillService.class);
+        YXMessage message = new YXMessage(MessageCodec.nextMessageId(), 0, "logistics_label_address/find_by_uuid",
+                "label_print", "api", "", "面单-1");
+        service.savePrintResultLog(MessageCodec.encode(message)).execute().body().close();
+
+        assertEquals(1, seen.size());
+        assertTrue(seen.get(0) instanceof MessageCodec.EncodedBody);
+        assertEquals(message.topic, ((MessageCodec.EncodedBody) seen.get(0)).topic());
+        assertEquals("PUT", method);
+        assertEquals(JSONObject.toJSONString(message), body);
+        assertEquals("application/json; charset=utf-8", headers.getFirst("Content-Type"));
+        assertSignature();
+    }
+
+    @Test
+    public void messageIdLooksLikeUuid() {
+        Pattern uuid = Pattern.compile("[0-9a-f]{8}-[0-9a-f]{4}-4[0-9a-f]{3}-[89ab][0-9a-f]{3}-[0-9a-f]{12}");
+        for (int i = 0; i < 100; i++) {
+            String id = MessageCodec.nextMessageId();
+            assertEquals(id, true, uuid.matcher(id).matches());
+        }
+    }
+
+    private void send(RequestBody requestBody) throws IOException {
+        Request request = new Request.Builder()
+                .url("http://127.0.0.1:" + server.getAddress().getPort() + "/request")
+                .post(requestBody)
+                .build();
+        try (Response response = client.newCall(request).execute()) {
+            assertEquals(200, response.code());
+        }
+    }
+
+    private void assertSignature() {
+        assertEquals(KEY, headers.getFirst("appCode"));
+        String expected = DigestUtils.sha1Hex(DigestUtils.sha1Hex(KEY + SECRET) + body
+                + headers.getFirst("random") + headers.getFirst("timestamp"));
+        assertEquals(expected, headers.getFirst("signature"));
+    }
+}
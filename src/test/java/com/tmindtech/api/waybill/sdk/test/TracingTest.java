@@ -0,0 +1,130 @@
+package com.tmindtech.api.waybill.sdk.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.alibaba.fastjson.JSONObject;
+import com.sun.net.httpserver.HttpServer;
+import com.tmindtech.api.waybill.sdk.interceptor.TracingInterceptor;
+import com.tmindtech.api.waybill.sdk.model.YXMessage;
+import com.tmindtech.api.waybill.sdk.trace.Span;
+import com.tmindtech.api.waybill.sdk.trace.Tracer;
+import com.tmindtech.api.waybill.sdk.trace.ZipkinFileExporter;
+import com.tmindtech.api.waybill.sdk.util.MessageCodec;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 调用链追踪测试: traceparent 请求头的传播与 span 文件的滚动
+ */
+public class TracingTest {
+    private HttpServer server;
+    private File directory;
+    private final Tracer tracer = new Tracer();
+    private final List<Span> exported = new CopyOnWriteArrayList<>();
+    private final List<String> traceparents = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("trace").toFile();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/request", exchange -> {
+            String traceparent = exchange.getRequestHeaders().getFirst(TracingInterceptor.TRACEPARENT_HEADER);
+            traceparents.add(traceparent == null ? "" : traceparent);
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        tracer.setExporter(exported::add);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.stop(0);
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void propagateTraceparent() throws IOException {
+        Call.Factory factory = TracingInterceptor.callFactory(new OkHttpClient.Builder()
+                .addInterceptor(new TracingInterceptor(tracer)).build());
+        YXMessage message = new YXMessage(MessageCodec.nextMessageId(), 0, "relabel", "label_print", "api", "", "SO-1");
+        Request request = new Request.Builder().url("http://127.0.0.1:" + server.getAddress().getPort() + "/request")
+                .put(MessageCodec.encode(message)).build();
+
+        Span root = tracer.startTrace("print");
+        Tracer.Scope scope = Tracer.activate(root);
+        try {
+            factory.newCall(request).execute().close();
+        } finally {
+            scope.close();
+        }
+        root.finish();
+        //没有 trace 时不追踪
+        try (Response response = factory.newCall(request).execute()) {
+            assertEquals(200, response.code());
+        }
+
+        assertEquals(2, exported.size());
+        Span client = exported.get(0);
+        assertEquals("relabel", client.name);
+        assertEquals("CLIENT", client.kind);
+        assertEquals(root.traceId, client.traceId);
+        assertEquals(root.spanId, client.parentId);
+        assertEquals(message.id, client.getTags().get("message.id"));
+        assertEquals("200", client.getTags().get("http.status_code"));
+        assertEquals("00-" + root.traceId + "-" + client.spanId + "-01", traceparents.get(0));
+        assertTrue(traceparents.get(0).matches("00-[0-9a-f]{32}-[0-9a-f]{16}-01"));
+        assertEquals("", traceparents.get(1));
+        assertNull(exported.get(1).parentId);
+    }
+
+    @Test
+    public void rotateFiles() throws IOException {
+        ZipkinFileExporter exporter = new ZipkinFileExporter(directory, 1024, 3);
+        tracer.setExporter(exporter);
+        Span root = tracer.startTrace("print");
+        for (int i = 0; i < 40; i++) {
+            tracer.startSpan("fetch", root, null).tag("uuidCode", "uuid-" + i).finish();
+        }
+        root.finish();
+        exporter.close();
+
+        assertEquals(41, exporter.getExportedCount());
+        assertTrue(new File(directory, ZipkinFileExporter.FILE_NAME + ".1").exists());
+        assertTrue(new File(directory, ZipkinFileExporter.FILE_NAME + ".2").exists());
+        assertFalse(new File(directory, ZipkinFileExporter.FILE_NAME + ".3").exists());
+        List<String> lines = new ArrayList<>();
+        for (String name : new String[]{".2", ".1", ""}) {
+            lines.addAll(FileUtils.readLines(new File(directory, ZipkinFileExporter.FILE_NAME + name), StandardCharsets.UTF_8));
+        }
+        //最早的文件已被删除
+        assertTrue(lines.size() < 41);
+        JSONObject last = JSONObject.parseObject(lines.get(lines.size() - 1));
+        assertEquals(root.traceId, last.getString("traceId"));
+        assertEquals("print", last.getString("name"));
+        assertEquals("waybill-sdk", last.getJSONObject("localEndpoint").getString("serviceName"));
+        assertTrue(last.getLongValue("duration") > 0);
+        for (String line : lines.subList(0, lines.size() - 1)) {
+            JSONObject span = JSONObject.parseObject(line);
+            assertEquals(root.spanId, span.getString("parentId"));
+            assertTrue(span.getJSONObject("tags").getString("uuidCode").startsWith("uuid-"));
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.tmindtech.api.waybill.sdk.fixture;
+
+import com.tmindtech.api.waybill.sdk.util.ImageStreamUtil;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * 生成测试用的面单图片: 白底黑字, 带条码和分隔线, 并写入dpi信息
+ */
+public class LabelImages {
+
+    /**
+     * @param widthMm  面单宽度(毫米)
+     * @param heightMm 面单高度(毫米)
+     * @param dpi      图片dpi
+     * @return png图片字节
+     */
+    public static byte[] createPng(int widthMm, int heightMm, int dpi) {
+        return ImageStreamUtil.encodePng(createImage(widthMm, heightMm, dpi), dpi, dpi);
+    }
+
+    public static BufferedImage createImage(int widthMm, int heightMm, int dpi) {
+        int width = Math.round(widthMm / 25.4f * dpi);
+        int height = Math.round(heightMm / 25.4f * dpi);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, width, height);
+        g.setColor(Color.BLACK);
+        Random random = new Random(42);
+        int bar = Math.max(1, dpi / 100);
+        for (int x = width / 10; x < width * 9 / 10; x += bar * (1 + random.nextInt(3))) {
+            g.fillRect(x, height / 20, bar * (1 + random.nextInt(2)), height / 8);
+        }
+        g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, dpi / 10));
+        for (int line = 0; line < 12; line++) {
+            int y = height / 4 + line * height / 20;
+            g.drawString("YX" + random.nextInt(1000000) + " 收件人 杭州市滨江区 " + random.nextInt(10000), width / 20, y);
+            g.fillRect(0, y + dpi / 40, width, Math.max(1, dpi / 150));
+        }
+        g.dispose();
+        return image;
+    }
+}
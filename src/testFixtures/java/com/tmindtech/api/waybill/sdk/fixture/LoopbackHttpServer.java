@@ -0,0 +1,145 @@
+package com.tmindtech.api.waybill.sdk.fixture;
+
+import com.tmindtech.api.waybill.sdk.util.NamedThreadFactory;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 只监听本机地址的最简 HTTP/1.1 服务(keep-alive, Content-Length), 每条连接一个线程
+ * 响应头和内容一次写出, 避免分两次写出时与延迟确认叠加产生约40ms的额外等待, 使测得的延迟只来自注入的延迟
+ */
+public class LoopbackHttpServer implements Closeable {
+
+    /**
+     * 处理一个请求, 在连接线程上执行, 可以阻塞(如模拟服务端延迟)
+     */
+    public interface Handler {
+
+        Response handle(String method, String path, byte[] body) throws Exception;
+
+    }
+
+    public static class Response {
+        public final int status;
+
+        public final String contentType;
+
+        public final byte[] body;
+
+        public Response(int status, String contentType, byte[] body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        public static Response json(String json) {
+            return new Response(200, "application/json", json.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private final ServerSocket serverSocket;
+    private final Handler handler;
+    private final ExecutorService executor;
+
+    public LoopbackHttpServer(String name, Handler handler) throws IOException {
+        this.handler = handler;
+        this.serverSocket = new ServerSocket(0, 1024, InetAddress.getLoopbackAddress());
+        this.executor = Executors.newCachedThreadPool(new NamedThreadFactory(name));
+        executor.execute(this::accept);
+    }
+
+    public String url() {
+        return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/";
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                executor.execute(() -> serve(socket));
+            } catch (IOException ex) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket connection = socket) {
+            InputStream input = new BufferedInputStream(connection.getInputStream());
+            OutputStream output = connection.getOutputStream();
+            String requestLine;
+            while ((requestLine = readLine(input)) != null && !requestLine.isEmpty()) {
+                int contentLength = 0;
+                String header;
+                while ((header = readLine(input)) != null && !header.isEmpty()) {
+                    if (header.toLowerCase(Locale.ROOT).startsWith("content-length:")) {
+                        contentLength = Integer.parseInt(header.substring(15).trim());
+                    }
+                }
+                byte[] body = new byte[contentLength];
+                for (int read = 0; read < contentLength; ) {
+                    int n = input.read(body, read, contentLength - read);
+                    if (n < 0) {
+                        return;
+                    }
+                    read += n;
+                }
+                String[] parts = requestLine.split(" ");
+                Response response;
+                try {
+                    response = handler.handle(parts[0], parts[1], body);
+                } catch (InterruptedException ex) {
+                    return;
+                } catch (Exception ex) {
+                    ex.printStackTrace();
+                    response = new Response(500, "text/plain", new byte[0]);
+                }
+                //HEAD 请求只返回响应头
+                write(output, response, !parts[0].equals("HEAD"));
+            }
+        } catch (IOException ignore) {
+        }
+    }
+
+    private static void write(OutputStream output, Response response, boolean withBody) throws IOException {
+        byte[] head = ("HTTP/1.1 " + response.status + " " + (response.status == 200 ? "OK" : "Error")
+                + "\r\nContent-Type: " + response.contentType + "\r\nContent-Length: " + response.body.length
+                + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        int bodyLength = withBody ? response.body.length : 0;
+        byte[] bytes = new byte[head.length + bodyLength];
+        System.arraycopy(head, 0, bytes, 0, head.length);
+        System.arraycopy(response.body, 0, bytes, head.length, bodyLength);
+        output.write(bytes);
+        output.flush();
+    }
+
+    private static String readLine(InputStream input) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = input.read()) >= 0) {
+            if (b == '\n') {
+                return line.toString("US-ASCII").trim();
+            }
+            line.write(b);
+        }
+        return line.size() == 0 ? null : line.toString("US-ASCII").trim();
+    }
+}
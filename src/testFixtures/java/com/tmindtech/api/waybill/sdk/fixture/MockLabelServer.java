@@ -0,0 +1,246 @@
+package com.tmindtech.api.waybill.sdk.fixture;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内的面单服务, 单元测试、基准测试和压力测试共用, 按 YXMessage 的 topic 处理 /request 请求:
+ * find_by_sale_order, find_by_uuid(s), get_label_image_by_uuid(s), relabel, local_print_log(/batch)
+ * 可注入响应延迟、未生成比例和错误比例; 面单第一次被查询时决定是否"尚未生成", 尚未生成的面单在 readyDelayMillis 后生成,
+ * 也可以用 setReady 直接指定; 测试可通过 requestHook 在响应前阻塞或计数
+ */
+public class MockLabelServer implements Closeable {
+    private static final String LABEL_PREFIX = "logistics_label_address/";
+
+    public volatile long latencyMillis; // 每个请求的固定延迟(毫秒)
+
+    public volatile long latencyJitterMillis; // 在固定延迟上随机增加的延迟上限(毫秒)
+
+    public volatile double notReadyRate; // 面单(或分包结果)第一次查询时尚未生成的比例
+
+    public volatile long readyDelayMillis = 1000; // 尚未生成的面单从第一次查询到生成的时间(毫秒)
+
+    public volatile double errorRate; // 返回500的请求比例
+
+    public volatile int labelsPerOrder = 1; // find_by_sale_order 返回的面单数量
+
+    public volatile boolean batchSupported = true; // 为 false 时批量查询返回404, 模拟旧版本服务
+
+    public volatile RequestHook requestHook; // 每个 /request 请求在计数后、响应前调用
+
+    /**
+     * 在连接线程上处理请求前调用, 可以阻塞
+     */
+    public interface RequestHook {
+
+        void onRequest(String topic, JSONObject message) throws InterruptedException;
+
+    }
+
+    private final LoopbackHttpServer server;
+    private final String imageBaseUrl;
+    private final byte[] image;
+    private final AtomicLong imageDownloadCount = new AtomicLong();
+    private final Map<String, Long> readyTimes = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> requestCounts = new ConcurrentHashMap<>();
+    private final AtomicLong printLogCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+
+    /**
+     * @param imageBaseUrl 面单图片服务地址, 图片地址为 imageBaseUrl + "label/" + 唯一码 + ".png"
+     */
+    public MockLabelServer(String imageBaseUrl) throws IOException {
+        this.imageBaseUrl = imageBaseUrl;
+        this.image = null;
+        this.server = new LoopbackHttpServer("mock-label-server", this::handle);
+    }
+
+    /**
+     * 同时提供面单图片, 所有唯一码返回同一张图片
+     *
+     * @param image 图片内容
+     */
+    public MockLabelServer(byte[] image) throws IOException {
+        this.imageBaseUrl = null;
+        this.image = image;
+        this.server = new LoopbackHttpServer("mock-label-server", this::handle);
+    }
+
+    public String url() {
+        return server.url();
+    }
+
+    /**
+     * 指定面单(或分包结果, 键为 "relabel:" + 订单号)是否已生成, 覆盖按 notReadyRate 随机决定的结果
+     */
+    public void setReady(String key, boolean ready) {
+        readyTimes.put(key, ready ? 0L : Long.MAX_VALUE);
+    }
+
+    /**
+     * @return 该 topic 收到的请求数
+     */
+    public long getRequestCount(String topic) {
+        AtomicLong count = requestCounts.get(topic);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * @return 图片下载次数, 只统计本服务提供的图片
+     */
+    public long getImageDownloadCount() {
+        return imageDownloadCount.get();
+    }
+
+    /**
+     * @return 收到的打印日志条数
+     */
+    public long getPrintLogCount() {
+        return printLogCount.get();
+    }
+
+    /**
+     * @return 各 topic 的请求数与注入的错误数
+     */
+    public String getStats() {
+        Map<String, Long> counts = new TreeMap<>();
+        requestCounts.forEach((topic, count) -> counts.put(topic, count.get()));
+        return "MockLabelServer{requests=" + counts + ", printLogs=" + printLogCount.get()
+                + ", injectedErrors=" + errorCount.get() + "}";
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+
+    private LoopbackHttpServer.Response handle(String method, String path, byte[] body) throws InterruptedException {
+        if (image != null && path.startsWith("/label/")) {
+            imageDownloadCount.incrementAndGet();
+            return new LoopbackHttpServer.Response(200, "image/png", image);
+        }
+        if (!path.startsWith("/request") || body.length == 0) {
+            //预热连接的 HEAD 请求
+            return new LoopbackHttpServer.Response(200, "text/plain", new byte[0]);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long latency = latencyMillis + (latencyJitterMillis > 0 ? random.nextLong(latencyJitterMillis + 1) : 0);
+        if (latency > 0) {
+            Thread.sleep(latency);
+        }
+        JSONObject message = JSON.parseObject(new String(body, StandardCharsets.UTF_8));
+        String topic = message.getString("topic");
+        requestCounts.computeIfAbsent(topic, key -> new AtomicLong()).incrementAndGet();
+        RequestHook hook = requestHook;
+        if (hook != null) {
+            hook.onRequest(topic, message);
+        }
+        if (!batchSupported && topic.endsWith("_by_uuids")) {
+            return new LoopbackHttpServer.Response(404, "application/json", "{}".getBytes(StandardCharsets.UTF_8));
+        }
+        if (random.nextDouble() < errorRate) {
+            errorCount.incrementAndGet();
+            return new LoopbackHttpServer.Response(500, "application/json", "{}".getBytes(StandardCharsets.UTF_8));
+        }
+        JSONObject response = new JSONObject();
+        switch (topic.startsWith(LABEL_PREFIX) ? topic.substring(LABEL_PREFIX.length()) : topic) {
+            case "find_by_sale_order": {
+                String saleOrder = message.getString("payload");
+                JSONArray data = new JSONArray();
+                for (int seqNo = 1; seqNo <= labelsPerOrder; seqNo++) {
+                    data.add(labelInfo(saleOrder, seqNo, saleOrder + "-" + seqNo));
+                }
+                response.put("data", data);
+                break;
+            }
+            case "find_by_uuid":
+                response.put("data", labelInfo(message.getString("payload")));
+                break;
+            case "find_by_uuids": {
+                JSONArray data = new JSONArray();
+                for (Object uuidCode : message.getJSONArray("payload")) {
+                    data.add(labelInfo(uuidCode.toString()));
+                }
+                response.put("data", data);
+                break;
+            }
+            case "get_label_image_by_uuid":
+                response = labelAddress(message.getString("payload"));
+                break;
+            case "get_label_image_by_uuids": {
+                JSONArray data = new JSONArray();
+                for (Object uuidCode : message.getJSONArray("payload")) {
+                    data.add(labelAddress(uuidCode.toString()).fluentPut("uuidCode", uuidCode));
+                }
+                response.put("data", data);
+                break;
+            }
+            case "relabel": {
+                JSONObject payload = message.getJSONObject("payload");
+                String saleOrder = payload.getString("saleOrder");
+                //分包结果尚未生成时返回非2xx状态(SDK 按没有内容处理并稍后重试), 生成后的面单可以立即打印
+                if (!isReady("relabel:" + saleOrder)) {
+                    return new LoopbackHttpServer.Response(409, "application/json", "{}".getBytes(StandardCharsets.UTF_8));
+                }
+                JSONArray data = new JSONArray();
+                for (int seqNo = 1; seqNo <= payload.getIntValue("pkgCnt"); seqNo++) {
+                    String uuidCode = saleOrder + "-" + seqNo;
+                    readyTimes.put(uuidCode, 0L);
+                    data.add(labelInfo(saleOrder, seqNo, uuidCode));
+                }
+                response.put("data", data);
+                break;
+            }
+            case "local_print_log":
+                printLogCount.incrementAndGet();
+                break;
+            case "local_print_log/batch":
+                printLogCount.addAndGet(JSON.parseArray(message.getString("payload")).size());
+                break;
+            default:
+                return new LoopbackHttpServer.Response(404, "application/json", "{}".getBytes(StandardCharsets.UTF_8));
+        }
+        return LoopbackHttpServer.Response.json(response.toJSONString());
+    }
+
+    private JSONObject labelAddress(String uuidCode) {
+        JSONObject imageData = new JSONObject();
+        if (isReady(uuidCode)) {
+            imageData.put("code", 200);
+            imageData.put("data", (imageBaseUrl == null ? url() : imageBaseUrl) + "label/" + uuidCode + ".png");
+        } else {
+            imageData.put("code", 102);
+            imageData.put("msg", "label not ready");
+        }
+        return imageData;
+    }
+
+    /**
+     * 第一次查询时按 notReadyRate 决定生成时间
+     */
+    private boolean isReady(String key) {
+        long readyTime = readyTimes.computeIfAbsent(key, ignore ->
+                ThreadLocalRandom.current().nextDouble() < notReadyRate ? System.currentTimeMillis() + readyDelayMillis : 0L);
+        return System.currentTimeMillis() >= readyTime;
+    }
+
+    private static JSONObject labelInfo(String uuidCode) {
+        int dash = uuidCode.lastIndexOf('-');
+        String saleOrder = dash > 0 ? uuidCode.substring(0, dash) : uuidCode;
+        return labelInfo(saleOrder, 1, uuidCode);
+    }
+
+    private static JSONObject labelInfo(String saleOrder, int seqNo, String uuidCode) {
+        return new JSONObject().fluentPut("saleOrder", saleOrder).fluentPut("seqNo", seqNo)
+                .fluentPut("uuidCode", uuidCode).fluentPut("pageCount", 1);
+    }
+}
@@ -0,0 +1,60 @@
+package com.tmindtech.api.waybill.sdk.fixture;
+
+import com.tmindtech.api.waybill.sdk.util.NamedThreadFactory;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 网络打印机替身, 接收并丢弃打印指令, 只统计字节数
+ */
+public class StubPrinter implements Closeable {
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newCachedThreadPool(new NamedThreadFactory("stub-printer"));
+    private final AtomicLong receivedBytes = new AtomicLong();
+
+    public StubPrinter() throws IOException {
+        serverSocket = new ServerSocket(0, 16, InetAddress.getLoopbackAddress());
+        executor.execute(() -> {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    executor.execute(() -> drain(socket));
+                } catch (IOException ex) {
+                    return;
+                }
+            }
+        });
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public long getReceivedBytes() {
+        return receivedBytes.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+
+    private void drain(Socket socket) {
+        byte[] buffer = new byte[64 * 1024];
+        try (Socket connection = socket; InputStream input = connection.getInputStream()) {
+            int n;
+            while ((n = input.read(buffer)) >= 0) {
+                receivedBytes.addAndGet(n);
+            }
+        } catch (IOException ignore) {
+        }
+    }
+}